@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Entry point of the benchmarks jar. It accepts the JMH command line options, and always adds the GC profiler so that the allocation rate is reported
+ * with the throughput
+ */
+public final class BenchmarkRunner
+{
+    /**
+     * Private constructor
+     */
+    private BenchmarkRunner( )
+    {
+    }
+
+    /**
+     * Runs the benchmarks
+     * 
+     * @param args
+     *            the JMH command line options, for instance RenderBenchmark -p _nVertices=10000
+     * @throws CommandLineOptionException
+     *             if the options are invalid
+     * @throws RunnerException
+     *             if the benchmarks fail
+     * @throws IOException
+     *             if the list of the benchmarks cannot be read
+     */
+    public static void main( String [ ] args ) throws CommandLineOptionException, RunnerException, IOException
+    {
+        CommandLineOptions cmdOptions = new CommandLineOptions( args );
+
+        if ( cmdOptions.shouldHelp( ) || cmdOptions.shouldList( ) || cmdOptions.shouldListProfilers( ) || cmdOptions.shouldListResultFormats( ) )
+        {
+            org.openjdk.jmh.Main.main( args );
+
+            return;
+        }
+
+        OptionsBuilder options = new OptionsBuilder( );
+        options.parent( cmdOptions );
+
+        if ( !hasGCProfiler( cmdOptions ) )
+        {
+            options.addProfiler( GCProfiler.class );
+        }
+
+        new Runner( options.build( ) ).run( );
+    }
+
+    /**
+     * Tells whether the GC profiler is already requested on the command line ( -prof gc )
+     * 
+     * @param cmdOptions
+     *            the command line options
+     * @return true if it is requested
+     */
+    private static boolean hasGCProfiler( CommandLineOptions cmdOptions )
+    {
+        for ( ProfilerConfig profiler : cmdOptions.getProfilers( ) )
+        {
+            if ( "gc".equals( profiler.getKlass( ) ) || GCProfiler.class.getName( ).equals( profiler.getKlass( ) ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
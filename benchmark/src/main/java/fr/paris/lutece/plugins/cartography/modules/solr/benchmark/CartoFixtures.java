@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.client.solrj.beans.DocumentObjectBinder;
+import org.apache.solr.common.SolrDocument;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.leaflet.business.GeolocItem;
+import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+
+/**
+ * Synthetic data of the benchmarks : documents of a data layer as they are indexed, from single points to polygons of thousands of vertices
+ */
+public final class CartoFixtures
+{
+    /** Number of vertices of the fixtures made of points */
+    public static final int POINT = 1;
+
+    public static final String FIELD_GEOJSON = "coordonnee" + SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX;
+    public static final String FIELD_NAME = "nom" + SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX;
+    public static final String FIELD_DESCRIPTION = "description" + SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX;
+    public static final String FIELD_DATA_LAYER = "DataLayer" + SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX;
+
+    private static final String FIELD_UID = "uid";
+    private static final String UID_PREFIX = "lutece_";
+    private static final String UID_SUFFIX = "_Coordonnees";
+    private static final String SOLR_TAG = "benchmark";
+    private static final double CENTER_X = 2.3522;
+    private static final double CENTER_Y = 48.8566;
+    private static final double RADIUS = 0.01;
+    private static final double SPREAD = 0.1;
+
+    /**
+     * Private constructor
+     */
+    private CartoFixtures( )
+    {
+    }
+
+    /**
+     * Returns a data layer whose popup uses the name and the description of the documents
+     * 
+     * @return the data layer
+     */
+    public static DataLayer getDataLayer( )
+    {
+        DataLayer datalayer = new DataLayer( );
+        datalayer.setId( 1 );
+        datalayer.setTitle( "Benchmark layer" );
+        datalayer.setSolrTag( SOLR_TAG );
+        datalayer.setPopupContent( "<h3>[" + FIELD_NAME + "]</h3><p>[" + FIELD_DESCRIPTION + "]</p>" );
+
+        return datalayer;
+    }
+
+    /**
+     * Returns indexed documents
+     * 
+     * @param nDocuments
+     *            the number of documents
+     * @param nVertices
+     *            the number of vertices of each geometry, POINT for points
+     * @return the documents
+     */
+    public static List<SolrDocument> getDocuments( int nDocuments, int nVertices )
+    {
+        List<SolrDocument> listDocuments = new ArrayList<>( nDocuments );
+
+        for ( int i = 0; i < nDocuments; i++ )
+        {
+            SolrDocument document = new SolrDocument( );
+            document.setField( FIELD_UID, UID_PREFIX + i + UID_SUFFIX );
+            document.setField( FIELD_GEOJSON, getGeoJson( i, nVertices ) );
+            document.setField( FIELD_NAME, "Feature " + i );
+            document.setField( FIELD_DESCRIPTION, "Description of the feature " + i + ", with some text to render in the popup" );
+            document.setField( FIELD_DATA_LAYER, SOLR_TAG );
+            listDocuments.add( document );
+        }
+
+        return listDocuments;
+    }
+
+    /**
+     * Returns search results, bound from the documents like the solr search engine does
+     * 
+     * @param nResults
+     *            the number of results
+     * @param nVertices
+     *            the number of vertices of each geometry, POINT for points
+     * @return the results
+     */
+    public static List<SolrSearchResult> getSearchResults( int nResults, int nVertices )
+    {
+        DocumentObjectBinder binder = new DocumentObjectBinder( );
+        List<SolrSearchResult> listResults = new ArrayList<>( nResults );
+
+        for ( SolrDocument document : getDocuments( nResults, nVertices ) )
+        {
+            listResults.add( binder.getBean( SolrSearchResult.class, document ) );
+        }
+
+        return listResults;
+    }
+
+    /**
+     * Returns the coordinates of a polygon in the format of the coordinates form : x,y;x,y;...
+     * 
+     * @param nVertices
+     *            the number of vertices
+     * @return the coordinates
+     */
+    public static String getCoordinates( int nVertices )
+    {
+        StringBuilder sbCoordinates = new StringBuilder( nVertices * 40 );
+        double [ ] [ ] ring = getRing( 0, nVertices );
+
+        for ( int i = 0; i < ring.length; i++ )
+        {
+            if ( i > 0 )
+            {
+                sbCoordinates.append( ';' );
+            }
+            sbCoordinates.append( ring [i] [0] ).append( ',' ).append( ring [i] [1] );
+        }
+
+        return sbCoordinates.toString( );
+    }
+
+    /**
+     * Returns the indexed GeoJSON of a document
+     * 
+     * @param nIndex
+     *            the index of the document
+     * @param nVertices
+     *            the number of vertices, POINT for a point
+     * @return the GeoJSON
+     */
+    private static String getGeoJson( int nIndex, int nVertices )
+    {
+        if ( nVertices <= POINT )
+        {
+            double [ ] center = getCenter( nIndex );
+
+            return CartographyService.getGeolocItemPoint( center [0], center [1], "Address " + nIndex ).toJSON( );
+        }
+
+        return CartographyService.getGeolocItemPolygon( new double [ ] [ ] [ ] {
+                getRing( nIndex, nVertices )
+        }, GeolocItem.VALUE_GEOMETRY_TYPE_POLYGON ).toJSON( );
+    }
+
+    /**
+     * Returns a closed ring around the center of a document
+     * 
+     * @param nIndex
+     *            the index of the document
+     * @param nVertices
+     *            the number of distinct vertices
+     * @return the ring
+     */
+    private static double [ ] [ ] getRing( int nIndex, int nVertices )
+    {
+        double [ ] center = getCenter( nIndex );
+        double [ ] [ ] ring = new double [ nVertices + 1] [ ];
+
+        for ( int i = 0; i < nVertices; i++ )
+        {
+            double dAngle = 2 * Math.PI * i / nVertices;
+            // a slightly irregular outline, so that the coordinates have full precision
+            double dRadius = RADIUS * ( 1 + 0.1 * Math.sin( 7 * dAngle ) );
+            ring [i] = new double [ ] {
+                    center [0] + dRadius * Math.cos( dAngle ), center [1] + dRadius * Math.sin( dAngle )
+            };
+        }
+        ring [nVertices] = ring [0];
+
+        return ring;
+    }
+
+    /**
+     * Returns the center of the geometry of a document, spread around Paris
+     * 
+     * @param nIndex
+     *            the index of the document
+     * @return the longitude and the latitude
+     */
+    private static double [ ] getCenter( int nIndex )
+    {
+        double dAngle = nIndex * 2.399963;
+        double dDistance = SPREAD * Math.sqrt( ( nIndex % 1000 ) / 1000.0 );
+
+        return new double [ ] {
+                CENTER_X + dDistance * Math.cos( dAngle ), CENTER_Y + dDistance * Math.sin( dAngle )
+        };
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.paris.lutece.plugins.carto.provider.IMarkerProvider;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+
+/**
+ * Benchmark of the replacement of the markers of a popup. The values come from a stub provider, so only the templating is measured, not the solr
+ * queries of the real provider
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MarkerBenchmark
+{
+    /** Number of markers of the popup */
+    @Param( {
+            "1", "10"
+    } )
+    public int _nMarkers;
+
+    private String _strPopup;
+    private IMarkerProvider _markerProvider;
+
+    /**
+     * Builds the popup and the values of its markers
+     */
+    @Setup
+    public void setUp( )
+    {
+        StringBuilder sbPopup = new StringBuilder( );
+        Map<String, String> mapValues = new HashMap<>( );
+
+        for ( int i = 0; i < _nMarkers; i++ )
+        {
+            String strMarker = "field" + i + "_text";
+            sbPopup.append( "<p><b>Label " ).append( i ).append( "</b> : [" ).append( strMarker ).append( "]</p>" );
+            mapValues.put( strMarker, "Value of the field " + i );
+        }
+
+        _strPopup = sbPopup.toString( );
+        _markerProvider = new StubMarkerProvider( mapValues );
+    }
+
+    /**
+     * Replacement of the markers
+     * 
+     * @return the popup
+     */
+    @Benchmark
+    public String replaceMarker( )
+    {
+        return CartographyService.replaceMarker( _strPopup, "lutece_1_Coordonnees", "benchmark", _markerProvider );
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.benchmark;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.SolrDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.DataLayerExportService;
+import fr.paris.lutece.plugins.cartography.modules.solr.web.ExportDataLayerJspBean;
+import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
+
+/**
+ * Benchmarks of the rendering of the documents of a data layer : map model, export model and GeoJSON FeatureCollection
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RenderBenchmark
+{
+    /** Number of vertices of each geometry, 1 for points */
+    @Param( {
+            "1", "100", "10000"
+    } )
+    public int _nVertices;
+
+    /** Number of documents of the data layer */
+    @Param( {
+            "100"
+    } )
+    public int _nDocuments;
+
+    private DataLayer _datalayer;
+    private List<SolrSearchResult> _listResults;
+    private List<SolrDocument> _listDocuments;
+
+    /**
+     * Builds the documents
+     */
+    @Setup
+    public void setUp( )
+    {
+        CartographyService.setIconResolver( new StubIconResolver( ) );
+        _datalayer = CartoFixtures.getDataLayer( );
+        _listResults = CartoFixtures.getSearchResults( _nDocuments, _nVertices );
+        _listDocuments = CartoFixtures.getDocuments( _nDocuments, _nVertices );
+    }
+
+    /**
+     * Model of the map page, with the popups rendered from the text fields of the documents
+     * 
+     * @return the model
+     */
+    @Benchmark
+    public List<HashMap<String, Object>> getGeolocModel( )
+    {
+        return CartographyService.getGeolocModel( _listResults, _datalayer, null );
+    }
+
+    /**
+     * Model of the export page
+     * 
+     * @return the GeoJSON of the documents
+     */
+    @Benchmark
+    public List<String> getExportGeolocModel( )
+    {
+        return ExportDataLayerJspBean.getGeolocModel( _listResults, _datalayer );
+    }
+
+    /**
+     * GeoJSON FeatureCollection written by the export of a data layer
+     * 
+     * @return the length of the FeatureCollection
+     * @throws IOException
+     *             never, the documents are in memory
+     */
+    @Benchmark
+    public int writeFeatureCollection( ) throws IOException
+    {
+        StringWriter writer = new StringWriter( );
+        DataLayerExportService.writeFeatureCollection( _datalayer.getTitle( ), handler -> {
+            for ( SolrDocument document : _listDocuments )
+            {
+                handler.handle( document );
+            }
+        }, writer, lExported -> {
+        } );
+
+        return writer.getBuffer( ).length( );
+    }
+}
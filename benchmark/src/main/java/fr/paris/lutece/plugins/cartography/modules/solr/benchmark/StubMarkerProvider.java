@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import fr.paris.lutece.plugins.carto.provider.IMarkerProvider;
+import fr.paris.lutece.plugins.carto.provider.InfoMarker;
+
+/**
+ * Marker provider returning fixed values, in place of the solr queries of CartoSolrMarkerProvider
+ */
+public class StubMarkerProvider implements IMarkerProvider
+{
+    private final Map<String, String> _mapValues;
+
+    /**
+     * Constructor
+     * 
+     * @param mapValues
+     *            the values of the markers
+     */
+    public StubMarkerProvider( Map<String, String> mapValues )
+    {
+        _mapValues = mapValues;
+    }
+
+    @Override
+    public String getId( )
+    {
+        return "stub";
+    }
+
+    @Override
+    public String getTitleI18nKey( )
+    {
+        return "Stub";
+    }
+
+    @Override
+    public Collection<InfoMarker> provideMarkerDescriptions( String solrTag, HttpServletRequest request )
+    {
+        return Collections.emptyList( );
+    }
+
+    @Override
+    public Collection<InfoMarker> provideMarkerValues( String solrTag, String uid )
+    {
+        Collection<InfoMarker> listMarkers = new ArrayList<>( );
+
+        for ( Map.Entry<String, String> entry : _mapValues.entrySet( ) )
+        {
+            InfoMarker marker = new InfoMarker( entry.getKey( ) );
+            marker.setValue( entry.getValue( ) );
+            listMarkers.add( marker );
+        }
+
+        return listMarkers;
+    }
+
+    @Override
+    public Map<String, String> valueMarker( String marker, String solrTag, String uid )
+    {
+        // a new map per call, like the solr provider
+        return new HashMap<>( _mapValues );
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.util.sql.DAOUtil;
+
+/**
+ * This class provides Data Access methods for the coordinates read by the indexer
+ */
+public final class CoordonneeIndexDAO implements ICoordonneeIndexDAO
+{
+    // Constants
+    private static final String SQL_QUERY_SELECTALL_ID_AFTER = "SELECT id_coordonnee FROM carto_coordonnee WHERE id_coordonnee > ? ORDER BY id_coordonnee LIMIT ?";
+    private static final String SQL_QUERY_SELECT_HASHES_BETWEEN = "SELECT id_coordonnee, content_hash FROM cartosolr_index_state WHERE id_coordonnee > ? AND id_coordonnee <= ?";
+    private static final String SQL_QUERY_SELECT_INDEXED_ID_AFTER = "SELECT id_coordonnee FROM cartosolr_index_state WHERE id_coordonnee > ? ORDER BY id_coordonnee LIMIT ?";
+    private static final String SQL_QUERY_COUNT_INDEXED = "SELECT COUNT(*) FROM cartosolr_index_state";
+    private static final String SQL_QUERY_INSERT_HASH = "INSERT INTO cartosolr_index_state ( id_coordonnee, content_hash ) VALUES ( ?, ? ) ";
+    private static final String SQL_QUERY_DELETE_HASH = "DELETE FROM cartosolr_index_state WHERE id_coordonnee = ? ";
+    private static final String SQL_QUERY_DELETE_ALL_HASHES = "DELETE FROM cartosolr_index_state";
+    private static final String SQL_QUERY_SELECT_WATERMARK = "SELECT last_id_coordonnee FROM cartosolr_index_watermark WHERE id_watermark = 1";
+    private static final String SQL_QUERY_UPDATE_WATERMARK = "UPDATE cartosolr_index_watermark SET last_id_coordonnee = ? WHERE id_watermark = 1";
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<Integer> selectIdCoordonneesAfter( int nIdAfter, int nLimit, Plugin plugin )
+    {
+        List<Integer> listIds = new ArrayList<>( nLimit );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECTALL_ID_AFTER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdAfter );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIds.add( daoUtil.getInt( 1 ) );
+            }
+
+            return listIds;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public Map<Integer, String> selectIndexedHashes( int nIdAfter, int nIdTo, Plugin plugin )
+    {
+        Map<Integer, String> mapHashes = new HashMap<>( );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_HASHES_BETWEEN, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdAfter );
+            daoUtil.setInt( 2, nIdTo );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                mapHashes.put( daoUtil.getInt( 1 ), daoUtil.getString( 2 ) );
+            }
+
+            return mapHashes;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public List<Integer> selectIndexedIdsAfter( int nIdAfter, int nLimit, Plugin plugin )
+    {
+        List<Integer> listIds = new ArrayList<>( nLimit );
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_INDEXED_ID_AFTER, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdAfter );
+            daoUtil.setInt( 2, nLimit );
+            daoUtil.executeQuery( );
+
+            while ( daoUtil.next( ) )
+            {
+                listIds.add( daoUtil.getInt( 1 ) );
+            }
+
+            return listIds;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public int countIndexed( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_COUNT_INDEXED, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void storeIndexedHashes( Map<Integer, String> mapHashes, Plugin plugin )
+    {
+        deleteIndexedHashes( mapHashes.keySet( ), plugin );
+
+        for ( Entry<Integer, String> entry : mapHashes.entrySet( ) )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_INSERT_HASH, plugin ) )
+            {
+                daoUtil.setInt( 1, entry.getKey( ) );
+                daoUtil.setString( 2, entry.getValue( ) );
+                daoUtil.executeUpdate( );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void deleteIndexedHashes( Collection<Integer> collectionIds, Plugin plugin )
+    {
+        for ( Integer nId : collectionIds )
+        {
+            try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_HASH, plugin ) )
+            {
+                daoUtil.setInt( 1, nId );
+                daoUtil.executeUpdate( );
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void deleteAllIndexedHashes( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_DELETE_ALL_HASHES, plugin ) )
+        {
+            daoUtil.executeUpdate( );
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public int loadWatermark( Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_SELECT_WATERMARK, plugin ) )
+        {
+            daoUtil.executeQuery( );
+
+            return daoUtil.next( ) ? daoUtil.getInt( 1 ) : 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     */
+    @Override
+    public void storeWatermark( int nIdCoordonnee, Plugin plugin )
+    {
+        try ( DAOUtil daoUtil = new DAOUtil( SQL_QUERY_UPDATE_WATERMARK, plugin ) )
+        {
+            daoUtil.setInt( 1, nIdCoordonnee );
+            daoUtil.executeUpdate( );
+        }
+    }
+}
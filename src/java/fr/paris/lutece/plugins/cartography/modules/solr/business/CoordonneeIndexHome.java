@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+
+/**
+ * This class provides instances management methods for the reads of the coordinates needed by the indexer
+ */
+public final class CoordonneeIndexHome
+{
+    // Static variable pointed at the DAO instance
+    private static ICoordonneeIndexDAO _dao = SpringContextService.getBean( "cartography-solr.coordonneeIndexDAO" );
+    private static Plugin _plugin = PluginService.getPlugin( "carto" );
+
+    /**
+     * Private constructor - this class need not be instantiated
+     */
+    private CoordonneeIndexHome( )
+    {
+    }
+
+    /**
+     * Load a page of coordinate ids, in id order
+     * 
+     * @param nIdAfter
+     *            the last id of the previous page, 0 for the first page
+     * @param nLimit
+     *            the maximum number of ids
+     * @return the ids greater than nIdAfter
+     */
+    public static List<Integer> getIdCoordonneesAfter( int nIdAfter, int nLimit )
+    {
+        return _dao.selectIdCoordonneesAfter( nIdAfter, nLimit, _plugin );
+    }
+
+    /**
+     * Load the content hashes of the indexed coordinates whose id is in a range
+     * 
+     * @param nIdAfter
+     *            the lower bound of the range, excluded
+     * @param nIdTo
+     *            the upper bound of the range, included
+     * @return the content hashes, by coordinate id
+     */
+    public static Map<Integer, String> getIndexedHashes( int nIdAfter, int nIdTo )
+    {
+        return _dao.selectIndexedHashes( nIdAfter, nIdTo, _plugin );
+    }
+
+    /**
+     * Load a page of indexed coordinate ids, in id order
+     * 
+     * @param nIdAfter
+     *            the lower bound of the ids, excluded
+     * @param nLimit
+     *            the maximum number of ids
+     * @return the ids
+     */
+    public static List<Integer> getIndexedIdsAfter( int nIdAfter, int nLimit )
+    {
+        return _dao.selectIndexedIdsAfter( nIdAfter, nLimit, _plugin );
+    }
+
+    /**
+     * Count the indexed coordinates
+     * 
+     * @return the number of indexed coordinates
+     */
+    public static int countIndexed( )
+    {
+        return _dao.countIndexed( _plugin );
+    }
+
+    /**
+     * Store the content hashes of indexed coordinates
+     * 
+     * @param mapHashes
+     *            the content hashes, by coordinate id
+     */
+    public static void storeIndexedHashes( Map<Integer, String> mapHashes )
+    {
+        _dao.storeIndexedHashes( mapHashes, _plugin );
+    }
+
+    /**
+     * Delete the content hashes of coordinates removed from the index
+     * 
+     * @param collectionIds
+     *            the coordinate ids
+     */
+    public static void removeIndexedHashes( Collection<Integer> collectionIds )
+    {
+        _dao.deleteIndexedHashes( collectionIds, _plugin );
+    }
+
+    /**
+     * Delete all the content hashes, so that the next delta sends every coordinate
+     */
+    public static void removeAllIndexedHashes( )
+    {
+        _dao.deleteAllIndexedHashes( _plugin );
+    }
+
+    /**
+     * Load the last coordinate id synchronized by the running delta, 0 if no delta is running
+     * 
+     * @return the watermark
+     */
+    public static int getWatermark( )
+    {
+        return _dao.loadWatermark( _plugin );
+    }
+
+    /**
+     * Store the last coordinate id synchronized by the running delta
+     * 
+     * @param nIdCoordonnee
+     *            the watermark, 0 once the delta is complete
+     */
+    public static void setWatermark( int nIdCoordonnee )
+    {
+        _dao.storeWatermark( nIdCoordonnee, _plugin );
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * This is the business class for a background export of a data layer
+ */
+public class ExportJob
+{
+    /**
+     * Status of an export job
+     */
+    public enum Status
+    {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String _strId;
+    private final int _nIdDataLayer;
+    private final String _strDataLayerTitle;
+    private final String _strUserAccessCode;
+    private final Path _path;
+    private final long _lCreationTime;
+    private volatile Status _status;
+    private volatile long _lTotal;
+    private volatile long _lExported;
+    private volatile long _lEndTime;
+    private volatile String _strErrorMessage;
+
+    /**
+     * Constructor
+     * 
+     * @param nIdDataLayer
+     *            the id of the exported data layer
+     * @param strDataLayerTitle
+     *            the title of the exported data layer
+     * @param strUserAccessCode
+     *            the access code of the admin user who requested the export
+     * @param directory
+     *            the working directory of the exports
+     */
+    public ExportJob( int nIdDataLayer, String strDataLayerTitle, String strUserAccessCode, Path directory )
+    {
+        _strId = UUID.randomUUID( ).toString( );
+        _nIdDataLayer = nIdDataLayer;
+        _strDataLayerTitle = strDataLayerTitle;
+        _strUserAccessCode = strUserAccessCode;
+        _path = directory.resolve( "ExtractCartoLayer-" + _strId + ".json" );
+        _lCreationTime = System.currentTimeMillis( );
+        _status = Status.PENDING;
+    }
+
+    /**
+     * @return the id of the job
+     */
+    public String getId( )
+    {
+        return _strId;
+    }
+
+    /**
+     * @return the id of the exported data layer
+     */
+    public int getIdDataLayer( )
+    {
+        return _nIdDataLayer;
+    }
+
+    /**
+     * @return the title of the exported data layer
+     */
+    public String getDataLayerTitle( )
+    {
+        return _strDataLayerTitle;
+    }
+
+    /**
+     * @return the access code of the admin user who requested the export
+     */
+    public String getUserAccessCode( )
+    {
+        return _strUserAccessCode;
+    }
+
+    /**
+     * @return the working file of the job
+     */
+    public Path getPath( )
+    {
+        return _path;
+    }
+
+    /**
+     * @return the creation time of the job
+     */
+    public long getCreationTime( )
+    {
+        return _lCreationTime;
+    }
+
+    /**
+     * @return the status of the job
+     */
+    public Status getStatus( )
+    {
+        return _status;
+    }
+
+    /**
+     * @param status
+     *            the status of the job
+     */
+    public void setStatus( Status status )
+    {
+        _status = status;
+    }
+
+    /**
+     * @return the number of features to export, 0 if it is not known yet
+     */
+    public long getTotal( )
+    {
+        return _lTotal;
+    }
+
+    /**
+     * @param lTotal
+     *            the number of features to export
+     */
+    public void setTotal( long lTotal )
+    {
+        _lTotal = lTotal;
+    }
+
+    /**
+     * @return the number of features already exported
+     */
+    public long getExported( )
+    {
+        return _lExported;
+    }
+
+    /**
+     * @param lExported
+     *            the number of features already exported
+     */
+    public void setExported( long lExported )
+    {
+        _lExported = lExported;
+    }
+
+    /**
+     * @return the progress of the job, in percent
+     */
+    public int getProgress( )
+    {
+        if ( _status == Status.DONE )
+        {
+            return 100;
+        }
+
+        long lTotal = _lTotal;
+
+        return ( lTotal > 0 ) ? (int) Math.min( 99, _lExported * 100 / lTotal ) : 0;
+    }
+
+    /**
+     * @return the end time of the job, 0 if it is not finished
+     */
+    public long getEndTime( )
+    {
+        return _lEndTime;
+    }
+
+    /**
+     * @param lEndTime
+     *            the end time of the job
+     */
+    public void setEndTime( long lEndTime )
+    {
+        _lEndTime = lEndTime;
+    }
+
+    /**
+     * @return true if the job is finished, successfully or not
+     */
+    public boolean isFinished( )
+    {
+        return _status == Status.DONE || _status == Status.FAILED;
+    }
+
+    /**
+     * @return the error message of a failed job
+     */
+    public String getErrorMessage( )
+    {
+        return _strErrorMessage;
+    }
+
+    /**
+     * @param strErrorMessage
+     *            the error message of a failed job
+     */
+    public void setErrorMessage( String strErrorMessage )
+    {
+        _strErrorMessage = strErrorMessage;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import fr.paris.lutece.portal.service.plugin.Plugin;
+
+/**
+ * ICoordonneeIndexDAO Interface : reads of the coordinates needed by the indexer
+ */
+public interface ICoordonneeIndexDAO
+{
+    /**
+     * Load a page of coordinate ids, in id order
+     * 
+     * @param nIdAfter
+     *            the last id of the previous page, 0 for the first page
+     * @param nLimit
+     *            the maximum number of ids
+     * @param plugin
+     *            the Plugin
+     * @return the ids greater than nIdAfter
+     */
+    List<Integer> selectIdCoordonneesAfter( int nIdAfter, int nLimit, Plugin plugin );
+
+    /**
+     * Load the content hashes of the indexed coordinates whose id is in a range
+     * 
+     * @param nIdAfter
+     *            the lower bound of the range, excluded
+     * @param nIdTo
+     *            the upper bound of the range, included
+     * @param plugin
+     *            the Plugin
+     * @return the content hashes, by coordinate id
+     */
+    Map<Integer, String> selectIndexedHashes( int nIdAfter, int nIdTo, Plugin plugin );
+
+    /**
+     * Load a page of indexed coordinate ids, in id order
+     * 
+     * @param nIdAfter
+     *            the lower bound of the ids, excluded
+     * @param nLimit
+     *            the maximum number of ids
+     * @param plugin
+     *            the Plugin
+     * @return the ids
+     */
+    List<Integer> selectIndexedIdsAfter( int nIdAfter, int nLimit, Plugin plugin );
+
+    /**
+     * Count the indexed coordinates
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return the number of indexed coordinates
+     */
+    int countIndexed( Plugin plugin );
+
+    /**
+     * Store the content hashes of indexed coordinates
+     * 
+     * @param mapHashes
+     *            the content hashes, by coordinate id
+     * @param plugin
+     *            the Plugin
+     */
+    void storeIndexedHashes( Map<Integer, String> mapHashes, Plugin plugin );
+
+    /**
+     * Delete the content hashes of coordinates removed from the index
+     * 
+     * @param collectionIds
+     *            the coordinate ids
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteIndexedHashes( Collection<Integer> collectionIds, Plugin plugin );
+
+    /**
+     * Delete all the content hashes
+     * 
+     * @param plugin
+     *            the Plugin
+     */
+    void deleteAllIndexedHashes( Plugin plugin );
+
+    /**
+     * Load the last coordinate id synchronized by the running delta, 0 if no delta is running
+     * 
+     * @param plugin
+     *            the Plugin
+     * @return the watermark
+     */
+    int loadWatermark( Plugin plugin );
+
+    /**
+     * Store the last coordinate id synchronized by the running delta
+     * 
+     * @param nIdCoordonnee
+     *            the watermark, 0 once the delta is complete
+     * @param plugin
+     *            the Plugin
+     */
+    void storeWatermark( int nIdCoordonnee, Plugin plugin );
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the business class for the result of a bulk import of geometries into a data layer
+ */
+public class ImportReport
+{
+    private final int _nMaxErrors;
+    private final List<String> _listErrors = new ArrayList<>( );
+    private final List<String> _listIndexErrors = new ArrayList<>( );
+    private int _nImported;
+    private int _nRejected;
+    private long _lDuration;
+
+    /**
+     * Constructor
+     * 
+     * @param nMaxErrors
+     *            the maximum number of rejected features whose error is kept
+     */
+    public ImportReport( int nMaxErrors )
+    {
+        _nMaxErrors = nMaxErrors;
+    }
+
+    /**
+     * Records imported geometries
+     * 
+     * @param nCount
+     *            the number of geometries
+     */
+    public void addImported( int nCount )
+    {
+        _nImported += nCount;
+    }
+
+    /**
+     * Records a rejected feature
+     * 
+     * @param strError
+     *            the reason of the rejection
+     */
+    public void addRejected( String strError )
+    {
+        addRejected( 1, strError );
+    }
+
+    /**
+     * Records rejected features sharing the same error
+     * 
+     * @param nCount
+     *            the number of features
+     * @param strError
+     *            the reason of the rejection
+     */
+    public void addRejected( int nCount, String strError )
+    {
+        _nRejected += nCount;
+
+        if ( _listErrors.size( ) < _nMaxErrors )
+        {
+            _listErrors.add( strError );
+        }
+    }
+
+    /**
+     * Records the errors of the indexation
+     * 
+     * @param listErrors
+     *            the errors
+     */
+    public void addIndexErrors( List<String> listErrors )
+    {
+        for ( String strError : listErrors )
+        {
+            if ( _listIndexErrors.size( ) < _nMaxErrors )
+            {
+                _listIndexErrors.add( strError );
+            }
+        }
+    }
+
+    /**
+     * @return the number of imported geometries
+     */
+    public int getImported( )
+    {
+        return _nImported;
+    }
+
+    /**
+     * @return the number of rejected features
+     */
+    public int getRejected( )
+    {
+        return _nRejected;
+    }
+
+    /**
+     * @return the first errors of the rejected features
+     */
+    public List<String> getErrors( )
+    {
+        return Collections.unmodifiableList( _listErrors );
+    }
+
+    /**
+     * @return the first errors of the indexation
+     */
+    public List<String> getIndexErrors( )
+    {
+        return Collections.unmodifiableList( _listIndexErrors );
+    }
+
+    /**
+     * @return the duration of the import in milliseconds
+     */
+    public long getDuration( )
+    {
+        return _lDuration;
+    }
+
+    /**
+     * @param lDuration
+     *            the duration of the import in milliseconds
+     */
+    public void setDuration( long lDuration )
+    {
+        _lDuration = lDuration;
+    }
+}
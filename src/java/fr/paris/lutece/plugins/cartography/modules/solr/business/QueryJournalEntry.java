@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.business;
+
+import java.util.Date;
+
+/**
+ * This is the business class for an entry of the journal of the solr queries
+ */
+public class QueryJournalEntry
+{
+    /** Value of the numeric fields which are not known */
+    public static final int UNKNOWN = -1;
+
+    private long _lSequence;
+    private long _lTime;
+    private String _strOperation;
+    private String _strQuery;
+    private String _strFilterQueries;
+    private int _nRows = UNKNOWN;
+    private int _nQTime = UNKNOWN;
+    private long _lWallTime;
+    private long _lNumFound = UNKNOWN;
+    private int _nReturned = UNKNOWN;
+    private String _strRequestId;
+    private Integer _nIdMap;
+    private String _strDataLayer;
+    private String _strError;
+    private boolean _bSlow;
+
+    /**
+     * @return the sequence number of the entry
+     */
+    public long getSequence( )
+    {
+        return _lSequence;
+    }
+
+    /**
+     * @param lSequence
+     *            the sequence number of the entry
+     */
+    public void setSequence( long lSequence )
+    {
+        _lSequence = lSequence;
+    }
+
+    /**
+     * @return the time at which the query was sent, in milliseconds since the epoch
+     */
+    public long getTime( )
+    {
+        return _lTime;
+    }
+
+    /**
+     * @param lTime
+     *            the time at which the query was sent, in milliseconds since the epoch
+     */
+    public void setTime( long lTime )
+    {
+        _lTime = lTime;
+    }
+
+    /**
+     * @return the time at which the query was sent
+     */
+    public Date getDate( )
+    {
+        return new Date( _lTime );
+    }
+
+    /**
+     * @return the operation of the module which sent the query
+     */
+    public String getOperation( )
+    {
+        return _strOperation;
+    }
+
+    /**
+     * @param strOperation
+     *            the operation of the module which sent the query
+     */
+    public void setOperation( String strOperation )
+    {
+        _strOperation = strOperation;
+    }
+
+    /**
+     * @return the query string
+     */
+    public String getQuery( )
+    {
+        return _strQuery;
+    }
+
+    /**
+     * @param strQuery
+     *            the query string
+     */
+    public void setQuery( String strQuery )
+    {
+        _strQuery = strQuery;
+    }
+
+    /**
+     * @return the filter queries, separated by " | ", may be null
+     */
+    public String getFilterQueries( )
+    {
+        return _strFilterQueries;
+    }
+
+    /**
+     * @param strFilterQueries
+     *            the filter queries, separated by " | "
+     */
+    public void setFilterQueries( String strFilterQueries )
+    {
+        _strFilterQueries = strFilterQueries;
+    }
+
+    /**
+     * @return the number of rows requested, or UNKNOWN
+     */
+    public int getRows( )
+    {
+        return _nRows;
+    }
+
+    /**
+     * @param nRows
+     *            the number of rows requested
+     */
+    public void setRows( int nRows )
+    {
+        _nRows = nRows;
+    }
+
+    /**
+     * @return the time spent by solr on the query in milliseconds (QTime), or UNKNOWN if the query did not go through the solr client of the module
+     */
+    public int getQTime( )
+    {
+        return _nQTime;
+    }
+
+    /**
+     * @param nQTime
+     *            the time spent by solr on the query in milliseconds (QTime)
+     */
+    public void setQTime( int nQTime )
+    {
+        _nQTime = nQTime;
+    }
+
+    /**
+     * @return the time elapsed on the webapp side in milliseconds, network and parsing of the response included
+     */
+    public long getWallTime( )
+    {
+        return _lWallTime;
+    }
+
+    /**
+     * @param lWallTime
+     *            the time elapsed on the webapp side in milliseconds
+     */
+    public void setWallTime( long lWallTime )
+    {
+        _lWallTime = lWallTime;
+    }
+
+    /**
+     * @return the number of documents matching the query, or UNKNOWN
+     */
+    public long getNumFound( )
+    {
+        return _lNumFound;
+    }
+
+    /**
+     * @param lNumFound
+     *            the number of documents matching the query
+     */
+    public void setNumFound( long lNumFound )
+    {
+        _lNumFound = lNumFound;
+    }
+
+    /**
+     * @return the number of documents returned, or UNKNOWN
+     */
+    public int getReturned( )
+    {
+        return _nReturned;
+    }
+
+    /**
+     * @param nReturned
+     *            the number of documents returned
+     */
+    public void setReturned( int nReturned )
+    {
+        _nReturned = nReturned;
+    }
+
+    /**
+     * @return the id of the HTTP request which triggered the query, may be null
+     */
+    public String getRequestId( )
+    {
+        return _strRequestId;
+    }
+
+    /**
+     * @param strRequestId
+     *            the id of the HTTP request which triggered the query
+     */
+    public void setRequestId( String strRequestId )
+    {
+        _strRequestId = strRequestId;
+    }
+
+    /**
+     * @return the id of the map which triggered the query, may be null
+     */
+    public Integer getIdMap( )
+    {
+        return _nIdMap;
+    }
+
+    /**
+     * @param nIdMap
+     *            the id of the map which triggered the query
+     */
+    public void setIdMap( Integer nIdMap )
+    {
+        _nIdMap = nIdMap;
+    }
+
+    /**
+     * @return the label of the data layer which triggered the query, may be null
+     */
+    public String getDataLayer( )
+    {
+        return _strDataLayer;
+    }
+
+    /**
+     * @param strDataLayer
+     *            the label of the data layer which triggered the query
+     */
+    public void setDataLayer( String strDataLayer )
+    {
+        _strDataLayer = strDataLayer;
+    }
+
+    /**
+     * @return the error message if the query failed, null otherwise
+     */
+    public String getError( )
+    {
+        return _strError;
+    }
+
+    /**
+     * @param strError
+     *            the error message if the query failed
+     */
+    public void setError( String strError )
+    {
+        _strError = strError;
+    }
+
+    /**
+     * @return true if the wall time of the query exceeded the slow query threshold
+     */
+    public boolean isSlow( )
+    {
+        return _bSlow;
+    }
+
+    /**
+     * @param bSlow
+     *            true if the wall time of the query exceeded the slow query threshold
+     */
+    public void setSlow( boolean bSlow )
+    {
+        _bSlow = bSlow;
+    }
+}
@@ -13,6 +13,7 @@ public class TemporaryFileExtract implements IFileGenerator {
 	protected static final String TMP_DIR = System.getProperty( "java.io.tmpdir" );
 	private static final int FLUSH_SIZE = 1000;
 	public static final String UTF8_BOM = "\uFEFF";
+	private static final String DEFAULT_FILE_NAME = "ExtractCartoLayer.json";
 	
 	public String getContent() {
 		return content;
@@ -23,12 +24,32 @@ public class TemporaryFileExtract implements IFileGenerator {
 	}
 	
 	private String content = "content";
+	private final Path _extractFile;
+	private final String _strFileName;
+	
+	/**
+	 * Constructor of the shared extract file
+	 */
+	public TemporaryFileExtract() {
+		this( Paths.get( TMP_DIR, DEFAULT_FILE_NAME ), DEFAULT_FILE_NAME );
+	}
+	
+	/**
+	 * Constructor of an extract written to its own file
+	 * 
+	 * @param extractFile
+	 *            the file already written by the export
+	 * @param strFileName
+	 *            the name of the file given to the user
+	 */
+	public TemporaryFileExtract( Path extractFile, String strFileName ) {
+		_extractFile = extractFile;
+		_strFileName = strFileName;
+	}
 	
 	@Override
 	public Path generateFile() throws IOException {
-		Path extractFile = Paths.get( TMP_DIR, "ExtractCartoLayer.json" );
-	    //writeExportFile( csvFile );
-	    return extractFile;
+	    return _extractFile;
 	}
 	
 	@Override
@@ -39,7 +60,7 @@ public class TemporaryFileExtract implements IFileGenerator {
 	
 	@Override
 	public String getFileName() {
-		return "ExtractCartoLayer.json";
+		return _strFileName;
 	}
 	
 	@Override
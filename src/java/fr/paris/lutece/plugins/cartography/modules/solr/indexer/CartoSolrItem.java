@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.solr.client.solrj.beans.Field;
+
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+
+/**
+ * Solr item of a coordinate, with the native spatial fields computed from its GeoJSON
+ */
+public class CartoSolrItem extends SolrItem
+{
+    public static final String FIELD_GEOJSON = "coordonnee" + SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX;
+    public static final String FIELD_POINT = "coordonnee_point";
+    public static final String FIELD_BBOX = "coordonnee_bbox";
+    public static final String FIELD_SHAPE = "coordonnee_shape";
+    public static final String FIELD_LEVELS_OF_DETAIL = "coordonnee_lod_*";
+
+    @Field( FIELD_POINT )
+    private String _strPoint;
+
+    @Field( FIELD_BBOX )
+    private String _strBbox;
+
+    @Field( FIELD_SHAPE )
+    private String _strShape;
+
+    @Field( FIELD_LEVELS_OF_DETAIL )
+    private Map<String, String> _mapLevelsOfDetail;
+
+    /**
+     * Set the spatial fields of the item
+     * 
+     * @param spatialFields
+     *            the spatial fields computed from the GeoJSON of the coordinate
+     */
+    public void setSpatialFields( CoordinateSpatialFields spatialFields )
+    {
+        _strPoint = spatialFields.getPoint( );
+        _strBbox = spatialFields.getEnvelope( );
+        _strShape = spatialFields.getShape( );
+    }
+
+    /**
+     * Add a simplified version of the GeoJSON
+     * 
+     * @param strFieldName
+     *            the field of the level of detail
+     * @param strGeoJson
+     *            the simplified GeoJSON
+     */
+    public void addLevelOfDetail( String strFieldName, String strGeoJson )
+    {
+        if ( _mapLevelsOfDetail == null )
+        {
+            _mapLevelsOfDetail = new HashMap<>( );
+        }
+        _mapLevelsOfDetail.put( strFieldName, strGeoJson );
+    }
+
+    /**
+     * @return the simplified versions of the GeoJSON, by field
+     */
+    public Map<String, String> getLevelsOfDetail( )
+    {
+        return _mapLevelsOfDetail;
+    }
+
+    /**
+     * @return the point or centroid, as "lat,lon"
+     */
+    public String getPoint( )
+    {
+        return _strPoint;
+    }
+
+    /**
+     * @return the envelope, as ENVELOPE(minX, maxX, maxY, minY)
+     */
+    public String getBbox( )
+    {
+        return _strBbox;
+    }
+
+    /**
+     * @return the shape, as WKT
+     */
+    public String getShape( )
+    {
+        return _strShape;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Native Solr spatial values of a coordinate, computed from its GeoJSON : a point (the point itself, or the centroid of the vertices of a line or
+ * polygon), an envelope and a WKT shape
+ */
+public final class CoordinateSpatialFields
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final String FIELD_GEOMETRY = "geometry";
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_COORDINATES = "coordinates";
+    private static final String TYPE_POINT = "Point";
+    private static final String TYPE_LINESTRING = "LineString";
+    private static final String TYPE_POLYGON = "Polygon";
+
+    private final String _strPoint;
+    private final String _strEnvelope;
+    private final String _strShape;
+
+    /**
+     * Constructor
+     * 
+     * @param strPoint
+     *            the point
+     * @param strEnvelope
+     *            the envelope
+     * @param strShape
+     *            the shape
+     */
+    private CoordinateSpatialFields( String strPoint, String strEnvelope, String strShape )
+    {
+        _strPoint = strPoint;
+        _strEnvelope = strEnvelope;
+        _strShape = strShape;
+    }
+
+    /**
+     * Computes the spatial values of a GeoJSON feature
+     * 
+     * @param strGeoJson
+     *            the GeoJSON feature, or its geometry
+     * @return the spatial values, or null if the GeoJSON has no supported geometry
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    public static CoordinateSpatialFields of( String strGeoJson ) throws IOException
+    {
+        if ( strGeoJson == null )
+        {
+            return null;
+        }
+
+        JsonNode root = MAPPER.readTree( strGeoJson );
+        JsonNode geometry = root.has( FIELD_GEOMETRY ) ? root.get( FIELD_GEOMETRY ) : root;
+        JsonNode coordinates = geometry.path( FIELD_COORDINATES );
+        String strType = geometry.path( FIELD_TYPE ).asText( );
+
+        if ( !coordinates.isArray( ) )
+        {
+            return null;
+        }
+
+        // A polyline is stored with the polyline type of the leaflet plugin, and some points have no type : the type is deduced from the depth of the
+        // coordinates when it is not a GeoJSON type
+        if ( !TYPE_POINT.equals( strType ) && !TYPE_LINESTRING.equals( strType ) && !TYPE_POLYGON.equals( strType ) )
+        {
+            strType = getTypeFromDepth( coordinates );
+        }
+
+        Extent extent = new Extent( );
+        StringBuilder sbShape = new StringBuilder( );
+
+        if ( TYPE_POINT.equals( strType ) )
+        {
+            sbShape.append( "POINT(" );
+            appendPosition( coordinates, extent, sbShape );
+            sbShape.append( ')' );
+        }
+        else
+            if ( TYPE_LINESTRING.equals( strType ) )
+            {
+                sbShape.append( "LINESTRING" );
+                appendRing( coordinates, extent, sbShape, false );
+            }
+            else
+                if ( TYPE_POLYGON.equals( strType ) )
+                {
+                    sbShape.append( "POLYGON(" );
+                    for ( int i = 0; i < coordinates.size( ); i++ )
+                    {
+                        if ( i > 0 )
+                        {
+                            sbShape.append( ',' );
+                        }
+                        appendRing( coordinates.get( i ), extent, sbShape, true );
+                    }
+                    sbShape.append( ')' );
+                }
+                else
+                {
+                    return null;
+                }
+
+        if ( extent._nCount == 0 )
+        {
+            return null;
+        }
+
+        String strPoint = format( extent._dSumY / extent._nCount ) + "," + format( extent._dSumX / extent._nCount );
+        String strEnvelope = "ENVELOPE(" + format( extent._dMinX ) + ", " + format( extent._dMaxX ) + ", " + format( extent._dMaxY ) + ", "
+                + format( extent._dMinY ) + ")";
+
+        return new CoordinateSpatialFields( strPoint, strEnvelope, sbShape.toString( ) );
+    }
+
+    /**
+     * @return the point or centroid, as "lat,lon"
+     */
+    public String getPoint( )
+    {
+        return _strPoint;
+    }
+
+    /**
+     * @return the envelope, as ENVELOPE(minX, maxX, maxY, minY)
+     */
+    public String getEnvelope( )
+    {
+        return _strEnvelope;
+    }
+
+    /**
+     * @return the shape, as WKT
+     */
+    public String getShape( )
+    {
+        return _strShape;
+    }
+
+    /**
+     * Deduces the geometry type from the depth of the coordinates
+     * 
+     * @param coordinates
+     *            the coordinates
+     * @return the geometry type
+     */
+    private static String getTypeFromDepth( JsonNode coordinates )
+    {
+        JsonNode first = coordinates.path( 0 );
+
+        if ( first.isNumber( ) )
+        {
+            return TYPE_POINT;
+        }
+
+        return first.path( 0 ).isNumber( ) ? TYPE_LINESTRING : TYPE_POLYGON;
+    }
+
+    /**
+     * Appends a list of positions as a WKT ring, closing it if needed
+     * 
+     * @param ring
+     *            the positions
+     * @param extent
+     *            the extent to update
+     * @param sbShape
+     *            the WKT
+     * @param bClose
+     *            true if the ring must be closed
+     * @throws IOException
+     *             if a position is malformed
+     */
+    private static void appendRing( JsonNode ring, Extent extent, StringBuilder sbShape, boolean bClose ) throws IOException
+    {
+        sbShape.append( '(' );
+        for ( int i = 0; i < ring.size( ); i++ )
+        {
+            if ( i > 0 )
+            {
+                sbShape.append( ',' );
+            }
+            appendPosition( ring.get( i ), extent, sbShape );
+        }
+
+        if ( bClose && ring.size( ) > 0 && !ring.get( 0 ).equals( ring.get( ring.size( ) - 1 ) ) )
+        {
+            sbShape.append( ',' );
+            appendPosition( ring.get( 0 ), null, sbShape );
+        }
+        sbShape.append( ')' );
+    }
+
+    /**
+     * Appends a position as WKT
+     * 
+     * @param position
+     *            the position, as [x, y]
+     * @param extent
+     *            the extent to update, may be null
+     * @param sbShape
+     *            the WKT
+     * @throws IOException
+     *             if the position is malformed
+     */
+    private static void appendPosition( JsonNode position, Extent extent, StringBuilder sbShape ) throws IOException
+    {
+        if ( position.size( ) < 2 || !position.get( 0 ).isNumber( ) || !position.get( 1 ).isNumber( ) )
+        {
+            throw new IOException( "Malformed GeoJSON position : " + position );
+        }
+
+        double dX = position.get( 0 ).asDouble( );
+        double dY = position.get( 1 ).asDouble( );
+
+        sbShape.append( format( dX ) ).append( ' ' ).append( format( dY ) );
+        if ( extent != null )
+        {
+            extent.add( dX, dY );
+        }
+    }
+
+    /**
+     * Formats a coordinate
+     * 
+     * @param dValue
+     *            the coordinate
+     * @return the formatted coordinate
+     */
+    private static String format( double dValue )
+    {
+        return String.format( Locale.ROOT, "%.7f", dValue );
+    }
+
+    /**
+     * Extent and vertex sum of a geometry
+     */
+    private static final class Extent
+    {
+        private double _dMinX = Double.MAX_VALUE;
+        private double _dMinY = Double.MAX_VALUE;
+        private double _dMaxX = -Double.MAX_VALUE;
+        private double _dMaxY = -Double.MAX_VALUE;
+        private double _dSumX;
+        private double _dSumY;
+        private int _nCount;
+
+        /**
+         * Adds a vertex
+         * 
+         * @param dX
+         *            the x of the vertex
+         * @param dY
+         *            the y of the vertex
+         */
+        private void add( double dX, double dY )
+        {
+            _dMinX = Math.min( _dMinX, dX );
+            _dMinY = Math.min( _dMinY, dY );
+            _dMaxX = Math.max( _dMaxX, dX );
+            _dMaxY = Math.max( _dMaxY, dY );
+            _dSumX += dX;
+            _dSumY += dY;
+            _nCount++;
+        }
+    }
+}
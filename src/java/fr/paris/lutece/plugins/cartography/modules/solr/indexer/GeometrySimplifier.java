@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Douglas-Peucker simplification of the lines and polygons of GeoJSON features. The rings are simplified independently and a ring which would collapse
+ * (less than 4 positions for a polygon, 2 for a line) is kept at full resolution, so that no ring disappears or degenerates
+ */
+public final class GeometrySimplifier
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final String FIELD_GEOMETRY = "geometry";
+    private static final String FIELD_COORDINATES = "coordinates";
+    private static final int MIN_POLYGON_RING_SIZE = 4;
+    private static final int MIN_LINE_SIZE = 2;
+
+    /**
+     * Private constructor
+     */
+    private GeometrySimplifier( )
+    {
+    }
+
+    /**
+     * Simplifies the geometry of a GeoJSON feature
+     * 
+     * @param strGeoJson
+     *            the GeoJSON feature
+     * @param dTolerance
+     *            the maximum distance between the simplified and the original geometry, in degrees
+     * @return the GeoJSON feature with the simplified geometry, or null if the geometry is a point or cannot be simplified at this tolerance
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    public static String simplify( String strGeoJson, double dTolerance ) throws IOException
+    {
+        JsonNode root = MAPPER.readTree( strGeoJson );
+
+        if ( !root.isObject( ) )
+        {
+            return null;
+        }
+
+        ObjectNode feature = (ObjectNode) root;
+        JsonNode geometry = feature.has( FIELD_GEOMETRY ) ? feature.get( FIELD_GEOMETRY ) : feature;
+        JsonNode coordinates = geometry.path( FIELD_COORDINATES );
+
+        if ( !geometry.isObject( ) || !coordinates.isArray( ) || !coordinates.path( 0 ).isArray( ) )
+        {
+            // Point or empty geometry
+            return null;
+        }
+
+        ArrayNode simplified;
+        int [ ] counts = new int [ 2];
+
+        if ( coordinates.path( 0 ).path( 0 ).isNumber( ) )
+        {
+            simplified = simplifyRing( coordinates, dTolerance, MIN_LINE_SIZE, counts );
+        }
+        else
+        {
+            simplified = MAPPER.createArrayNode( );
+            for ( JsonNode ring : coordinates )
+            {
+                simplified.add( simplifyRing( ring, dTolerance, MIN_POLYGON_RING_SIZE, counts ) );
+            }
+        }
+
+        if ( counts [1] >= counts [0] )
+        {
+            return null;
+        }
+
+        ( (ObjectNode) geometry ).set( FIELD_COORDINATES, simplified );
+
+        return MAPPER.writeValueAsString( feature );
+    }
+
+    /**
+     * Simplifies a list of positions
+     * 
+     * @param ring
+     *            the positions
+     * @param dTolerance
+     *            the tolerance
+     * @param nMinSize
+     *            the minimum number of positions of the simplified ring
+     * @param counts
+     *            the number of positions before and after the simplification, updated
+     * @return the simplified positions
+     * @throws IOException
+     *             if a position is malformed
+     */
+    private static ArrayNode simplifyRing( JsonNode ring, double dTolerance, int nMinSize, int [ ] counts ) throws IOException
+    {
+        int nSize = ring.size( );
+        double [ ] x = new double [ nSize];
+        double [ ] y = new double [ nSize];
+
+        for ( int i = 0; i < nSize; i++ )
+        {
+            JsonNode position = ring.get( i );
+            if ( position.size( ) < 2 || !position.get( 0 ).isNumber( ) || !position.get( 1 ).isNumber( ) )
+            {
+                throw new IOException( "Malformed GeoJSON position : " + position );
+            }
+            x [i] = position.get( 0 ).asDouble( );
+            y [i] = position.get( 1 ).asDouble( );
+        }
+
+        boolean [ ] keep = douglasPeucker( x, y, dTolerance );
+        int nKept = 0;
+        for ( boolean bKeep : keep )
+        {
+            nKept += bKeep ? 1 : 0;
+        }
+
+        ArrayNode simplified = MAPPER.createArrayNode( );
+        boolean bFullResolution = nKept < nMinSize;
+
+        for ( int i = 0; i < nSize; i++ )
+        {
+            if ( bFullResolution || keep [i] )
+            {
+                simplified.add( ring.get( i ) );
+            }
+        }
+
+        counts [0] += nSize;
+        counts [1] += simplified.size( );
+
+        return simplified;
+    }
+
+    /**
+     * Marks the positions kept by the Douglas-Peucker algorithm
+     * 
+     * @param x
+     *            the x of the positions
+     * @param y
+     *            the y of the positions
+     * @param dTolerance
+     *            the tolerance
+     * @return the kept positions
+     */
+    private static boolean [ ] douglasPeucker( double [ ] x, double [ ] y, double dTolerance )
+    {
+        int nSize = x.length;
+        boolean [ ] keep = new boolean [ nSize];
+
+        if ( nSize <= 2 )
+        {
+            Arrays.fill( keep, true );
+            return keep;
+        }
+
+        keep [0] = true;
+        keep [nSize - 1] = true;
+
+        Deque<int [ ]> stack = new ArrayDeque<>( );
+        stack.push( new int [ ] {
+                0, nSize - 1
+        } );
+
+        while ( !stack.isEmpty( ) )
+        {
+            int [ ] segment = stack.pop( );
+            int nFirst = segment [0];
+            int nLast = segment [1];
+            double dMaxDistance = -1;
+            int nFarthest = -1;
+
+            for ( int i = nFirst + 1; i < nLast; i++ )
+            {
+                double dDistance = getSegmentDistance( x [i], y [i], x [nFirst], y [nFirst], x [nLast], y [nLast] );
+                if ( dDistance > dMaxDistance )
+                {
+                    dMaxDistance = dDistance;
+                    nFarthest = i;
+                }
+            }
+
+            if ( nFarthest != -1 && dMaxDistance > dTolerance )
+            {
+                keep [nFarthest] = true;
+                stack.push( new int [ ] {
+                        nFirst, nFarthest
+                } );
+                stack.push( new int [ ] {
+                        nFarthest, nLast
+                } );
+            }
+        }
+
+        return keep;
+    }
+
+    /**
+     * Returns the distance between a point and a segment
+     * 
+     * @param dX
+     *            the x of the point
+     * @param dY
+     *            the y of the point
+     * @param dX1
+     *            the x of the start of the segment
+     * @param dY1
+     *            the y of the start of the segment
+     * @param dX2
+     *            the x of the end of the segment
+     * @param dY2
+     *            the y of the end of the segment
+     * @return the distance
+     */
+    private static double getSegmentDistance( double dX, double dY, double dX1, double dY1, double dX2, double dY2 )
+    {
+        double dDx = dX2 - dX1;
+        double dDy = dY2 - dY1;
+        double dLength2 = dDx * dDx + dDy * dDy;
+
+        if ( dLength2 == 0 )
+        {
+            return Math.hypot( dX - dX1, dY - dY1 );
+        }
+
+        double dT = Math.max( 0, Math.min( 1, ( ( dX - dX1 ) * dDx + ( dY - dY1 ) * dDy ) / dLength2 ) );
+
+        return Math.hypot( dX - ( dX1 + dT * dDx ), dY - ( dY1 + dT * dDy ) );
+    }
+}
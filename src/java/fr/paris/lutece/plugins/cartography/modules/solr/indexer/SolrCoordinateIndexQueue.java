@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.util.ClientUtils;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.business.CoordonneeIndexHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoSolrSearchService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.DataLayerExecutorService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.MapModelCacheService;
+import fr.paris.lutece.plugins.search.solr.business.SolrServerService;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrIndexerService;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Pushes the changes of single coordinates to Solr, off the request thread. The changes are queued and flushed together after a short delay, with one
+ * commit per flush
+ */
+public final class SolrCoordinateIndexQueue
+{
+    private static final String BEAN_INDEXER = "solr.solrCoordinateIndexer";
+    private static final String PROPERTY_FLUSH_DELAY = "map.index.flush.delay";
+    private static final long DEFAULT_FLUSH_DELAY = 1000L;
+    private static final String THREAD_NAME = "cartography-solr-index-queue";
+    private static final String PROPERTY_RETRY_MAX = "map.index.retry.max";
+    private static final int DEFAULT_RETRY_MAX = 5;
+    private static final long MAX_RETRY_DELAY = 300000L;
+
+    // true to index the coordinate, false to delete it ; the last change of a coordinate wins
+    private static final Map<Integer, Boolean> _mapPendingChanges = new LinkedHashMap<>( );
+    private static ScheduledExecutorService _executor;
+    private static boolean _bFlushScheduled;
+    private static boolean _bStopped;
+    private static int _nFailedFlushes;
+
+    /**
+     * Private constructor
+     */
+    private SolrCoordinateIndexQueue( )
+    {
+    }
+
+    /**
+     * Queue the indexing of a created or modified coordinate
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     */
+    public static void indexCoordinate( int nIdCoordinate )
+    {
+        queue( nIdCoordinate, true );
+    }
+
+    /**
+     * Queue the removal of a coordinate from the index
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     */
+    public static void deleteCoordinate( int nIdCoordinate )
+    {
+        queue( nIdCoordinate, false );
+    }
+
+    /**
+     * Queue a change and schedule a flush if none is pending. Once the queue is stopped, the change is pushed at once on the calling thread
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     * @param bIndex
+     *            true to index the coordinate, false to delete it
+     */
+    private static void queue( int nIdCoordinate, boolean bIndex )
+    {
+        if ( !enqueue( nIdCoordinate, bIndex ) )
+        {
+            flush( );
+        }
+    }
+
+    /**
+     * Adds a change to the pending changes and schedule a flush if none is pending
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     * @param bIndex
+     *            true to index the coordinate, false to delete it
+     * @return false if the queue is stopped : no flush is scheduled and the change must be flushed by the caller
+     */
+    private static synchronized boolean enqueue( int nIdCoordinate, boolean bIndex )
+    {
+        _mapPendingChanges.remove( nIdCoordinate );
+        _mapPendingChanges.put( nIdCoordinate, bIndex );
+
+        if ( _bStopped )
+        {
+            return false;
+        }
+
+        if ( !_bFlushScheduled )
+        {
+            getExecutor( ).schedule( SolrCoordinateIndexQueue::flush, AppPropertiesService.getPropertyLong( PROPERTY_FLUSH_DELAY, DEFAULT_FLUSH_DELAY ),
+                    TimeUnit.MILLISECONDS );
+            _bFlushScheduled = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops the queue : the scheduled flush is run, then the changes still pending are pushed on the calling thread so that none is lost when the
+     * webapp stops. The changes queued afterwards are pushed at once, without the executor
+     */
+    public static void shutdown( )
+    {
+        ScheduledExecutorService executor;
+
+        synchronized( SolrCoordinateIndexQueue.class )
+        {
+            executor = _executor;
+            _executor = null;
+            _bStopped = true;
+        }
+
+        if ( executor != null )
+        {
+            // the delayed flush is still run after shutdown( ), the default policy of the scheduled executors
+            DataLayerExecutorService.shutdown( executor, THREAD_NAME );
+        }
+
+        if ( hasPendingChanges( ) )
+        {
+            flush( );
+        }
+    }
+
+    /**
+     * @return true if some changes are waiting to be pushed
+     */
+    private static synchronized boolean hasPendingChanges( )
+    {
+        return !_mapPendingChanges.isEmpty( );
+    }
+
+    /**
+     * Returns the executor running the flushes, created at first use
+     * 
+     * @return the executor
+     */
+    private static synchronized ScheduledExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            _executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+                Thread thread = new Thread( runnable, THREAD_NAME );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        return _executor;
+    }
+
+    /**
+     * Takes the pending changes
+     * 
+     * @return the pending changes
+     */
+    private static synchronized Map<Integer, Boolean> drain( )
+    {
+        Map<Integer, Boolean> mapChanges = new LinkedHashMap<>( _mapPendingChanges );
+        _mapPendingChanges.clear( );
+        _bFlushScheduled = false;
+
+        return mapChanges;
+    }
+
+    /**
+     * Pushes the pending changes to Solr and commits them
+     */
+    private static void flush( )
+    {
+        Map<Integer, Boolean> mapChanges = drain( );
+        SolrCoordinateIndexer indexer = SpringContextService.getBean( BEAN_INDEXER );
+        List<SolrItem> listItems = new ArrayList<>( );
+        List<Integer> listIndexedIds = new ArrayList<>( );
+        List<Integer> listDeletedIds = new ArrayList<>( );
+
+        for ( Entry<Integer, Boolean> change : mapChanges.entrySet( ) )
+        {
+            if ( Boolean.TRUE.equals( change.getValue( ) ) )
+            {
+                try
+                {
+                    listItems.addAll( indexer.getDocuments( String.valueOf( change.getKey( ) ) ) );
+                    listIndexedIds.add( change.getKey( ) );
+                }
+                catch( RuntimeException e )
+                {
+                    AppLogService.error( "SolrCoordinateIndexQueue: unable to build the document of the coordinate " + change.getKey( ), e );
+                }
+            }
+            else
+            {
+                listDeletedIds.add( change.getKey( ) );
+            }
+        }
+
+        try
+        {
+            SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+
+            if ( !listItems.isEmpty( ) )
+            {
+                SolrIndexerService.write( listItems );
+            }
+            if ( !listDeletedIds.isEmpty( ) )
+            {
+                solrClient.deleteByQuery( getUidsQuery( listDeletedIds ) );
+            }
+            solrClient.commit( );
+            resetFailures( );
+        }
+        catch( Exception e )
+        {
+            AppLogService.error( "SolrCoordinateIndexQueue: error while pushing " + mapChanges.size( ) + " coordinate changes to Solr", e );
+            retry( mapChanges );
+            MapModelCacheService.getInstance( ).invalidate( );
+
+            return;
+        }
+
+        try
+        {
+            SolrCoordinateIndexer.recordIndexState( listIndexedIds, listDeletedIds );
+        }
+        catch( RuntimeException e )
+        {
+            AppLogService.error( "SolrCoordinateIndexQueue: unable to record the index state of the coordinates " + mapChanges.keySet( ), e );
+        }
+
+        MapModelCacheService.getInstance( ).invalidate( );
+    }
+
+    /**
+     * Queues again the changes of a failed flush, with a delay doubled at each consecutive failure. After map.index.retry.max failures, the changes are
+     * given up and left to the next delta reindex
+     * 
+     * @param mapChanges
+     *            the changes of the failed flush
+     */
+    private static void retry( Map<Integer, Boolean> mapChanges )
+    {
+        synchronized( SolrCoordinateIndexQueue.class )
+        {
+            _nFailedFlushes++;
+
+            if ( !_bStopped && _nFailedFlushes <= AppPropertiesService.getPropertyInt( PROPERTY_RETRY_MAX, DEFAULT_RETRY_MAX ) )
+            {
+                for ( Entry<Integer, Boolean> change : mapChanges.entrySet( ) )
+                {
+                    // a change queued since the failed flush is more recent
+                    _mapPendingChanges.putIfAbsent( change.getKey( ), change.getValue( ) );
+                }
+
+                if ( !_bFlushScheduled )
+                {
+                    long lDelay = AppPropertiesService.getPropertyLong( PROPERTY_FLUSH_DELAY, DEFAULT_FLUSH_DELAY ) << Math.min( _nFailedFlushes, 20 );
+                    getExecutor( ).schedule( SolrCoordinateIndexQueue::flush, Math.min( lDelay, MAX_RETRY_DELAY ), TimeUnit.MILLISECONDS );
+                    _bFlushScheduled = true;
+                }
+
+                return;
+            }
+
+            _nFailedFlushes = 0;
+        }
+
+        giveUp( mapChanges );
+    }
+
+    /**
+     * Gives up changes which could not be pushed. In delta mode, the recorded state of the coordinates to index is removed, so that the next delta
+     * reindex sends them again ; the coordinates to delete keep their state, so that the next delta removes their documents
+     * 
+     * @param mapChanges
+     *            the changes
+     */
+    private static void giveUp( Map<Integer, Boolean> mapChanges )
+    {
+        List<Integer> listIndexedIds = new ArrayList<>( );
+
+        for ( Entry<Integer, Boolean> change : mapChanges.entrySet( ) )
+        {
+            if ( Boolean.TRUE.equals( change.getValue( ) ) )
+            {
+                listIndexedIds.add( change.getKey( ) );
+            }
+        }
+
+        AppLogService.error( "SolrCoordinateIndexQueue: " + mapChanges.size( ) + " coordinate changes given up, they will be pushed by the next "
+                + ( SolrCoordinateIndexer.isDeltaEnabled( ) ? "delta" : "full" ) + " reindex : " + mapChanges.keySet( ) );
+
+        if ( SolrCoordinateIndexer.isDeltaEnabled( ) && !listIndexedIds.isEmpty( ) )
+        {
+            try
+            {
+                CoordonneeIndexHome.removeIndexedHashes( listIndexedIds );
+            }
+            catch( RuntimeException e )
+            {
+                AppLogService.error( "SolrCoordinateIndexQueue: unable to record the coordinates to reindex " + listIndexedIds, e );
+            }
+        }
+    }
+
+    /**
+     * Resets the count of consecutive failed flushes
+     */
+    private static synchronized void resetFailures( )
+    {
+        _nFailedFlushes = 0;
+    }
+
+    /**
+     * Returns the uid of the document of a coordinate, as stored in Solr
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     * @return the uid
+     */
+    public static String getSolrUid( int nIdCoordinate )
+    {
+        return SolrIndexerService.getWebAppName( ) + "_" + SolrCoordinateIndexer.getUid( nIdCoordinate );
+    }
+
+    /**
+     * Returns the query matching the documents of the given coordinates
+     * 
+     * @param collectionIds
+     *            the ids of the coordinates
+     * @return the query
+     */
+    static String getUidsQuery( Collection<Integer> collectionIds )
+    {
+        StringBuilder sbQuery = new StringBuilder( CartoSolrSearchService.FIELD_UID ).append( ":(" );
+        boolean bFirst = true;
+
+        for ( Integer nId : collectionIds )
+        {
+            if ( !bFirst )
+            {
+                sbQuery.append( " OR " );
+            }
+            sbQuery.append( ClientUtils.escapeQueryChars( getSolrUid( nId ) ) );
+            bFirst = false;
+        }
+
+        return sbQuery.append( ')' ).toString( );
+    }
+}
@@ -33,13 +33,37 @@
  */
 package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.xml.sax.ContentHandler;
 
 import fr.paris.lutece.plugins.carto.business.Coordonnee;
 import fr.paris.lutece.plugins.carto.business.CoordonneeHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.business.CoordonneeIndexHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoSolrSearchService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.DataLayerExecutorService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.LevelOfDetailService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.MapModelCacheService;
+import fr.paris.lutece.plugins.search.solr.business.SolrServerService;
 import fr.paris.lutece.plugins.search.solr.business.field.Field;
 import fr.paris.lutece.plugins.search.solr.indexer.SolrIndexer;
 import fr.paris.lutece.plugins.search.solr.indexer.SolrIndexerService;
@@ -74,9 +98,23 @@ public class SolrCoordinateIndexer implements SolrIndexer
     private static final String PROPERTY_INDEXER_ENABLE = "solr.indexer.page.enable";
     private static final String BEAN_PAGE_SERVICE = "pageService";
     private static final String SHORT_NAME = "page";
+    private static final String UID_SUFFIX = "_Coordonnees";
     private static final List<String> LIST_RESSOURCES_NAME = new ArrayList<>( );
+    private static final String PROPERTY_INDEX_DELTA = "map.index.delta";
+    private static final String PROPERTY_INDEX_DELTA_FULL = "map.index.delta.full";
+    private static final String PROPERTY_INDEX_STREAMING = "map.index.streaming";
+    private static final String PROPERTY_INDEX_BATCH_SIZE = "map.index.batch.size";
+    private static final String PROPERTY_INDEX_PARALLELISM = "map.index.parallelism";
+    private static final String PROPERTY_INDEX_SPATIAL = "map.index.spatial.enabled";
+    private static final int DEFAULT_INDEX_BATCH_SIZE = 500;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    // Version of the fields built by getItem, part of the content hashes : increase it when the indexed fields change so that the next delta resends
+    // every coordinate
+    private static final String INDEX_FORMAT_VERSION = "1";
     private static final String PAGE_INDEXATION_ERROR = "[SolrCoordonneeIndexer] An error occured during the indexation of the page number ";
 
+    private static ForkJoinPool _forkJoinPool;
+
     /**
      * Creates a new SolrPageIndexer
      */
@@ -89,6 +127,303 @@ public class SolrCoordinateIndexer implements SolrIndexer
      * {@inheritDoc}
      */
     public List<String> indexDocuments( )
+    {
+        List<String> lstErrors;
+
+        if ( isDeltaEnabled( ) )
+        {
+            lstErrors = indexDocumentsDelta( );
+        }
+        else
+            if ( AppPropertiesService.getPropertyBoolean( PROPERTY_INDEX_STREAMING, true ) )
+            {
+                lstErrors = indexDocumentsByPage( );
+            }
+            else
+            {
+                lstErrors = indexAllDocuments( );
+            }
+        MapModelCacheService.getInstance( ).invalidate( );
+
+        return lstErrors;
+    }
+
+    /**
+     * @return true if the reindex only sends the changes since the last run, recorded in the cartosolr_index_state table
+     */
+    static boolean isDeltaEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_INDEX_DELTA, false );
+    }
+
+    /**
+     * @return true if the spatial fields and the levels of detail are indexed : they must be declared in the solr schema first (see
+     *         src/solr/cartosolr_spatial_fields.xml), otherwise solr rejects the documents
+     */
+    public static boolean isSpatialEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_INDEX_SPATIAL, false );
+    }
+
+    /**
+     * Index the changes since the last delta : the coordinates are read page by page as in the paged mode, but only the new or changed coordinates are
+     * sent, by comparison with the content hashes recorded at the last run, and the coordinates which no longer exist are deleted. The last synchronized
+     * id is recorded after each page so that an interrupted run resumes where it stopped
+     * 
+     * @return the errors
+     */
+    private List<String> indexDocumentsDelta( )
+    {
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_INDEX_BATCH_SIZE, DEFAULT_INDEX_BATCH_SIZE ) );
+        List<String> lstErrors = Collections.synchronizedList( new ArrayList<>( ) );
+        String strBaseUrl = SolrIndexerService.getBaseUrl( );
+        ForkJoinPool pool = getForkJoinPool( );
+        int nIdAfter = CoordonneeIndexHome.getWatermark( );
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_INDEX_DELTA_FULL, false ) )
+        {
+            AppLogService.info( "SolrCoordonneeIndexer: full delta requested, the recorded index state is cleared and all the coordinates are sent" );
+            CoordonneeIndexHome.removeAllIndexedHashes( );
+            CoordonneeIndexHome.setWatermark( 0 );
+            nIdAfter = 0;
+        }
+        else
+            if ( nIdAfter == 0 && isIndexStateStale( ) )
+            {
+                AppLogService.info( "SolrCoordonneeIndexer: the recorded index state does not match the index, all the coordinates are sent" );
+                CoordonneeIndexHome.removeAllIndexedHashes( );
+            }
+            else
+                if ( nIdAfter > 0 )
+                {
+                    AppLogService.info( "SolrCoordonneeIndexer: resuming the delta after the coordinate " + nIdAfter );
+                }
+
+        List<Integer> listIds = CoordonneeIndexHome.getIdCoordonneesAfter( nIdAfter, nBatchSize );
+
+        while ( !listIds.isEmpty( ) )
+        {
+            int nIdTo = listIds.get( listIds.size( ) - 1 );
+            Map<Integer, String> mapIndexedHashes = CoordonneeIndexHome.getIndexedHashes( nIdAfter, nIdTo );
+            List<Coordonnee> listCoord = CoordonneeHome.getCoordonneesListByIds( listIds );
+            Map<Integer, String> mapChangedHashes = new ConcurrentHashMap<>( );
+            List<SolrItem> listItems;
+
+            try
+            {
+                listItems = pool.submit( ( ) -> listCoord.parallelStream( ).map( coord -> {
+                    String strHash = getContentHash( coord );
+
+                    if ( strHash.equals( mapIndexedHashes.get( coord.getId( ) ) ) )
+                    {
+                        return null;
+                    }
+
+                    SolrItem item = getItem( coord, strBaseUrl, lstErrors );
+                    if ( item != null )
+                    {
+                        mapChangedHashes.put( coord.getId( ), strHash );
+                    }
+
+                    return item;
+                } ).filter( Objects::nonNull ).collect( Collectors.toList( ) ) ).get( );
+            }
+            catch( ExecutionException e )
+            {
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+                AppLogService.error( PAGE_INDEXATION_ERROR, e );
+
+                return lstErrors;
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+
+                return lstErrors;
+            }
+
+            Set<Integer> setDeletedIds = new HashSet<>( mapIndexedHashes.keySet( ) );
+            setDeletedIds.removeAll( listIds );
+
+            if ( !synchronizeDelta( listItems, mapChangedHashes, setDeletedIds, lstErrors ) )
+            {
+                return lstErrors;
+            }
+            CoordonneeIndexHome.setWatermark( nIdTo );
+
+            nIdAfter = nIdTo;
+            listIds = CoordonneeIndexHome.getIdCoordonneesAfter( nIdAfter, nBatchSize );
+        }
+
+        // Coordinates removed after the last existing one
+        List<Integer> listDeletedIds = CoordonneeIndexHome.getIndexedIdsAfter( nIdAfter, nBatchSize );
+
+        while ( !listDeletedIds.isEmpty( ) )
+        {
+            if ( !synchronizeDelta( new ArrayList<>( ), new HashMap<>( ), listDeletedIds, lstErrors ) )
+            {
+                return lstErrors;
+            }
+            listDeletedIds = CoordonneeIndexHome.getIndexedIdsAfter( nIdAfter, nBatchSize );
+        }
+
+        CoordonneeIndexHome.setWatermark( 0 );
+
+        return lstErrors;
+    }
+
+    /**
+     * Sends a page of changes to the index, commits it, then records the new state of the coordinates
+     * 
+     * @param listItems
+     *            the items of the new or changed coordinates
+     * @param mapChangedHashes
+     *            the content hashes of the new or changed coordinates
+     * @param collectionDeletedIds
+     *            the ids of the coordinates to delete
+     * @param lstErrors
+     *            the errors
+     * @return true if the changes have been committed
+     */
+    private static boolean synchronizeDelta( List<SolrItem> listItems, Map<Integer, String> mapChangedHashes, Collection<Integer> collectionDeletedIds,
+            List<String> lstErrors )
+    {
+        if ( listItems.isEmpty( ) && collectionDeletedIds.isEmpty( ) )
+        {
+            return true;
+        }
+
+        try
+        {
+            SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+
+            if ( !listItems.isEmpty( ) )
+            {
+                SolrIndexerService.write( listItems );
+            }
+            if ( !collectionDeletedIds.isEmpty( ) )
+            {
+                solrClient.deleteByQuery( SolrCoordinateIndexQueue.getUidsQuery( collectionDeletedIds ) );
+            }
+            solrClient.commit( );
+        }
+        catch( Exception e )
+        {
+            lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+            AppLogService.error( PAGE_INDEXATION_ERROR, e );
+
+            return false;
+        }
+
+        CoordonneeIndexHome.storeIndexedHashes( mapChangedHashes );
+        CoordonneeIndexHome.removeIndexedHashes( collectionDeletedIds );
+
+        return true;
+    }
+
+    /**
+     * Records the state of coordinates pushed to the index outside of a delta run, by the index queue or by an import, so that the next delta neither
+     * resends them nor finds the recorded state out of line with the index. Does nothing unless the delta mode is enabled
+     * 
+     * @param collectionIndexedIds
+     *            the ids of the indexed coordinates
+     * @param collectionDeletedIds
+     *            the ids of the coordinates removed from the index
+     */
+    static void recordIndexState( Collection<Integer> collectionIndexedIds, Collection<Integer> collectionDeletedIds )
+    {
+        if ( !isDeltaEnabled( ) )
+        {
+            return;
+        }
+
+        Map<Integer, String> mapHashes = new HashMap<>( );
+
+        if ( !collectionIndexedIds.isEmpty( ) )
+        {
+            for ( Coordonnee coord : CoordonneeHome.getCoordonneesListByIds( new ArrayList<>( collectionIndexedIds ) ) )
+            {
+                mapHashes.put( coord.getId( ), getContentHash( coord ) );
+            }
+        }
+
+        CoordonneeIndexHome.storeIndexedHashes( mapHashes );
+        CoordonneeIndexHome.removeIndexedHashes( collectionDeletedIds );
+    }
+
+    /**
+     * Checks whether the recorded index state matches the documents of the index, which is not the case after the index has been rebuilt or cleared
+     * 
+     * @return true if the recorded state cannot be trusted
+     */
+    private static boolean isIndexStateStale( )
+    {
+        String strQuery = CartoSolrSearchService.FIELD_UID + ":" + ClientUtils.escapeQueryChars( SolrIndexerService.getWebAppName( ) + "_" ) + "*"
+                + ClientUtils.escapeQueryChars( UID_SUFFIX );
+
+        try
+        {
+            return CartoSolrSearchService.count( strQuery ) != CoordonneeIndexHome.countIndexed( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "SolrCoordonneeIndexer: unable to count the indexed coordinates", e );
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the index time configuration which changes the documents of the coordinates : the version of the indexed fields, the spatial fields and the
+     * tolerances of the levels of detail
+     * 
+     * @return the configuration
+     */
+    static String getIndexConfiguration( )
+    {
+        return INDEX_FORMAT_VERSION + "|" + isSpatialEnabled( ) + "|" + Arrays.toString( LevelOfDetailService.getTolerances( ) );
+    }
+
+    /**
+     * Returns the hash of the indexed content of a coordinate, including the index time configuration so that a change of the configuration resends
+     * every coordinate
+     * 
+     * @param coord
+     *            the coordinate
+     * @return the hash
+     */
+    private static String getContentHash( Coordonnee coord )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( HASH_ALGORITHM );
+            digest.update( getIndexConfiguration( ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( String.valueOf( coord.getGeoJson( ) ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( String.valueOf( coord.getDataLayer( ).getSolrTag( ) ).getBytes( StandardCharsets.UTF_8 ) );
+
+            StringBuilder sbHash = new StringBuilder( );
+            for ( byte b : digest.digest( ) )
+            {
+                sbHash.append( String.format( "%02x", b ) );
+            }
+
+            return sbHash.toString( );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Index all the coordinates in one write
+     * 
+     * @return the errors
+     */
+    private List<String> indexAllDocuments( )
     {
         List<Coordonnee> lstCoord = CoordonneeHome.getCoordonneesList( );
         List<String> lstErrors = new ArrayList<>( );
@@ -109,19 +444,214 @@ public class SolrCoordinateIndexer implements SolrIndexer
             }
         }
 
+        write( lstSolrItems, lstErrors );
+
+        return lstErrors;
+    }
+
+    /**
+     * Index the coordinates page by page : the coordinates are read in id order, the items of a page are built in parallel and written in one batch, so
+     * that only one page is held in memory at a time
+     * 
+     * @return the errors
+     */
+    private List<String> indexDocumentsByPage( )
+    {
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_INDEX_BATCH_SIZE, DEFAULT_INDEX_BATCH_SIZE ) );
+        List<String> lstErrors = Collections.synchronizedList( new ArrayList<>( ) );
+        String strBaseUrl = SolrIndexerService.getBaseUrl( );
+        ForkJoinPool pool = getForkJoinPool( );
+        int nIdAfter = 0;
+        List<Integer> listIds = CoordonneeIndexHome.getIdCoordonneesAfter( nIdAfter, nBatchSize );
+
+        while ( !listIds.isEmpty( ) )
+        {
+            List<Coordonnee> listCoord = CoordonneeHome.getCoordonneesListByIds( listIds );
+
+            try
+            {
+                List<SolrItem> listItems = pool.submit( ( ) -> listCoord.parallelStream( ).map( coord -> getItem( coord, strBaseUrl, lstErrors ) )
+                        .filter( Objects::nonNull ).collect( Collectors.toList( ) ) ).get( );
+                write( listItems, lstErrors );
+            }
+            catch( ExecutionException e )
+            {
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+                AppLogService.error( PAGE_INDEXATION_ERROR, e );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+
+                return lstErrors;
+            }
+
+            nIdAfter = listIds.get( listIds.size( ) - 1 );
+            listIds = CoordonneeIndexHome.getIdCoordonneesAfter( nIdAfter, nBatchSize );
+        }
+
+        return lstErrors;
+    }
+
+    /**
+     * Index a set of coordinates in batches, with a single commit at the end, and invalidate the map models. Used when many coordinates are created at
+     * once, instead of queuing them one by one
+     * 
+     * @param listIds
+     *            the ids of the coordinates
+     * @return the errors
+     */
+    public List<String> indexCoordinates( List<Integer> listIds )
+    {
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_INDEX_BATCH_SIZE, DEFAULT_INDEX_BATCH_SIZE ) );
+        List<String> lstErrors = Collections.synchronizedList( new ArrayList<>( ) );
+        String strBaseUrl = SolrIndexerService.getBaseUrl( );
+        ForkJoinPool pool = getForkJoinPool( );
+        boolean bDelta = isDeltaEnabled( );
+        Map<Integer, String> mapWrittenHashes = new HashMap<>( );
+
+        for ( int nFrom = 0; nFrom < listIds.size( ); nFrom += nBatchSize )
+        {
+            List<Coordonnee> listCoord = CoordonneeHome.getCoordonneesListByIds( listIds.subList( nFrom, Math.min( nFrom + nBatchSize, listIds.size( ) ) ) );
+            Map<Integer, String> mapHashes = new ConcurrentHashMap<>( );
+
+            try
+            {
+                List<SolrItem> listItems = pool.submit( ( ) -> listCoord.parallelStream( ).map( coord -> {
+                    SolrItem item = getItem( coord, strBaseUrl, lstErrors );
+
+                    if ( item != null && bDelta )
+                    {
+                        mapHashes.put( coord.getId( ), getContentHash( coord ) );
+                    }
+
+                    return item;
+                } ).filter( Objects::nonNull ).collect( Collectors.toList( ) ) ).get( );
+
+                if ( write( listItems, lstErrors ) )
+                {
+                    mapWrittenHashes.putAll( mapHashes );
+                }
+            }
+            catch( ExecutionException e )
+            {
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+                AppLogService.error( PAGE_INDEXATION_ERROR, e );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread( ).interrupt( );
+                lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+
+                break;
+            }
+        }
+
         try
         {
-            SolrIndexerService.write( lstSolrItems );
+            SolrServerService.getInstance( ).getSolrServer( ).commit( );
+
+            // the committed coordinates are recorded as indexed, so that the next delta does not send them again
+            CoordonneeIndexHome.storeIndexedHashes( mapWrittenHashes );
         }
         catch( Exception e )
         {
             lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
             AppLogService.error( PAGE_INDEXATION_ERROR, e );
         }
+        MapModelCacheService.getInstance( ).invalidate( );
 
         return lstErrors;
     }
 
+    /**
+     * Builds the item of a coordinate, recording the error if it fails
+     * 
+     * @param coord
+     *            the coordinate
+     * @param strUrl
+     *            The base URL for documents
+     * @param lstErrors
+     *            the errors
+     * @return the item, or null if it cannot be built
+     */
+    private SolrItem getItem( Coordonnee coord, String strUrl, List<String> lstErrors )
+    {
+        try
+        {
+            return getItem( coord, strUrl );
+        }
+        catch( Exception e )
+        {
+            lstErrors.add( PAGE_INDEXATION_ERROR + coord.getId( ) + " : " + SolrIndexerService.buildErrorMessage( e ) );
+            AppLogService.error( PAGE_INDEXATION_ERROR + coord.getId( ), e );
+
+            return null;
+        }
+    }
+
+    /**
+     * Writes items to the index, recording the error if it fails
+     * 
+     * @param listItems
+     *            the items
+     * @param lstErrors
+     *            the errors
+     * @return true if the items have been written
+     */
+    private static boolean write( List<SolrItem> listItems, List<String> lstErrors )
+    {
+        try
+        {
+            SolrIndexerService.write( listItems );
+
+            return true;
+        }
+        catch( Exception e )
+        {
+            lstErrors.add( SolrIndexerService.buildErrorMessage( e ) );
+            AppLogService.error( PAGE_INDEXATION_ERROR, e );
+
+            return false;
+        }
+    }
+
+    /**
+     * Returns the pool building the items, created at first use
+     * 
+     * @return the pool
+     */
+    private static synchronized ForkJoinPool getForkJoinPool( )
+    {
+        if ( _forkJoinPool == null )
+        {
+            int nParallelism = AppPropertiesService.getPropertyInt( PROPERTY_INDEX_PARALLELISM, Runtime.getRuntime( ).availableProcessors( ) );
+            _forkJoinPool = new ForkJoinPool( Math.max( 1, nParallelism ) );
+        }
+
+        return _forkJoinPool;
+    }
+
+    /**
+     * Stops the pool building the items. A new pool is created if the indexer is run again afterwards
+     */
+    public static void shutdown( )
+    {
+        ForkJoinPool pool;
+
+        synchronized( SolrCoordinateIndexer.class )
+        {
+            pool = _forkJoinPool;
+            _forkJoinPool = null;
+        }
+
+        if ( pool != null )
+        {
+            DataLayerExecutorService.shutdown( pool, NAME );
+        }
+    }
+
     /**
      * Builds a document which will be used by Lucene during the indexing of the pages of the site with the following fields : summary, uid, url, contents,
      * title and description.
@@ -138,24 +668,86 @@ public class SolrCoordinateIndexer implements SolrIndexer
     {
 
         // make a new, empty SolrItem
-        SolrItem solrItem = new SolrItem( );
+        CartoSolrItem solrItem = new CartoSolrItem( );
         String nIdCoordinate = String.valueOf( coord.getId( ) );
         solrItem.setIdResource( nIdCoordinate );
         solrItem.setSite( SolrIndexerService.getWebAppName( ) );
         solrItem.setRole( "Cartography" );
         solrItem.setType( "Cartography" + "_" + coord.getId( ) );
-        solrItem.setUid( coord.getId( ) + "_Coordonnees" );
+        solrItem.setUid( getUid( coord.getId( ) ) );
         solrItem.setTitle( "Coordonnees" + " #" + nIdCoordinate );
         solrItem.setContent( "" );
         // solrItem.setDate( formResponse.getCreation( ) );
         solrItem.setUrl( "jsp/site/Portal.jsp?page=formsResponse&id_response=" + nIdCoordinate );
 
-        solrItem.addDynamicFieldGeoloc( "coordonnee_geojson", coord.getGeoJson( ), "Coordonnee" );
+        solrItem.addDynamicFieldGeoloc( CartoSolrItem.FIELD_GEOJSON, coord.getGeoJson( ), "Coordonnee" );
         solrItem.addDynamicField( "DataLayer", String.valueOf( coord.getDataLayer( ).getSolrTag( ) ) );
 
+        if ( !isSpatialEnabled( ) )
+        {
+            return solrItem;
+        }
+
+        try
+        {
+            CoordinateSpatialFields spatialFields = CoordinateSpatialFields.of( coord.getGeoJson( ) );
+            if ( spatialFields != null )
+            {
+                solrItem.setSpatialFields( spatialFields );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "SolrCoordonneeIndexer: unable to compute the spatial fields of the coordinate " + coord.getId( ), e );
+        }
+
+        addLevelsOfDetail( solrItem, coord );
+
         return solrItem;
     }
 
+    /**
+     * Add the simplified versions of the geometry of a line or polygon, one per configured tolerance
+     * 
+     * @param solrItem
+     *            the item
+     * @param coord
+     *            the coordinate
+     */
+    private static void addLevelsOfDetail( CartoSolrItem solrItem, Coordonnee coord )
+    {
+        double [ ] tolerances = LevelOfDetailService.getTolerances( );
+
+        try
+        {
+            for ( int nLevel = 0; nLevel < tolerances.length && coord.getGeoJson( ) != null; nLevel++ )
+            {
+                String strSimplified = GeometrySimplifier.simplify( coord.getGeoJson( ), tolerances [nLevel] );
+
+                if ( strSimplified != null )
+                {
+                    solrItem.addLevelOfDetail( LevelOfDetailService.getFieldName( nLevel ), strSimplified );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "SolrCoordonneeIndexer: unable to simplify the geometry of the coordinate " + coord.getId( ), e );
+        }
+    }
+
+    /**
+     * Returns the uid of the item of a coordinate, before the web app name is prepended by the indexer service
+     * 
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     * @return the uid
+     */
+    public static String getUid( int nIdCoordinate )
+    {
+        return nIdCoordinate + UID_SUFFIX;
+    }
+
     /**
      * Returns the name of the indexer.
      *
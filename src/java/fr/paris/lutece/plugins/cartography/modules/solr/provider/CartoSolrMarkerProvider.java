@@ -43,10 +43,13 @@ import java.util.Map.Entry;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.common.SolrDocument;
 
 import fr.paris.lutece.plugins.carto.provider.IMarkerProvider;
 import fr.paris.lutece.plugins.carto.provider.InfoMarker;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoSolrSearchService;
 import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.QueryJournalService;
 import fr.paris.lutece.plugins.search.solr.business.SolrFacetedResult;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchEngine;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
@@ -80,10 +83,13 @@ public class CartoSolrMarkerProvider implements IMarkerProvider
 
         SolrSearchEngine engine = SolrSearchEngine.getInstance( );
 
-        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( CartographyService.PARAMETER_SOLR_GEOJSON + ":" + solrTag, new String [ ] {
+        String strQuery = CartographyService.PARAMETER_SOLR_GEOJSON + ":" + solrTag;
+        long lStart = System.nanoTime( );
+        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( strQuery, new String [ ] {
                 CartographyService.PARAMETER_SOLR_GEOJSON
         }, "uid", "asc", 10, 1, 100, false );
         List<SolrSearchResult> listResults = facetedResult.getSolrSearchResults( );
+        QueryJournalService.record( QueryJournalService.OPERATION_MARKERS, strQuery, null, 100, lStart, listResults.size( ) );
         List<FacetField> lstfield = facetedResult.getFacetFields( );
 
         for ( FacetField facet : lstfield )
@@ -131,11 +137,13 @@ public class CartoSolrMarkerProvider implements IMarkerProvider
 
         SolrSearchEngine engine = SolrSearchEngine.getInstance( );
 
-        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( CartographyService.PARAMETER_SOLR_GEOJSON + ":" + solrTag + "+AND+uid:" + uid,
-                new String [ ] {
-                        SolrSearchAppConfService.loadConfiguration( null ).getFieldList( )
-                }, null, "uid", "asc", 100, 1, 100, false );
+        String strQuery = CartographyService.PARAMETER_SOLR_GEOJSON + ":" + solrTag + "+AND+uid:" + uid;
+        long lStart = System.nanoTime( );
+        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( strQuery, new String [ ] {
+                SolrSearchAppConfService.loadConfiguration( null ).getFieldList( )
+        }, null, "uid", "asc", 100, 1, 100, false );
         List<SolrSearchResult> listResults = facetedResult.getSolrSearchResults( );
+        QueryJournalService.record( QueryJournalService.OPERATION_MARKERS, strQuery, null, 100, lStart, listResults.size( ) );
         List<FacetField> lstfield = facetedResult.getFacetFields( );
 
         Map<String, Field> mapFields = SolrFieldManager.getFacetList( );
@@ -160,10 +168,13 @@ public class CartoSolrMarkerProvider implements IMarkerProvider
 
         SolrSearchEngine engine = SolrSearchEngine.getInstance( );
 
-        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( "uid:" + uid, new String [ ] {
+        String strQuery = "uid:" + uid;
+        long lStart = System.nanoTime( );
+        SolrFacetedResult facetedResult = engine.getFacetedSearchResults( strQuery, new String [ ] {
                 SolrSearchAppConfService.loadConfiguration( null ).getFieldList( )
         }, null, "uid", "asc", 100, 1, 100, false );
         List<SolrSearchResult> listResults = facetedResult.getSolrSearchResults( );
+        QueryJournalService.record( QueryJournalService.OPERATION_MARKERS, strQuery, null, 100, lStart, listResults.size( ) );
         List<FacetField> lstfield = facetedResult.getFacetFields( );
 
         Map<String, Field> mapFields = SolrFieldManager.getFacetList( );
@@ -189,4 +200,33 @@ public class CartoSolrMarkerProvider implements IMarkerProvider
         return mapFacet;
     }
 
+    /**
+     * Returns the dynamic text fields of several documents with as few solr queries as possible
+     * 
+     * @param collectionUids
+     *            the uids of the documents
+     * @return the dynamic text fields by marker, by uid
+     */
+    public Map<String, Map<String, String>> valueMarkers( Collection<String> collectionUids )
+    {
+        Map<String, Map<String, String>> mapValues = new HashMap<>( );
+
+        for ( SolrDocument document : CartoSolrSearchService.getDocumentsByUids( collectionUids,
+                CartoSolrSearchService.FIELD_UID + ",*" + SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX ) )
+        {
+            Map<String, String> mapFacet = new HashMap<>( );
+
+            for ( String strFieldName : document.getFieldNames( ) )
+            {
+                if ( strFieldName.endsWith( SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX ) )
+                {
+                    mapFacet.put( strFieldName, String.valueOf( document.getFirstValue( strFieldName ) ) );
+                }
+            }
+            mapValues.put( String.valueOf( document.getFirstValue( CartoSolrSearchService.FIELD_UID ) ), mapFacet );
+        }
+
+        return mapValues;
+    }
+
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import fr.paris.lutece.plugins.carto.business.Basemap;
+import fr.paris.lutece.plugins.carto.business.BasemapHome;
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.carto.business.DataLayerHome;
+import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplate;
+import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplateHome;
+import fr.paris.lutece.plugins.carto.business.DataLayerType;
+import fr.paris.lutece.plugins.carto.business.DataLayerTypeHome;
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.carto.business.MapTemplateHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MapMetrics;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Read-through cache of the carto reference data used to render the maps : data layers, data layer types, data layer map templates, map templates and
+ * basemaps. The size and the time to live of the cache are set like any other Lutece cache. The cache is reset from the cache management page, and
+ * by CartoAdminChangeFilter once the carto data is modified from the administration pages of the carto plugin. Other modifications, from another
+ * webapp or directly in the database, are visible after the time to live of the cache : each entry reloaded from the database is compared with its
+ * previous content, and the configuration version is incremented if it has changed.
+ */
+public final class CartoReferenceCacheService extends AbstractCacheableService
+{
+    private static final String SERVICE_NAME = "CartographySolrReferenceCacheService";
+    private static final String KEY_DATA_LAYER = "datalayer:";
+    private static final String KEY_DATA_LAYER_TYPE = "datalayertype:";
+    private static final String KEY_DATA_LAYER_MAP_TEMPLATE = "datalayermaptemplate:";
+    private static final String KEY_DATA_LAYERS_OF_MAP = "datalayers:";
+    private static final String KEY_MAP_TEMPLATE = "maptemplate:";
+    private static final String KEY_MAP_TEMPLATE_FRONT_OFFICE = "maptemplate:frontoffice";
+    private static final String KEY_BASEMAP = "basemap:";
+    private static final String KEY_SEPARATOR = ":";
+    private static final String ENTITY_DATALAYER = "datalayer";
+    private static final String ENTITY_DATALAYER_TYPE = "datalayer_type";
+    private static final String ENTITY_DATALAYER_MAP_TEMPLATE = "datalayer_map_template";
+    private static final String ENTITY_DATALAYERS_OF_MAP = "datalayers_of_map";
+    private static final String ENTITY_MAP_TEMPLATE = "map_template";
+    private static final String ENTITY_BASEMAP = "basemap";
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+    private static final ObjectMapper MAPPER = new ObjectMapper( ).disable( SerializationFeature.FAIL_ON_EMPTY_BEANS );
+
+    private static CartoReferenceCacheService _singleton;
+
+    private final AtomicLong _lConfigurationVersion = new AtomicLong( System.currentTimeMillis( ) );
+    private final Map<String, String> _mapFingerprints = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private CartoReferenceCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * Returns the unique instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized CartoReferenceCacheService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new CartoReferenceCacheService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Returns a data layer
+     * 
+     * @param nIdDataLayer
+     *            the data layer id
+     * @return the data layer
+     */
+    public Optional<DataLayer> getDataLayer( int nIdDataLayer )
+    {
+        String strKey = KEY_DATA_LAYER + nIdDataLayer;
+        DataLayer datalayer = (DataLayer) getFromCache( strKey );
+
+        if ( datalayer == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<DataLayer> optDataLayer = DataLayerHome.findByPrimaryKey( nIdDataLayer );
+            MapMetrics.DB_CALL.labels( ENTITY_DATALAYER ).observeSince( lStart );
+            checkFingerprint( strKey, optDataLayer.orElse( null ) );
+            optDataLayer.ifPresent( d -> putInCache( strKey, d ) );
+
+            return optDataLayer;
+        }
+
+        return Optional.of( datalayer );
+    }
+
+    /**
+     * Returns a data layer type
+     * 
+     * @param nIdDataLayerType
+     *            the data layer type id
+     * @return the data layer type
+     */
+    public Optional<DataLayerType> getDataLayerType( int nIdDataLayerType )
+    {
+        String strKey = KEY_DATA_LAYER_TYPE + nIdDataLayerType;
+        DataLayerType dataLayerType = (DataLayerType) getFromCache( strKey );
+
+        if ( dataLayerType == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<DataLayerType> optDataLayerType = DataLayerTypeHome.findByPrimaryKey( nIdDataLayerType );
+            MapMetrics.DB_CALL.labels( ENTITY_DATALAYER_TYPE ).observeSince( lStart );
+            checkFingerprint( strKey, optDataLayerType.orElse( null ) );
+            optDataLayerType.ifPresent( d -> putInCache( strKey, d ) );
+
+            return optDataLayerType;
+        }
+
+        return Optional.of( dataLayerType );
+    }
+
+    /**
+     * Returns the properties of a data layer in a map
+     * 
+     * @param nIdMap
+     *            the map id
+     * @param nIdDataLayer
+     *            the data layer id
+     * @return the data layer map template
+     */
+    public Optional<DataLayerMapTemplate> getDataLayerMapTemplate( int nIdMap, int nIdDataLayer )
+    {
+        String strKey = KEY_DATA_LAYER_MAP_TEMPLATE + nIdMap + KEY_SEPARATOR + nIdDataLayer;
+        DataLayerMapTemplate dataLayerMapTemplate = (DataLayerMapTemplate) getFromCache( strKey );
+
+        if ( dataLayerMapTemplate == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<DataLayerMapTemplate> optDataLayerMapTemplate = DataLayerMapTemplateHome.findByIdMapKeyIdDataLayerKey( nIdMap, nIdDataLayer );
+            MapMetrics.DB_CALL.labels( ENTITY_DATALAYER_MAP_TEMPLATE ).observeSince( lStart );
+            checkFingerprint( strKey, optDataLayerMapTemplate.orElse( null ) );
+            optDataLayerMapTemplate.ifPresent( d -> putInCache( strKey, d ) );
+
+            return optDataLayerMapTemplate;
+        }
+
+        return Optional.of( dataLayerMapTemplate );
+    }
+
+    /**
+     * Returns the data layers of a map
+     * 
+     * @param nIdMap
+     *            the map id
+     * @param bSearchableByOthers
+     *            true for the data layers searchable by others
+     * @return the data layers
+     */
+    @SuppressWarnings( "unchecked" )
+    public List<DataLayer> getDataLayerListByMapTemplateId( int nIdMap, boolean bSearchableByOthers )
+    {
+        String strKey = KEY_DATA_LAYERS_OF_MAP + nIdMap + KEY_SEPARATOR + bSearchableByOthers;
+        List<DataLayer> listDataLayers = (List<DataLayer>) getFromCache( strKey );
+
+        if ( listDataLayers == null )
+        {
+            long lStart = System.nanoTime( );
+            listDataLayers = DataLayerMapTemplateHome.getDataLayerListByMapTemplateId( nIdMap, bSearchableByOthers );
+            MapMetrics.DB_CALL.labels( ENTITY_DATALAYERS_OF_MAP ).observeSince( lStart );
+            checkFingerprint( strKey, listDataLayers );
+            putInCache( strKey, listDataLayers );
+        }
+
+        return listDataLayers;
+    }
+
+    /**
+     * Returns a map template
+     * 
+     * @param nIdMap
+     *            the map id
+     * @return the map template
+     */
+    public Optional<MapTemplate> getMapTemplate( int nIdMap )
+    {
+        String strKey = KEY_MAP_TEMPLATE + nIdMap;
+        MapTemplate map = (MapTemplate) getFromCache( strKey );
+
+        if ( map == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<MapTemplate> optMap = MapTemplateHome.findByPrimaryKey( nIdMap );
+            MapMetrics.DB_CALL.labels( ENTITY_MAP_TEMPLATE ).observeSince( lStart );
+            checkFingerprint( strKey, optMap.orElse( null ) );
+            optMap.ifPresent( m -> putInCache( strKey, m ) );
+
+            return optMap;
+        }
+
+        return Optional.of( map );
+    }
+
+    /**
+     * Returns the map template displayed in front office
+     * 
+     * @return the map template
+     */
+    public Optional<MapTemplate> getFrontOfficeMapTemplate( )
+    {
+        MapTemplate map = (MapTemplate) getFromCache( KEY_MAP_TEMPLATE_FRONT_OFFICE );
+
+        if ( map == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<MapTemplate> optMap = MapTemplateHome.findXpageFrontOffice( );
+            MapMetrics.DB_CALL.labels( ENTITY_MAP_TEMPLATE ).observeSince( lStart );
+            checkFingerprint( KEY_MAP_TEMPLATE_FRONT_OFFICE, optMap.orElse( null ) );
+            optMap.ifPresent( m -> putInCache( KEY_MAP_TEMPLATE_FRONT_OFFICE, m ) );
+
+            return optMap;
+        }
+
+        return Optional.of( map );
+    }
+
+    /**
+     * Returns a basemap
+     * 
+     * @param nIdBasemap
+     *            the basemap id
+     * @return the basemap
+     */
+    public Optional<Basemap> getBasemap( int nIdBasemap )
+    {
+        String strKey = KEY_BASEMAP + nIdBasemap;
+        Basemap basemap = (Basemap) getFromCache( strKey );
+
+        if ( basemap == null )
+        {
+            long lStart = System.nanoTime( );
+            Optional<Basemap> optBasemap = BasemapHome.findByPrimaryKey( nIdBasemap );
+            MapMetrics.DB_CALL.labels( ENTITY_BASEMAP ).observeSince( lStart );
+            checkFingerprint( strKey, optBasemap.orElse( null ) );
+            optBasemap.ifPresent( b -> putInCache( strKey, b ) );
+
+            return optBasemap;
+        }
+
+        return Optional.of( basemap );
+    }
+
+    /**
+     * Empty the cache and invalidate the map models. Called from the cache management page and by the filter of the administration pages of the carto
+     * plugin when the carto data is modified (see CartoAdminChangeFilter)
+     */
+    @Override
+    public void resetCache( )
+    {
+        super.resetCache( );
+        _mapFingerprints.clear( );
+        PopupTemplateService.invalidateAll( );
+        invalidateMapModels( );
+    }
+
+    /**
+     * Returns the version of the carto configuration, incremented each time the cache is reset or an entry reloaded from the database has changed
+     * 
+     * @return the version
+     */
+    public long getConfigurationVersion( )
+    {
+        return _lConfigurationVersion.get( );
+    }
+
+    /**
+     * Increment the configuration version and invalidate the map models
+     */
+    private void invalidateMapModels( )
+    {
+        _lConfigurationVersion.incrementAndGet( );
+        MapModelCacheService.getInstance( ).invalidate( );
+    }
+
+    /**
+     * Records the fingerprint of an entry loaded from the database, and invalidates the map models if the entry has changed since it was last loaded
+     * 
+     * @param strKey
+     *            the cache key
+     * @param value
+     *            the value loaded, null if not found
+     */
+    private void checkFingerprint( String strKey, Object value )
+    {
+        String strFingerprint = getFingerprint( value );
+        String strPrevious = _mapFingerprints.put( strKey, strFingerprint );
+
+        // An entry which cannot be fingerprinted is considered as changed
+        if ( strPrevious != null && ( strFingerprint.isEmpty( ) || !strFingerprint.equals( strPrevious ) ) )
+        {
+            AppLogService.debug( "CartoReferenceCacheService: " + strKey + " has changed since it was last loaded" );
+            invalidateMapModels( );
+        }
+    }
+
+    /**
+     * Returns the fingerprint of an entry : the SHA-256 of its JSON serialization
+     * 
+     * @param value
+     *            the value, may be null
+     * @return the fingerprint, or an empty string if the value cannot be serialized
+     */
+    static String getFingerprint( Object value )
+    {
+        try
+        {
+            StringBuilder sbFingerprint = new StringBuilder( );
+
+            for ( byte b : MessageDigest.getInstance( FINGERPRINT_ALGORITHM ).digest( MAPPER.writeValueAsBytes( value ) ) )
+            {
+                sbFingerprint.append( String.format( "%02x", b ) );
+            }
+
+            return sbFingerprint.toString( );
+        }
+        catch( JsonProcessingException e )
+        {
+            AppLogService.debug( "CartoReferenceCacheService: unable to compute the fingerprint of " + value, e );
+
+            return "";
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+}
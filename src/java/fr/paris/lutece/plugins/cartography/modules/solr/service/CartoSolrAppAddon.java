@@ -36,9 +36,7 @@ package fr.paris.lutece.plugins.cartography.modules.solr.service;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 
-import fr.paris.lutece.plugins.carto.business.BasemapHome;
 import fr.paris.lutece.plugins.carto.business.MapTemplate;
-import fr.paris.lutece.plugins.carto.business.MapTemplateHome;
 import fr.paris.lutece.plugins.search.solr.service.ISolrSearchAppAddOn;
 
 public class CartoSolrAppAddon implements ISolrSearchAppAddOn
@@ -52,10 +50,10 @@ public class CartoSolrAppAddon implements ISolrSearchAppAddOn
     {
 
         // Charger map par defaut.
-        MapTemplate map = MapTemplateHome.findXpageFrontOffice( ).get( );
+        MapTemplate map = CartoReferenceCacheService.getInstance( ).getFrontOfficeMapTemplate( ).get( );
 
         model.put( MARK_MAP, map );
-        model.put( MARK_BASEMAP, BasemapHome.findByPrimaryKey( Integer.valueOf( map.getMapBackground( ) ) ).get( ).getUrl( ) );
+        model.put( MARK_BASEMAP, CartoReferenceCacheService.getInstance( ).getBasemap( Integer.valueOf( map.getMapBackground( ) ) ).get( ).getUrl( ) );
 
     }
 
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.util.NamedList;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.CartoSolrItem;
+import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
+import fr.paris.lutece.plugins.search.solr.business.SolrServerService;
+import fr.paris.lutece.plugins.search.solr.business.field.Field;
+import fr.paris.lutece.plugins.search.solr.business.field.FieldHome;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Solr queries of the module which are not provided by the SolrSearchEngine
+ */
+public final class CartoSolrSearchService
+{
+    public static final String FIELD_UID = "uid";
+
+    private static final String PROPERTY_UIDS_BATCH_SIZE = "map.solr.uids.batch.size";
+    private static final int DEFAULT_UIDS_BATCH_SIZE = 200;
+    private static final String KEY_FACET_COUNTS = "facet_counts";
+    private static final String KEY_FACET_HEATMAPS = "facet_heatmaps";
+    private static final String PARAM_FACET_HEATMAP = "facet.heatmap";
+    private static final String PARAM_FACET_HEATMAP_GEOM = "facet.heatmap.geom";
+    private static final String PARAM_FACET_HEATMAP_DIST_ERR_PCT = "facet.heatmap.distErrPct";
+    private static final String PROPERTY_CURSOR_PAGE_SIZE = "map.solr.cursor.page.size";
+    private static final int DEFAULT_CURSOR_PAGE_SIZE = 1000;
+    private static final String FIELD_LIST_GEOLOC = "*" + SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX + "," + FIELD_UID;
+    private static final String PARAM_DEF_TYPE = "defType";
+    private static final String PARAM_QUERY_FIELDS = "qf";
+    private static final String DEF_TYPE = "edismax";
+
+    /**
+     * Handler of the documents read by a cursor
+     */
+    @FunctionalInterface
+    public interface DocumentHandler
+    {
+        /**
+         * Handle a document
+         * 
+         * @param document
+         *            the document
+         * @throws IOException
+         *             if the document cannot be handled
+         */
+        void handle( SolrDocument document ) throws IOException;
+    }
+
+    /**
+     * Private constructor
+     */
+    private CartoSolrSearchService( )
+    {
+    }
+
+    /**
+     * Returns the stored documents having one of the given uids
+     * 
+     * @param collectionUids
+     *            the uids
+     * @param strFieldList
+     *            the fields to return
+     * @return the documents
+     */
+    public static List<SolrDocument> getDocumentsByUids( Collection<String> collectionUids, String strFieldList )
+    {
+        List<SolrDocument> listDocuments = new ArrayList<>( collectionUids.size( ) );
+
+        if ( collectionUids.isEmpty( ) )
+        {
+            return listDocuments;
+        }
+
+        SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+        int nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_UIDS_BATCH_SIZE, DEFAULT_UIDS_BATCH_SIZE ) );
+        List<String> listUids = new ArrayList<>( collectionUids );
+
+        for ( int nFrom = 0; nFrom < listUids.size( ); nFrom += nBatchSize )
+        {
+            List<String> listBatch = listUids.subList( nFrom, Math.min( nFrom + nBatchSize, listUids.size( ) ) );
+            StringBuilder sbQuery = new StringBuilder( FIELD_UID ).append( ":(" );
+
+            for ( int i = 0; i < listBatch.size( ); i++ )
+            {
+                if ( i > 0 )
+                {
+                    sbQuery.append( " OR " );
+                }
+                sbQuery.append( ClientUtils.escapeQueryChars( listBatch.get( i ) ) );
+            }
+            sbQuery.append( ')' );
+
+            SolrQuery query = new SolrQuery( sbQuery.toString( ) );
+            query.setFields( strFieldList );
+            query.setRows( listBatch.size( ) );
+
+            try
+            {
+                listDocuments.addAll( query( solrClient, query, QueryJournalService.OPERATION_DOCUMENTS_BY_UID ).getResults( ) );
+            }
+            catch( SolrServerException | IOException e )
+            {
+                AppLogService.error( "CartoSolrSearchService: error while fetching the documents by uid " + query, e );
+            }
+        }
+
+        return listDocuments;
+    }
+
+    /**
+     * Runs the geoloc query of a data layer with a level of detail. The query has the same parser and field weights as
+     * SolrSearchEngine.getGeolocSearchResults, and also returns the simplified geometry, which replaces the full one in the results
+     * 
+     * @param strQuery
+     *            the query
+     * @param filterQueries
+     *            the filter queries, may be null
+     * @param nLimit
+     *            the maximum number of documents
+     * @param strLodField
+     *            the field of the simplified geometry
+     * @return the documents
+     * @throws IOException
+     *             if the query fails
+     */
+    public static List<SolrSearchResult> searchGeoloc( String strQuery, String [ ] filterQueries, int nLimit, String strLodField ) throws IOException
+    {
+        SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+        List<SolrSearchResult> listResults = new ArrayList<>( );
+
+        SolrQuery query = new SolrQuery( strQuery );
+        query.setFields( getFieldList( strLodField ) );
+        query.set( PARAM_DEF_TYPE, DEF_TYPE );
+        query.set( PARAM_QUERY_FIELDS, getQueryFields( ) );
+        if ( filterQueries != null )
+        {
+            query.addFilterQuery( filterQueries );
+        }
+        query.setRows( nLimit );
+
+        try
+        {
+            for ( SolrDocument document : query( solrClient, query, QueryJournalService.OPERATION_DATA_LAYER ).getResults( ) )
+            {
+                applyLevelOfDetail( document, strLodField );
+                listResults.add( solrClient.getBinder( ).getBean( SolrSearchResult.class, document ) );
+            }
+        }
+        catch( SolrServerException e )
+        {
+            throw new IOException( "CartoSolrSearchService: error during the geoloc query " + query, e );
+        }
+
+        return listResults;
+    }
+
+    /**
+     * Runs a single grouped query : one group per group query, each group returning at most nLimit documents. The query has the same fields, parser
+     * and field weights as the per data layer queries of SolrSearchEngine.getGeolocSearchResults, so both modes return the same documents
+     * 
+     * @param listGroupQueries
+     *            the group queries
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents per group
+     * @param strLodField
+     *            the field of the simplified geometry replacing the full one, or null for the full geometry
+     * @return the documents of each group query, in the order of the group queries, or null if the query failed
+     */
+    public static List<List<SolrSearchResult>> searchGrouped( List<String> listGroupQueries, String strFilterQuery, int nLimit, String strLodField )
+    {
+        Map<String, List<SolrSearchResult>> mapResults = new HashMap<>( );
+        SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+        // the groups are named after their query : data layers sharing a solr tag share a group
+        Set<String> setGroupQueries = new LinkedHashSet<>( listGroupQueries );
+
+        SolrQuery query = new SolrQuery( "(" + String.join( ") OR (", setGroupQueries ) + ")" );
+        query.setFields( getFieldList( strLodField ) );
+        query.set( PARAM_DEF_TYPE, DEF_TYPE );
+        query.set( PARAM_QUERY_FIELDS, getQueryFields( ) );
+        if ( strFilterQuery != null )
+        {
+            query.addFilterQuery( strFilterQuery );
+        }
+        query.set( GroupParams.GROUP, true );
+        for ( String strGroupQuery : setGroupQueries )
+        {
+            query.add( GroupParams.GROUP_QUERY, strGroupQuery );
+        }
+        query.set( GroupParams.GROUP_LIMIT, nLimit );
+
+        try
+        {
+            QueryResponse response = query( solrClient, query, QueryJournalService.OPERATION_GROUPED );
+            GroupResponse groupResponse = response.getGroupResponse( );
+
+            if ( groupResponse != null )
+            {
+                for ( GroupCommand command : groupResponse.getValues( ) )
+                {
+                    List<SolrSearchResult> listResults = new ArrayList<>( );
+
+                    for ( Group group : command.getValues( ) )
+                    {
+                        for ( SolrDocument document : group.getResult( ) )
+                        {
+                            applyLevelOfDetail( document, strLodField );
+                            listResults.add( solrClient.getBinder( ).getBean( SolrSearchResult.class, document ) );
+                        }
+                    }
+                    mapResults.put( command.getName( ), listResults );
+                }
+            }
+        }
+        catch( SolrServerException | IOException e )
+        {
+            AppLogService.error( "CartoSolrSearchService: error during the grouped query " + query, e );
+
+            return null;
+        }
+
+        return getResultsByPosition( listGroupQueries, mapResults );
+    }
+
+    /**
+     * Returns the documents of each group query in the order of the group queries. A query given several times gets the documents of its group at
+     * each of its positions
+     * 
+     * @param <T>
+     *            the type of the documents
+     * @param listGroupQueries
+     *            the group queries
+     * @param mapResults
+     *            the documents of each group, by group query
+     * @return the documents of each group query, empty for a group without documents
+     */
+    static <T> List<List<T>> getResultsByPosition( List<String> listGroupQueries, Map<String, List<T>> mapResults )
+    {
+        List<List<T>> listResults = new ArrayList<>( listGroupQueries.size( ) );
+
+        for ( String strGroupQuery : listGroupQueries )
+        {
+            listResults.add( mapResults.getOrDefault( strGroupQuery, new ArrayList<>( ) ) );
+        }
+
+        return listResults;
+    }
+
+    /**
+     * Returns the fields returned by the geoloc queries
+     * 
+     * @param strLodField
+     *            the field of the simplified geometry, or null
+     * @return the fl parameter
+     */
+    static String getFieldList( String strLodField )
+    {
+        return ( strLodField != null ) ? FIELD_LIST_GEOLOC + "," + strLodField : FIELD_LIST_GEOLOC;
+    }
+
+    /**
+     * Replaces the GeoJSON of a document by its simplified version. Only the lines and polygons have one, the points keep their GeoJSON
+     * 
+     * @param document
+     *            the document
+     * @param strLodField
+     *            the field of the simplified geometry, or null
+     */
+    static void applyLevelOfDetail( SolrDocument document, String strLodField )
+    {
+        if ( strLodField == null )
+        {
+            return;
+        }
+
+        Object simplified = document.getFirstValue( strLodField );
+
+        if ( simplified instanceof String )
+        {
+            document.setField( CartoSolrItem.FIELD_GEOJSON, simplified );
+        }
+        document.removeFields( strLodField );
+    }
+
+    /**
+     * Returns the weighted query fields, built from the solr fields configured in the search plugin as SolrSearchEngine does
+     * 
+     * @return the qf parameter
+     */
+    private static String getQueryFields( )
+    {
+        StringBuilder sbQueryFields = new StringBuilder( );
+
+        for ( Field field : FieldHome.getFieldList( ) )
+        {
+            if ( field.getWeight( ) > 0 )
+            {
+                sbQueryFields.append( field.getName( ) ).append( '^' ).append( field.getWeight( ) ).append( ' ' );
+            }
+        }
+
+        return sbQueryFields.toString( ).trim( );
+    }
+
+    /**
+     * Returns the heatmap of the documents matching a query in a bounding box
+     * 
+     * @param strQuery
+     *            the query
+     * @param listFilterQueries
+     *            the filter queries
+     * @param strField
+     *            the RPT field
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @param dDistErrPct
+     *            the size of the cells, as a fraction of the size of the bounding box
+     * @return the heatmap, or null if the response has none
+     * @throws IOException
+     *             if the query fails
+     */
+    @SuppressWarnings( "unchecked" )
+    public static HeatmapGrid searchHeatmap( String strQuery, List<String> listFilterQueries, String strField, double dWest, double dSouth,
+            double dEast, double dNorth, double dDistErrPct ) throws IOException
+    {
+        SolrQuery query = new SolrQuery( strQuery );
+        for ( String strFilterQuery : listFilterQueries )
+        {
+            query.addFilterQuery( strFilterQuery );
+        }
+        query.setRows( 0 );
+        query.setFacet( true );
+        query.set( PARAM_FACET_HEATMAP, strField );
+        query.set( PARAM_FACET_HEATMAP_GEOM, "[\"" + dWest + " " + dSouth + "\" TO \"" + dEast + " " + dNorth + "\"]" );
+        query.set( PARAM_FACET_HEATMAP_DIST_ERR_PCT, String.valueOf( dDistErrPct ) );
+
+        try
+        {
+            NamedList<Object> response = query( SolrServerService.getInstance( ).getSolrServer( ), query, QueryJournalService.OPERATION_HEATMAP ).getResponse( );
+            NamedList<Object> facetCounts = (NamedList<Object>) response.get( KEY_FACET_COUNTS );
+            NamedList<Object> heatmaps = ( facetCounts != null ) ? (NamedList<Object>) facetCounts.get( KEY_FACET_HEATMAPS ) : null;
+            NamedList<Object> heatmap = ( heatmaps != null ) ? (NamedList<Object>) heatmaps.get( strField ) : null;
+
+            return ( heatmap != null ) ? HeatmapGrid.fromNamedList( heatmap ) : null;
+        }
+        catch( SolrServerException e )
+        {
+            throw new IOException( "CartoSolrSearchService: error during the heatmap query " + query, e );
+        }
+    }
+
+    /**
+     * Returns the number of documents matching a query
+     * 
+     * @param strQuery
+     *            the query
+     * @return the number of documents
+     * @throws IOException
+     *             if the query fails
+     */
+    public static long count( String strQuery ) throws IOException
+    {
+        SolrQuery query = new SolrQuery( strQuery );
+        query.setRows( 0 );
+
+        try
+        {
+            return query( SolrServerService.getInstance( ).getSolrServer( ), query, QueryJournalService.OPERATION_COUNT ).getResults( ).getNumFound( );
+        }
+        catch( SolrServerException e )
+        {
+            throw new IOException( "CartoSolrSearchService: error while counting the documents of " + strQuery, e );
+        }
+    }
+
+    /**
+     * Reads all the documents matching a query, page by page with a cursor, so that only one page is held in memory at a time
+     * 
+     * @param strQuery
+     *            the query
+     * @param strFieldList
+     *            the fields to return
+     * @param handler
+     *            the handler called for each document, in uid order
+     * @return the number of documents read
+     * @throws IOException
+     *             if the query fails or if the handler throws
+     */
+    public static long forEachDocument( String strQuery, String strFieldList, DocumentHandler handler ) throws IOException
+    {
+        SolrClient solrClient = SolrServerService.getInstance( ).getSolrServer( );
+
+        SolrQuery query = new SolrQuery( strQuery );
+        query.setFields( strFieldList );
+        query.setRows( Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_CURSOR_PAGE_SIZE, DEFAULT_CURSOR_PAGE_SIZE ) ) );
+        query.setSort( SolrQuery.SortClause.asc( FIELD_UID ) );
+
+        String strCursorMark = CursorMarkParams.CURSOR_MARK_START;
+        long lCount = 0;
+
+        while ( true )
+        {
+            query.set( CursorMarkParams.CURSOR_MARK_PARAM, strCursorMark );
+
+            QueryResponse response;
+            try
+            {
+                response = query( solrClient, query, QueryJournalService.OPERATION_CURSOR );
+            }
+            catch( SolrServerException e )
+            {
+                throw new IOException( "CartoSolrSearchService: error while reading the documents of " + strQuery, e );
+            }
+
+            for ( SolrDocument document : response.getResults( ) )
+            {
+                handler.handle( document );
+                lCount++;
+            }
+
+            String strNextCursorMark = response.getNextCursorMark( );
+            if ( strNextCursorMark == null || strCursorMark.equals( strNextCursorMark ) )
+            {
+                return lCount;
+            }
+            strCursorMark = strNextCursorMark;
+        }
+    }
+
+    /**
+     * Sends a query and records it in the query journal
+     * 
+     * @param solrClient
+     *            the solr client
+     * @param query
+     *            the query
+     * @param strOperation
+     *            the operation of the module sending the query
+     * @return the response
+     * @throws SolrServerException
+     *             if the query fails
+     * @throws IOException
+     *             if the communication with solr fails
+     */
+    private static QueryResponse query( SolrClient solrClient, SolrQuery query, String strOperation ) throws SolrServerException, IOException
+    {
+        long lStart = System.nanoTime( );
+
+        try
+        {
+            QueryResponse response = solrClient.query( query );
+            QueryJournalService.record( strOperation, query, response, lStart );
+
+            return response;
+        }
+        catch( SolrServerException | IOException | RuntimeException e )
+        {
+            QueryJournalService.recordError( strOperation, query, lStart, e );
+            throw e;
+        }
+    }
+}
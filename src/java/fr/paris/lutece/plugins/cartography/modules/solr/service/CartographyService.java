@@ -34,28 +34,41 @@
 package fr.paris.lutece.plugins.cartography.modules.solr.service;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.util.ClientUtils;
 
 import java.util.Map.Entry;
 
-import fr.paris.lutece.plugins.carto.business.BasemapHome;
+import fr.paris.lutece.plugins.carto.business.Basemap;
 import fr.paris.lutece.plugins.carto.business.DataLayer;
 import fr.paris.lutece.plugins.carto.business.DataLayerHome;
 import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplate;
-import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplateHome;
 import fr.paris.lutece.plugins.carto.business.DataLayerType;
-import fr.paris.lutece.plugins.carto.business.DataLayerTypeHome;
 import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.carto.provider.IMarkerProvider;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.CartoSolrItem;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.SolrCoordinateIndexQueue;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.SolrCoordinateIndexer;
 import fr.paris.lutece.plugins.cartography.modules.solr.provider.CartoSolrMarkerProvider;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MapMetrics;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.tile.VectorTileService;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItem;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItemPolygon;
 import fr.paris.lutece.plugins.leaflet.service.IconService;
@@ -63,6 +76,7 @@ import fr.paris.lutece.plugins.search.solr.business.SolrSearchEngine;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
 import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
 import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.portal.service.util.AppLogService;
 import fr.paris.lutece.portal.service.util.AppPropertiesService;
 
@@ -87,9 +101,38 @@ public class CartographyService
     public static final String PARAMETER_SOLR_GEOJSON = "DataLayer_text";
     public static final String PARAMETER_SOLR_ROLE = "RoleUser_text";
     public static final String MARK_LIMIT_VERTEX = "limit_vertex";
+    public static final String MARK_VIEWPORT_ENABLED = "viewport_enabled";
+    public static final String MARK_CLUSTER_ENABLED = "cluster_enabled";
+    public static final String MARK_CLUSTER_MAX_ZOOM = "cluster_max_zoom";
+    public static final String MARK_TILES_ENABLED = "tiles_enabled";
+    public static final String MARK_TILES_SCRIPT_URL = "tiles_script_url";
+    public static final String MARK_TILES_VERSION = "tiles_version";
+    public static final String MARK_WFS_PROXY_ENABLED = "wfs_proxy_enabled";
+
+    private static final Pattern PATTERN_MARKER = Pattern.compile( "\\[(.+?)\\]" );
 
     private static final String PROPERTY_LIMIT_VERTEX = "map.limit.vertex";
     private static final String PROPERTY_LIMIT_RESULT_SOLR = "map.limit.result.solr";
+    private static final String PROPERTY_LOADER_GROUPED = "map.loader.grouped";
+    private static final String SOURCE_WFS = "WFS";
+    private static final String PROPERTY_VIEWPORT_ENABLED = "map.viewport.enabled";
+    private static final String PROPERTY_VIEWPORT_LIMIT_RESULT_SOLR = "map.viewport.limit.result.solr";
+    private static final String PROPERTY_VIEWPORT_SPATIAL_FIELD = "map.viewport.spatial.field";
+    private static final String PROPERTY_VIEWPORT_SPATIAL_INTERSECTS = "map.viewport.spatial.intersects";
+    private static final String DEFAULT_VIEWPORT_SPATIAL_FIELD = CartoSolrItem.FIELD_SHAPE;
+
+    private static IIconResolver _iconResolver = IconService::getIcon;
+
+    /**
+     * Sets the resolution of the icons of the documents, which uses the IconService of plugin-leaflet by default
+     * 
+     * @param iconResolver
+     *            the icon resolver
+     */
+    public static void setIconResolver( IIconResolver iconResolver )
+    {
+        _iconResolver = iconResolver;
+    }
 
     /**
      * Returns a model with points data from a geoloc search
@@ -101,8 +144,18 @@ public class CartographyService
     public static List<HashMap<String, Object>> getGeolocModel( List<SolrSearchResult> listResultsGeoloc, DataLayer datalayer,
             DataLayerMapTemplate dataLayerMapTemplate )
     {
+        long lStart = System.nanoTime( );
+        long lGeoJsonSize = 0;
         List<HashMap<String, Object>> points = new ArrayList<>( listResultsGeoloc.size( ) );
         Map<String, String> iconKeysCache = new HashMap<>( );
+        Map<String, Map<String, String>> mapMarkerValues = new HashMap<>( );
+        PopupTemplate popupTemplate = ( datalayer != null ) ? PopupTemplateService.getTemplate( datalayer ) : null;
+        StringBuilder sbPopup = new StringBuilder( );
+
+        if ( popupTemplate != null )
+        {
+            mapMarkerValues = getMarkerValues( listResultsGeoloc, popupTemplate.getMarkers( ) );
+        }
 
         for ( SolrSearchResult result : listResultsGeoloc )
         {
@@ -119,46 +172,22 @@ public class CartographyService
                 }
                 HashMap<String, Object> h = new HashMap<>( );
                 String strJson = (String) entry.getValue( );
-                GeolocItem geolocItem = null;
+                String strType = uid.substring( uid.lastIndexOf( '_' ) + 1 );
+                String strGeoJson = getGeoJsonWithIcon( strJson, strType, iconKeysCache );
 
-                try
-                {
-                    geolocItem = GeolocItem.fromJSON( strJson );
-                }
-                catch( IOException e )
+                if ( strGeoJson != null )
                 {
-                    AppLogService.error( "SolrSearchApp: error parsing geoloc JSON: " + strJson + ", exception " + e );
-                }
-
-                // if ( geolocItem != null && geolocItem.getTypegeometry( ).equals( GeolocItem.VALUE_GEOMETRY_TYPE ) )
-                if ( geolocItem != null )
-                {
-                    String strType = result.getId( ).substring( result.getId( ).lastIndexOf( '_' ) + 1 );
-                    String strIcon;
-
-                    if ( iconKeysCache.containsKey( geolocItem.getIcon( ) ) )
-                    {
-                        strIcon = iconKeysCache.get( geolocItem.getIcon( ) );
-                    }
-                    else
-                    {
-                        strIcon = IconService.getIcon( strType, geolocItem.getIcon( ) );
-                        iconKeysCache.put( geolocItem.getIcon( ), strIcon );
-                    }
-
-                    geolocItem.setIcon( strIcon );
-                    h.put( MARK_POINTS_GEOJSON, geolocItem.toJSON( ) );
+                    lGeoJsonSize += strGeoJson.length( );
+                    h.put( MARK_POINTS_GEOJSON, strGeoJson );
                     h.put( MARK_POINTS_ID, result.getId( ).substring( result.getId( ).indexOf( '_' ) + 1, result.getId( ).lastIndexOf( '_' ) ) );
                     h.put( MARK_POINTS_FIELDCODE, entry.getKey( ).substring( 0, entry.getKey( ).lastIndexOf( '_' ) ) );
                     h.put( MARK_POINTS_TYPE, strType );
                     if ( datalayer != null )
                     {
                         h.put( MARK_DATA_LAYER_TITLE, datalayer.getTitle( ) );
-                        if ( datalayer.getPopupContent( ) != null && !datalayer.getPopupContent( ).isEmpty( ) )
+                        if ( popupTemplate != null )
                         {
-                            String popupContent = replaceMarker( datalayer.getPopupContent( ), uid, datalayer.getSolrTag( ) );
-                            popupContent = popupContent.replaceAll( "[\\r\\n]+", "" );
-                            h.put( MARK_DATA_LAYER_POPUP, popupContent );
+                            h.put( MARK_DATA_LAYER_POPUP, popupTemplate.render( mapMarkerValues.get( uid ), sbPopup ) );
                         }
                         else
                         {
@@ -171,22 +200,71 @@ public class CartographyService
                     if ( dataLayerMapTemplate != null )
                     {
                         h.put( MARK_LAYER_PROPERTIES, dataLayerMapTemplate );
-                        DataLayerType dataLayerType = DataLayerTypeHome.findByPrimaryKey( dataLayerMapTemplate.getLayerType( ) ).get( );
+                        DataLayerType dataLayerType = CartoReferenceCacheService.getInstance( ).getDataLayerType( dataLayerMapTemplate.getLayerType( ) ).get( );
                         h.put( MARK_LAYER_TYPE, dataLayerType );
                     }
                     points.add( h );
                 }
             }
         }
-        
+
+        String strLabel = MapMetrics.getLabel( datalayer );
+        MapMetrics.GEOJSON_RENDER.labels( strLabel ).observeSince( lStart );
+        MapMetrics.GEOJSON_SIZE.labels( strLabel ).observe( lGeoJsonSize );
+
         return points;
     }
     
+    /**
+     * Returns the GeoJSON of a point with its icon resolved. The icon is rewritten in the token stream, the full object model is only built when the
+     * GeoJSON cannot be streamed
+     * 
+     * @param strJson
+     *            the indexed GeoJSON
+     * @param strType
+     *            the type of the document
+     * @param iconKeysCache
+     *            the icons already resolved, by indexed icon
+     * @return the GeoJSON with the resolved icon, or null if it is not valid
+     */
+    private static String getGeoJsonWithIcon( String strJson, String strType, Map<String, String> iconKeysCache )
+    {
+        UnaryOperator<String> iconMapper = strIndexedIcon -> iconKeysCache.computeIfAbsent( strIndexedIcon,
+                strKey -> _iconResolver.getIcon( strType, strKey ) );
+
+        try
+        {
+            return GeoJsonIconRewriter.rewriteIcon( strJson, iconMapper );
+        }
+        catch( IOException e )
+        {
+            AppLogService.debug( "SolrSearchApp: streaming rewrite failed, falling back to the geoloc item: " + e.getMessage( ) );
+        }
+
+        try
+        {
+            GeolocItem geolocItem = GeolocItem.fromJSON( strJson );
+            geolocItem.setIcon( iconMapper.apply( geolocItem.getIcon( ) ) );
+
+            return geolocItem.toJSON( );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "SolrSearchApp: error parsing geoloc JSON: " + strJson + ", exception " + e );
+        }
+
+        return null;
+    }
+
     public static List<HashMap<String, Object>> getWFSFluxModel( int nIdMap )
     {
     	List<HashMap<String, Object>> points = new ArrayList<>( );
         
-        for ( DataLayer datalayerWFS : DataLayerHome.getDataLayersListWFS( nIdMap ) )
+        long lStart = System.nanoTime( );
+        List<DataLayer> listDataLayersWFS = DataLayerHome.getDataLayersListWFS( nIdMap );
+        MapMetrics.DB_CALL.labels( "datalayers_wfs" ).observeSince( lStart );
+
+        for ( DataLayer datalayerWFS : listDataLayersWFS )
         {
         	HashMap<String, Object> h = new HashMap<>( );
         	
@@ -199,18 +277,146 @@ public class CartographyService
         return points;
     }
 
+    /**
+     * Returns a WFS data layer displayed by a map for a user. Only the WFS data layers of the model of the map rendered for the user, and thus for its
+     * role, are returned
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param nIdDataLayer
+     *            the data layer id
+     * @return the data layer, or an empty optional if the map does not display it for the user
+     */
+    @SuppressWarnings( "unchecked" )
+    public static Optional<DataLayer> getRenderedWfsDataLayer( MapTemplate map, LuteceUser user, int nIdDataLayer )
+    {
+        Map<String, Object> model = MapModelCacheService.getInstance( ).getMapModel( map, user );
+        List<HashMap<String, Object>> points = (List<HashMap<String, Object>>) model.get( MARK_POINTS );
+
+        if ( points == null )
+        {
+            return Optional.empty( );
+        }
+
+        for ( HashMap<String, Object> point : points )
+        {
+            Object datalayer = point.get( MARK_DATA_LAYER );
+
+            if ( datalayer instanceof DataLayer && ( (DataLayer) datalayer ).getId( ) == nIdDataLayer
+                    && SOURCE_WFS.equals( ( (DataLayer) datalayer ).getSource( ) ) )
+            {
+                return Optional.of( (DataLayer) datalayer );
+            }
+        }
+
+        return Optional.empty( );
+    }
+
+    /**
+     * Returns the values of the markers of a popup for all the documents of a data layer. The dynamic text fields already present in the documents are
+     * used, the others are fetched with bulk solr queries.
+     * 
+     * @param listResultsGeoloc
+     *            the documents
+     * @param setMarkers
+     *            the markers of the popup
+     * @return the values by marker, by uid
+     */
+    private static Map<String, Map<String, String>> getMarkerValues( List<SolrSearchResult> listResultsGeoloc, Set<String> setMarkers )
+    {
+        Map<String, Map<String, String>> mapMarkerValues = new HashMap<>( );
+
+        if ( setMarkers.isEmpty( ) )
+        {
+            return mapMarkerValues;
+        }
+
+        List<String> listMissingUids = new ArrayList<>( );
+        long lDocumentLookups = 0;
+        long lSolrLookups = 0;
+
+        for ( SolrSearchResult result : listResultsGeoloc )
+        {
+            Map<String, String> mapValues = new HashMap<>( );
+
+            for ( Entry<String, Object> entry : result.getDynamicFields( ).entrySet( ) )
+            {
+                if ( entry.getKey( ).endsWith( SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX ) && entry.getValue( ) != null )
+                {
+                    mapValues.put( entry.getKey( ), String.valueOf( entry.getValue( ) ) );
+                }
+            }
+            mapMarkerValues.put( result.getId( ), mapValues );
+
+            int nFound = 0;
+
+            for ( String strMarker : setMarkers )
+            {
+                if ( mapValues.containsKey( strMarker ) )
+                {
+                    nFound++;
+                }
+            }
+            lDocumentLookups += nFound;
+            lSolrLookups += setMarkers.size( ) - nFound;
+
+            if ( nFound < setMarkers.size( ) )
+            {
+                listMissingUids.add( result.getId( ) );
+            }
+        }
+
+        MapMetrics.MARKER_LOOKUPS.labels( MapMetrics.MARKER_SOURCE_DOCUMENT ).inc( lDocumentLookups );
+        MapMetrics.MARKER_LOOKUPS.labels( MapMetrics.MARKER_SOURCE_SOLR ).inc( lSolrLookups );
+
+        if ( !listMissingUids.isEmpty( ) )
+        {
+            long lStart = System.nanoTime( );
+            Map<String, Map<String, String>> mapFetchedValues = new CartoSolrMarkerProvider( ).valueMarkers( listMissingUids );
+            MapMetrics.MARKER_FETCH.labels( ).observeSince( lStart );
+
+            for ( Entry<String, Map<String, String>> entry : mapFetchedValues.entrySet( ) )
+            {
+                mapMarkerValues.computeIfAbsent( entry.getKey( ), k -> new HashMap<>( ) ).putAll( entry.getValue( ) );
+            }
+        }
+
+        return mapMarkerValues;
+    }
+
     // public static String replaceTokens(String text, Map<String, String> replacements)
     public static String replaceMarker( String text, String uid, String solrTag )
     {
-        Pattern pattern = Pattern.compile( "\\[(.+?)\\]" );
-        Matcher matcher = pattern.matcher( text );
-        StringBuffer buffer = new StringBuffer( );
+        return replaceMarker( text, uid, solrTag, new CartoSolrMarkerProvider( ) );
+    }
 
-        CartoSolrMarkerProvider cartoMarker = new CartoSolrMarkerProvider( );
+    /**
+     * Replace the [marker] tokens of a text by the values given by a marker provider
+     * 
+     * @param text
+     *            the text
+     * @param uid
+     *            the uid of the document
+     * @param solrTag
+     *            the solr tag of the data layer
+     * @param cartoMarker
+     *            the provider of the marker values
+     * @return the text with the values of the markers
+     */
+    public static String replaceMarker( String text, String uid, String solrTag, IMarkerProvider cartoMarker )
+    {
+        long lStart = System.nanoTime( );
+        Matcher matcher = PATTERN_MARKER.matcher( text );
+        StringBuffer buffer = new StringBuffer( );
 
         while ( matcher.find( ) )
         {
+            long lFetchStart = System.nanoTime( );
             Map<String, String> replacements = cartoMarker.valueMarker( matcher.group( 1 ), solrTag, uid );
+            MapMetrics.MARKER_FETCH.labels( ).observeSince( lFetchStart );
+            MapMetrics.MARKER_LOOKUPS.labels( MapMetrics.MARKER_SOURCE_SOLR ).inc( );
             String replacement = replacements.get( matcher.group( 1 ) );
             if ( replacement != null )
             {
@@ -226,6 +432,8 @@ public class CartographyService
             }
         }
         matcher.appendTail( buffer );
+        MapMetrics.MARKER_REPLACE.labels( ).observeSince( lStart );
+
         return buffer.toString( );
     }
 
@@ -265,27 +473,481 @@ public class CartographyService
      */
     public static GeolocItemPolygon getGeolocItemPolygon( String coordinate, String strTypeGeometry )
     {
-        String [ ] lstCoordPolygon = coordinate.split( ";" );
-
-        GeolocItemPolygon geoPolygon = new GeolocItemPolygon( );
-        List<List<Double>> polygonLonLoat = new ArrayList<>( );
+        double [ ] [ ] polygonLonLoat;
 
-        for ( String coordPolygonXY : lstCoordPolygon )
+        try
+        {
+            polygonLonLoat = CoordinateParser.parse( coordinate ).toPositions( );
+        }
+        catch( ParseException e )
         {
-            String [ ] coordPolygonXY2 = coordPolygonXY.split( "," );
-            double polygonx = Double.valueOf( coordPolygonXY2 [0] );
-            double polygony = Double.valueOf( coordPolygonXY2 [1] );
-            polygonLonLoat.add( Arrays.asList( polygonx, polygony ) );
+            throw new IllegalArgumentException( "Invalid coordinates at offset " + e.getErrorOffset( ) + " : " + e.getMessage( ), e );
         }
 
+        return getGeolocItemPolygon( polygonLonLoat, strTypeGeometry );
+    }
+
+    /**
+     * get a geolocitem polygon or polyline from parsed coordinates
+     * 
+     * @param coordinates
+     *            the GeoJSON coordinates, as nested double arrays
+     * @param strTypeGeometry
+     *            Polygon or Polyline
+     * @return the geolocitem
+     */
+    public static GeolocItemPolygon getGeolocItemPolygon( Object coordinates, String strTypeGeometry )
+    {
+        GeolocItemPolygon geoPolygon = new GeolocItemPolygon( );
         HashMap<String, Object> geometryPolygon = new HashMap<>( );
-        geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, polygonLonLoat );
+        geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, coordinates );
         geoPolygon.setGeometry( geometryPolygon );
         geoPolygon.setTypegeometry( strTypeGeometry );
 
         return geoPolygon;
     }
 
+    /**
+     * Search the geoloc documents of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the documents must be filtered on the first role of the user
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents
+     * @return the documents of the data layer
+     */
+    public static List<SolrSearchResult> searchDataLayer( DataLayer datalayer, LuteceUser user, boolean bRestrictedToRole, String strFilterQuery,
+            int nLimit )
+    {
+        return searchDataLayer( datalayer, user, bRestrictedToRole, strFilterQuery, nLimit, LevelOfDetailService.LEVEL_FULL_RESOLUTION );
+    }
+
+    /**
+     * Search the geoloc documents of a data layer, with the lines and polygons at a level of detail
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the documents must be filtered on the first role of the user
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents
+     * @param nLodLevel
+     *            the level of detail, or LevelOfDetailService.LEVEL_FULL_RESOLUTION
+     * @return the documents of the data layer, with the simplified geometry in place of the full one when the level has one
+     */
+    public static List<SolrSearchResult> searchDataLayer( DataLayer datalayer, LuteceUser user, boolean bRestrictedToRole, String strFilterQuery,
+            int nLimit, int nLodLevel )
+    {
+        SolrSearchEngine engine = SolrSearchEngine.getInstance( );
+        String strQuery = getDataLayerQuery( datalayer, user, bRestrictedToRole );
+        List<String> listFilterQueries = new ArrayList<>( );
+
+        if ( isRestrictedToRole( user, bRestrictedToRole ) )
+        {
+            listFilterQueries.add( strQuery );
+            strQuery = "*:*";
+        }
+        if ( strFilterQuery != null )
+        {
+            listFilterQueries.add( strFilterQuery );
+        }
+
+        String strLabel = MapMetrics.getLabel( datalayer );
+        String [ ] filterQueries = listFilterQueries.isEmpty( ) ? null : listFilterQueries.toArray( new String [ 0] );
+
+        try ( QueryJournalService.Scope scope = QueryJournalService.openDataLayer( strLabel ) )
+        {
+            long lStart = System.nanoTime( );
+            List<SolrSearchResult> listResults;
+
+            if ( nLodLevel != LevelOfDetailService.LEVEL_FULL_RESOLUTION )
+            {
+                // the engine only returns the full geometry : the simplified one is requested explicitly
+                listResults = CartoSolrSearchService.searchGeoloc( strQuery, filterQueries, nLimit, LevelOfDetailService.getFieldName( nLodLevel ) );
+            }
+            else
+            {
+                listResults = engine.getGeolocSearchResults( strQuery, filterQueries, nLimit );
+                QueryJournalService.record( QueryJournalService.OPERATION_DATA_LAYER, strQuery, filterQueries, nLimit, lStart, listResults.size( ) );
+            }
+            MapMetrics.SOLR_QUERY.labels( strLabel ).observeSince( lStart );
+            MapMetrics.SOLR_DOCUMENTS.labels( strLabel ).observe( listResults.size( ) );
+
+            return listResults;
+        }
+        catch( IOException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * Returns the query matching the geoloc documents of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the documents must be filtered on the first role of the user
+     * @return the query
+     */
+    static String getDataLayerQuery( DataLayer datalayer, LuteceUser user, boolean bRestrictedToRole )
+    {
+        String strQuery = PARAMETER_SOLR_GEOJSON + ":" + datalayer.getSolrTag( );
+
+        if ( isRestrictedToRole( user, bRestrictedToRole ) )
+        {
+            String strRole = getFilterRole( user );
+            strQuery = "(" + strQuery + " AND ( " + PARAMETER_SOLR_ROLE + ":" + strRole + " OR (*:* NOT " + PARAMETER_SOLR_ROLE + ":[* TO *])))";
+        }
+
+        return strQuery;
+    }
+
+    /**
+     * Returns true if the documents of a data layer must be filtered on the role of the user
+     * 
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the data layer is restricted to the role of the user
+     * @return true if the documents must be filtered
+     */
+    static boolean isRestrictedToRole( LuteceUser user, boolean bRestrictedToRole )
+    {
+        return bRestrictedToRole && user != null && user.getRoles( ) != null && user.getRoles( ).length > 0;
+    }
+
+    /**
+     * Returns the role on which the documents of the data layers restricted to the role of a user are filtered : the first role of the user. Anything
+     * cached from these documents must be keyed on this role, and not on the whole role set of the user
+     * 
+     * @param user
+     *            the user, may be null
+     * @return the role, or null if the documents are not filtered
+     */
+    public static String getFilterRole( LuteceUser user )
+    {
+        return isRestrictedToRole( user, true ) ? user.getRoles( ) [0] : null;
+    }
+
+    /**
+     * Returns the filter query matching the documents located in a bounding box. The shapes intersecting the box are matched on a RPT or BBox field, a
+     * range query is used on a point field
+     * 
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the filter query
+     */
+    public static String getViewportFilterQuery( double dWest, double dSouth, double dEast, double dNorth )
+    {
+        String strField = AppPropertiesService.getProperty( PROPERTY_VIEWPORT_SPATIAL_FIELD, DEFAULT_VIEWPORT_SPATIAL_FIELD );
+
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_VIEWPORT_SPATIAL_INTERSECTS, true ) )
+        {
+            return "{!field f=" + strField + "}Intersects(ENVELOPE(" + dWest + ", " + dEast + ", " + dNorth + ", " + dSouth + "))";
+        }
+
+        return strField + ":[" + dSouth + "," + dWest + " TO " + dNorth + "," + dEast + "]";
+    }
+
+    /**
+     * Returns true if the solr points of the maps are loaded by viewport instead of being inlined into the page. The viewport filter queries the
+     * spatial fields of the coordinates, so the mode also requires them to be indexed
+     * 
+     * @return true if the viewport mode is enabled
+     */
+    public static boolean isViewportEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_VIEWPORT_ENABLED, false ) && SolrCoordinateIndexer.isSpatialEnabled( );
+    }
+
+    /**
+     * Returns the points of the solr data layers of a map located in a bounding box
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the points
+     */
+    public static List<HashMap<String, Object>> loadPointsInViewport( MapTemplate map, LuteceUser user, double dWest, double dSouth, double dEast,
+            double dNorth )
+    {
+        return loadPointsInViewport( map, user, dWest, dSouth, dEast, dNorth, LevelOfDetailService.LEVEL_FULL_RESOLUTION );
+    }
+
+    /**
+     * Returns the points of the solr data layers of a map located in a bounding box, with the lines and polygons at the level of detail of a zoom
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @param nLodLevel
+     *            the level of detail, or LevelOfDetailService.LEVEL_FULL_RESOLUTION
+     * @return the points
+     */
+    public static List<HashMap<String, Object>> loadPointsInViewport( MapTemplate map, LuteceUser user, double dWest, double dSouth, double dEast,
+            double dNorth, int nLodLevel )
+    {
+        String strFilterQuery = getViewportFilterQuery( dWest, dSouth, dEast, dNorth );
+        int nlimit = AppPropertiesService.getPropertyInt( PROPERTY_VIEWPORT_LIMIT_RESULT_SOLR,
+                AppPropertiesService.getPropertyInt( PROPERTY_LIMIT_RESULT_SOLR, 100 ) );
+
+        List<HashMap<String, Object>> points = new ArrayList<>( );
+        loadDataLayersPoints( map, user, strFilterQuery, nlimit, nLodLevel, points );
+
+        return points;
+    }
+
+    /**
+     * Returns the points of a coordinate in the solr data layers of a map, with the popup of its data layer. Used by the vector tiles, which only hold
+     * the id of the coordinates
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param nIdCoordinate
+     *            the id of the coordinate
+     * @return the points, empty if the coordinate is not in a data layer of the map visible by the user
+     */
+    public static List<HashMap<String, Object>> loadPointsById( MapTemplate map, LuteceUser user, int nIdCoordinate )
+    {
+        String strFilterQuery = CartoSolrSearchService.FIELD_UID + ":"
+                + ClientUtils.escapeQueryChars( SolrCoordinateIndexQueue.getSolrUid( nIdCoordinate ) );
+
+        List<HashMap<String, Object>> points = new ArrayList<>( );
+        loadDataLayersPoints( map, user, strFilterQuery, 1, LevelOfDetailService.LEVEL_FULL_RESOLUTION, points );
+
+        return points;
+    }
+
+    /**
+     * Returns the points of all the solr data layers of a map. The data layers are queried concurrently and the points are returned in the order of the
+     * data layers : not searchable by others first, then searchable by others.
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents per data layer
+     * @param nLodLevel
+     *            the level of detail
+     * @param points
+     *            the list receiving the points
+     * @return true if all the data layers have been loaded, false if a data layer is missing after a timeout or an error
+     */
+    private static boolean loadDataLayersPoints( MapTemplate map, LuteceUser user, String strFilterQuery, int nLimit, int nLodLevel,
+            List<HashMap<String, Object>> points )
+    {
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_LOADER_GROUPED, false ) )
+        {
+            return loadDataLayersPointsGrouped( map, user, strFilterQuery, nLimit, nLodLevel, points );
+        }
+
+        List<Callable<List<HashMap<String, Object>>>> listTasks = new ArrayList<>( );
+        // the tasks run in the threads of the executor : the journal context of the request is handed over to them
+        QueryJournalService.Context context = QueryJournalService.getContext( ).withMap( map.getId( ) );
+
+        for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), false ) )
+        {
+            listTasks.add( ( ) -> loadDataLayerPoints( context, map, datalayer, user, true, strFilterQuery, nLimit, nLodLevel ) );
+        }
+        for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), true ) )
+        {
+            listTasks.add( ( ) -> loadDataLayerPoints( context, map, datalayer, user, false, strFilterQuery, nLimit, nLodLevel ) );
+        }
+
+        if ( listTasks.isEmpty( ) )
+        {
+            return true;
+        }
+
+        List<Future<List<HashMap<String, Object>>>> listFutures;
+        boolean bComplete = true;
+
+        try
+        {
+            listFutures = DataLayerExecutorService.getExecutor( ).invokeAll( listTasks, DataLayerExecutorService.getTimeout( ), TimeUnit.MILLISECONDS );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread( ).interrupt( );
+            AppLogService.error( "CartographyService: loading of the data layers of the map " + map.getId( ) + " interrupted", e );
+
+            return false;
+        }
+
+        for ( Future<List<HashMap<String, Object>>> future : listFutures )
+        {
+            try
+            {
+                points.addAll( future.get( ) );
+            }
+            catch( CancellationException e )
+            {
+                bComplete = false;
+                AppLogService.error( "CartographyService: timeout while loading a data layer of the map " + map.getId( ) );
+            }
+            catch( ExecutionException e )
+            {
+                bComplete = false;
+                AppLogService.error( "CartographyService: error while loading a data layer of the map " + map.getId( ), e.getCause( ) );
+            }
+            catch( InterruptedException e )
+            {
+                bComplete = false;
+                Thread.currentThread( ).interrupt( );
+                AppLogService.error( "CartographyService: loading of the data layers of the map " + map.getId( ) + " interrupted", e );
+            }
+        }
+
+        return bComplete;
+    }
+
+    /**
+     * Returns the points of all the solr data layers of a map with a single grouped solr query, one group per data layer
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents per data layer
+     * @param nLodLevel
+     *            the level of detail
+     * @param points
+     *            the list receiving the points
+     * @return true if the data layers have been loaded, false if the grouped query failed
+     */
+    private static boolean loadDataLayersPointsGrouped( MapTemplate map, LuteceUser user, String strFilterQuery, int nLimit, int nLodLevel,
+            List<HashMap<String, Object>> points )
+    {
+        List<DataLayer> listDataLayers = new ArrayList<>( );
+        List<String> listGroupQueries = new ArrayList<>( );
+
+        for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), false ) )
+        {
+            listDataLayers.add( datalayer );
+            listGroupQueries.add( getDataLayerQuery( datalayer, user, true ) );
+        }
+        for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), true ) )
+        {
+            listDataLayers.add( datalayer );
+            listGroupQueries.add( getDataLayerQuery( datalayer, user, false ) );
+        }
+
+        if ( listDataLayers.isEmpty( ) )
+        {
+            return true;
+        }
+
+        QueryJournalService.Context context = QueryJournalService.getContext( ).withMap( map.getId( ) );
+        List<List<SolrSearchResult>> listResultsByDataLayer;
+
+        try ( QueryJournalService.Scope scope = QueryJournalService.open( context.withDataLayer( MapMetrics.DATA_LAYER_GROUPED ) ) )
+        {
+            long lStart = System.nanoTime( );
+            String strLodField = ( nLodLevel != LevelOfDetailService.LEVEL_FULL_RESOLUTION ) ? LevelOfDetailService.getFieldName( nLodLevel ) : null;
+            listResultsByDataLayer = CartoSolrSearchService.searchGrouped( listGroupQueries, strFilterQuery, nLimit, strLodField );
+            MapMetrics.SOLR_QUERY.labels( MapMetrics.DATA_LAYER_GROUPED ).observeSince( lStart );
+        }
+
+        if ( listResultsByDataLayer == null )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < listDataLayers.size( ); i++ )
+        {
+            DataLayer datalayer = listDataLayers.get( i );
+            List<SolrSearchResult> listResultsGeoloc = listResultsByDataLayer.get( i );
+            MapMetrics.SOLR_DOCUMENTS.labels( MapMetrics.getLabel( datalayer ) ).observe( listResultsGeoloc.size( ) );
+            Optional<DataLayerMapTemplate> dataLayerMapTemplate = CartoReferenceCacheService.getInstance( ).getDataLayerMapTemplate( map.getId( ), datalayer.getId( ) );
+
+            try ( QueryJournalService.Scope scope = QueryJournalService.open( context.withDataLayer( MapMetrics.getLabel( datalayer ) ) ) )
+            {
+                points.addAll( CartographyService.getGeolocModel( listResultsGeoloc, datalayer, dataLayerMapTemplate.get( ) ) );
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the points of a data layer of a map
+     * 
+     * @param context
+     *            the journal context of the request
+     * @param map
+     *            the map
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the documents must be filtered on the first role of the user
+     * @param strFilterQuery
+     *            an additional filter query, may be null
+     * @param nLimit
+     *            the maximum number of documents
+     * @param nLodLevel
+     *            the level of detail
+     * @return the points
+     */
+    private static List<HashMap<String, Object>> loadDataLayerPoints( QueryJournalService.Context context, MapTemplate map, DataLayer datalayer,
+            LuteceUser user, boolean bRestrictedToRole, String strFilterQuery, int nLimit, int nLodLevel )
+    {
+        try ( QueryJournalService.Scope scope = QueryJournalService.open( context.withDataLayer( MapMetrics.getLabel( datalayer ) ) ) )
+        {
+            List<SolrSearchResult> listResultsGeoloc = searchDataLayer( datalayer, user, bRestrictedToRole, strFilterQuery, nLimit, nLodLevel );
+            Optional<DataLayerMapTemplate> dataLayerMapTemplate = CartoReferenceCacheService.getInstance( ).getDataLayerMapTemplate( map.getId( ),
+                    datalayer.getId( ) );
+
+            return CartographyService.getGeolocModel( listResultsGeoloc, datalayer, dataLayerMapTemplate.get( ) );
+        }
+    }
+
     /**
      * load model carto into the map
      * 
@@ -294,48 +956,60 @@ public class CartographyService
      */
     public static void loadMapAndPoints( MapTemplate map, Map<String, Object> model, LuteceUser user )
     {
-        SolrSearchEngine engine = SolrSearchEngine.getInstance( );
+        long lStart = System.nanoTime( );
+        model.putAll( MapModelCacheService.getInstance( ).getMapModel( map, user ) );
+        MapMetrics.MAP_LOAD.labels( ).observeSince( lStart );
+    }
 
+    /**
+     * Build the model of a map, without using the map model cache
+     * 
+     * @param map
+     *            the map
+     * @param model
+     *            the model to fill
+     * @param user
+     *            the user, may be null
+     * @return true if the model is complete, false if a data layer is missing after a timeout or a solr error
+     */
+    static boolean buildMapModel( MapTemplate map, Map<String, Object> model, LuteceUser user )
+    {
+        long lStart = System.nanoTime( );
         List<HashMap<String, Object>> points = new ArrayList<HashMap<String, Object>>( );
-        List<DataLayer> lstDatalayerSearchableByOthers = DataLayerMapTemplateHome.getDataLayerListByMapTemplateId( map.getId( ), true );
-        List<DataLayer> lstDatalayerNotSearchableByOthers = DataLayerMapTemplateHome.getDataLayerListByMapTemplateId( map.getId( ), false );
         Optional<DataLayer> dataLayerEditable = DataLayerHome.findDataLayerFromMapId( map.getId( ), true, false, false );
-        int nlimit = AppPropertiesService.getPropertyInt( PROPERTY_LIMIT_RESULT_SOLR, 100 );
-
-        for ( DataLayer datalayer : lstDatalayerNotSearchableByOthers )
-        {
-        	List<SolrSearchResult> listResultsGeoloc = null;
-        	if ( user != null && user.getRoles() != null && user.getRoles().length > 0) {
-        		String strRole = user.getRoles()[0];
-        		String[] strQuerySolr = {"(" + PARAMETER_SOLR_GEOJSON + ":" + datalayer.getSolrTag( ) +" AND ( " + PARAMETER_SOLR_ROLE + ":"+strRole+ " OR (*:* NOT " + PARAMETER_SOLR_ROLE + ":[* TO *])))"};
-        		listResultsGeoloc = engine.getGeolocSearchResults( "*:*", strQuerySolr, nlimit );
-        	}
-        	else
-        	{
-        		listResultsGeoloc = engine.getGeolocSearchResults( PARAMETER_SOLR_GEOJSON + ":" + datalayer.getSolrTag( ), null, nlimit );
-        	}
-            Optional<DataLayerMapTemplate> dataLayerMapTemplate = DataLayerMapTemplateHome.findByIdMapKeyIdDataLayerKey( map.getId( ), datalayer.getId( ) );
-            points.addAll( CartographyService.getGeolocModel( listResultsGeoloc, datalayer, dataLayerMapTemplate.get( ) ) );
-        }
-        for ( DataLayer datalayer : lstDatalayerSearchableByOthers )
-        {
-        	List<SolrSearchResult> listResultsGeoloc = null;
-        	listResultsGeoloc = engine.getGeolocSearchResults( PARAMETER_SOLR_GEOJSON + ":" + datalayer.getSolrTag( ), null, nlimit );
-            Optional<DataLayerMapTemplate> dataLayerMapTemplate = DataLayerMapTemplateHome.findByIdMapKeyIdDataLayerKey( map.getId( ), datalayer.getId( ) );
-            points.addAll( CartographyService.getGeolocModel( listResultsGeoloc, datalayer, dataLayerMapTemplate.get( ) ) );
+        MapMetrics.DB_CALL.labels( "datalayer_editable" ).observeSince( lStart );
+        boolean bViewportEnabled = isViewportEnabled( );
+        boolean bComplete = true;
+
+        // In viewport mode the solr points are requested by the page for the visible area only
+        if ( !bViewportEnabled )
+        {
+            int nlimit = AppPropertiesService.getPropertyInt( PROPERTY_LIMIT_RESULT_SOLR, 100 );
+            bComplete = loadDataLayersPoints( map, user, null, nlimit, LevelOfDetailService.LEVEL_FULL_RESOLUTION, points );
         }
         points.addAll( CartographyService.getWFSFluxModel( map.getId( ) ) );
 
         model.put( CartographyService.MARK_POINTS, points );
         model.put( CartographyService.MARK_MAP, map );
-        model.put( MARK_BASEMAP, BasemapHome.findByPrimaryKey( Integer.valueOf( map.getMapBackground( ) ) ).get( ).getUrl( ) );
-        model.put( MARK_BASEMAP_TITLE, BasemapHome.findByPrimaryKey( Integer.valueOf( map.getMapBackground( ) ) ).get( ).getTitle( ) );
-        model.put( MARK_BASEMAP_ATTRIBUTION, BasemapHome.findByPrimaryKey( Integer.valueOf( map.getMapBackground( ) ) ).get( ).getAttribution( ) );
+        Basemap basemap = CartoReferenceCacheService.getInstance( ).getBasemap( Integer.valueOf( map.getMapBackground( ) ) ).get( );
+        model.put( MARK_BASEMAP, basemap.getUrl( ) );
+        model.put( MARK_BASEMAP_TITLE, basemap.getTitle( ) );
+        model.put( MARK_BASEMAP_ATTRIBUTION, basemap.getAttribution( ) );
         model.put( MARK_LIMIT_VERTEX, AppPropertiesService.getProperty( PROPERTY_LIMIT_VERTEX ) );
+        model.put( MARK_VIEWPORT_ENABLED, bViewportEnabled );
+        model.put( MARK_CLUSTER_ENABLED, ClusterService.isClusterEnabled( ) );
+        model.put( MARK_CLUSTER_MAX_ZOOM, ClusterService.getClusterMaxZoom( ) );
+        model.put( MARK_TILES_ENABLED, VectorTileService.isTileEnabled( ) );
+        model.put( MARK_TILES_SCRIPT_URL, VectorTileService.getScriptUrl( ) );
+        model.put( MARK_TILES_VERSION, String.valueOf( MapModelCacheService.getInstance( ).getVersion( ) ) );
+        model.put( MARK_WFS_PROXY_ENABLED, WfsProxyService.isProxyEnabled( ) );
         if ( dataLayerEditable.isPresent( ) )
         {
             model.put( CartographyService.MARK_LAYER_EDITABLE, dataLayerEditable.get( ) );
         }
+        MapMetrics.MAP_MODEL_BUILD.labels( ).observeSince( lStart );
+
+        return bComplete;
     }
 
 }
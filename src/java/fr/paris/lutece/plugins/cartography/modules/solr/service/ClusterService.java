@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.CartoSolrItem;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MapMetrics;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Server side clustering of the solr data layers of a map : the documents located in the viewport are counted per cell of a Solr heatmap, so that low
+ * zoom levels receive a few clusters instead of every feature
+ */
+public final class ClusterService
+{
+    public static final String KEY_DATA_LAYER = "dataLayer";
+    public static final String KEY_ID_DATA_LAYER = "idDataLayer";
+    public static final String KEY_CLUSTERS = "clusters";
+    public static final String KEY_COUNT = "count";
+    public static final String KEY_LAT = "lat";
+    public static final String KEY_LON = "lon";
+    public static final String KEY_BBOX = "bbox";
+
+    private static final String PROPERTY_CLUSTER_ENABLED = "map.cluster.enabled";
+    private static final String PROPERTY_CLUSTER_MAX_ZOOM = "map.cluster.max.zoom";
+    private static final String PROPERTY_CLUSTER_FIELD = "map.cluster.field";
+    private static final String PROPERTY_CLUSTER_DIST_ERR_PCT = "map.cluster.distErrPct";
+    private static final int DEFAULT_CLUSTER_MAX_ZOOM = 15;
+    private static final double DEFAULT_CLUSTER_DIST_ERR_PCT = 0.05;
+
+    /**
+     * Private constructor
+     */
+    private ClusterService( )
+    {
+    }
+
+    /**
+     * Returns true if the clusters are computed by the server. The clusters are only used with the viewport loading
+     * 
+     * @return true if the clusters are computed by the server
+     */
+    public static boolean isClusterEnabled( )
+    {
+        return CartographyService.isViewportEnabled( ) && AppPropertiesService.getPropertyBoolean( PROPERTY_CLUSTER_ENABLED, false );
+    }
+
+    /**
+     * Returns the zoom from which the individual features are loaded instead of the clusters
+     * 
+     * @return the zoom
+     */
+    public static int getClusterMaxZoom( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_CLUSTER_MAX_ZOOM, DEFAULT_CLUSTER_MAX_ZOOM );
+    }
+
+    /**
+     * Returns the clusters of the solr data layers of a map located in a bounding box
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the clusters of each data layer
+     */
+    public static List<Map<String, Object>> getClusters( MapTemplate map, LuteceUser user, double dWest, double dSouth, double dEast, double dNorth )
+    {
+        List<Map<String, Object>> listDataLayers = new ArrayList<>( );
+
+        try ( QueryJournalService.Scope scope = QueryJournalService.openMap( map.getId( ) ) )
+        {
+            for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), false ) )
+            {
+                listDataLayers.add( getDataLayerClusters( datalayer, user, true, dWest, dSouth, dEast, dNorth ) );
+            }
+            for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), true ) )
+            {
+                listDataLayers.add( getDataLayerClusters( datalayer, user, false, dWest, dSouth, dEast, dNorth ) );
+            }
+        }
+
+        return listDataLayers;
+    }
+
+    /**
+     * Returns the clusters of a data layer located in a bounding box
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the user, may be null
+     * @param bRestrictedToRole
+     *            true if the documents must be filtered on the first role of the user
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the clusters of the data layer
+     */
+    private static Map<String, Object> getDataLayerClusters( DataLayer datalayer, LuteceUser user, boolean bRestrictedToRole, double dWest,
+            double dSouth, double dEast, double dNorth )
+    {
+        Map<String, Object> mapDataLayer = new HashMap<>( );
+        List<Map<String, Object>> listClusters = new ArrayList<>( );
+        mapDataLayer.put( KEY_DATA_LAYER, datalayer.getTitle( ) );
+        mapDataLayer.put( KEY_ID_DATA_LAYER, datalayer.getId( ) );
+        mapDataLayer.put( KEY_CLUSTERS, listClusters );
+
+        String strQuery = CartographyService.getDataLayerQuery( datalayer, user, bRestrictedToRole );
+        List<String> listFilterQueries = new ArrayList<>( );
+
+        if ( CartographyService.isRestrictedToRole( user, bRestrictedToRole ) )
+        {
+            listFilterQueries.add( strQuery );
+            strQuery = "*:*";
+        }
+
+        try ( QueryJournalService.Scope scope = QueryJournalService.openDataLayer( MapMetrics.getLabel( datalayer ) ) )
+        {
+            HeatmapGrid grid = CartoSolrSearchService.searchHeatmap( strQuery, listFilterQueries,
+                    AppPropertiesService.getProperty( PROPERTY_CLUSTER_FIELD, CartoSolrItem.FIELD_SHAPE ), dWest, dSouth, dEast, dNorth,
+                    getDistErrPct( ) );
+
+            if ( grid == null )
+            {
+                return mapDataLayer;
+            }
+
+            for ( int nRow = 0; nRow < grid.getRows( ); nRow++ )
+            {
+                for ( int nColumn = 0; nColumn < grid.getColumns( ); nColumn++ )
+                {
+                    int nCount = grid.getCount( nRow, nColumn );
+
+                    if ( nCount > 0 )
+                    {
+                        double [ ] cellBbox = grid.getCellBbox( nRow, nColumn );
+                        Map<String, Object> cluster = new HashMap<>( );
+                        cluster.put( KEY_COUNT, nCount );
+                        cluster.put( KEY_LAT, ( cellBbox [1] + cellBbox [3] ) / 2 );
+                        cluster.put( KEY_LON, ( cellBbox [0] + cellBbox [2] ) / 2 );
+                        cluster.put( KEY_BBOX, cellBbox );
+                        listClusters.add( cluster );
+                    }
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "ClusterService: error while computing the clusters of the data layer " + datalayer.getId( ), e );
+        }
+
+        return mapDataLayer;
+    }
+
+    /**
+     * Returns the size of the cells, as a fraction of the size of the viewport
+     * 
+     * @return the size of the cells
+     */
+    private static double getDistErrPct( )
+    {
+        String strDistErrPct = AppPropertiesService.getProperty( PROPERTY_CLUSTER_DIST_ERR_PCT );
+
+        try
+        {
+            return ( strDistErrPct != null ) ? Double.parseDouble( strDistErrPct ) : DEFAULT_CLUSTER_DIST_ERR_PCT;
+        }
+        catch( NumberFormatException e )
+        {
+            return DEFAULT_CLUSTER_DIST_ERR_PCT;
+        }
+    }
+}
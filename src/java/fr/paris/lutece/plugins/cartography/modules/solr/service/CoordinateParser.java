@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.text.ParseException;
+
+/**
+ * Single pass parser of the coordinates posted by the map forms, formatted as x,y;x,y;... The numbers are read in place, without splitting the string
+ * nor boxing the values. Blanks around the numbers and a trailing separator are accepted
+ */
+public final class CoordinateParser
+{
+    private static final char SEPARATOR_POSITION = ';';
+    private static final char SEPARATOR_VALUE = ',';
+
+    // Largest mantissa and power of ten exactly represented by a double : their quotient is then correctly rounded
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double [ ] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Private constructor
+     */
+    private CoordinateParser( )
+    {
+    }
+
+    /**
+     * Parses a list of positions
+     * 
+     * @param strCoordinates
+     *            the positions, formatted as x,y;x,y;...
+     * @return the positions
+     * @throws ParseException
+     *             if the positions are malformed, with the offset of the first invalid character
+     */
+    public static CoordinateSequence parse( CharSequence strCoordinates ) throws ParseException
+    {
+        CoordinateSequence sequence = new CoordinateSequence( strCoordinates.length( ) / 16 + 1 );
+        Cursor cursor = new Cursor( strCoordinates );
+
+        cursor.skipBlanks( );
+        while ( !cursor.isAtEnd( ) )
+        {
+            double dX = parseNumber( cursor );
+            cursor.skipBlanks( );
+            cursor.expect( SEPARATOR_VALUE );
+            cursor.skipBlanks( );
+            double dY = parseNumber( cursor );
+            sequence.add( dX, dY );
+            cursor.skipBlanks( );
+
+            if ( !cursor.isAtEnd( ) )
+            {
+                cursor.expect( SEPARATOR_POSITION );
+                cursor.skipBlanks( );
+            }
+        }
+
+        if ( sequence.size( ) == 0 )
+        {
+            throw new ParseException( "No coordinates", 0 );
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Parses a decimal number. The common case of at most 15 or 16 significant digits without exponent is computed exactly from the digits, the other
+     * numbers are delegated to Double.parseDouble
+     * 
+     * @param cursor
+     *            the cursor, positioned on the number
+     * @return the number
+     * @throws ParseException
+     *             if there is no valid number at the cursor
+     */
+    private static double parseNumber( Cursor cursor ) throws ParseException
+    {
+        CharSequence chars = cursor._chars;
+        int nStart = cursor._nOffset;
+        int nOffset = nStart;
+        int nLength = chars.length( );
+        boolean bNegative = false;
+
+        if ( nOffset < nLength && ( chars.charAt( nOffset ) == '-' || chars.charAt( nOffset ) == '+' ) )
+        {
+            bNegative = chars.charAt( nOffset ) == '-';
+            nOffset++;
+        }
+
+        long lMantissa = 0;
+        int nDigits = 0;
+        int nFractionDigits = 0;
+        boolean bExact = true;
+        boolean bFraction = false;
+
+        for ( ; nOffset < nLength; nOffset++ )
+        {
+            char c = chars.charAt( nOffset );
+
+            if ( c >= '0' && c <= '9' )
+            {
+                nDigits++;
+                if ( lMantissa < MAX_EXACT_MANTISSA / 10 )
+                {
+                    lMantissa = lMantissa * 10 + ( c - '0' );
+                    if ( bFraction )
+                    {
+                        nFractionDigits++;
+                    }
+                }
+                else
+                {
+                    bExact = false;
+                }
+            }
+            else
+                if ( c == '.' && !bFraction )
+                {
+                    bFraction = true;
+                }
+                else
+                    if ( c == 'e' || c == 'E' )
+                    {
+                        bExact = false;
+                        nOffset = skipExponent( chars, nOffset + 1 );
+                        break;
+                    }
+                    else
+                    {
+                        break;
+                    }
+        }
+
+        if ( nDigits == 0 )
+        {
+            throw new ParseException( "Number expected", nStart );
+        }
+
+        cursor._nOffset = nOffset;
+
+        if ( bExact && nFractionDigits < POWERS_OF_TEN.length )
+        {
+            double dValue = lMantissa / POWERS_OF_TEN [nFractionDigits];
+
+            return bNegative ? -dValue : dValue;
+        }
+
+        try
+        {
+            return Double.parseDouble( chars.subSequence( nStart, nOffset ).toString( ) );
+        }
+        catch( NumberFormatException e )
+        {
+            throw new ParseException( "Invalid number", nStart );
+        }
+    }
+
+    /**
+     * Skips the exponent of a number
+     * 
+     * @param chars
+     *            the characters
+     * @param nOffset
+     *            the offset following the exponent marker
+     * @return the offset following the exponent
+     */
+    private static int skipExponent( CharSequence chars, int nOffset )
+    {
+        int nEnd = nOffset;
+
+        if ( nEnd < chars.length( ) && ( chars.charAt( nEnd ) == '-' || chars.charAt( nEnd ) == '+' ) )
+        {
+            nEnd++;
+        }
+        while ( nEnd < chars.length( ) && chars.charAt( nEnd ) >= '0' && chars.charAt( nEnd ) <= '9' )
+        {
+            nEnd++;
+        }
+
+        return nEnd;
+    }
+
+    /**
+     * Position in the parsed characters
+     */
+    private static final class Cursor
+    {
+        private final CharSequence _chars;
+        private int _nOffset;
+
+        /**
+         * Constructor
+         * 
+         * @param chars
+         *            the characters
+         */
+        private Cursor( CharSequence chars )
+        {
+            _chars = chars;
+        }
+
+        /**
+         * @return true if all the characters have been read
+         */
+        private boolean isAtEnd( )
+        {
+            return _nOffset >= _chars.length( );
+        }
+
+        /**
+         * Skips the blank characters
+         */
+        private void skipBlanks( )
+        {
+            while ( _nOffset < _chars.length( ) && Character.isWhitespace( _chars.charAt( _nOffset ) ) )
+            {
+                _nOffset++;
+            }
+        }
+
+        /**
+         * Reads an expected character
+         * 
+         * @param c
+         *            the character
+         * @throws ParseException
+         *             if the current character is not the expected one
+         */
+        private void expect( char c ) throws ParseException
+        {
+            if ( isAtEnd( ) || _chars.charAt( _nOffset ) != c )
+            {
+                throw new ParseException( "'" + c + "' expected", _nOffset );
+            }
+            _nOffset++;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.Arrays;
+
+/**
+ * Growable sequence of two dimensional positions stored in a single primitive array as x0, y0, x1, y1...
+ */
+public final class CoordinateSequence
+{
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private double [ ] _coordinates;
+    private int _nSize;
+
+    /**
+     * Constructor
+     */
+    public CoordinateSequence( )
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param nCapacity
+     *            the initial number of positions
+     */
+    public CoordinateSequence( int nCapacity )
+    {
+        _coordinates = new double [ Math.max( 1, nCapacity ) * 2];
+    }
+
+    /**
+     * Add a position
+     * 
+     * @param dX
+     *            the x, or longitude
+     * @param dY
+     *            the y, or latitude
+     */
+    public void add( double dX, double dY )
+    {
+        if ( _nSize + 2 > _coordinates.length )
+        {
+            _coordinates = Arrays.copyOf( _coordinates, _coordinates.length * 2 );
+        }
+        _coordinates [_nSize++] = dX;
+        _coordinates [_nSize++] = dY;
+    }
+
+    /**
+     * Returns the number of positions
+     * 
+     * @return the number of positions
+     */
+    public int size( )
+    {
+        return _nSize / 2;
+    }
+
+    /**
+     * Returns the x of a position
+     * 
+     * @param nIndex
+     *            the index of the position
+     * @return the x
+     */
+    public double getX( int nIndex )
+    {
+        return _coordinates [2 * nIndex];
+    }
+
+    /**
+     * Returns the y of a position
+     * 
+     * @param nIndex
+     *            the index of the position
+     * @return the y
+     */
+    public double getY( int nIndex )
+    {
+        return _coordinates [2 * nIndex + 1];
+    }
+
+    /**
+     * Returns true if the last position is equal to the first one
+     * 
+     * @return true if the sequence is closed
+     */
+    public boolean isClosed( )
+    {
+        return _nSize >= 4 && _coordinates [0] == _coordinates [_nSize - 2] && _coordinates [1] == _coordinates [_nSize - 1];
+    }
+
+    /**
+     * Returns the positions as GeoJSON positions
+     * 
+     * @return the positions, as [x, y] arrays
+     */
+    public double [ ] [ ] toPositions( )
+    {
+        return toPositions( false );
+    }
+
+    /**
+     * Returns the positions as a closed GeoJSON ring : the first position is repeated at the end if the sequence is not already closed
+     * 
+     * @return the positions, as [x, y] arrays
+     */
+    public double [ ] [ ] toRing( )
+    {
+        return toPositions( !isClosed( ) && _nSize > 0 );
+    }
+
+    /**
+     * Returns the positions as GeoJSON positions
+     * 
+     * @param bRepeatFirst
+     *            true if the first position must be added at the end
+     * @return the positions, as [x, y] arrays
+     */
+    private double [ ] [ ] toPositions( boolean bRepeatFirst )
+    {
+        int nPoints = size( );
+        double [ ] [ ] positions = new double [ bRepeatFirst ? nPoints + 1 : nPoints] [ ];
+
+        for ( int i = 0; i < nPoints; i++ )
+        {
+            positions [i] = new double [ ] {
+                    _coordinates [2 * i], _coordinates [2 * i + 1]
+            };
+        }
+        if ( bRepeatFirst )
+        {
+            positions [nPoints] = positions [0];
+        }
+
+        return positions;
+    }
+}
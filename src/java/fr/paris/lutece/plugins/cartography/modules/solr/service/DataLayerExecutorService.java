@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Bounded executor used to query the data layers of a map concurrently
+ */
+public final class DataLayerExecutorService
+{
+    private static final String PROPERTY_THREADS = "map.loader.threads";
+    private static final String PROPERTY_VIRTUAL_THREADS = "map.loader.virtualThreads";
+    private static final String PROPERTY_TIMEOUT = "map.loader.timeout";
+    private static final int DEFAULT_THREADS = 8;
+    private static final long DEFAULT_TIMEOUT = 10000L;
+    private static final String THREAD_NAME_PREFIX = "cartography-solr-loader-";
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+
+    private static ExecutorService _executor;
+
+    /**
+     * Private constructor
+     */
+    private DataLayerExecutorService( )
+    {
+    }
+
+    /**
+     * Returns the executor, created at first use
+     * 
+     * @return the executor
+     */
+    public static synchronized ExecutorService getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            int nThreads = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) );
+            _executor = Executors.newFixedThreadPool( nThreads, getThreadFactory( ) );
+        }
+
+        return _executor;
+    }
+
+    /**
+     * Stops the executor, waiting for the running loads to end. A new executor is created if the service is used again afterwards
+     */
+    public static void shutdown( )
+    {
+        ExecutorService executor;
+
+        synchronized( DataLayerExecutorService.class )
+        {
+            executor = _executor;
+            _executor = null;
+        }
+
+        if ( executor != null )
+        {
+            shutdown( executor, THREAD_NAME_PREFIX );
+        }
+    }
+
+    /**
+     * Stops an executor of the module : the running tasks are given a few seconds to end, then interrupted
+     * 
+     * @param executor
+     *            the executor
+     * @param strName
+     *            the name of the executor, for the logs
+     */
+    public static void shutdown( ExecutorService executor, String strName )
+    {
+        executor.shutdown( );
+
+        try
+        {
+            if ( !executor.awaitTermination( SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS ) )
+            {
+                AppLogService.info( "The tasks of the executor " + strName + " did not end in time, they are interrupted" );
+                executor.shutdownNow( );
+            }
+        }
+        catch( InterruptedException e )
+        {
+            executor.shutdownNow( );
+            Thread.currentThread( ).interrupt( );
+        }
+    }
+
+    /**
+     * Returns the maximum time allowed to load all the data layers of a map
+     * 
+     * @return the timeout in milliseconds
+     */
+    public static long getTimeout( )
+    {
+        return AppPropertiesService.getPropertyLong( PROPERTY_TIMEOUT, DEFAULT_TIMEOUT );
+    }
+
+    /**
+     * Returns a virtual thread factory when the JVM provides one, a daemon platform thread factory otherwise
+     * 
+     * @return the thread factory
+     */
+    private static ThreadFactory getThreadFactory( )
+    {
+        if ( AppPropertiesService.getPropertyBoolean( PROPERTY_VIRTUAL_THREADS, true ) )
+        {
+            try
+            {
+                Method methodOfVirtual = Thread.class.getMethod( "ofVirtual" );
+                Object builder = methodOfVirtual.invoke( null );
+                Method methodFactory = Class.forName( "java.lang.Thread$Builder" ).getMethod( "factory" );
+
+                return (ThreadFactory) methodFactory.invoke( builder );
+            }
+            catch( ReflectiveOperationException e )
+            {
+                AppLogService.debug( "Virtual threads are not available, platform threads are used to load the data layers" );
+            }
+        }
+
+        AtomicInteger nThreadNumber = new AtomicInteger( );
+
+        return runnable -> {
+            Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + nThreadNumber.incrementAndGet( ) );
+            thread.setDaemon( true );
+
+            return thread;
+        };
+    }
+}
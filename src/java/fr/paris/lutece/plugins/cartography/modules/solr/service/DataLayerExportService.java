@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.LongConsumer;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoSolrSearchService.DocumentHandler;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MapMetrics;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+
+/**
+ * Export of the features of a data layer as a GeoJSON FeatureCollection
+ */
+public final class DataLayerExportService
+{
+    private static final String FIELD_DATA_LAYER = "DataLayer" + SolrItem.DYNAMIC_TEXT_FIELD_SUFFIX;
+    private static final String FIELD_LIST_GEOJSON = CartoSolrSearchService.FIELD_UID + ",*" + SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX;
+    private static final String FEATURE_SEPARATOR = "," + System.lineSeparator( );
+
+    /**
+     * Source of the documents of an export
+     */
+    @FunctionalInterface
+    public interface DocumentSource
+    {
+        /**
+         * Reads all the documents
+         * 
+         * @param handler
+         *            the handler of each document
+         * @throws IOException
+         *             if the documents cannot be read
+         */
+        void forEachDocument( DocumentHandler handler ) throws IOException;
+    }
+
+    /**
+     * Private constructor
+     */
+    private DataLayerExportService( )
+    {
+    }
+
+    /**
+     * Writes all the features of a data layer to a file. The features are read from Solr page by page and written as they come, so the memory used
+     * does not depend on the size of the layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param path
+     *            the file to write
+     * @return the number of features written
+     * @throws IOException
+     *             if the features cannot be read or written
+     */
+    public static long exportGeoJson( DataLayer datalayer, Path path ) throws IOException
+    {
+        return exportGeoJson( datalayer, path, lExported -> {
+        } );
+    }
+
+    /**
+     * Writes all the features of a data layer to a file, reporting the progress
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param path
+     *            the file to write
+     * @param progress
+     *            receives the number of features written after each feature
+     * @return the number of features written
+     * @throws IOException
+     *             if the features cannot be read or written
+     */
+    public static long exportGeoJson( DataLayer datalayer, Path path, LongConsumer progress ) throws IOException
+    {
+        try ( Writer writer = Files.newBufferedWriter( path, StandardCharsets.UTF_8 ) )
+        {
+            return exportGeoJson( datalayer, writer, progress );
+        }
+    }
+
+    /**
+     * Returns the number of indexed documents of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @return the number of documents
+     * @throws IOException
+     *             if the count fails
+     */
+    public static long countDocuments( DataLayer datalayer ) throws IOException
+    {
+        return CartoSolrSearchService.count( getQuery( datalayer ) );
+    }
+
+    /**
+     * Writes all the features of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param writer
+     *            the writer
+     * @param progress
+     *            receives the number of features written after each feature
+     * @return the number of features written
+     * @throws IOException
+     *             if the features cannot be read or written
+     */
+    public static long exportGeoJson( DataLayer datalayer, Writer writer, LongConsumer progress ) throws IOException
+    {
+        long lStart = System.nanoTime( );
+        CountingWriter countingWriter = new CountingWriter( writer );
+        long lFeatures = writeFeatureCollection( datalayer.getTitle( ),
+                handler -> CartoSolrSearchService.forEachDocument( getQuery( datalayer ), FIELD_LIST_GEOJSON, handler ), countingWriter, progress );
+
+        String strLabel = MapMetrics.getLabel( datalayer );
+        MapMetrics.EXPORT.labels( strLabel ).observeSince( lStart );
+        MapMetrics.EXPORT_FEATURES.labels( strLabel ).inc( lFeatures );
+        MapMetrics.EXPORT_BYTES.labels( strLabel ).inc( countingWriter.getCount( ) );
+
+        return lFeatures;
+    }
+
+    /**
+     * Writes the GeoJSON fields of documents as a FeatureCollection
+     * 
+     * @param strTitle
+     *            the name of the FeatureCollection, may be null
+     * @param source
+     *            the documents
+     * @param writer
+     *            the writer
+     * @param progress
+     *            receives the number of features written after each feature
+     * @return the number of features written
+     * @throws IOException
+     *             if the features cannot be read or written
+     */
+    public static long writeFeatureCollection( String strTitle, DocumentSource source, Writer writer, LongConsumer progress ) throws IOException
+    {
+        writer.write( "{\n   \"type\":\"FeatureCollection\",\n   \"name\":\"" );
+        writer.write( JsonStringEncoder.getInstance( ).quoteAsString( ( strTitle != null ) ? strTitle : "" ) );
+        writer.write( "\",\n   \"crs\":{\n      \"type\":\"name\",\n      \"properties\":{\n         \"name\":\"urn:ogc:def:crs:OGC:1.3:CRS84\"\n"
+                + "      }\n   },\n   \"features\":[" );
+
+        long [ ] features = new long [ 1];
+        source.forEachDocument( document -> {
+            for ( String strField : document.getFieldNames( ) )
+            {
+                Object value = document.getFieldValue( strField );
+
+                if ( strField.endsWith( SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX ) && value instanceof String )
+                {
+                    if ( features [0] > 0 )
+                    {
+                        writer.write( FEATURE_SEPARATOR );
+                    }
+                    writer.write( (String) value );
+                    progress.accept( ++features [0] );
+                }
+            }
+        } );
+
+        writer.write( System.lineSeparator( ) );
+        writer.write( "] }" );
+
+        return features [0];
+    }
+
+    /**
+     * Returns the query of the documents of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @return the query
+     */
+    private static String getQuery( DataLayer datalayer )
+    {
+        return FIELD_DATA_LAYER + ":" + datalayer.getSolrTag( );
+    }
+
+    /**
+     * Writer counting the characters written
+     */
+    private static final class CountingWriter extends FilterWriter
+    {
+        private long _lCount;
+
+        CountingWriter( Writer writer )
+        {
+            super( writer );
+        }
+
+        @Override
+        public void write( int c ) throws IOException
+        {
+            super.write( c );
+            _lCount++;
+        }
+
+        @Override
+        public void write( char [ ] cbuf, int nOffset, int nLength ) throws IOException
+        {
+            super.write( cbuf, nOffset, nLength );
+            _lCount += nLength;
+        }
+
+        @Override
+        public void write( String str, int nOffset, int nLength ) throws IOException
+        {
+            super.write( str, nOffset, nLength );
+            _lCount += nLength;
+        }
+
+        long getCount( )
+        {
+            return _lCount;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.business.ExportJob;
+import fr.paris.lutece.plugins.cartography.modules.solr.business.TemporaryFileExtract;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MapMetrics;
+import fr.paris.lutece.plugins.filegenerator.service.TemporaryFileGeneratorService;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Runs the exports of data layers in background jobs, on a bounded pool of workers. Each job writes its own file, which is then delivered through the
+ * TemporaryFileGeneratorService
+ */
+public final class ExportJobService
+{
+    private static final String PROPERTY_THREADS = "map.export.threads";
+    private static final String PROPERTY_QUEUE_SIZE = "map.export.queue.size";
+    private static final String PROPERTY_RETENTION = "map.export.jobs.retention";
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 20;
+    private static final long DEFAULT_RETENTION = 86400000L;
+    private static final String DIRECTORY_EXPORTS = "cartosolr-exports";
+    private static final String THREAD_NAME_PREFIX = "cartography-solr-export-";
+    private static final String FILE_EXTENSION = ".json";
+    private static final int PROGRESS_STEP = 1000;
+
+    private static final Map<String, ExportJob> _mapJobs = new ConcurrentHashMap<>( );
+    private static ThreadPoolExecutor _executor;
+
+    /**
+     * Private constructor
+     */
+    private ExportJobService( )
+    {
+    }
+
+    /**
+     * Queue the export of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the admin user who requested the export
+     * @return the job
+     * @throws IOException
+     *             if the working directory cannot be created
+     * @throws RejectedExecutionException
+     *             if too many exports are already queued
+     */
+    public static ExportJob submit( DataLayer datalayer, AdminUser user ) throws IOException
+    {
+        purge( );
+
+        Path directory = Files.createDirectories( Paths.get( System.getProperty( "java.io.tmpdir" ), DIRECTORY_EXPORTS ) );
+        ExportJob job = new ExportJob( datalayer.getId( ), datalayer.getTitle( ), user.getAccessCode( ), directory );
+
+        _mapJobs.put( job.getId( ), job );
+        try
+        {
+            getExecutor( ).execute( ( ) -> run( job, datalayer, user ) );
+        }
+        catch( RejectedExecutionException e )
+        {
+            _mapJobs.remove( job.getId( ) );
+            throw e;
+        }
+
+        return job;
+    }
+
+    /**
+     * Returns the jobs of an admin user, most recent first
+     * 
+     * @param user
+     *            the admin user
+     * @return the jobs
+     */
+    public static List<ExportJob> getJobs( AdminUser user )
+    {
+        purge( );
+
+        return _mapJobs.values( ).stream( ).filter( job -> job.getUserAccessCode( ).equals( user.getAccessCode( ) ) )
+                .sorted( Comparator.comparingLong( ExportJob::getCreationTime ).reversed( ) ).collect( Collectors.toList( ) );
+    }
+
+    /**
+     * Returns a job
+     * 
+     * @param strId
+     *            the id of the job
+     * @return the job, or null if it does not exist
+     */
+    public static ExportJob getJob( String strId )
+    {
+        return _mapJobs.get( strId );
+    }
+
+    /**
+     * Stops the workers. The running exports are given a few seconds to end, the others are marked as failed
+     */
+    public static void shutdown( )
+    {
+        ThreadPoolExecutor executor;
+
+        synchronized( ExportJobService.class )
+        {
+            executor = _executor;
+            _executor = null;
+        }
+
+        if ( executor == null )
+        {
+            return;
+        }
+
+        DataLayerExecutorService.shutdown( executor, THREAD_NAME_PREFIX );
+
+        for ( ExportJob job : _mapJobs.values( ) )
+        {
+            if ( !job.isFinished( ) )
+            {
+                job.setErrorMessage( "Export interrupted by the shutdown of the webapp" );
+                job.setStatus( ExportJob.Status.FAILED );
+                job.setEndTime( System.currentTimeMillis( ) );
+            }
+        }
+    }
+
+    /**
+     * Runs a job
+     * 
+     * @param job
+     *            the job
+     * @param datalayer
+     *            the exported data layer
+     * @param user
+     *            the admin user who requested the export
+     */
+    private static void run( ExportJob job, DataLayer datalayer, AdminUser user )
+    {
+        job.setStatus( ExportJob.Status.RUNNING );
+
+        // the queries of the export are correlated with the job rather than with the request which submitted it
+        try ( QueryJournalService.Scope scope = QueryJournalService.open( new QueryJournalService.Context( job.getId( ), null,
+                MapMetrics.getLabel( datalayer ) ) ) )
+        {
+            job.setTotal( DataLayerExportService.countDocuments( datalayer ) );
+
+            long lExported = DataLayerExportService.exportGeoJson( datalayer, job.getPath( ), lCount -> {
+                if ( lCount % PROGRESS_STEP == 0 )
+                {
+                    job.setExported( lCount );
+                }
+            } );
+            job.setExported( lExported );
+
+            TemporaryFileExtract extractFile = new TemporaryFileExtract( job.getPath( ), getFileName( datalayer ) );
+            TemporaryFileGeneratorService.getInstance( ).generateFile( extractFile, user );
+            job.setStatus( ExportJob.Status.DONE );
+            AppLogService.info( "ExportJobService: " + lExported + " features exported for the data layer " + datalayer.getId( ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            job.setErrorMessage( e.getMessage( ) );
+            job.setStatus( ExportJob.Status.FAILED );
+            AppLogService.error( "ExportJobService: error while exporting the data layer " + datalayer.getId( ), e );
+        }
+        finally
+        {
+            job.setEndTime( System.currentTimeMillis( ) );
+        }
+    }
+
+    /**
+     * Removes the finished jobs older than the retention delay, with their working file
+     */
+    private static void purge( )
+    {
+        long lLimit = System.currentTimeMillis( ) - AppPropertiesService.getPropertyLong( PROPERTY_RETENTION, DEFAULT_RETENTION );
+        List<ExportJob> listExpired = new ArrayList<>( );
+
+        for ( ExportJob job : _mapJobs.values( ) )
+        {
+            if ( job.isFinished( ) && job.getEndTime( ) < lLimit )
+            {
+                listExpired.add( job );
+            }
+        }
+
+        for ( ExportJob job : listExpired )
+        {
+            _mapJobs.remove( job.getId( ) );
+            try
+            {
+                Files.deleteIfExists( job.getPath( ) );
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "ExportJobService: unable to delete the export file " + job.getPath( ), e );
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the file given to the user
+     * 
+     * @param datalayer
+     *            the data layer
+     * @return the file name
+     */
+    private static String getFileName( DataLayer datalayer )
+    {
+        String strTitle = ( datalayer.getTitle( ) != null ) ? datalayer.getTitle( ).replaceAll( "[^\\p{L}\\p{N}_-]+", "_" ) : "";
+
+        return ( strTitle.isEmpty( ) ? "ExtractCartoLayer" : strTitle ) + FILE_EXTENSION;
+    }
+
+    /**
+     * Returns the executor, created at first use
+     * 
+     * @return the executor
+     */
+    private static synchronized ThreadPoolExecutor getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            int nThreads = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) );
+            int nQueueSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) );
+            AtomicInteger nThreadNumber = new AtomicInteger( );
+
+            _executor = new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( nQueueSize ), runnable -> {
+                Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + nThreadNumber.incrementAndGet( ) );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        return _executor;
+    }
+}
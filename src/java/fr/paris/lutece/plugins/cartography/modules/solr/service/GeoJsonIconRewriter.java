@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Rewrites the icon property of a GeoJSON feature by copying its token stream, without building the object model of the geometry
+ */
+public final class GeoJsonIconRewriter
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory( );
+    private static final String FIELD_PROPERTIES = "properties";
+    private static final String FIELD_ICON = "icon";
+    private static final int BUFFER_EXTRA_SIZE = 64;
+
+    /**
+     * Private constructor
+     */
+    private GeoJsonIconRewriter( )
+    {
+    }
+
+    /**
+     * Rewrite the icon property of a GeoJSON feature. The icon property is added to the feature properties if it is missing.
+     * 
+     * @param strJson
+     *            the GeoJSON feature
+     * @param iconMapper
+     *            returns the new icon from the current one, which is null if the feature has no icon
+     * @return the GeoJSON feature with the new icon
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    public static String rewriteIcon( String strJson, UnaryOperator<String> iconMapper ) throws IOException
+    {
+        StringWriter writer = new StringWriter( strJson.length( ) + BUFFER_EXTRA_SIZE );
+
+        try ( JsonParser parser = JSON_FACTORY.createParser( strJson ); JsonGenerator generator = JSON_FACTORY.createGenerator( writer ) )
+        {
+            if ( parser.nextToken( ) != JsonToken.START_OBJECT )
+            {
+                throw new JsonParseException( parser, "GeoJSON object expected" );
+            }
+
+            boolean bPropertiesWritten = false;
+            generator.writeStartObject( );
+
+            while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+            {
+                if ( FIELD_PROPERTIES.equals( parser.getCurrentName( ) ) )
+                {
+                    if ( bPropertiesWritten || parser.nextToken( ) != JsonToken.START_OBJECT )
+                    {
+                        throw new JsonParseException( parser, "GeoJSON properties object expected" );
+                    }
+                    generator.writeFieldName( FIELD_PROPERTIES );
+                    copyProperties( parser, generator, iconMapper );
+                    bPropertiesWritten = true;
+                }
+                else
+                {
+                    generator.copyCurrentStructure( parser );
+                }
+            }
+
+            if ( parser.getCurrentToken( ) != JsonToken.END_OBJECT || parser.nextToken( ) != null )
+            {
+                throw new JsonParseException( parser, "End of GeoJSON object expected" );
+            }
+
+            if ( !bPropertiesWritten )
+            {
+                generator.writeObjectFieldStart( FIELD_PROPERTIES );
+                generator.writeStringField( FIELD_ICON, iconMapper.apply( null ) );
+                generator.writeEndObject( );
+            }
+            generator.writeEndObject( );
+        }
+
+        return writer.toString( );
+    }
+
+    /**
+     * Copy the properties object of a feature, rewriting its icon
+     * 
+     * @param parser
+     *            the parser, positioned on the start of the properties object
+     * @param generator
+     *            the generator
+     * @param iconMapper
+     *            returns the new icon from the current one
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static void copyProperties( JsonParser parser, JsonGenerator generator, UnaryOperator<String> iconMapper ) throws IOException
+    {
+        boolean bIconWritten = false;
+        generator.writeStartObject( );
+
+        while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+        {
+            if ( FIELD_ICON.equals( parser.getCurrentName( ) ) )
+            {
+                JsonToken token = parser.nextToken( );
+
+                if ( bIconWritten || ( token != JsonToken.VALUE_STRING && token != JsonToken.VALUE_NULL ) )
+                {
+                    throw new JsonParseException( parser, "GeoJSON icon string expected" );
+                }
+                generator.writeStringField( FIELD_ICON, iconMapper.apply( ( token == JsonToken.VALUE_STRING ) ? parser.getText( ) : null ) );
+                bIconWritten = true;
+            }
+            else
+            {
+                generator.copyCurrentStructure( parser );
+            }
+        }
+
+        if ( parser.getCurrentToken( ) != JsonToken.END_OBJECT )
+        {
+            throw new JsonParseException( parser, "End of GeoJSON properties expected" );
+        }
+        if ( !bIconWritten )
+        {
+            generator.writeStringField( FIELD_ICON, iconMapper.apply( null ) );
+        }
+        generator.writeEndObject( );
+    }
+}
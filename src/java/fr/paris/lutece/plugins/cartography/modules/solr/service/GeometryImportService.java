@@ -0,0 +1,786 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.carto.business.Coordonnee;
+import fr.paris.lutece.plugins.carto.business.CoordonneeHome;
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.business.ImportReport;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.SolrCoordinateIndexer;
+import fr.paris.lutece.plugins.leaflet.business.GeolocItem;
+import fr.paris.lutece.plugins.leaflet.business.GeolocItemPolygon;
+import fr.paris.lutece.portal.service.plugin.Plugin;
+import fr.paris.lutece.portal.service.plugin.PluginService;
+import fr.paris.lutece.portal.service.spring.SpringContextService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.sql.TransactionManager;
+
+/**
+ * Bulk import of the geometries of a GeoJSON FeatureCollection or of a CSV file with a WKT column into a data layer. The file is read as a stream, the
+ * coordinates are created by transactional batches and indexed in a single pass once they are all created
+ */
+public final class GeometryImportService
+{
+    private static final String PROPERTY_BATCH_SIZE = "map.import.batch.size";
+    private static final String PROPERTY_MAX_ERRORS = "map.import.max.errors";
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_ERRORS = 20;
+    private static final String PLUGIN_CARTO = "carto";
+    private static final String BEAN_INDEXER = "solr.solrCoordinateIndexer";
+
+    private static final String [ ] EXTENSIONS_GEOJSON = {
+            ".json", ".geojson"
+    };
+    private static final String EXTENSION_CSV = ".csv";
+    private static final String [ ] CSV_GEOMETRY_COLUMNS = {
+            "wkt", "geometry", "geom", "the_geom"
+    };
+    private static final String [ ] ADDRESS_FIELDS = {
+            "adresse", "address"
+    };
+
+    private static final String GEOJSON_FEATURES = "features";
+    private static final String GEOJSON_GEOMETRY = "geometry";
+    private static final String GEOJSON_GEOMETRIES = "geometries";
+    private static final String GEOJSON_PROPERTIES = "properties";
+    private static final String GEOJSON_TYPE = "type";
+    private static final String GEOJSON_COORDINATES = "coordinates";
+
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+
+    private static final ObjectMapper _mapper = new ObjectMapper( );
+
+    /**
+     * Private constructor
+     */
+    private GeometryImportService( )
+    {
+    }
+
+    /**
+     * Tells whether the format of a file can be imported, from its extension
+     * 
+     * @param strFileName
+     *            the name of the file
+     * @return true if the file is a GeoJSON or a CSV file
+     */
+    public static boolean isSupported( String strFileName )
+    {
+        return isGeoJson( strFileName ) || isCsv( strFileName );
+    }
+
+    /**
+     * Imports the geometries of a file into a data layer, then indexes them
+     * 
+     * @param in
+     *            the content of the file
+     * @param strFileName
+     *            the name of the file, whose extension gives the format
+     * @param datalayer
+     *            the data layer
+     * @return the report of the import
+     * @throws IOException
+     *             if the file cannot be read, or is not a GeoJSON FeatureCollection or a CSV file with a WKT column
+     */
+    public static ImportReport importFile( InputStream in, String strFileName, DataLayer datalayer ) throws IOException
+    {
+        long lStart = System.currentTimeMillis( );
+        ImportReport report = new ImportReport( AppPropertiesService.getPropertyInt( PROPERTY_MAX_ERRORS, DEFAULT_MAX_ERRORS ) );
+        BatchWriter writer = new BatchWriter( datalayer, report );
+
+        if ( isGeoJson( strFileName ) )
+        {
+            readGeoJson( in, writer, report );
+        }
+        else
+            if ( isCsv( strFileName ) )
+            {
+                readCsv( in, writer, report );
+            }
+            else
+            {
+                throw new IOException( "Unsupported file format : " + strFileName );
+            }
+
+        writer.flush( );
+
+        if ( !writer.getIds( ).isEmpty( ) )
+        {
+            SolrCoordinateIndexer indexer = SpringContextService.getBean( BEAN_INDEXER );
+            report.addIndexErrors( indexer.indexCoordinates( writer.getIds( ) ) );
+        }
+
+        report.setDuration( System.currentTimeMillis( ) - lStart );
+        AppLogService.info( "GeometryImportService: " + report.getImported( ) + " geometries imported into the data layer " + datalayer.getId( ) + ", "
+                + report.getRejected( ) + " features rejected, in " + report.getDuration( ) + " ms" );
+
+        return report;
+    }
+
+    /**
+     * Reads the features of a GeoJSON FeatureCollection, one at a time
+     * 
+     * @param in
+     *            the content of the file
+     * @param writer
+     *            the writer of the coordinates
+     * @param report
+     *            the report
+     * @throws IOException
+     *             if the file is not a FeatureCollection
+     */
+    private static void readGeoJson( InputStream in, BatchWriter writer, ImportReport report ) throws IOException
+    {
+        try ( JsonParser parser = _mapper.getFactory( ).createParser( in ) )
+        {
+            if ( parser.nextToken( ) != JsonToken.START_OBJECT )
+            {
+                throw new IOException( "The file is not a GeoJSON FeatureCollection" );
+            }
+
+            boolean bFeatures = false;
+
+            while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+            {
+                String strField = parser.getCurrentName( );
+                JsonToken token = parser.nextToken( );
+
+                if ( GEOJSON_FEATURES.equals( strField ) && token == JsonToken.START_ARRAY )
+                {
+                    bFeatures = true;
+                    int nFeature = 0;
+
+                    while ( parser.nextToken( ) == JsonToken.START_OBJECT )
+                    {
+                        nFeature++;
+                        JsonNode feature = _mapper.readTree( parser );
+                        addFeature( "Feature " + nFeature, feature.get( GEOJSON_GEOMETRY ), getAddress( feature.get( GEOJSON_PROPERTIES ) ), writer, report );
+                    }
+                }
+                else
+                {
+                    parser.skipChildren( );
+                }
+            }
+
+            if ( !bFeatures )
+            {
+                throw new IOException( "The file is not a GeoJSON FeatureCollection" );
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of a CSV file whose header has a WKT column. The delimiter is the first of ';' and ',' found in the header
+     * 
+     * @param in
+     *            the content of the file
+     * @param writer
+     *            the writer of the coordinates
+     * @param report
+     *            the report
+     * @throws IOException
+     *             if the file has no WKT column
+     */
+    private static void readCsv( InputStream in, BatchWriter writer, ImportReport report ) throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ) );
+        String strHeader = reader.readLine( );
+
+        if ( strHeader == null )
+        {
+            throw new IOException( "The CSV file is empty" );
+        }
+        if ( !strHeader.isEmpty( ) && strHeader.charAt( 0 ) == BOM )
+        {
+            strHeader = strHeader.substring( 1 );
+        }
+
+        char cDelimiter = ( strHeader.indexOf( ';' ) >= 0 ) ? ';' : ',';
+        List<String> listColumns = new ArrayList<>( );
+        splitCsvRecord( strHeader, cDelimiter, listColumns );
+
+        int nGeometry = indexOf( listColumns, CSV_GEOMETRY_COLUMNS );
+        int nAddress = indexOf( listColumns, ADDRESS_FIELDS );
+
+        if ( nGeometry < 0 )
+        {
+            throw new IOException( "The CSV file has no WKT column" );
+        }
+
+        List<String> listFields = new ArrayList<>( listColumns.size( ) );
+        int nLine = 1;
+        String strRecord;
+
+        while ( ( strRecord = reader.readLine( ) ) != null )
+        {
+            nLine++;
+            String strLabel = "Line " + nLine;
+
+            // a quoted field may span several lines
+            while ( !splitCsvRecord( strRecord, cDelimiter, listFields ) )
+            {
+                String strNext = reader.readLine( );
+
+                if ( strNext == null )
+                {
+                    break;
+                }
+                nLine++;
+                strRecord = strRecord + '\n' + strNext;
+            }
+
+            if ( strRecord.trim( ).isEmpty( ) )
+            {
+                continue;
+            }
+            if ( listFields.size( ) <= nGeometry )
+            {
+                report.addRejected( strLabel + " : missing WKT column" );
+
+                continue;
+            }
+
+            String strAddress = ( nAddress >= 0 && nAddress < listFields.size( ) ) ? listFields.get( nAddress ) : "";
+
+            try
+            {
+                addFeature( strLabel, WktParser.parse( listFields.get( nGeometry ) ), strAddress, writer, report );
+            }
+            catch( ParseException e )
+            {
+                report.addRejected( strLabel + " : invalid WKT at offset " + e.getErrorOffset( ) + " : " + e.getMessage( ) );
+            }
+        }
+    }
+
+    /**
+     * Splits a CSV record into its fields
+     * 
+     * @param strRecord
+     *            the record
+     * @param cDelimiter
+     *            the delimiter
+     * @param listFields
+     *            the list filled with the fields
+     * @return false if the record ends inside a quoted field
+     */
+    private static boolean splitCsvRecord( String strRecord, char cDelimiter, List<String> listFields )
+    {
+        listFields.clear( );
+
+        StringBuilder sbField = new StringBuilder( );
+        boolean bQuoted = false;
+        int nLength = strRecord.length( );
+
+        for ( int i = 0; i < nLength; i++ )
+        {
+            char c = strRecord.charAt( i );
+
+            if ( bQuoted )
+            {
+                if ( c != QUOTE )
+                {
+                    sbField.append( c );
+                }
+                else
+                    if ( i + 1 < nLength && strRecord.charAt( i + 1 ) == QUOTE )
+                    {
+                        sbField.append( QUOTE );
+                        i++;
+                    }
+                    else
+                    {
+                        bQuoted = false;
+                    }
+            }
+            else
+                if ( c == QUOTE )
+                {
+                    bQuoted = true;
+                }
+                else
+                    if ( c == cDelimiter )
+                    {
+                        listFields.add( sbField.toString( ).trim( ) );
+                        sbField.setLength( 0 );
+                    }
+                    else
+                    {
+                        sbField.append( c );
+                    }
+        }
+
+        listFields.add( sbField.toString( ).trim( ) );
+
+        return !bQuoted;
+    }
+
+    /**
+     * Adds the coordinates of the geometry of a feature. Multi geometries and geometry collections are split into one coordinate per part, as the
+     * data layers only hold points, polylines and polygons
+     * 
+     * @param strLabel
+     *            the label of the feature in the errors
+     * @param geometry
+     *            the GeoJSON geometry
+     * @param strAddress
+     *            the address of the feature
+     * @param writer
+     *            the writer of the coordinates
+     * @param report
+     *            the report
+     */
+    private static void addFeature( String strLabel, JsonNode geometry, String strAddress, BatchWriter writer, ImportReport report )
+    {
+        List<Coordonnee> listCoord = new ArrayList<>( );
+
+        try
+        {
+            if ( geometry == null || geometry.isNull( ) )
+            {
+                throw new IllegalArgumentException( "no geometry" );
+            }
+
+            addGeometry( geometry, strAddress, listCoord );
+        }
+        catch( IllegalArgumentException e )
+        {
+            report.addRejected( strLabel + " : " + e.getMessage( ) );
+
+            return;
+        }
+
+        if ( listCoord.isEmpty( ) )
+        {
+            report.addRejected( strLabel + " : empty geometry" );
+
+            return;
+        }
+
+        for ( Coordonnee coord : listCoord )
+        {
+            writer.add( coord );
+        }
+    }
+
+    /**
+     * Converts a GeoJSON geometry into coordinates
+     * 
+     * @param geometry
+     *            the geometry
+     * @param strAddress
+     *            the address
+     * @param listCoord
+     *            the list filled with the coordinates
+     */
+    private static void addGeometry( JsonNode geometry, String strAddress, List<Coordonnee> listCoord )
+    {
+        String strType = geometry.path( GEOJSON_TYPE ).asText( );
+        JsonNode coordinates = geometry.path( GEOJSON_COORDINATES );
+
+        switch( strType )
+        {
+            case "Point":
+                addPoint( toPosition( coordinates ), strAddress, listCoord );
+                break;
+            case "LineString":
+                addPolyline( toPositions( coordinates ), strAddress, listCoord );
+                break;
+            case "Polygon":
+                addPolygon( toRings( coordinates ), strAddress, listCoord );
+                break;
+            case "MultiPoint":
+                for ( JsonNode position : coordinates )
+                {
+                    addPoint( toPosition( position ), strAddress, listCoord );
+                }
+                break;
+            case "MultiLineString":
+                for ( JsonNode positions : coordinates )
+                {
+                    addPolyline( toPositions( positions ), strAddress, listCoord );
+                }
+                break;
+            case "MultiPolygon":
+                for ( JsonNode rings : coordinates )
+                {
+                    addPolygon( toRings( rings ), strAddress, listCoord );
+                }
+                break;
+            case "GeometryCollection":
+                for ( JsonNode part : geometry.path( GEOJSON_GEOMETRIES ) )
+                {
+                    addGeometry( part, strAddress, listCoord );
+                }
+                break;
+            default:
+                throw new IllegalArgumentException( "unsupported geometry type '" + strType + "'" );
+        }
+    }
+
+    /**
+     * Adds a point
+     * 
+     * @param position
+     *            the longitude and the latitude
+     * @param strAddress
+     *            the address
+     * @param listCoord
+     *            the list of coordinates
+     */
+    private static void addPoint( double [ ] position, String strAddress, List<Coordonnee> listCoord )
+    {
+        GeolocItem geolocItem = CartographyService.getGeolocItemPoint( position [0], position [1], strAddress );
+
+        listCoord.add( newCoordonnee( position [0], position [1], strAddress, geolocItem.toJSON( ) ) );
+    }
+
+    /**
+     * Adds a polyline
+     * 
+     * @param positions
+     *            the positions
+     * @param strAddress
+     *            the address
+     * @param listCoord
+     *            the list of coordinates
+     */
+    private static void addPolyline( double [ ] [ ] positions, String strAddress, List<Coordonnee> listCoord )
+    {
+        if ( positions.length < 2 )
+        {
+            throw new IllegalArgumentException( "a line needs at least 2 positions" );
+        }
+
+        GeolocItemPolygon geolocItem = CartographyService.getGeolocItemPolygon( positions, GeolocItem.VALUE_GEOMETRY_TYPE_POLYLINE );
+
+        listCoord.add( newCoordonnee( 0.0, 0.0, strAddress, geolocItem.toJSON( ) ) );
+    }
+
+    /**
+     * Adds a polygon
+     * 
+     * @param rings
+     *            the exterior ring followed by the holes
+     * @param strAddress
+     *            the address
+     * @param listCoord
+     *            the list of coordinates
+     */
+    private static void addPolygon( double [ ] [ ] [ ] rings, String strAddress, List<Coordonnee> listCoord )
+    {
+        if ( rings.length == 0 )
+        {
+            return;
+        }
+
+        GeolocItemPolygon geolocItem = CartographyService.getGeolocItemPolygon( rings, GeolocItem.VALUE_GEOMETRY_TYPE_POLYGON );
+
+        listCoord.add( newCoordonnee( 0.0, 0.0, strAddress, geolocItem.toJSON( ) ) );
+    }
+
+    /**
+     * Creates a coordinate
+     * 
+     * @param dX
+     *            the longitude of a point, 0 otherwise
+     * @param dY
+     *            the latitude of a point, 0 otherwise
+     * @param strAddress
+     *            the address
+     * @param strGeoJson
+     *            the GeoJSON of the geometry
+     * @return the coordinate
+     */
+    private static Coordonnee newCoordonnee( double dX, double dY, String strAddress, String strGeoJson )
+    {
+        Coordonnee coord = new Coordonnee( );
+        coord.setAdresse( strAddress );
+        coord.setCoordonneeX( dX );
+        coord.setCoordonneeY( dY );
+        coord.setGeoJson( strGeoJson );
+
+        return coord;
+    }
+
+    /**
+     * Reads a position, ignoring the elevation
+     * 
+     * @param position
+     *            the GeoJSON position
+     * @return the longitude and the latitude
+     */
+    private static double [ ] toPosition( JsonNode position )
+    {
+        if ( !position.isArray( ) || position.size( ) < 2 || !position.get( 0 ).isNumber( ) || !position.get( 1 ).isNumber( ) )
+        {
+            throw new IllegalArgumentException( "invalid position " + position );
+        }
+
+        double dX = position.get( 0 ).doubleValue( );
+        double dY = position.get( 1 ).doubleValue( );
+
+        if ( Double.isNaN( dX ) || Double.isNaN( dY ) || Math.abs( dX ) > 180 || Math.abs( dY ) > 90 )
+        {
+            throw new IllegalArgumentException( "position out of the WGS84 bounds " + position );
+        }
+
+        return new double [ ] {
+                dX, dY
+        };
+    }
+
+    /**
+     * Reads a list of positions
+     * 
+     * @param positions
+     *            the GeoJSON positions
+     * @return the positions
+     */
+    private static double [ ] [ ] toPositions( JsonNode positions )
+    {
+        if ( !positions.isArray( ) )
+        {
+            throw new IllegalArgumentException( "invalid coordinates " + positions );
+        }
+
+        double [ ] [ ] result = new double [ positions.size( )] [ ];
+
+        for ( int i = 0; i < result.length; i++ )
+        {
+            result [i] = toPosition( positions.get( i ) );
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the rings of a polygon, closing the rings that are not
+     * 
+     * @param rings
+     *            the GeoJSON rings
+     * @return the rings
+     */
+    private static double [ ] [ ] [ ] toRings( JsonNode rings )
+    {
+        if ( !rings.isArray( ) )
+        {
+            throw new IllegalArgumentException( "invalid coordinates " + rings );
+        }
+
+        double [ ] [ ] [ ] result = new double [ rings.size( )] [ ] [ ];
+
+        for ( int i = 0; i < result.length; i++ )
+        {
+            double [ ] [ ] ring = toPositions( rings.get( i ) );
+
+            if ( ring.length > 0 && ( ring [0] [0] != ring [ring.length - 1] [0] || ring [0] [1] != ring [ring.length - 1] [1] ) )
+            {
+                double [ ] [ ] closed = new double [ ring.length + 1] [ ];
+                System.arraycopy( ring, 0, closed, 0, ring.length );
+                closed [ring.length] = ring [0];
+                ring = closed;
+            }
+            if ( ring.length < 4 )
+            {
+                throw new IllegalArgumentException( "a ring needs at least 3 distinct positions" );
+            }
+
+            result [i] = ring;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the address of a feature
+     * 
+     * @param properties
+     *            the properties of the feature
+     * @return the address, or an empty string
+     */
+    private static String getAddress( JsonNode properties )
+    {
+        if ( properties != null )
+        {
+            for ( String strField : ADDRESS_FIELDS )
+            {
+                JsonNode address = properties.get( strField );
+
+                if ( address != null && address.isValueNode( ) && !address.isNull( ) )
+                {
+                    return address.asText( );
+                }
+            }
+        }
+
+        return "";
+    }
+
+    /**
+     * Returns the index of the first column with one of the given names, ignoring the case
+     * 
+     * @param listColumns
+     *            the columns
+     * @param names
+     *            the names
+     * @return the index, or -1
+     */
+    private static int indexOf( List<String> listColumns, String [ ] names )
+    {
+        for ( int i = 0; i < listColumns.size( ); i++ )
+        {
+            for ( String strName : names )
+            {
+                if ( strName.equalsIgnoreCase( listColumns.get( i ) ) )
+                {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isGeoJson( String strFileName )
+    {
+        String strName = ( strFileName == null ) ? "" : strFileName.toLowerCase( Locale.ROOT );
+
+        for ( String strExtension : EXTENSIONS_GEOJSON )
+        {
+            if ( strName.endsWith( strExtension ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isCsv( String strFileName )
+    {
+        return strFileName != null && strFileName.toLowerCase( Locale.ROOT ).endsWith( EXTENSION_CSV );
+    }
+
+    /**
+     * Creates the coordinates by batches, each one in its own transaction of the carto plugin. A batch that fails is rolled back and its features are
+     * reported as rejected
+     */
+    private static final class BatchWriter
+    {
+        private final DataLayer _datalayer;
+        private final ImportReport _report;
+        private final Plugin _plugin;
+        private final int _nBatchSize;
+        private final List<Coordonnee> _listBatch;
+        private final List<Integer> _listIds = new ArrayList<>( );
+
+        BatchWriter( DataLayer datalayer, ImportReport report )
+        {
+            _datalayer = datalayer;
+            _report = report;
+            _plugin = PluginService.getPlugin( PLUGIN_CARTO );
+            _nBatchSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_BATCH_SIZE, DEFAULT_BATCH_SIZE ) );
+            _listBatch = new ArrayList<>( _nBatchSize );
+        }
+
+        void add( Coordonnee coord )
+        {
+            coord.setDataLayer( _datalayer );
+            _listBatch.add( coord );
+
+            if ( _listBatch.size( ) >= _nBatchSize )
+            {
+                flush( );
+            }
+        }
+
+        void flush( )
+        {
+            if ( _listBatch.isEmpty( ) )
+            {
+                return;
+            }
+
+            List<Integer> listBatchIds = new ArrayList<>( _listBatch.size( ) );
+
+            TransactionManager.beginTransaction( _plugin );
+
+            try
+            {
+                for ( Coordonnee coord : _listBatch )
+                {
+                    CoordonneeHome.create( coord );
+                    listBatchIds.add( coord.getId( ) );
+                }
+
+                TransactionManager.commitTransaction( _plugin );
+                _listIds.addAll( listBatchIds );
+                _report.addImported( listBatchIds.size( ) );
+            }
+            catch( Exception e )
+            {
+                TransactionManager.rollBack( _plugin, e );
+                AppLogService.error( "GeometryImportService: unable to create a batch of " + _listBatch.size( ) + " coordinates", e );
+
+                _report.addRejected( _listBatch.size( ), "Batch of " + _listBatch.size( ) + " geometries rolled back : " + e.getMessage( ) );
+            }
+
+            _listBatch.clear( );
+        }
+
+        List<Integer> getIds( )
+        {
+            return _listIds;
+        }
+    }
+}
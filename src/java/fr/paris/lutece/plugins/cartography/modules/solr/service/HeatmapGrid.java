@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.List;
+
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Grid of document counts returned by a Solr heatmap facet. The rows go from north to south, the columns from west to east
+ */
+public final class HeatmapGrid
+{
+    private static final String KEY_COLUMNS = "columns";
+    private static final String KEY_ROWS = "rows";
+    private static final String KEY_MIN_X = "minX";
+    private static final String KEY_MAX_X = "maxX";
+    private static final String KEY_MIN_Y = "minY";
+    private static final String KEY_MAX_Y = "maxY";
+    private static final String KEY_COUNTS = "counts_ints2D";
+
+    private final int _nColumns;
+    private final int _nRows;
+    private final double _dMinX;
+    private final double _dMaxX;
+    private final double _dMinY;
+    private final double _dMaxY;
+    private final int [ ] [ ] _counts;
+
+    /**
+     * Constructor
+     * 
+     * @param nColumns
+     *            the number of columns
+     * @param nRows
+     *            the number of rows
+     * @param dMinX
+     *            the west of the grid
+     * @param dMaxX
+     *            the east of the grid
+     * @param dMinY
+     *            the south of the grid
+     * @param dMaxY
+     *            the north of the grid
+     * @param counts
+     *            the counts by row and column, a null row has no document
+     */
+    public HeatmapGrid( int nColumns, int nRows, double dMinX, double dMaxX, double dMinY, double dMaxY, int [ ] [ ] counts )
+    {
+        _nColumns = nColumns;
+        _nRows = nRows;
+        _dMinX = dMinX;
+        _dMaxX = dMaxX;
+        _dMinY = dMinY;
+        _dMaxY = dMaxY;
+        _counts = counts;
+    }
+
+    /**
+     * Reads the heatmap of a field from the facet section of a Solr response
+     * 
+     * @param heatmap
+     *            the heatmap of the field
+     * @return the grid
+     */
+    @SuppressWarnings( "unchecked" )
+    public static HeatmapGrid fromNamedList( NamedList<Object> heatmap )
+    {
+        int nColumns = ( (Number) heatmap.get( KEY_COLUMNS ) ).intValue( );
+        int nRows = ( (Number) heatmap.get( KEY_ROWS ) ).intValue( );
+        int [ ] [ ] counts = new int [ nRows] [ ];
+        List<List<Number>> listCounts = (List<List<Number>>) heatmap.get( KEY_COUNTS );
+
+        if ( listCounts != null )
+        {
+            for ( int nRow = 0; nRow < nRows && nRow < listCounts.size( ); nRow++ )
+            {
+                List<Number> listRow = listCounts.get( nRow );
+
+                if ( listRow != null )
+                {
+                    counts [nRow] = new int [ nColumns];
+                    for ( int nColumn = 0; nColumn < nColumns && nColumn < listRow.size( ); nColumn++ )
+                    {
+                        counts [nRow] [nColumn] = listRow.get( nColumn ).intValue( );
+                    }
+                }
+            }
+        }
+
+        return new HeatmapGrid( nColumns, nRows, ( (Number) heatmap.get( KEY_MIN_X ) ).doubleValue( ), ( (Number) heatmap.get( KEY_MAX_X ) ).doubleValue( ),
+                ( (Number) heatmap.get( KEY_MIN_Y ) ).doubleValue( ), ( (Number) heatmap.get( KEY_MAX_Y ) ).doubleValue( ), counts );
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getColumns( )
+    {
+        return _nColumns;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getRows( )
+    {
+        return _nRows;
+    }
+
+    /**
+     * Returns the number of documents of a cell
+     * 
+     * @param nRow
+     *            the row, from the north
+     * @param nColumn
+     *            the column, from the west
+     * @return the number of documents
+     */
+    public int getCount( int nRow, int nColumn )
+    {
+        return ( _counts [nRow] != null ) ? _counts [nRow] [nColumn] : 0;
+    }
+
+    /**
+     * Returns the bounding box of a cell
+     * 
+     * @param nRow
+     *            the row, from the north
+     * @param nColumn
+     *            the column, from the west
+     * @return the bounding box, as west, south, east, north
+     */
+    public double [ ] getCellBbox( int nRow, int nColumn )
+    {
+        double dCellWidth = ( _dMaxX - _dMinX ) / _nColumns;
+        double dCellHeight = ( _dMaxY - _dMinY ) / _nRows;
+
+        return new double [ ] {
+                _dMinX + nColumn * dCellWidth, _dMaxY - ( nRow + 1 ) * dCellHeight, _dMinX + ( nColumn + 1 ) * dCellWidth, _dMaxY - nRow * dCellHeight
+        };
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.cartography.modules.solr.business.ImportJob;
+import fr.paris.lutece.portal.business.user.AdminUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Runs the imports of files into data layers in background jobs, on a bounded pool of workers. The uploaded file is copied to a working file read by
+ * the job, and the report of the import is kept with the job
+ */
+public final class ImportJobService
+{
+    private static final String PROPERTY_THREADS = "map.import.threads";
+    private static final String PROPERTY_QUEUE_SIZE = "map.import.queue.size";
+    private static final String PROPERTY_RETENTION = "map.import.jobs.retention";
+    private static final int DEFAULT_THREADS = 1;
+    private static final int DEFAULT_QUEUE_SIZE = 5;
+    private static final long DEFAULT_RETENTION = 86400000L;
+    private static final String DIRECTORY_IMPORTS = "cartosolr-imports";
+    private static final String THREAD_NAME_PREFIX = "cartography-solr-import-";
+
+    private static final Map<String, ImportJob> _mapJobs = new ConcurrentHashMap<>( );
+    private static ThreadPoolExecutor _executor;
+
+    /**
+     * Private constructor
+     */
+    private ImportJobService( )
+    {
+    }
+
+    /**
+     * Queue the import of a file into a data layer
+     * 
+     * @param in
+     *            the content of the uploaded file, copied before the method returns
+     * @param strFileName
+     *            the name of the file, whose extension gives the format
+     * @param datalayer
+     *            the data layer
+     * @param user
+     *            the admin user who requested the import
+     * @return the job
+     * @throws IOException
+     *             if the file cannot be copied to the working directory
+     * @throws RejectedExecutionException
+     *             if too many imports are already queued
+     */
+    public static ImportJob submit( InputStream in, String strFileName, DataLayer datalayer, AdminUser user ) throws IOException
+    {
+        purge( );
+
+        Path directory = Files.createDirectories( Paths.get( System.getProperty( "java.io.tmpdir" ), DIRECTORY_IMPORTS ) );
+        ImportJob job = new ImportJob( datalayer.getId( ), datalayer.getTitle( ), strFileName, user.getAccessCode( ), directory );
+        job.setTotal( Files.copy( in, job.getPath( ), StandardCopyOption.REPLACE_EXISTING ) );
+
+        _mapJobs.put( job.getId( ), job );
+        try
+        {
+            getExecutor( ).execute( ( ) -> run( job, datalayer ) );
+        }
+        catch( RejectedExecutionException e )
+        {
+            _mapJobs.remove( job.getId( ) );
+            Files.deleteIfExists( job.getPath( ) );
+            throw e;
+        }
+
+        return job;
+    }
+
+    /**
+     * Returns the jobs of an admin user, most recent first
+     * 
+     * @param user
+     *            the admin user
+     * @return the jobs
+     */
+    public static List<ImportJob> getJobs( AdminUser user )
+    {
+        purge( );
+
+        return _mapJobs.values( ).stream( ).filter( job -> job.getUserAccessCode( ).equals( user.getAccessCode( ) ) )
+                .sorted( Comparator.comparingLong( ImportJob::getCreationTime ).reversed( ) ).collect( Collectors.toList( ) );
+    }
+
+    /**
+     * Stops the workers. The running imports are given a few seconds to end, then interrupted, and the others are marked as failed
+     */
+    public static void shutdown( )
+    {
+        ThreadPoolExecutor executor;
+
+        synchronized( ImportJobService.class )
+        {
+            executor = _executor;
+            _executor = null;
+        }
+
+        if ( executor == null )
+        {
+            return;
+        }
+
+        DataLayerExecutorService.shutdown( executor, THREAD_NAME_PREFIX );
+
+        for ( ImportJob job : _mapJobs.values( ) )
+        {
+            if ( !job.isFinished( ) )
+            {
+                job.setErrorMessage( "Import interrupted by the shutdown of the webapp, the geometries already created are indexed by the next reindex" );
+                job.setStatus( ImportJob.Status.FAILED );
+                job.setEndTime( System.currentTimeMillis( ) );
+            }
+        }
+    }
+
+    /**
+     * Runs a job
+     * 
+     * @param job
+     *            the job
+     * @param datalayer
+     *            the data layer
+     */
+    private static void run( ImportJob job, DataLayer datalayer )
+    {
+        job.setStatus( ImportJob.Status.RUNNING );
+
+        try ( InputStream in = new ProgressInputStream( Files.newInputStream( job.getPath( ) ), job ) )
+        {
+            job.setReport( GeometryImportService.importFile( in, job.getFileName( ), datalayer ) );
+            job.setStatus( ImportJob.Status.DONE );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            job.setErrorMessage( e.getMessage( ) );
+            job.setStatus( ImportJob.Status.FAILED );
+            AppLogService.error( "ImportJobService: unable to import the file " + job.getFileName( ) + " into the data layer " + datalayer.getId( ), e );
+        }
+        finally
+        {
+            job.setEndTime( System.currentTimeMillis( ) );
+            deleteFile( job.getPath( ) );
+        }
+    }
+
+    /**
+     * Removes the finished jobs older than the retention delay
+     */
+    private static void purge( )
+    {
+        long lLimit = System.currentTimeMillis( ) - AppPropertiesService.getPropertyLong( PROPERTY_RETENTION, DEFAULT_RETENTION );
+        List<ImportJob> listExpired = new ArrayList<>( );
+
+        for ( ImportJob job : _mapJobs.values( ) )
+        {
+            if ( job.isFinished( ) && job.getEndTime( ) < lLimit )
+            {
+                listExpired.add( job );
+            }
+        }
+
+        for ( ImportJob job : listExpired )
+        {
+            _mapJobs.remove( job.getId( ) );
+            deleteFile( job.getPath( ) );
+        }
+    }
+
+    /**
+     * Deletes the working file of a job
+     * 
+     * @param path
+     *            the file
+     */
+    private static void deleteFile( Path path )
+    {
+        try
+        {
+            Files.deleteIfExists( path );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "ImportJobService: unable to delete the import file " + path, e );
+        }
+    }
+
+    /**
+     * Returns the executor, created at first use
+     * 
+     * @return the executor
+     */
+    private static synchronized ThreadPoolExecutor getExecutor( )
+    {
+        if ( _executor == null )
+        {
+            int nThreads = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_THREADS, DEFAULT_THREADS ) );
+            int nQueueSize = Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE ) );
+            AtomicInteger nThreadNumber = new AtomicInteger( );
+
+            _executor = new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( nQueueSize ), runnable -> {
+                Thread thread = new Thread( runnable, THREAD_NAME_PREFIX + nThreadNumber.incrementAndGet( ) );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+
+        return _executor;
+    }
+
+    /**
+     * Input stream recording the number of bytes read in the job, and stopping the import when its thread is interrupted by the shutdown
+     */
+    private static final class ProgressInputStream extends FilterInputStream
+    {
+        private final ImportJob _job;
+        private long _lRead;
+
+        /**
+         * Constructor
+         * 
+         * @param in
+         *            the content of the file
+         * @param job
+         *            the job
+         */
+        private ProgressInputStream( InputStream in, ImportJob job )
+        {
+            super( in );
+            _job = job;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read( ) throws IOException
+        {
+            int nByte = super.read( );
+
+            if ( nByte != -1 )
+            {
+                progress( 1 );
+            }
+
+            return nByte;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read( byte [ ] buffer, int nOffset, int nLength ) throws IOException
+        {
+            int nRead = super.read( buffer, nOffset, nLength );
+
+            if ( nRead > 0 )
+            {
+                progress( nRead );
+            }
+
+            return nRead;
+        }
+
+        /**
+         * Records bytes read
+         * 
+         * @param nRead
+         *            the number of bytes
+         * @throws InterruptedIOException
+         *             if the thread of the job has been interrupted
+         */
+        private void progress( int nRead ) throws InterruptedIOException
+        {
+            if ( Thread.currentThread( ).isInterrupted( ) )
+            {
+                throw new InterruptedIOException( "Import interrupted" );
+            }
+
+            _lRead += nRead;
+            _job.setRead( _lRead );
+        }
+    }
+}
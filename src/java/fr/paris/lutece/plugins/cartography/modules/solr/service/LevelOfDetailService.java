@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.SolrCoordinateIndexer;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Levels of detail of the lines and polygons : each level is a simplification of the geometry computed at index time, used below a zoom
+ */
+public final class LevelOfDetailService
+{
+    public static final int LEVEL_FULL_RESOLUTION = -1;
+
+    private static final String FIELD_PREFIX = "coordonnee_lod_";
+    private static final String PROPERTY_LOD_TOLERANCES = "map.lod.tolerances";
+    private static final String PROPERTY_LOD_ZOOMS = "map.lod.zooms";
+    private static final String SEPARATOR = ",";
+
+    /**
+     * Private constructor
+     */
+    private LevelOfDetailService( )
+    {
+    }
+
+    /**
+     * Returns the simplification tolerance of each level, from the coarsest to the finest
+     * 
+     * @return the tolerances, in degrees
+     */
+    public static double [ ] getTolerances( )
+    {
+        return parse( AppPropertiesService.getProperty( PROPERTY_LOD_TOLERANCES ) );
+    }
+
+    /**
+     * Returns the level of detail to use at a zoom
+     * 
+     * @param nZoom
+     *            the zoom of the map
+     * @return the level, or LEVEL_FULL_RESOLUTION if the full geometry must be used
+     */
+    public static int getLevel( int nZoom )
+    {
+        if ( !SolrCoordinateIndexer.isSpatialEnabled( ) )
+        {
+            return LEVEL_FULL_RESOLUTION;
+        }
+
+        double [ ] zooms = parse( AppPropertiesService.getProperty( PROPERTY_LOD_ZOOMS ) );
+        int nLevels = Math.min( zooms.length, getTolerances( ).length );
+
+        for ( int nLevel = 0; nLevel < nLevels; nLevel++ )
+        {
+            if ( nZoom < zooms [nLevel] )
+            {
+                return nLevel;
+            }
+        }
+
+        return LEVEL_FULL_RESOLUTION;
+    }
+
+    /**
+     * Returns the name of the solr field storing a level of detail
+     * 
+     * @param nLevel
+     *            the level
+     * @return the field name
+     */
+    public static String getFieldName( int nLevel )
+    {
+        return FIELD_PREFIX + nLevel;
+    }
+
+    /**
+     * Parses a list of numbers
+     * 
+     * @param strValues
+     *            the numbers, separated by commas
+     * @return the numbers
+     */
+    private static double [ ] parse( String strValues )
+    {
+        String [ ] values = StringUtils.split( strValues, SEPARATOR );
+
+        if ( values == null )
+        {
+            return new double [ 0];
+        }
+
+        double [ ] numbers = new double [ values.length];
+
+        try
+        {
+            for ( int i = 0; i < values.length; i++ )
+            {
+                numbers [i] = Double.parseDouble( values [i].trim( ) );
+            }
+        }
+        catch( NumberFormatException e )
+        {
+            AppLogService.error( "LevelOfDetailService: invalid level of detail configuration " + strValues, e );
+
+            return new double [ 0];
+        }
+
+        return numbers;
+    }
+}
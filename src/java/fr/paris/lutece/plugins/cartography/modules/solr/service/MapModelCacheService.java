@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Cache of the map models built by CartographyService, keyed by map and by the role the solr queries are filtered on. The cache is versioned : any change of the index or of the carto
+ * configuration increments the version, so that a model built before the change is never served afterwards.
+ */
+public final class MapModelCacheService extends AbstractCacheableService
+{
+    private static final String SERVICE_NAME = "CartographySolrMapModelCacheService";
+    private static final String KEY_SEPARATOR = ":";
+    private static final String PREFIX_ROLE = "role=";
+
+    private static MapModelCacheService _singleton;
+
+    private final AtomicLong _lVersion = new AtomicLong( System.currentTimeMillis( ) );
+    private final AtomicLong _lHits = new AtomicLong( );
+    private final AtomicLong _lMisses = new AtomicLong( );
+
+    /**
+     * Private constructor
+     */
+    private MapModelCacheService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * Returns the unique instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized MapModelCacheService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new MapModelCacheService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Returns the model of a map for a user, built by CartographyService if it is not in the cache
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @return the model
+     */
+    @SuppressWarnings( "unchecked" )
+    public Map<String, Object> getMapModel( MapTemplate map, LuteceUser user )
+    {
+        long lVersion = _lVersion.get( );
+        String strKey = getKey( lVersion, map.getId( ), user );
+        Map<String, Object> model = (Map<String, Object>) getFromCache( strKey );
+
+        if ( model != null )
+        {
+            _lHits.incrementAndGet( );
+
+            return model;
+        }
+
+        _lMisses.incrementAndGet( );
+        model = new HashMap<>( );
+        boolean bComplete = CartographyService.buildMapModel( map, model, user );
+
+        // Do not cache a model built while the index or the configuration was changing, nor a model missing a data layer
+        if ( !bComplete )
+        {
+            AppLogService.info( "MapModelCacheService: the model of the map " + map.getId( ) + " is incomplete and is not cached" );
+        }
+        else
+            if ( lVersion == _lVersion.get( ) )
+            {
+                putInCache( strKey, model );
+            }
+
+        return model;
+    }
+
+    /**
+     * Invalidate all the map models, to be called when the index or the carto configuration is modified
+     */
+    public void invalidate( )
+    {
+        _lVersion.incrementAndGet( );
+        resetCache( );
+    }
+
+    /**
+     * Returns the current version of the map models, incremented at each invalidation
+     * 
+     * @return the version
+     */
+    public long getVersion( )
+    {
+        return _lVersion.get( );
+    }
+
+    /**
+     * Returns the number of models served from the cache
+     * 
+     * @return the number of hits
+     */
+    public long getHits( )
+    {
+        return _lHits.get( );
+    }
+
+    /**
+     * Returns the number of models built because they were not in the cache
+     * 
+     * @return the number of misses
+     */
+    public long getMisses( )
+    {
+        return _lMisses.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getInfos( )
+    {
+        return super.getInfos( ) + " - version : " + _lVersion.get( ) + " - hits : " + _lHits.get( ) + " - misses : " + _lMisses.get( );
+    }
+
+    /**
+     * Returns the cache key of a map model. The documents of the data layers are filtered on the first role of the user only, so two users sharing
+     * the same roles in a different order do not see the same documents and must not share a model
+     * 
+     * @param lVersion
+     *            the version
+     * @param nIdMap
+     *            the map id
+     * @param user
+     *            the user, may be null
+     * @return the key
+     */
+    static String getKey( long lVersion, int nIdMap, LuteceUser user )
+    {
+        StringBuilder sbKey = new StringBuilder( ).append( lVersion ).append( KEY_SEPARATOR ).append( nIdMap ).append( KEY_SEPARATOR );
+        String strRole = CartographyService.getFilterRole( user );
+
+        if ( strRole != null )
+        {
+            sbKey.append( PREFIX_ROLE ).append( strRole );
+        }
+
+        return sbKey.toString( );
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Compact encoding of the coordinates of a GeoJSON geometry : each list of positions is replaced by an encoded polyline string (positions quantised to
+ * a precision, delta encoded, then written as base64-like variable length integers). The positions keep the GeoJSON order longitude, latitude, and only
+ * their two first dimensions are encoded. The single position of a point is left as is. The encoded geometry is marked with the encoding and the
+ * precision, so that the client can decode it. The GeoJSON is rewritten by copying its token stream, without building the object model of the geometry
+ */
+public final class PolylineGeometryEncoder
+{
+    public static final String ENCODING_POLYLINE = "polyline";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory( );
+    private static final String FIELD_GEOMETRY = "geometry";
+    private static final String FIELD_COORDINATES = "coordinates";
+    private static final String FIELD_ENCODING = "encoding";
+    private static final String FIELD_PRECISION = "precision";
+    private static final int MAX_PRECISION = 7;
+
+    /**
+     * Private constructor
+     */
+    private PolylineGeometryEncoder( )
+    {
+    }
+
+    /**
+     * Encodes the coordinates of a GeoJSON feature
+     * 
+     * @param strGeoJson
+     *            the GeoJSON feature, or its geometry
+     * @param nPrecision
+     *            the number of decimals kept, at most 7
+     * @return the GeoJSON with the encoded coordinates, unchanged if it has no list of positions
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    public static String encode( String strGeoJson, int nPrecision ) throws IOException
+    {
+        int nBoundedPrecision = Math.max( 0, Math.min( MAX_PRECISION, nPrecision ) );
+        StringWriter writer = new StringWriter( strGeoJson.length( ) );
+        boolean bEncoded;
+
+        try ( JsonParser parser = JSON_FACTORY.createParser( strGeoJson ); JsonGenerator generator = JSON_FACTORY.createGenerator( writer ) )
+        {
+            if ( parser.nextToken( ) != JsonToken.START_OBJECT )
+            {
+                return strGeoJson;
+            }
+
+            bEncoded = copyGeometry( parser, generator, nBoundedPrecision, true );
+
+            if ( parser.nextToken( ) != null )
+            {
+                throw new JsonParseException( parser, "End of GeoJSON object expected" );
+            }
+        }
+
+        return bEncoded ? writer.toString( ) : strGeoJson;
+    }
+
+    /**
+     * Copies a feature or a geometry object, encoding its coordinates. The geometry of a feature is copied the same way
+     * 
+     * @param parser
+     *            the parser, positioned on the start of the object
+     * @param generator
+     *            the generator
+     * @param nPrecision
+     *            the number of decimals kept
+     * @param bFeature
+     *            true if the object may be a feature holding a geometry
+     * @return true if a list of positions has been encoded
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static boolean copyGeometry( JsonParser parser, JsonGenerator generator, int nPrecision, boolean bFeature ) throws IOException
+    {
+        boolean bCoordinatesEncoded = false;
+        boolean bGeometryEncoded = false;
+        generator.writeStartObject( );
+
+        while ( parser.nextToken( ) == JsonToken.FIELD_NAME )
+        {
+            String strName = parser.getCurrentName( );
+            JsonToken token = parser.nextToken( );
+
+            if ( FIELD_COORDINATES.equals( strName ) && token == JsonToken.START_ARRAY )
+            {
+                generator.writeFieldName( strName );
+                bCoordinatesEncoded |= copyCoordinates( parser, generator, parser.nextToken( ), Math.pow( 10, nPrecision ) );
+            }
+            else
+                if ( bFeature && FIELD_GEOMETRY.equals( strName ) && token == JsonToken.START_OBJECT )
+                {
+                    generator.writeFieldName( strName );
+                    bGeometryEncoded |= copyGeometry( parser, generator, nPrecision, false );
+                }
+                else
+                {
+                    generator.writeFieldName( strName );
+                    generator.copyCurrentStructure( parser );
+                }
+        }
+
+        if ( parser.getCurrentToken( ) != JsonToken.END_OBJECT )
+        {
+            throw new JsonParseException( parser, "End of GeoJSON object expected" );
+        }
+        if ( bCoordinatesEncoded )
+        {
+            generator.writeStringField( FIELD_ENCODING, ENCODING_POLYLINE );
+            generator.writeNumberField( FIELD_PRECISION, nPrecision );
+        }
+        generator.writeEndObject( );
+
+        return bCoordinatesEncoded || bGeometryEncoded;
+    }
+
+    /**
+     * Copies a coordinates array : a list of positions is written as an encoded polyline string, a deeper array is copied recursively
+     * 
+     * @param parser
+     *            the parser, positioned on the first token of the array
+     * @param generator
+     *            the generator
+     * @param firstToken
+     *            the first token of the array
+     * @param dFactor
+     *            the quantisation factor
+     * @return true if a list of positions has been encoded
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static boolean copyCoordinates( JsonParser parser, JsonGenerator generator, JsonToken firstToken, double dFactor ) throws IOException
+    {
+        if ( firstToken == JsonToken.START_ARRAY )
+        {
+            JsonToken token = parser.nextToken( );
+
+            if ( token != null && token.isNumeric( ) )
+            {
+                generator.writeString( encodePositions( parser, dFactor ) );
+
+                return true;
+            }
+
+            generator.writeStartArray( );
+            boolean bEncoded = copyCoordinates( parser, generator, token, dFactor );
+
+            for ( token = parser.nextToken( ); token != JsonToken.END_ARRAY; token = parser.nextToken( ) )
+            {
+                if ( token == JsonToken.START_ARRAY )
+                {
+                    bEncoded |= copyCoordinates( parser, generator, parser.nextToken( ), dFactor );
+                }
+                else
+                {
+                    copyValue( parser, generator, token );
+                }
+            }
+            generator.writeEndArray( );
+
+            return bEncoded;
+        }
+
+        // a single position, an empty array or an array of other values is copied as is
+        generator.writeStartArray( );
+        for ( JsonToken token = firstToken; token != JsonToken.END_ARRAY; token = parser.nextToken( ) )
+        {
+            copyValue( parser, generator, token );
+        }
+        generator.writeEndArray( );
+
+        return false;
+    }
+
+    /**
+     * Copies a value of an array
+     * 
+     * @param parser
+     *            the parser, positioned on the value
+     * @param generator
+     *            the generator
+     * @param token
+     *            the current token
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static void copyValue( JsonParser parser, JsonGenerator generator, JsonToken token ) throws IOException
+    {
+        if ( token == null )
+        {
+            throw new JsonParseException( parser, "End of GeoJSON coordinates expected" );
+        }
+        generator.copyCurrentStructure( parser );
+    }
+
+    /**
+     * Encodes a list of positions
+     * 
+     * @param parser
+     *            the parser, positioned on the first number of the first position
+     * @param dFactor
+     *            the quantisation factor
+     * @return the encoded polyline
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static String encodePositions( JsonParser parser, double dFactor ) throws IOException
+    {
+        StringBuilder sbEncoded = new StringBuilder( );
+        long lPreviousX = 0;
+        long lPreviousY = 0;
+        JsonToken token;
+
+        do
+        {
+            long lX = Math.round( readNumber( parser, parser.getCurrentToken( ) ) * dFactor );
+            long lY = Math.round( readNumber( parser, parser.nextToken( ) ) * dFactor );
+
+            // the dimensions beyond the two first ones are not encoded
+            for ( token = parser.nextToken( ); token != JsonToken.END_ARRAY; token = parser.nextToken( ) )
+            {
+                readNumber( parser, token );
+            }
+
+            encodeValue( lX - lPreviousX, sbEncoded );
+            encodeValue( lY - lPreviousY, sbEncoded );
+            lPreviousX = lX;
+            lPreviousY = lY;
+
+            token = parser.nextToken( );
+        }
+        while ( token == JsonToken.START_ARRAY && parser.nextToken( ) != null );
+
+        if ( token != JsonToken.END_ARRAY )
+        {
+            throw new JsonParseException( parser, "GeoJSON position expected" );
+        }
+
+        return sbEncoded.toString( );
+    }
+
+    /**
+     * Reads a coordinate of a position
+     * 
+     * @param parser
+     *            the parser
+     * @param token
+     *            the current token
+     * @return the coordinate
+     * @throws IOException
+     *             if the token is not a number
+     */
+    private static double readNumber( JsonParser parser, JsonToken token ) throws IOException
+    {
+        if ( token == null || !token.isNumeric( ) )
+        {
+            throw new JsonParseException( parser, "GeoJSON coordinate expected" );
+        }
+
+        return parser.getDoubleValue( );
+    }
+
+    /**
+     * Appends a signed value : zigzag encoded, then written by chunks of 5 bits offset by 63, the 0x20 bit flagging the chunks followed by another one
+     * 
+     * @param lValue
+     *            the value
+     * @param sbEncoded
+     *            the encoded polyline
+     */
+    private static void encodeValue( long lValue, StringBuilder sbEncoded )
+    {
+        long lZigZag = ( lValue < 0 ) ? ~( lValue << 1 ) : ( lValue << 1 );
+
+        while ( lZigZag >= 0x20 )
+        {
+            sbEncoded.append( (char) ( ( 0x20 | ( lZigZag & 0x1f ) ) + 63 ) );
+            lZigZag >>>= 5;
+        }
+        sbEncoded.append( (char) ( lZigZag + 63 ) );
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Popup content of a data layer parsed once into literal text and marker slots
+ */
+public final class PopupTemplate
+{
+    private static final char MARKER_START = '[';
+    private static final char MARKER_END = ']';
+    private static final String MARKER_MISSING_VALUE = " ";
+
+    private final String _strSource;
+    private final String [ ] _segments;
+    private final boolean [ ] _markers;
+    private final Set<String> _setMarkers;
+    private final int _nLiteralLength;
+
+    /**
+     * Parse a popup content. The markers are the texts between square brackets, the line breaks are removed.
+     * 
+     * @param strSource
+     *            the popup content
+     */
+    public PopupTemplate( String strSource )
+    {
+        List<String> listSegments = new ArrayList<>( );
+        List<Boolean> listMarkers = new ArrayList<>( );
+        Set<String> setMarkers = new LinkedHashSet<>( );
+        StringBuilder sbLiteral = new StringBuilder( strSource.length( ) );
+        int nLiteralLength = 0;
+        int nLength = strSource.length( );
+        int i = 0;
+
+        while ( i < nLength )
+        {
+            char c = strSource.charAt( i );
+            int nEnd = ( c == MARKER_START ) ? findMarkerEnd( strSource, i ) : -1;
+
+            if ( nEnd > 0 )
+            {
+                if ( sbLiteral.length( ) > 0 )
+                {
+                    listSegments.add( sbLiteral.toString( ) );
+                    listMarkers.add( Boolean.FALSE );
+                    nLiteralLength += sbLiteral.length( );
+                    sbLiteral.setLength( 0 );
+                }
+                String strMarker = strSource.substring( i + 1, nEnd );
+                listSegments.add( strMarker );
+                listMarkers.add( Boolean.TRUE );
+                setMarkers.add( strMarker );
+                i = nEnd + 1;
+            }
+            else
+            {
+                if ( !isLineBreak( c ) )
+                {
+                    sbLiteral.append( c );
+                }
+                i++;
+            }
+        }
+        if ( sbLiteral.length( ) > 0 )
+        {
+            listSegments.add( sbLiteral.toString( ) );
+            listMarkers.add( Boolean.FALSE );
+            nLiteralLength += sbLiteral.length( );
+        }
+
+        _strSource = strSource;
+        _segments = listSegments.toArray( new String [ 0] );
+        _markers = new boolean [ _segments.length];
+        for ( int j = 0; j < _markers.length; j++ )
+        {
+            _markers [j] = listMarkers.get( j );
+        }
+        _setMarkers = Collections.unmodifiableSet( setMarkers );
+        _nLiteralLength = nLiteralLength;
+    }
+
+    /**
+     * Returns the position of the end of a marker starting at a given position, a marker containing at least one character and no line break
+     * 
+     * @param strSource
+     *            the text
+     * @param nStart
+     *            the position of the marker start
+     * @return the position of the marker end or -1 if there is no marker at this position
+     */
+    private static int findMarkerEnd( String strSource, int nStart )
+    {
+        for ( int i = nStart + 1; i < strSource.length( ); i++ )
+        {
+            char c = strSource.charAt( i );
+
+            if ( isLineBreak( c ) )
+            {
+                return -1;
+            }
+            if ( c == MARKER_END && i > nStart + 1 )
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns true if the character is a line break
+     * 
+     * @param c
+     *            the character
+     * @return true if the character is a line break
+     */
+    private static boolean isLineBreak( char c )
+    {
+        return c == '\r' || c == '\n';
+    }
+
+    /**
+     * Returns the popup content this template has been parsed from
+     * 
+     * @return the source
+     */
+    public String getSource( )
+    {
+        return _strSource;
+    }
+
+    /**
+     * Returns the markers of the template
+     * 
+     * @return the markers
+     */
+    public Set<String> getMarkers( )
+    {
+        return _setMarkers;
+    }
+
+    /**
+     * Render the template. The markers without value are replaced by a space.
+     * 
+     * @param mapValues
+     *            the values by marker, may be null
+     * @param sbBuffer
+     *            a buffer reused between renderings
+     * @return the rendered popup
+     */
+    public String render( Map<String, String> mapValues, StringBuilder sbBuffer )
+    {
+        sbBuffer.setLength( 0 );
+        sbBuffer.ensureCapacity( _nLiteralLength );
+
+        for ( int i = 0; i < _segments.length; i++ )
+        {
+            if ( !_markers [i] )
+            {
+                sbBuffer.append( _segments [i] );
+                continue;
+            }
+
+            String strValue = ( mapValues != null ) ? mapValues.get( _segments [i] ) : null;
+
+            if ( strValue == null )
+            {
+                sbBuffer.append( MARKER_MISSING_VALUE );
+            }
+            else
+            {
+                appendWithoutLineBreaks( sbBuffer, strValue );
+            }
+        }
+
+        return sbBuffer.toString( );
+    }
+
+    /**
+     * Append a value without its line breaks
+     * 
+     * @param sbBuffer
+     *            the buffer
+     * @param strValue
+     *            the value
+     */
+    private static void appendWithoutLineBreaks( StringBuilder sbBuffer, String strValue )
+    {
+        int nLength = strValue.length( );
+
+        for ( int i = 0; i < nLength; i++ )
+        {
+            char c = strValue.charAt( i );
+
+            if ( !isLineBreak( c ) )
+            {
+                sbBuffer.append( c );
+            }
+        }
+    }
+}
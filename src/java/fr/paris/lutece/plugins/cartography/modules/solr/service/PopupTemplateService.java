@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+
+/**
+ * Cache of the parsed popup templates of the data layers
+ */
+public final class PopupTemplateService
+{
+    private static final Map<Integer, PopupTemplate> _mapTemplates = new ConcurrentHashMap<>( );
+
+    /**
+     * Private constructor
+     */
+    private PopupTemplateService( )
+    {
+    }
+
+    /**
+     * Returns the parsed popup template of a data layer. The template is parsed again when the popup content of the data layer has been modified.
+     * 
+     * @param datalayer
+     *            the data layer
+     * @return the template or null if the data layer has no popup content
+     */
+    public static PopupTemplate getTemplate( DataLayer datalayer )
+    {
+        String strPopupContent = datalayer.getPopupContent( );
+
+        if ( strPopupContent == null || strPopupContent.isEmpty( ) )
+        {
+            _mapTemplates.remove( datalayer.getId( ) );
+
+            return null;
+        }
+
+        PopupTemplate template = _mapTemplates.get( datalayer.getId( ) );
+
+        if ( template == null || !template.getSource( ).equals( strPopupContent ) )
+        {
+            template = new PopupTemplate( strPopupContent );
+            _mapTemplates.put( datalayer.getId( ), template );
+        }
+
+        return template;
+    }
+
+    /**
+     * Remove all the templates from the cache
+     */
+    public static void invalidateAll( )
+    {
+        _mapTemplates.clear( );
+    }
+}
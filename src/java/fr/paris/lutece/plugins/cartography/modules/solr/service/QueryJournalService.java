@@ -0,0 +1,563 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.Group;
+import org.apache.solr.client.solrj.response.GroupCommand;
+import org.apache.solr.client.solrj.response.GroupResponse;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocumentList;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.business.QueryJournalEntry;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Journal of the solr queries of the module : the last queries are kept in a ring buffer viewable in the admin, and the slow or failed ones are written
+ * to a dedicated log. Each entry is correlated with the HTTP request, the map and the data layer which triggered the query, held by a thread local
+ * context.
+ */
+public final class QueryJournalService
+{
+    /** Name of the logger of the slow queries */
+    public static final String LOGGER_SLOW_QUERIES = "lutece.cartosolr.slowqueries";
+
+    /** Header carrying the id of the request */
+    public static final String HEADER_REQUEST_ID = "X-Request-ID";
+
+    /** Operations of the module sending solr queries */
+    public static final String OPERATION_DATA_LAYER = "datalayer";
+    public static final String OPERATION_GROUPED = "grouped";
+    public static final String OPERATION_DOCUMENTS_BY_UID = "documents_by_uid";
+    public static final String OPERATION_MARKERS = "markers";
+    public static final String OPERATION_HEATMAP = "heatmap";
+    public static final String OPERATION_COUNT = "count";
+    public static final String OPERATION_CURSOR = "cursor";
+
+    private static final String PROPERTY_ENABLED = "map.journal.enabled";
+    private static final String PROPERTY_SIZE = "map.journal.size";
+    private static final String PROPERTY_SLOW_THRESHOLD = "map.journal.slow.threshold";
+    private static final String PROPERTY_MAX_QUERY_LENGTH = "map.journal.maxQueryLength";
+    private static final int DEFAULT_SIZE = 200;
+    private static final int DEFAULT_SLOW_THRESHOLD = 1000;
+    private static final int DEFAULT_MAX_QUERY_LENGTH = 2000;
+    private static final int MAX_REQUEST_ID_LENGTH = 64;
+    private static final String SEPARATOR_FILTER_QUERIES = " | ";
+    private static final String TRUNCATED = "...";
+
+    private static final Logger _loggerSlowQueries = LogManager.getLogger( LOGGER_SLOW_QUERIES );
+    private static final ThreadLocal<Context> _context = new ThreadLocal<>( );
+    private static final AtomicLong _lSequence = new AtomicLong( );
+    private static final AtomicReferenceArray<QueryJournalEntry> _entries = new AtomicReferenceArray<>(
+            Math.max( 1, AppPropertiesService.getPropertyInt( PROPERTY_SIZE, DEFAULT_SIZE ) ) );
+
+    /**
+     * Origin of the solr queries sent by a thread : the HTTP request, the map and the data layer being processed. A context is immutable, so that it
+     * can be handed over to the tasks run by other threads.
+     */
+    public static final class Context
+    {
+        private static final Context EMPTY = new Context( null, null, null );
+
+        private final String _strRequestId;
+        private final Integer _nIdMap;
+        private final String _strDataLayer;
+
+        /**
+         * Constructor
+         * 
+         * @param strRequestId
+         *            the id of the request, may be null
+         * @param nIdMap
+         *            the id of the map, may be null
+         * @param strDataLayer
+         *            the label of the data layer, may be null
+         */
+        public Context( String strRequestId, Integer nIdMap, String strDataLayer )
+        {
+            _strRequestId = strRequestId;
+            _nIdMap = nIdMap;
+            _strDataLayer = strDataLayer;
+        }
+
+        /**
+         * @return the id of the request, may be null
+         */
+        public String getRequestId( )
+        {
+            return _strRequestId;
+        }
+
+        /**
+         * @return the id of the map, may be null
+         */
+        public Integer getIdMap( )
+        {
+            return _nIdMap;
+        }
+
+        /**
+         * @return the label of the data layer, may be null
+         */
+        public String getDataLayer( )
+        {
+            return _strDataLayer;
+        }
+
+        /**
+         * Returns a copy of this context for a map
+         * 
+         * @param nIdMap
+         *            the id of the map
+         * @return the new context
+         */
+        public Context withMap( int nIdMap )
+        {
+            return new Context( _strRequestId, nIdMap, _strDataLayer );
+        }
+
+        /**
+         * Returns a copy of this context for a data layer
+         * 
+         * @param strDataLayer
+         *            the label of the data layer
+         * @return the new context
+         */
+        public Context withDataLayer( String strDataLayer )
+        {
+            return new Context( _strRequestId, _nIdMap, strDataLayer );
+        }
+    }
+
+    /**
+     * Scope of a context : closing it restores the context of the thread which was current when it was opened
+     */
+    public static final class Scope implements AutoCloseable
+    {
+        private final Context _previous;
+
+        /**
+         * Constructor
+         * 
+         * @param previous
+         *            the context to restore, may be null
+         */
+        private Scope( Context previous )
+        {
+            _previous = previous;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close( )
+        {
+            if ( _previous == null )
+            {
+                _context.remove( );
+            }
+            else
+            {
+                _context.set( _previous );
+            }
+        }
+    }
+
+    /**
+     * Private constructor
+     */
+    private QueryJournalService( )
+    {
+    }
+
+    /**
+     * @return true if the solr queries are recorded
+     */
+    public static boolean isEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, true );
+    }
+
+    /**
+     * @return the wall time from which a query is considered slow, in milliseconds
+     */
+    public static long getSlowThreshold( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_SLOW_THRESHOLD, DEFAULT_SLOW_THRESHOLD );
+    }
+
+    /**
+     * @return the context of the current thread, never null
+     */
+    public static Context getContext( )
+    {
+        Context context = _context.get( );
+
+        return ( context != null ) ? context : Context.EMPTY;
+    }
+
+    /**
+     * Makes a context the context of the current thread until the returned scope is closed
+     * 
+     * @param context
+     *            the context
+     * @return the scope, to close in a finally block or a try-with-resources
+     */
+    public static Scope open( Context context )
+    {
+        Scope scope = new Scope( _context.get( ) );
+        _context.set( context );
+
+        return scope;
+    }
+
+    /**
+     * Opens the context of an HTTP request
+     * 
+     * @param strRequestId
+     *            the id of the request
+     * @return the scope
+     */
+    public static Scope openRequest( String strRequestId )
+    {
+        return open( new Context( strRequestId, null, null ) );
+    }
+
+    /**
+     * Opens the context of a map, within the context of the current request
+     * 
+     * @param nIdMap
+     *            the id of the map
+     * @return the scope
+     */
+    public static Scope openMap( int nIdMap )
+    {
+        return open( getContext( ).withMap( nIdMap ) );
+    }
+
+    /**
+     * Opens the context of a data layer, within the context of the current request and map
+     * 
+     * @param strDataLayer
+     *            the label of the data layer
+     * @return the scope
+     */
+    public static Scope openDataLayer( String strDataLayer )
+    {
+        return open( getContext( ).withDataLayer( strDataLayer ) );
+    }
+
+    /**
+     * Returns the id of a request : the one sent by the client or a proxy if it is usable, a new one otherwise
+     * 
+     * @param strHeader
+     *            the value of the request id header, may be null
+     * @return the id of the request
+     */
+    public static String getRequestId( String strHeader )
+    {
+        if ( StringUtils.isNotBlank( strHeader ) && strHeader.length( ) <= MAX_REQUEST_ID_LENGTH && StringUtils.isAsciiPrintable( strHeader ) )
+        {
+            return strHeader;
+        }
+
+        return UUID.randomUUID( ).toString( );
+    }
+
+    /**
+     * Records a query sent with the solr client of the module
+     * 
+     * @param strOperation
+     *            the operation
+     * @param query
+     *            the query
+     * @param response
+     *            the response
+     * @param lStart
+     *            the value of System.nanoTime( ) before the query was sent
+     */
+    public static void record( String strOperation, SolrQuery query, QueryResponse response, long lStart )
+    {
+        if ( !isEnabled( ) )
+        {
+            return;
+        }
+
+        QueryJournalEntry entry = newEntry( strOperation, query.getQuery( ), query.getFilterQueries( ), query.getRows( ), lStart );
+        entry.setQTime( response.getQTime( ) );
+
+        SolrDocumentList documents = response.getResults( );
+        GroupResponse groupResponse = response.getGroupResponse( );
+
+        if ( documents != null )
+        {
+            entry.setNumFound( documents.getNumFound( ) );
+            entry.setReturned( documents.size( ) );
+        }
+        else
+            if ( groupResponse != null )
+            {
+                long lNumFound = 0;
+                int nReturned = 0;
+
+                for ( GroupCommand command : groupResponse.getValues( ) )
+                {
+                    for ( Group group : command.getValues( ) )
+                    {
+                        lNumFound += group.getResult( ).getNumFound( );
+                        nReturned += group.getResult( ).size( );
+                    }
+                }
+                entry.setNumFound( lNumFound );
+                entry.setReturned( nReturned );
+            }
+
+        publish( entry );
+    }
+
+    /**
+     * Records a query sent with the solr client of the module which failed
+     * 
+     * @param strOperation
+     *            the operation
+     * @param query
+     *            the query
+     * @param lStart
+     *            the value of System.nanoTime( ) before the query was sent
+     * @param error
+     *            the error
+     */
+    public static void recordError( String strOperation, SolrQuery query, long lStart, Throwable error )
+    {
+        if ( !isEnabled( ) )
+        {
+            return;
+        }
+
+        QueryJournalEntry entry = newEntry( strOperation, query.getQuery( ), query.getFilterQueries( ), query.getRows( ), lStart );
+        entry.setError( String.valueOf( error ) );
+
+        publish( entry );
+    }
+
+    /**
+     * Records a query sent through the SolrSearchEngine, whose response is not available : its QTime and number of matching documents are unknown
+     * 
+     * @param strOperation
+     *            the operation
+     * @param strQuery
+     *            the query
+     * @param filterQueries
+     *            the filter queries, may be null
+     * @param nRows
+     *            the number of rows requested
+     * @param lStart
+     *            the value of System.nanoTime( ) before the query was sent
+     * @param nReturned
+     *            the number of documents returned
+     */
+    public static void record( String strOperation, String strQuery, String [ ] filterQueries, int nRows, long lStart, int nReturned )
+    {
+        if ( !isEnabled( ) )
+        {
+            return;
+        }
+
+        QueryJournalEntry entry = newEntry( strOperation, strQuery, filterQueries, nRows, lStart );
+        entry.setReturned( nReturned );
+
+        publish( entry );
+    }
+
+    /**
+     * Returns the entries of the journal, most recent first
+     * 
+     * @param bSlowOnly
+     *            true to return only the slow or failed queries
+     * @return the entries
+     */
+    public static List<QueryJournalEntry> getEntries( boolean bSlowOnly )
+    {
+        int nSize = _entries.length( );
+        long lLast = _lSequence.get( );
+        List<QueryJournalEntry> listEntries = new ArrayList<>( nSize );
+
+        for ( long lSequence = lLast; lSequence > 0 && lSequence > lLast - nSize; lSequence-- )
+        {
+            QueryJournalEntry entry = _entries.get( (int) ( ( lSequence - 1 ) % nSize ) );
+
+            // the slot may have been overwritten by a newer entry since the sequence was read, or not yet be written
+            if ( entry != null && entry.getSequence( ) == lSequence && ( !bSlowOnly || entry.isSlow( ) || entry.getError( ) != null ) )
+            {
+                listEntries.add( entry );
+            }
+        }
+
+        return listEntries;
+    }
+
+    /**
+     * Removes all the entries of the journal
+     */
+    public static void clear( )
+    {
+        for ( int i = 0; i < _entries.length( ); i++ )
+        {
+            _entries.set( i, null );
+        }
+    }
+
+    /**
+     * Creates an entry in the current context
+     * 
+     * @param strOperation
+     *            the operation
+     * @param strQuery
+     *            the query
+     * @param filterQueries
+     *            the filter queries, may be null
+     * @param nRows
+     *            the number of rows requested, may be null
+     * @param lStart
+     *            the value of System.nanoTime( ) before the query was sent
+     * @return the entry
+     */
+    private static QueryJournalEntry newEntry( String strOperation, String strQuery, String [ ] filterQueries, Integer nRows, long lStart )
+    {
+        long lWallTime = TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - lStart );
+        Context context = getContext( );
+        int nMaxQueryLength = AppPropertiesService.getPropertyInt( PROPERTY_MAX_QUERY_LENGTH, DEFAULT_MAX_QUERY_LENGTH );
+
+        QueryJournalEntry entry = new QueryJournalEntry( );
+        entry.setTime( System.currentTimeMillis( ) - lWallTime );
+        entry.setOperation( strOperation );
+        entry.setQuery( truncate( strQuery, nMaxQueryLength ) );
+        if ( filterQueries != null && filterQueries.length > 0 )
+        {
+            entry.setFilterQueries( truncate( String.join( SEPARATOR_FILTER_QUERIES, filterQueries ), nMaxQueryLength ) );
+        }
+        if ( nRows != null )
+        {
+            entry.setRows( nRows );
+        }
+        entry.setWallTime( lWallTime );
+        entry.setSlow( lWallTime >= getSlowThreshold( ) );
+        entry.setRequestId( context.getRequestId( ) );
+        entry.setIdMap( context.getIdMap( ) );
+        entry.setDataLayer( context.getDataLayer( ) );
+
+        return entry;
+    }
+
+    /**
+     * Adds an entry to the ring buffer, and to the slow query log if the query was slow or failed
+     * 
+     * @param entry
+     *            the entry
+     */
+    private static void publish( QueryJournalEntry entry )
+    {
+        long lSequence = _lSequence.incrementAndGet( );
+        entry.setSequence( lSequence );
+        _entries.set( (int) ( ( lSequence - 1 ) % _entries.length( ) ), entry );
+
+        if ( entry.getError( ) != null )
+        {
+            _loggerSlowQueries.error( "{} {}", format( entry ), entry.getError( ) );
+        }
+        else
+            if ( entry.isSlow( ) )
+            {
+                _loggerSlowQueries.warn( format( entry ) );
+            }
+    }
+
+    /**
+     * Formats an entry for the slow query log
+     * 
+     * @param entry
+     *            the entry
+     * @return the line of the log
+     */
+    private static String format( QueryJournalEntry entry )
+    {
+        StringBuilder sbLine = new StringBuilder( );
+        sbLine.append( "requestId=" ).append( entry.getRequestId( ) );
+        sbLine.append( " map=" ).append( entry.getIdMap( ) );
+        sbLine.append( " datalayer=" ).append( entry.getDataLayer( ) );
+        sbLine.append( " operation=" ).append( entry.getOperation( ) );
+        sbLine.append( " wallTime=" ).append( entry.getWallTime( ) );
+        sbLine.append( " qTime=" ).append( entry.getQTime( ) );
+        sbLine.append( " rows=" ).append( entry.getRows( ) );
+        sbLine.append( " numFound=" ).append( entry.getNumFound( ) );
+        sbLine.append( " returned=" ).append( entry.getReturned( ) );
+        sbLine.append( " q=" ).append( entry.getQuery( ) );
+        if ( entry.getFilterQueries( ) != null )
+        {
+            sbLine.append( " fq=" ).append( entry.getFilterQueries( ) );
+        }
+
+        return sbLine.toString( );
+    }
+
+    /**
+     * Truncates a string
+     * 
+     * @param strValue
+     *            the string, may be null
+     * @param nMaxLength
+     *            the maximum length
+     * @return the truncated string
+     */
+    private static String truncate( String strValue, int nMaxLength )
+    {
+        if ( strValue == null || strValue.length( ) <= nMaxLength )
+        {
+            return strValue;
+        }
+
+        return strValue.substring( 0, Math.max( 0, nMaxLength ) ) + TRUNCATED;
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.portal.service.cache.AbstractCacheableService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Server side proxy of the WFS data layers. The GetFeature requests are restricted to the viewport, snapped to a grid so that close viewports share the
+ * same request, and their gzipped responses are cached for a time to live. A single request per grid cell is sent to the remote service at a time,
+ * and an expired response is still served when the remote service fails
+ */
+public final class WfsProxyService extends AbstractCacheableService
+{
+    private static final String SERVICE_NAME = "CartographySolrWfsProxyCacheService";
+    private static final String KEY_SEPARATOR = ":";
+
+    private static final String PROPERTY_WFS_PROXY_ENABLED = "map.wfs.proxy.enabled";
+    private static final String PROPERTY_WFS_CACHE_TTL = "map.wfs.cache.ttl";
+    private static final String PROPERTY_WFS_MAX_FEATURES = "map.wfs.max.features";
+    private static final String PROPERTY_WFS_MAX_RESPONSE_SIZE = "map.wfs.max.response.size";
+    private static final String PROPERTY_WFS_CONNECT_TIMEOUT = "map.wfs.timeout.connect";
+    private static final String PROPERTY_WFS_SOCKET_TIMEOUT = "map.wfs.timeout.socket";
+    private static final int DEFAULT_WFS_CACHE_TTL = 300;
+    private static final int DEFAULT_WFS_MAX_FEATURES = 5000;
+    private static final int DEFAULT_WFS_MAX_RESPONSE_SIZE = 20 * 1024 * 1024;
+    private static final int DEFAULT_WFS_CONNECT_TIMEOUT = 3000;
+    private static final int DEFAULT_WFS_SOCKET_TIMEOUT = 10000;
+
+    private static final String PARAMETER_SERVICE = "service";
+    private static final String PARAMETER_VERSION = "version";
+    private static final String PARAMETER_REQUEST = "request";
+    private static final String PARAMETER_TYPE_NAME = "typeName";
+    private static final String PARAMETER_TYPE_NAMES = "typeNames";
+    private static final String PARAMETER_OUTPUT_FORMAT = "outputFormat";
+    private static final String PARAMETER_SRS_NAME = "srsName";
+    private static final String PARAMETER_BBOX = "bbox";
+    private static final String PARAMETER_MAX_FEATURES = "maxFeatures";
+    private static final String PARAMETER_COUNT = "count";
+    private static final String SERVICE_WFS = "WFS";
+    private static final String REQUEST_GET_FEATURE = "GetFeature";
+    private static final String OUTPUT_FORMAT_JSON = "application/json";
+    private static final String SRS_WGS84 = "EPSG:4326";
+    private static final String CRS_LONGITUDE_LATITUDE = "urn:ogc:def:crs:OGC:1.3:CRS84";
+    private static final String VERSION_PREFIX_1_0 = "1.0";
+    private static final String VERSION_PREFIX_2 = "2.";
+    private static final double MIN_GRID_STEP = 1.0 / 1024;
+
+    private static WfsProxyService _singleton;
+
+    private final ConcurrentMap<String, CompletableFuture<CachedResponse>> _mapInFlight = new ConcurrentHashMap<>( );
+    private CloseableHttpClient _httpClient;
+
+    /**
+     * Private constructor
+     */
+    private WfsProxyService( )
+    {
+        initCache( );
+    }
+
+    /**
+     * Returns the unique instance of the service
+     * 
+     * @return the instance
+     */
+    public static synchronized WfsProxyService getInstance( )
+    {
+        if ( _singleton == null )
+        {
+            _singleton = new WfsProxyService( );
+        }
+
+        return _singleton;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName( )
+    {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Returns true if the WFS data layers are loaded through the proxy instead of being requested by the browsers
+     * 
+     * @return true if the proxy is enabled
+     */
+    public static boolean isProxyEnabled( )
+    {
+        return AppPropertiesService.getPropertyBoolean( PROPERTY_WFS_PROXY_ENABLED, false );
+    }
+
+    /**
+     * Returns the time during which a response is served from the cache
+     * 
+     * @return the time to live, in seconds
+     */
+    public static int getTimeToLive( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_WFS_CACHE_TTL, DEFAULT_WFS_CACHE_TTL );
+    }
+
+    /**
+     * Returns the features of a WFS data layer located in a bounding box, as gzipped GeoJSON. The bounding box is snapped to a grid, so the response
+     * may contain features located around it
+     * 
+     * @param datalayer
+     *            the WFS data layer
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the gzipped GeoJSON
+     * @throws IOException
+     *             if the remote service fails and no previous response is available
+     */
+    public byte [ ] getFeatures( DataLayer datalayer, double dWest, double dSouth, double dEast, double dNorth ) throws IOException
+    {
+        return getFeatures( datalayer, dWest, dSouth, dEast, dNorth, getTimeToLive( ) );
+    }
+
+    /**
+     * Returns the features of a WFS data layer located in a bounding box, as gzipped GeoJSON
+     * 
+     * @param datalayer
+     *            the WFS data layer
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @param nTimeToLive
+     *            the time during which a response is served from the cache, in seconds
+     * @return the gzipped GeoJSON
+     * @throws IOException
+     *             if the remote service fails and no previous response is available
+     */
+    byte [ ] getFeatures( DataLayer datalayer, double dWest, double dSouth, double dEast, double dNorth, int nTimeToLive ) throws IOException
+    {
+        double [ ] bbox = snapToGrid( dWest, dSouth, dEast, dNorth );
+        String strKey = new StringBuilder( ).append( datalayer.getId( ) ).append( KEY_SEPARATOR )
+                .append( CartoReferenceCacheService.getInstance( ).getConfigurationVersion( ) ).append( KEY_SEPARATOR ).append( bbox [0] )
+                .append( KEY_SEPARATOR ).append( bbox [1] ).append( KEY_SEPARATOR ).append( bbox [2] ).append( KEY_SEPARATOR ).append( bbox [3] )
+                .toString( );
+        CachedResponse cached = (CachedResponse) getFromCache( strKey );
+
+        if ( cached != null && !cached.isExpired( nTimeToLive ) )
+        {
+            return cached._content;
+        }
+
+        CompletableFuture<CachedResponse> future = new CompletableFuture<>( );
+        CompletableFuture<CachedResponse> inFlight = _mapInFlight.putIfAbsent( strKey, future );
+
+        try
+        {
+            if ( inFlight != null )
+            {
+                // the same cell is already being fetched by another request
+                return inFlight.get( getSocketTimeout( ) * 2L, TimeUnit.MILLISECONDS )._content;
+            }
+
+            CachedResponse response = new CachedResponse( fetch( datalayer, bbox ) );
+            putInCache( strKey, response );
+            future.complete( response );
+
+            return response._content;
+        }
+        catch( IOException | ExecutionException | TimeoutException e )
+        {
+            future.completeExceptionally( e );
+
+            if ( cached != null )
+            {
+                AppLogService.error( "WfsProxyService: the WFS service of the data layer " + datalayer.getId( ) + " failed, an expired response is served",
+                        e );
+
+                return cached._content;
+            }
+
+            throw ( e instanceof IOException ) ? (IOException) e : new IOException( e );
+        }
+        catch( InterruptedException e )
+        {
+            future.completeExceptionally( e );
+            Thread.currentThread( ).interrupt( );
+
+            throw new IOException( e );
+        }
+        finally
+        {
+            if ( inFlight == null )
+            {
+                _mapInFlight.remove( strKey, future );
+            }
+        }
+    }
+
+    /**
+     * Snaps a bounding box to a grid whose step is the smallest power of two greater than half of its largest side, so that the number of distinct
+     * requests is bounded while the snapped box stays close to the original one
+     * 
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the snapped bounding box as west, south, east, north
+     */
+    static double [ ] snapToGrid( double dWest, double dSouth, double dEast, double dNorth )
+    {
+        double dSpan = Math.max( Math.max( dEast - dWest, dNorth - dSouth ), MIN_GRID_STEP );
+        double dStep = Math.pow( 2, Math.ceil( Math.log( dSpan / 2 ) / Math.log( 2 ) ) );
+
+        return new double [ ] {
+                Math.max( -180, Math.floor( dWest / dStep ) * dStep ), Math.max( -90, Math.floor( dSouth / dStep ) * dStep ),
+                Math.min( 180, Math.ceil( dEast / dStep ) * dStep ), Math.min( 90, Math.ceil( dNorth / dStep ) * dStep )
+        };
+    }
+
+    /**
+     * Sends a GetFeature request to the WFS service of a data layer
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param bbox
+     *            the bounding box as west, south, east, north
+     * @return the gzipped response
+     * @throws IOException
+     *             if the request fails
+     */
+    private byte [ ] fetch( DataLayer datalayer, double [ ] bbox ) throws IOException
+    {
+        HttpGet httpGet = new HttpGet( getGetFeatureUri( datalayer, bbox ) );
+        int nMaxSize = AppPropertiesService.getPropertyInt( PROPERTY_WFS_MAX_RESPONSE_SIZE, DEFAULT_WFS_MAX_RESPONSE_SIZE );
+
+        try ( CloseableHttpResponse response = getHttpClient( ).execute( httpGet ) )
+        {
+            HttpEntity entity = response.getEntity( );
+
+            if ( response.getStatusLine( ).getStatusCode( ) != HttpStatus.SC_OK || entity == null )
+            {
+                throw new IOException( "WFS GetFeature failed with the status " + response.getStatusLine( ) + " : " + httpGet.getURI( ) );
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream( );
+
+            try ( InputStream in = entity.getContent( ); OutputStream gzip = new GZIPOutputStream( baos ) )
+            {
+                byte [ ] buffer = new byte [ 8192];
+                long lSize = 0;
+                int nRead;
+
+                while ( ( nRead = in.read( buffer ) ) != -1 )
+                {
+                    lSize += nRead;
+                    if ( lSize > nMaxSize )
+                    {
+                        httpGet.abort( );
+                        throw new IOException( "WFS GetFeature response larger than " + nMaxSize + " bytes : " + httpGet.getURI( ) );
+                    }
+                    gzip.write( buffer, 0, nRead );
+                }
+            }
+
+            return baos.toByteArray( );
+        }
+    }
+
+    /**
+     * Builds the GetFeature URI of a data layer. The bounding box is expressed in longitude, latitude order for every version
+     * 
+     * @param datalayer
+     *            the data layer
+     * @param bbox
+     *            the bounding box as west, south, east, north
+     * @return the URI
+     * @throws IOException
+     *             if the URL of the data layer is invalid
+     */
+    private static URI getGetFeatureUri( DataLayer datalayer, double [ ] bbox ) throws IOException
+    {
+        String strVersion = StringUtils.defaultString( datalayer.getVersionFlux( ) );
+        String strBbox = bbox [0] + "," + bbox [1] + "," + bbox [2] + "," + bbox [3];
+        String strMaxFeatures = String.valueOf( AppPropertiesService.getPropertyInt( PROPERTY_WFS_MAX_FEATURES, DEFAULT_WFS_MAX_FEATURES ) );
+        boolean bVersion2 = strVersion.startsWith( VERSION_PREFIX_2 );
+
+        try
+        {
+            URIBuilder builder = new URIBuilder( datalayer.getUrlFlux( ) );
+            builder.setParameter( PARAMETER_SERVICE, SERVICE_WFS );
+            builder.setParameter( PARAMETER_VERSION, strVersion );
+            builder.setParameter( PARAMETER_REQUEST, REQUEST_GET_FEATURE );
+            builder.setParameter( bVersion2 ? PARAMETER_TYPE_NAMES : PARAMETER_TYPE_NAME, datalayer.getTypeNameFlux( ) );
+            builder.setParameter( PARAMETER_OUTPUT_FORMAT, OUTPUT_FORMAT_JSON );
+            builder.setParameter( PARAMETER_SRS_NAME, SRS_WGS84 );
+            builder.setParameter( bVersion2 ? PARAMETER_COUNT : PARAMETER_MAX_FEATURES, strMaxFeatures );
+            // WFS 1.0 uses the longitude, latitude order, the later versions need an explicit longitude, latitude CRS
+            builder.setParameter( PARAMETER_BBOX,
+                    strVersion.toLowerCase( Locale.ROOT ).startsWith( VERSION_PREFIX_1_0 ) ? strBbox : ( strBbox + "," + CRS_LONGITUDE_LATITUDE ) );
+
+            return builder.build( );
+        }
+        catch( URISyntaxException e )
+        {
+            throw new IOException( "Invalid WFS URL for the data layer " + datalayer.getId( ), e );
+        }
+    }
+
+    /**
+     * @return the shared HTTP client
+     */
+    private synchronized CloseableHttpClient getHttpClient( )
+    {
+        if ( _httpClient == null )
+        {
+            RequestConfig config = RequestConfig.custom( )
+                    .setConnectTimeout( AppPropertiesService.getPropertyInt( PROPERTY_WFS_CONNECT_TIMEOUT, DEFAULT_WFS_CONNECT_TIMEOUT ) )
+                    .setConnectionRequestTimeout( getSocketTimeout( ) ).setSocketTimeout( getSocketTimeout( ) ).build( );
+            _httpClient = HttpClients.custom( ).setDefaultRequestConfig( config ).useSystemProperties( ).build( );
+        }
+
+        return _httpClient;
+    }
+
+    /**
+     * @return the read timeout of the WFS requests, in milliseconds
+     */
+    private static int getSocketTimeout( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_WFS_SOCKET_TIMEOUT, DEFAULT_WFS_SOCKET_TIMEOUT );
+    }
+
+    /**
+     * A cached GetFeature response
+     */
+    private static final class CachedResponse implements Serializable
+    {
+        private static final long serialVersionUID = 5219530637265810394L;
+
+        private final byte [ ] _content;
+        private final long _lFetchTime;
+
+        /**
+         * Constructor
+         * 
+         * @param content
+         *            the gzipped response
+         */
+        private CachedResponse( byte [ ] content )
+        {
+            _content = content;
+            _lFetchTime = System.currentTimeMillis( );
+        }
+
+        /**
+         * @param nTimeToLive
+         *            the time to live in seconds
+         * @return true if the response must be fetched again
+         */
+        private boolean isExpired( int nTimeToLive )
+        {
+            return System.currentTimeMillis( ) - _lFetchTime > nTimeToLive * 1000L;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import java.text.ParseException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Parser of the Well-Known Text geometries, converted to GeoJSON geometries. The Z and M values are dropped and an EWKT SRID prefix is ignored
+ */
+public final class WktParser
+{
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_COORDINATES = "coordinates";
+    private static final String FIELD_GEOMETRIES = "geometries";
+    private static final String SRID_PREFIX = "SRID=";
+    private static final String KEYWORD_EMPTY = "EMPTY";
+
+    private final String _strWkt;
+    private int _nOffset;
+
+    /**
+     * Constructor
+     * 
+     * @param strWkt
+     *            the WKT
+     */
+    private WktParser( String strWkt )
+    {
+        _strWkt = strWkt;
+    }
+
+    /**
+     * Parses a WKT geometry
+     * 
+     * @param strWkt
+     *            the WKT
+     * @return the GeoJSON geometry
+     * @throws ParseException
+     *             if the WKT is malformed or its type is not supported, with the offset of the error
+     */
+    public static ObjectNode parse( String strWkt ) throws ParseException
+    {
+        WktParser parser = new WktParser( strWkt );
+        parser.skipBlanks( );
+
+        if ( strWkt.regionMatches( true, parser._nOffset, SRID_PREFIX, 0, SRID_PREFIX.length( ) ) )
+        {
+            int nSemicolon = strWkt.indexOf( ';', parser._nOffset );
+            if ( nSemicolon < 0 )
+            {
+                throw new ParseException( "';' expected after the SRID", parser._nOffset );
+            }
+            parser._nOffset = nSemicolon + 1;
+        }
+
+        ObjectNode geometry = parser.parseGeometry( );
+        parser.skipBlanks( );
+
+        if ( parser._nOffset < strWkt.length( ) )
+        {
+            throw new ParseException( "Unexpected character", parser._nOffset );
+        }
+
+        return geometry;
+    }
+
+    /**
+     * Parses a tagged geometry
+     * 
+     * @return the GeoJSON geometry
+     * @throws ParseException
+     *             if the geometry is malformed
+     */
+    private ObjectNode parseGeometry( ) throws ParseException
+    {
+        skipBlanks( );
+        int nStart = _nOffset;
+        String strType = readWord( ).toUpperCase( Locale.ROOT );
+        ObjectNode geometry = NODES.objectNode( );
+
+        skipDimensions( );
+
+        switch( strType )
+        {
+            case "POINT":
+                geometry.put( FIELD_TYPE, "Point" );
+                if ( !isEmpty( ) )
+                {
+                    expect( '(' );
+                    geometry.set( FIELD_COORDINATES, parsePosition( ) );
+                    expect( ')' );
+                }
+                break;
+            case "LINESTRING":
+                geometry.put( FIELD_TYPE, "LineString" );
+                geometry.set( FIELD_COORDINATES, parseList( 1 ) );
+                break;
+            case "POLYGON":
+                geometry.put( FIELD_TYPE, "Polygon" );
+                geometry.set( FIELD_COORDINATES, parseList( 2 ) );
+                break;
+            case "MULTIPOINT":
+                geometry.put( FIELD_TYPE, "MultiPoint" );
+                geometry.set( FIELD_COORDINATES, parseMultiPoint( ) );
+                break;
+            case "MULTILINESTRING":
+                geometry.put( FIELD_TYPE, "MultiLineString" );
+                geometry.set( FIELD_COORDINATES, parseList( 2 ) );
+                break;
+            case "MULTIPOLYGON":
+                geometry.put( FIELD_TYPE, "MultiPolygon" );
+                geometry.set( FIELD_COORDINATES, parseList( 3 ) );
+                break;
+            case "GEOMETRYCOLLECTION":
+                geometry.put( FIELD_TYPE, "GeometryCollection" );
+                geometry.set( FIELD_GEOMETRIES, parseCollection( ) );
+                break;
+            default:
+                throw new ParseException( "Unsupported geometry type " + strType, nStart );
+        }
+
+        return geometry;
+    }
+
+    /**
+     * Parses a list of positions nested at a given depth
+     * 
+     * @param nDepth
+     *            1 for a list of positions, 2 for a list of lists of positions...
+     * @return the list
+     * @throws ParseException
+     *             if the list is malformed
+     */
+    private ArrayNode parseList( int nDepth ) throws ParseException
+    {
+        ArrayNode list = NODES.arrayNode( );
+
+        if ( isEmpty( ) )
+        {
+            return list;
+        }
+
+        expect( '(' );
+        do
+        {
+            list.add( ( nDepth == 1 ) ? parsePosition( ) : parseList( nDepth - 1 ) );
+        }
+        while ( accept( ',' ) );
+        expect( ')' );
+
+        return list;
+    }
+
+    /**
+     * Parses the positions of a multipoint, with or without parentheses around each position
+     * 
+     * @return the positions
+     * @throws ParseException
+     *             if the multipoint is malformed
+     */
+    private ArrayNode parseMultiPoint( ) throws ParseException
+    {
+        ArrayNode list = NODES.arrayNode( );
+
+        if ( isEmpty( ) )
+        {
+            return list;
+        }
+
+        expect( '(' );
+        do
+        {
+            if ( accept( '(' ) )
+            {
+                list.add( parsePosition( ) );
+                expect( ')' );
+            }
+            else
+            {
+                list.add( parsePosition( ) );
+            }
+        }
+        while ( accept( ',' ) );
+        expect( ')' );
+
+        return list;
+    }
+
+    /**
+     * Parses the geometries of a collection
+     * 
+     * @return the geometries
+     * @throws ParseException
+     *             if a geometry is malformed
+     */
+    private ArrayNode parseCollection( ) throws ParseException
+    {
+        ArrayNode list = NODES.arrayNode( );
+
+        if ( isEmpty( ) )
+        {
+            return list;
+        }
+
+        expect( '(' );
+        do
+        {
+            list.add( parseGeometry( ) );
+        }
+        while ( accept( ',' ) );
+        expect( ')' );
+
+        return list;
+    }
+
+    /**
+     * Parses a position, keeping its two first values
+     * 
+     * @return the position
+     * @throws ParseException
+     *             if the position is malformed
+     */
+    private ArrayNode parsePosition( ) throws ParseException
+    {
+        ArrayNode position = NODES.arrayNode( );
+        position.add( parseNumber( ) );
+        position.add( parseNumber( ) );
+
+        // Z and M values
+        skipBlanks( );
+        while ( _nOffset < _strWkt.length( ) && isNumberChar( _strWkt.charAt( _nOffset ) ) )
+        {
+            parseNumber( );
+            skipBlanks( );
+        }
+
+        return position;
+    }
+
+    /**
+     * Parses a number
+     * 
+     * @return the number
+     * @throws ParseException
+     *             if there is no number at the offset
+     */
+    private double parseNumber( ) throws ParseException
+    {
+        skipBlanks( );
+        int nStart = _nOffset;
+
+        while ( _nOffset < _strWkt.length( ) && isNumberChar( _strWkt.charAt( _nOffset ) ) )
+        {
+            _nOffset++;
+        }
+
+        try
+        {
+            return Double.parseDouble( _strWkt.substring( nStart, _nOffset ) );
+        }
+        catch( NumberFormatException e )
+        {
+            throw new ParseException( "Number expected", nStart );
+        }
+    }
+
+    /**
+     * @param c
+     *            a character
+     * @return true if the character may be part of a number
+     */
+    private static boolean isNumberChar( char c )
+    {
+        return ( c >= '0' && c <= '9' ) || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    /**
+     * Reads a word
+     * 
+     * @return the word
+     */
+    private String readWord( )
+    {
+        int nStart = _nOffset;
+
+        while ( _nOffset < _strWkt.length( ) && Character.isLetter( _strWkt.charAt( _nOffset ) ) )
+        {
+            _nOffset++;
+        }
+
+        return _strWkt.substring( nStart, _nOffset );
+    }
+
+    /**
+     * Skips the Z, M or ZM dimension marker following a geometry type
+     */
+    private void skipDimensions( )
+    {
+        skipBlanks( );
+        int nStart = _nOffset;
+        String strWord = readWord( ).toUpperCase( Locale.ROOT );
+
+        if ( !"Z".equals( strWord ) && !"M".equals( strWord ) && !"ZM".equals( strWord ) )
+        {
+            _nOffset = nStart;
+        }
+    }
+
+    /**
+     * Reads the EMPTY keyword if it is present
+     * 
+     * @return true if the geometry is empty
+     */
+    private boolean isEmpty( )
+    {
+        skipBlanks( );
+
+        if ( _strWkt.regionMatches( true, _nOffset, KEYWORD_EMPTY, 0, KEYWORD_EMPTY.length( ) ) )
+        {
+            _nOffset += KEYWORD_EMPTY.length( );
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads a character if it is the next one
+     * 
+     * @param c
+     *            the character
+     * @return true if the character has been read
+     */
+    private boolean accept( char c )
+    {
+        skipBlanks( );
+
+        if ( _nOffset < _strWkt.length( ) && _strWkt.charAt( _nOffset ) == c )
+        {
+            _nOffset++;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads an expected character
+     * 
+     * @param c
+     *            the character
+     * @throws ParseException
+     *             if the next character is not the expected one
+     */
+    private void expect( char c ) throws ParseException
+    {
+        if ( !accept( c ) )
+        {
+            throw new ParseException( "'" + c + "' expected", _nOffset );
+        }
+    }
+
+    /**
+     * Skips the blank characters
+     */
+    private void skipBlanks( )
+    {
+        while ( _nOffset < _strWkt.length( ) && Character.isWhitespace( _strWkt.charAt( _nOffset ) ) )
+        {
+            _nOffset++;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed buckets, as exposed to Prometheus. Recording an observation is lock free, the percentiles are interpolated in the buckets
+ */
+public class Histogram implements HistogramMXBean
+{
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final double [ ] _bounds;
+    private final LongAdder [ ] _counts;
+    private final DoubleAdder _sum = new DoubleAdder( );
+    private final DoubleAccumulator _max = new DoubleAccumulator( Math::max, 0 );
+
+    /**
+     * Constructor
+     * 
+     * @param bounds
+     *            the upper bounds of the buckets, in increasing order. A last bucket holds the observations above the largest bound
+     */
+    public Histogram( double [ ] bounds )
+    {
+        _bounds = bounds.clone( );
+        _counts = new LongAdder [ _bounds.length + 1];
+
+        for ( int i = 0; i < _counts.length; i++ )
+        {
+            _counts [i] = new LongAdder( );
+        }
+    }
+
+    /**
+     * Records an observation
+     * 
+     * @param dValue
+     *            the value
+     */
+    public void observe( double dValue )
+    {
+        int nBucket = Arrays.binarySearch( _bounds, dValue );
+
+        // an observation equal to a bound belongs to its bucket, the others to the first bucket whose bound is above them
+        _counts [( nBucket >= 0 ) ? nBucket : ( -nBucket - 1 )].increment( );
+        _sum.add( dValue );
+        _max.accumulate( dValue );
+    }
+
+    /**
+     * Records a duration in seconds
+     * 
+     * @param lStartNanos
+     *            the start of the duration, from System.nanoTime( )
+     */
+    public void observeSince( long lStartNanos )
+    {
+        observe( ( System.nanoTime( ) - lStartNanos ) / NANOS_PER_SECOND );
+    }
+
+    /**
+     * @return the upper bounds of the buckets
+     */
+    public double [ ] getBounds( )
+    {
+        return _bounds.clone( );
+    }
+
+    /**
+     * @return the number of observations of each bucket, the last one holding those above the largest bound
+     */
+    public long [ ] getBucketCounts( )
+    {
+        long [ ] counts = new long [ _counts.length];
+
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            counts [i] = _counts [i].sum( );
+        }
+
+        return counts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount( )
+    {
+        long lCount = 0;
+
+        for ( LongAdder count : _counts )
+        {
+            lCount += count.sum( );
+        }
+
+        return lCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getSum( )
+    {
+        return _sum.sum( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMean( )
+    {
+        long lCount = getCount( );
+
+        return ( lCount > 0 ) ? getSum( ) / lCount : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMax( )
+    {
+        return _max.get( );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP50( )
+    {
+        return getPercentile( 0.50 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP95( )
+    {
+        return getPercentile( 0.95 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getP99( )
+    {
+        return getPercentile( 0.99 );
+    }
+
+    /**
+     * Estimates a percentile, by linear interpolation in the bucket holding it
+     * 
+     * @param dQuantile
+     *            the quantile, between 0 and 1
+     * @return the estimated percentile, or 0 if there is no observation
+     */
+    public double getPercentile( double dQuantile )
+    {
+        long [ ] counts = getBucketCounts( );
+        long lTotal = 0;
+
+        for ( long lCount : counts )
+        {
+            lTotal += lCount;
+        }
+        if ( lTotal == 0 )
+        {
+            return 0;
+        }
+
+        double dRank = dQuantile * lTotal;
+        long lCumulated = 0;
+
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts [i] > 0 && lCumulated + counts [i] >= dRank )
+            {
+                double dMax = getMax( );
+
+                if ( i == _bounds.length )
+                {
+                    // above the largest bound : only the maximum is known
+                    return dMax;
+                }
+
+                double dLower = ( i > 0 ) ? _bounds [i - 1] : 0;
+                double dUpper = Math.min( _bounds [i], Math.max( dMax, dLower ) );
+
+                return dLower + ( dUpper - dLower ) * ( dRank - lCumulated ) / counts [i];
+            }
+            lCumulated += counts [i];
+        }
+
+        return getMax( );
+    }
+}
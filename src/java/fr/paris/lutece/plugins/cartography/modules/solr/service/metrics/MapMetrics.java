@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.metrics;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+
+/**
+ * Metrics of the rendering of the maps, stage by stage : solr queries, carto database lookups, GeoJSON rendering, popup markers and exports
+ */
+public final class MapMetrics
+{
+    /** Label value of the grouped solr query of all the data layers of a map */
+    public static final String DATA_LAYER_GROUPED = "grouped";
+
+    /** Label values of the source of the marker values */
+    public static final String MARKER_SOURCE_DOCUMENT = "document";
+    public static final String MARKER_SOURCE_SOLR = "solr";
+
+    private static final String LABEL_DATA_LAYER = "datalayer";
+    private static final String LABEL_ENTITY = "entity";
+    private static final String LABEL_SOURCE = "source";
+
+    private static final double [ ] LATENCY_BOUNDS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30
+    };
+    private static final double [ ] SIZE_BOUNDS = {
+            1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216, 67108864
+    };
+    private static final double [ ] DOCUMENTS_BOUNDS = {
+            0, 1, 10, 100, 1000, 10000, 100000
+    };
+
+    public static final MetricFamily<Histogram> MAP_LOAD = MetricsRegistry.histogram( "cartosolr_map_load_seconds",
+            "Duration of loadMapAndPoints, map model cache included", LATENCY_BOUNDS );
+
+    public static final MetricFamily<Histogram> MAP_MODEL_BUILD = MetricsRegistry.histogram( "cartosolr_map_model_build_seconds",
+            "Duration of the building of a map model, on a miss of the map model cache", LATENCY_BOUNDS );
+
+    public static final MetricFamily<Histogram> SOLR_QUERY = MetricsRegistry.histogram( "cartosolr_solr_query_seconds",
+            "Duration of the solr queries of the data layers", LATENCY_BOUNDS, LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Histogram> SOLR_DOCUMENTS = MetricsRegistry.histogram( "cartosolr_solr_documents",
+            "Number of documents returned by the solr queries of the data layers", DOCUMENTS_BOUNDS, LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Histogram> GEOJSON_RENDER = MetricsRegistry.histogram( "cartosolr_geojson_render_seconds",
+            "Duration of the rendering of the GeoJSON and of the popups of the documents of a data layer", LATENCY_BOUNDS, LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Histogram> GEOJSON_SIZE = MetricsRegistry.histogram( "cartosolr_geojson_bytes",
+            "Size of the GeoJSON rendered for the documents of a data layer", SIZE_BOUNDS, LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Counter> MARKER_LOOKUPS = MetricsRegistry.counter( "cartosolr_marker_lookups_total",
+            "Number of popup marker values looked up, read from the documents or fetched from solr", LABEL_SOURCE );
+
+    public static final MetricFamily<Histogram> MARKER_FETCH = MetricsRegistry.histogram( "cartosolr_marker_fetch_seconds",
+            "Duration of the solr queries fetching the popup marker values missing from the documents", LATENCY_BOUNDS );
+
+    public static final MetricFamily<Histogram> MARKER_REPLACE = MetricsRegistry.histogram( "cartosolr_marker_replace_seconds",
+            "Duration of the replacement of the markers of a text", LATENCY_BOUNDS );
+
+    public static final MetricFamily<Histogram> DB_CALL = MetricsRegistry.histogram( "cartosolr_db_call_seconds",
+            "Duration of the calls to the carto database", LATENCY_BOUNDS, LABEL_ENTITY );
+
+    public static final MetricFamily<Histogram> EXPORT = MetricsRegistry.histogram( "cartosolr_export_seconds",
+            "Duration of the GeoJSON exports of the data layers", LATENCY_BOUNDS, LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Counter> EXPORT_FEATURES = MetricsRegistry.counter( "cartosolr_export_features_total",
+            "Number of features written by the GeoJSON exports", LABEL_DATA_LAYER );
+
+    public static final MetricFamily<Counter> EXPORT_BYTES = MetricsRegistry.counter( "cartosolr_export_bytes_total",
+            "Number of characters written by the GeoJSON exports", LABEL_DATA_LAYER );
+
+    /**
+     * Private constructor
+     */
+    private MapMetrics( )
+    {
+    }
+
+    /**
+     * Returns the label of a data layer : its solr tag
+     * 
+     * @param datalayer
+     *            the data layer, may be null
+     * @return the label
+     */
+    public static String getLabel( DataLayer datalayer )
+    {
+        if ( datalayer == null )
+        {
+            return "";
+        }
+
+        return ( datalayer.getSolrTag( ) != null ) ? datalayer.getSolrTag( ) : String.valueOf( datalayer.getId( ) );
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A metric and its children, one per combination of label values
+ * 
+ * @param <T>
+ *            the type of the metric, Counter or Histogram
+ */
+public final class MetricFamily<T>
+{
+    /**
+     * Type of a metric, as named by the Prometheus text format
+     */
+    public enum Type
+    {
+        COUNTER( "counter" ),
+        HISTOGRAM( "histogram" );
+
+        private final String _strName;
+
+        Type( String strName )
+        {
+            _strName = strName;
+        }
+
+        /**
+         * @return the name of the type in the Prometheus text format
+         */
+        public String getName( )
+        {
+            return _strName;
+        }
+    }
+
+    /** Label value replacing the new values once a family has too many children */
+    public static final String LABEL_VALUE_OTHER = "other";
+
+    private final String _strName;
+    private final String _strHelp;
+    private final Type _type;
+    private final String [ ] _labelNames;
+    private final Supplier<T> _factory;
+    private final int _nMaxChildren;
+    private final Map<List<String>, T> _mapChildren = new ConcurrentHashMap<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param strName
+     *            the name of the metric
+     * @param strHelp
+     *            the description of the metric
+     * @param type
+     *            the type of the metric
+     * @param labelNames
+     *            the names of the labels
+     * @param factory
+     *            creates the children
+     * @param nMaxChildren
+     *            the maximum number of children, the values of the labels are replaced by 'other' beyond it
+     */
+    MetricFamily( String strName, String strHelp, Type type, String [ ] labelNames, Supplier<T> factory, int nMaxChildren )
+    {
+        _strName = strName;
+        _strHelp = strHelp;
+        _type = type;
+        _labelNames = labelNames.clone( );
+        _factory = factory;
+        _nMaxChildren = nMaxChildren;
+    }
+
+    /**
+     * Returns the child of some label values, created at first use
+     * 
+     * @param labelValues
+     *            the values of the labels, in the order of their names. A null value is replaced by an empty string
+     * @return the metric
+     */
+    public T labels( String... labelValues )
+    {
+        if ( labelValues.length != _labelNames.length )
+        {
+            throw new IllegalArgumentException( "The metric " + _strName + " has " + _labelNames.length + " labels" );
+        }
+
+        List<String> key = Arrays.asList( labelValues );
+
+        for ( int i = 0; i < labelValues.length; i++ )
+        {
+            if ( labelValues [i] == null )
+            {
+                key.set( i, "" );
+            }
+        }
+
+        T metric = _mapChildren.get( key );
+
+        if ( metric == null )
+        {
+            if ( _mapChildren.size( ) >= _nMaxChildren )
+            {
+                // bounds the number of series when a label takes unexpected values
+                key = Collections.nCopies( _labelNames.length, LABEL_VALUE_OTHER );
+            }
+            metric = _mapChildren.computeIfAbsent( key, k -> {
+                T child = _factory.get( );
+                MetricsRegistry.registerMBean( this, k, child );
+
+                return child;
+            } );
+        }
+
+        return metric;
+    }
+
+    /**
+     * @return the name of the metric
+     */
+    public String getName( )
+    {
+        return _strName;
+    }
+
+    /**
+     * @return the description of the metric
+     */
+    public String getHelp( )
+    {
+        return _strHelp;
+    }
+
+    /**
+     * @return the type of the metric
+     */
+    public Type getType( )
+    {
+        return _type;
+    }
+
+    /**
+     * @return the names of the labels
+     */
+    public String [ ] getLabelNames( )
+    {
+        return _labelNames.clone( );
+    }
+
+    /**
+     * @return the children, by label values
+     */
+    public Map<List<String>, T> getChildren( )
+    {
+        return Collections.unmodifiableMap( _mapChildren );
+    }
+}
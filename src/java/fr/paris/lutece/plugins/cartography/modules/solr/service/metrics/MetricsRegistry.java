@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Registry of the metrics of the module. Each metric is published in JMX as it is created, and the registry can be written in the Prometheus text
+ * format
+ */
+public final class MetricsRegistry
+{
+    /** Content type of the Prometheus text format */
+    public static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PROPERTY_JMX_ENABLED = "map.metrics.jmx.enabled";
+    private static final String PROPERTY_MAX_LABEL_VALUES = "map.metrics.maxLabelValues";
+    private static final int DEFAULT_MAX_LABEL_VALUES = 500;
+    private static final String JMX_DOMAIN = "fr.paris.lutece.plugins.cartography.modules.solr";
+    private static final String JMX_KEY_TYPE = "type";
+    private static final String JMX_KEY_NAME = "name";
+    private static final String JMX_TYPE_METRICS = "Metrics";
+    private static final String LABEL_LE = "le";
+    private static final String LE_INFINITY = "+Inf";
+    private static final String SUFFIX_BUCKET = "_bucket";
+    private static final String SUFFIX_SUM = "_sum";
+    private static final String SUFFIX_COUNT = "_count";
+
+    private static final List<MetricFamily<?>> _listFamilies = new CopyOnWriteArrayList<>( );
+
+    /**
+     * Private constructor
+     */
+    private MetricsRegistry( )
+    {
+    }
+
+    /**
+     * Creates a counter
+     * 
+     * @param strName
+     *            the name, ending with _total
+     * @param strHelp
+     *            the description
+     * @param labelNames
+     *            the names of the labels
+     * @return the counter family
+     */
+    public static MetricFamily<Counter> counter( String strName, String strHelp, String... labelNames )
+    {
+        return register( new MetricFamily<>( strName, strHelp, MetricFamily.Type.COUNTER, labelNames, Counter::new, getMaxLabelValues( ) ) );
+    }
+
+    /**
+     * Creates a histogram
+     * 
+     * @param strName
+     *            the name, ending with the unit
+     * @param strHelp
+     *            the description
+     * @param bounds
+     *            the upper bounds of the buckets, in increasing order
+     * @param labelNames
+     *            the names of the labels
+     * @return the histogram family
+     */
+    public static MetricFamily<Histogram> histogram( String strName, String strHelp, double [ ] bounds, String... labelNames )
+    {
+        return register( new MetricFamily<>( strName, strHelp, MetricFamily.Type.HISTOGRAM, labelNames, ( ) -> new Histogram( bounds ),
+                getMaxLabelValues( ) ) );
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text format
+     * 
+     * @param writer
+     *            the writer
+     * @throws IOException
+     *             if the metrics cannot be written
+     */
+    public static void writePrometheus( Writer writer ) throws IOException
+    {
+        StringBuilder sb = new StringBuilder( );
+
+        for ( MetricFamily<?> family : _listFamilies )
+        {
+            sb.setLength( 0 );
+            sb.append( "# HELP " ).append( family.getName( ) ).append( ' ' ).append( escapeHelp( family.getHelp( ) ) ).append( '\n' );
+            sb.append( "# TYPE " ).append( family.getName( ) ).append( ' ' ).append( family.getType( ).getName( ) ).append( '\n' );
+
+            String [ ] labelNames = family.getLabelNames( );
+
+            for ( Entry<List<String>, ?> child : family.getChildren( ).entrySet( ) )
+            {
+                if ( child.getValue( ) instanceof Counter )
+                {
+                    appendSample( sb, family.getName( ), labelNames, child.getKey( ), null, null, ( (Counter) child.getValue( ) ).getCount( ) );
+                }
+                else
+                    if ( child.getValue( ) instanceof Histogram )
+                    {
+                        appendHistogram( sb, family.getName( ), labelNames, child.getKey( ), (Histogram) child.getValue( ) );
+                    }
+            }
+            writer.write( sb.toString( ) );
+        }
+    }
+
+    /**
+     * Publishes a metric in JMX, if it is enabled
+     * 
+     * @param family
+     *            the family of the metric
+     * @param labelValues
+     *            the values of the labels of the metric
+     * @param metric
+     *            the metric
+     */
+    static void registerMBean( MetricFamily<?> family, List<String> labelValues, Object metric )
+    {
+        if ( !AppPropertiesService.getPropertyBoolean( PROPERTY_JMX_ENABLED, true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            Hashtable<String, String> properties = new Hashtable<>( );
+            properties.put( JMX_KEY_TYPE, JMX_TYPE_METRICS );
+            properties.put( JMX_KEY_NAME, family.getName( ) );
+
+            String [ ] labelNames = family.getLabelNames( );
+
+            for ( int i = 0; i < labelNames.length; i++ )
+            {
+                properties.put( labelNames [i], ObjectName.quote( labelValues.get( i ) ) );
+            }
+
+            ObjectName name = new ObjectName( JMX_DOMAIN, properties );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer( );
+
+            try
+            {
+                server.registerMBean( metric, name );
+            }
+            catch( InstanceAlreadyExistsException e )
+            {
+                // left by a previous deployment of the webapp
+                server.unregisterMBean( name );
+                server.registerMBean( metric, name );
+            }
+        }
+        catch( JMException e )
+        {
+            AppLogService.error( "MetricsRegistry: unable to publish the metric " + family.getName( ) + labelValues + " in JMX", e );
+        }
+    }
+
+    /**
+     * Registers a family
+     * 
+     * @param family
+     *            the family
+     * @return the family
+     */
+    private static <T> MetricFamily<T> register( MetricFamily<T> family )
+    {
+        _listFamilies.add( family );
+
+        return family;
+    }
+
+    /**
+     * Appends the samples of a histogram : the cumulative buckets, the sum and the count
+     */
+    private static void appendHistogram( StringBuilder sb, String strName, String [ ] labelNames, List<String> labelValues, Histogram histogram )
+    {
+        double [ ] bounds = histogram.getBounds( );
+        long [ ] counts = histogram.getBucketCounts( );
+        long lCumulated = 0;
+
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            lCumulated += counts [i];
+            appendSample( sb, strName + SUFFIX_BUCKET, labelNames, labelValues, LABEL_LE, ( i < bounds.length ) ? formatValue( bounds [i] ) : LE_INFINITY,
+                    lCumulated );
+        }
+        appendSample( sb, strName + SUFFIX_SUM, labelNames, labelValues, null, null, histogram.getSum( ) );
+        appendSample( sb, strName + SUFFIX_COUNT, labelNames, labelValues, null, null, lCumulated );
+    }
+
+    /**
+     * Appends a sample line
+     */
+    private static void appendSample( StringBuilder sb, String strName, String [ ] labelNames, List<String> labelValues, String strExtraLabel,
+            String strExtraValue, double dValue )
+    {
+        sb.append( strName );
+
+        if ( labelNames.length > 0 || strExtraLabel != null )
+        {
+            List<String> listLabels = new ArrayList<>( labelNames.length + 1 );
+
+            for ( int i = 0; i < labelNames.length; i++ )
+            {
+                listLabels.add( labelNames [i] + "=\"" + escapeLabelValue( labelValues.get( i ) ) + "\"" );
+            }
+            if ( strExtraLabel != null )
+            {
+                listLabels.add( strExtraLabel + "=\"" + strExtraValue + "\"" );
+            }
+            sb.append( '{' ).append( String.join( ",", listLabels ) ).append( '}' );
+        }
+
+        sb.append( ' ' ).append( formatValue( dValue ) ).append( '\n' );
+    }
+
+    /**
+     * Formats a value, the integers without decimals
+     */
+    private static String formatValue( double dValue )
+    {
+        if ( dValue == Math.rint( dValue ) && !Double.isInfinite( dValue ) && Math.abs( dValue ) < 1e15 )
+        {
+            return Long.toString( (long) dValue );
+        }
+
+        return Double.toString( dValue );
+    }
+
+    private static String escapeHelp( String strHelp )
+    {
+        return strHelp.replace( "\\", "\\\\" ).replace( "\n", "\\n" );
+    }
+
+    private static String escapeLabelValue( String strValue )
+    {
+        return strValue.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+    }
+
+    private static int getMaxLabelValues( )
+    {
+        return AppPropertiesService.getPropertyInt( PROPERTY_MAX_LABEL_VALUES, DEFAULT_MAX_LABEL_VALUES );
+    }
+}
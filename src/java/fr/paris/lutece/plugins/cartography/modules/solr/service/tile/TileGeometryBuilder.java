@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Projects WGS84 geometries to the coordinates of a Web Mercator tile, clips them to the tile and its buffer and quantises them to integers
+ */
+public final class TileGeometryBuilder
+{
+    private static final double MAX_LATITUDE = 85.0511287798;
+
+    private final double _dScale;
+    private final double _dOffsetX;
+    private final double _dOffsetY;
+    private final double _dMin;
+    private final double _dMax;
+
+    /**
+     * Constructor
+     * 
+     * @param nZoom
+     *            the zoom of the tile
+     * @param nX
+     *            the column of the tile
+     * @param nY
+     *            the row of the tile
+     * @param nExtent
+     *            the extent of the tile
+     * @param nBuffer
+     *            the buffer around the tile, in tile units
+     */
+    public TileGeometryBuilder( int nZoom, int nX, int nY, int nExtent, int nBuffer )
+    {
+        _dScale = ( 1L << nZoom ) * (double) nExtent;
+        _dOffsetX = nX * (double) nExtent;
+        _dOffsetY = nY * (double) nExtent;
+        _dMin = -nBuffer;
+        _dMax = (double) nExtent + nBuffer;
+    }
+
+    /**
+     * Returns the longitude of the west edge of a tile column
+     * 
+     * @param dX
+     *            the column, may be fractional
+     * @param nZoom
+     *            the zoom
+     * @return the longitude
+     */
+    public static double tileToLongitude( double dX, int nZoom )
+    {
+        return dX / ( 1L << nZoom ) * 360.0 - 180.0;
+    }
+
+    /**
+     * Returns the latitude of the north edge of a tile row
+     * 
+     * @param dY
+     *            the row, may be fractional
+     * @param nZoom
+     *            the zoom
+     * @return the latitude
+     */
+    public static double tileToLatitude( double dY, int nZoom )
+    {
+        double dN = Math.PI - 2.0 * Math.PI * dY / ( 1L << nZoom );
+
+        return Math.toDegrees( Math.atan( Math.sinh( dN ) ) );
+    }
+
+    /**
+     * Projects and quantises a point
+     * 
+     * @param dLongitude
+     *            the longitude
+     * @param dLatitude
+     *            the latitude
+     * @return the point as x, y, or null if it is outside the tile and its buffer
+     */
+    public int [ ] getPoint( double dLongitude, double dLatitude )
+    {
+        double dX = projectX( dLongitude );
+        double dY = projectY( dLatitude );
+
+        if ( dX < _dMin || dX > _dMax || dY < _dMin || dY > _dMax )
+        {
+            return null;
+        }
+
+        return new int [ ] {
+                (int) Math.round( dX ), (int) Math.round( dY )
+        };
+    }
+
+    /**
+     * Projects, clips and quantises a line
+     * 
+     * @param positions
+     *            the line as lon0, lat0, lon1, lat1...
+     * @return the parts of the line inside the tile and its buffer
+     */
+    public List<int [ ]> getLineParts( double [ ] positions )
+    {
+        List<int [ ]> listParts = new ArrayList<>( );
+        IntPath path = new IntPath( );
+        int nPoints = positions.length / 2;
+
+        for ( int i = 0; i + 1 < nPoints; i++ )
+        {
+            double [ ] segment = clipSegment( projectX( positions [2 * i] ), projectY( positions [2 * i + 1] ), projectX( positions [2 * i + 2] ),
+                    projectY( positions [2 * i + 3] ) );
+
+            if ( segment == null )
+            {
+                path.flushTo( listParts, 2 );
+                continue;
+            }
+
+            if ( !path.endsWith( segment [0], segment [1] ) )
+            {
+                path.flushTo( listParts, 2 );
+            }
+            path.add( segment [0], segment [1] );
+            path.add( segment [2], segment [3] );
+
+            // the segment leaves the tile : the next one starts a new part
+            if ( segment [4] != 0 )
+            {
+                path.flushTo( listParts, 2 );
+            }
+        }
+        path.flushTo( listParts, 2 );
+
+        return listParts;
+    }
+
+    /**
+     * Projects, clips and quantises a polygon ring, and orients it as required by the vector tile specification
+     * 
+     * @param positions
+     *            the ring as lon0, lat0, lon1, lat1..., closed or not
+     * @param bExterior
+     *            true for the exterior ring, false for a hole
+     * @return the ring, not closed, or null if nothing remains inside the tile and its buffer
+     */
+    public int [ ] getRing( double [ ] positions, boolean bExterior )
+    {
+        int nPoints = positions.length / 2;
+        double [ ] ring = new double [ nPoints * 2];
+
+        for ( int i = 0; i < nPoints; i++ )
+        {
+            ring [2 * i] = projectX( positions [2 * i] );
+            ring [2 * i + 1] = projectY( positions [2 * i + 1] );
+        }
+
+        // Sutherland-Hodgman against the four edges of the buffered tile
+        for ( int nEdge = 0; nEdge < 4 && ring.length >= 6; nEdge++ )
+        {
+            ring = clipRingToEdge( ring, nEdge );
+        }
+
+        IntPath path = new IntPath( );
+        for ( int i = 0; i < ring.length / 2; i++ )
+        {
+            path.add( ring [2 * i], ring [2 * i + 1] );
+        }
+        path.removeClosingPoint( );
+
+        if ( path._nSize < 6 )
+        {
+            return null;
+        }
+
+        int [ ] result = path.toArray( );
+        long lArea = getDoubleArea( result );
+
+        if ( lArea == 0 )
+        {
+            return null;
+        }
+
+        // In tile coordinates (y down), the exterior ring has a positive area and the holes a negative one
+        if ( ( lArea > 0 ) != bExterior )
+        {
+            reverse( result );
+        }
+
+        return result;
+    }
+
+    /**
+     * @param dLongitude
+     *            the longitude
+     * @return the x in tile coordinates
+     */
+    private double projectX( double dLongitude )
+    {
+        return ( dLongitude + 180.0 ) / 360.0 * _dScale - _dOffsetX;
+    }
+
+    /**
+     * @param dLatitude
+     *            the latitude
+     * @return the y in tile coordinates
+     */
+    private double projectY( double dLatitude )
+    {
+        double dLatitudeRad = Math.toRadians( Math.max( -MAX_LATITUDE, Math.min( MAX_LATITUDE, dLatitude ) ) );
+        double dY = ( 1.0 - Math.log( Math.tan( dLatitudeRad ) + 1.0 / Math.cos( dLatitudeRad ) ) / Math.PI ) / 2.0;
+
+        return dY * _dScale - _dOffsetY;
+    }
+
+    /**
+     * Clips a segment with the Liang-Barsky algorithm
+     * 
+     * @param dX0
+     *            the x of the start
+     * @param dY0
+     *            the y of the start
+     * @param dX1
+     *            the x of the end
+     * @param dY1
+     *            the y of the end
+     * @return the clipped segment as x0, y0, x1, y1, and 1 if the end has been clipped, 0 otherwise ; or null if the segment is outside
+     */
+    private double [ ] clipSegment( double dX0, double dY0, double dX1, double dY1 )
+    {
+        double dDx = dX1 - dX0;
+        double dDy = dY1 - dY0;
+        double [ ] p = {
+                -dDx, dDx, -dDy, dDy
+        };
+        double [ ] q = {
+                dX0 - _dMin, _dMax - dX0, dY0 - _dMin, _dMax - dY0
+        };
+        double dT0 = 0;
+        double dT1 = 1;
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            if ( p [i] == 0 )
+            {
+                if ( q [i] < 0 )
+                {
+                    return null;
+                }
+            }
+            else
+            {
+                double dT = q [i] / p [i];
+                if ( p [i] < 0 )
+                {
+                    dT0 = Math.max( dT0, dT );
+                }
+                else
+                {
+                    dT1 = Math.min( dT1, dT );
+                }
+            }
+        }
+
+        if ( dT0 > dT1 )
+        {
+            return null;
+        }
+
+        return new double [ ] {
+                dX0 + dT0 * dDx, dY0 + dT0 * dDy, dX0 + dT1 * dDx, dY0 + dT1 * dDy, ( dT1 < 1 ) ? 1 : 0
+        };
+    }
+
+    /**
+     * Clips a ring against one edge of the buffered tile
+     * 
+     * @param ring
+     *            the ring as x0, y0, x1, y1...
+     * @param nEdge
+     *            0 : left, 1 : right, 2 : top, 3 : bottom
+     * @return the clipped ring
+     */
+    private double [ ] clipRingToEdge( double [ ] ring, int nEdge )
+    {
+        int nPoints = ring.length / 2;
+        double [ ] result = new double [ nPoints * 4];
+        int nSize = 0;
+
+        for ( int i = 0; i < nPoints; i++ )
+        {
+            int nPrevious = ( i + nPoints - 1 ) % nPoints;
+            double dX = ring [2 * i];
+            double dY = ring [2 * i + 1];
+            double dPreviousX = ring [2 * nPrevious];
+            double dPreviousY = ring [2 * nPrevious + 1];
+            boolean bInside = isInside( dX, dY, nEdge );
+            boolean bPreviousInside = isInside( dPreviousX, dPreviousY, nEdge );
+
+            if ( bInside != bPreviousInside )
+            {
+                double dBoundary = ( nEdge == 0 || nEdge == 2 ) ? _dMin : _dMax;
+                double dT = ( nEdge < 2 ) ? ( dBoundary - dPreviousX ) / ( dX - dPreviousX ) : ( dBoundary - dPreviousY ) / ( dY - dPreviousY );
+                result [nSize++] = dPreviousX + dT * ( dX - dPreviousX );
+                result [nSize++] = dPreviousY + dT * ( dY - dPreviousY );
+            }
+            if ( bInside )
+            {
+                result [nSize++] = dX;
+                result [nSize++] = dY;
+            }
+        }
+
+        double [ ] clipped = new double [ nSize];
+        System.arraycopy( result, 0, clipped, 0, nSize );
+
+        return clipped;
+    }
+
+    /**
+     * @param dX
+     *            the x
+     * @param dY
+     *            the y
+     * @param nEdge
+     *            the edge
+     * @return true if the point is on the inner side of the edge
+     */
+    private boolean isInside( double dX, double dY, int nEdge )
+    {
+        switch( nEdge )
+        {
+            case 0:
+                return dX >= _dMin;
+            case 1:
+                return dX <= _dMax;
+            case 2:
+                return dY >= _dMin;
+            default:
+                return dY <= _dMax;
+        }
+    }
+
+    /**
+     * Returns twice the signed area of a ring
+     * 
+     * @param ring
+     *            the ring as x0, y0, x1, y1..., not closed
+     * @return twice the area
+     */
+    private static long getDoubleArea( int [ ] ring )
+    {
+        int nPoints = ring.length / 2;
+        long lArea = 0;
+
+        for ( int i = 0; i < nPoints; i++ )
+        {
+            int j = ( i + 1 ) % nPoints;
+            lArea += (long) ring [2 * i] * ring [2 * j + 1] - (long) ring [2 * j] * ring [2 * i + 1];
+        }
+
+        return lArea;
+    }
+
+    /**
+     * Reverses the order of the positions of a ring
+     * 
+     * @param ring
+     *            the ring as x0, y0, x1, y1...
+     */
+    private static void reverse( int [ ] ring )
+    {
+        int nPoints = ring.length / 2;
+
+        for ( int i = 0; i < nPoints / 2; i++ )
+        {
+            int j = nPoints - 1 - i;
+            int nX = ring [2 * i];
+            int nY = ring [2 * i + 1];
+            ring [2 * i] = ring [2 * j];
+            ring [2 * i + 1] = ring [2 * j + 1];
+            ring [2 * j] = nX;
+            ring [2 * j + 1] = nY;
+        }
+    }
+
+    /**
+     * Growable path of quantised positions, without consecutive duplicates
+     */
+    private static final class IntPath
+    {
+        private int [ ] _positions = new int [ 32];
+        private int _nSize;
+
+        /**
+         * Add a position, rounded, unless it is equal to the last one
+         * 
+         * @param dX
+         *            the x
+         * @param dY
+         *            the y
+         */
+        private void add( double dX, double dY )
+        {
+            int nX = (int) Math.round( dX );
+            int nY = (int) Math.round( dY );
+
+            if ( _nSize >= 2 && _positions [_nSize - 2] == nX && _positions [_nSize - 1] == nY )
+            {
+                return;
+            }
+            if ( _nSize + 2 > _positions.length )
+            {
+                int [ ] positions = new int [ _positions.length * 2];
+                System.arraycopy( _positions, 0, positions, 0, _nSize );
+                _positions = positions;
+            }
+            _positions [_nSize++] = nX;
+            _positions [_nSize++] = nY;
+        }
+
+        /**
+         * @param dX
+         *            the x
+         * @param dY
+         *            the y
+         * @return true if the path ends with the rounded position
+         */
+        private boolean endsWith( double dX, double dY )
+        {
+            return _nSize >= 2 && _positions [_nSize - 2] == (int) Math.round( dX ) && _positions [_nSize - 1] == (int) Math.round( dY );
+        }
+
+        /**
+         * Removes the last position if it is equal to the first one
+         */
+        private void removeClosingPoint( )
+        {
+            if ( _nSize >= 4 && _positions [0] == _positions [_nSize - 2] && _positions [1] == _positions [_nSize - 1] )
+            {
+                _nSize -= 2;
+            }
+        }
+
+        /**
+         * Adds the path to a list of parts if it has enough positions, then clears it
+         * 
+         * @param listParts
+         *            the parts
+         * @param nMinPoints
+         *            the minimum number of positions
+         */
+        private void flushTo( List<int [ ]> listParts, int nMinPoints )
+        {
+            if ( _nSize >= nMinPoints * 2 )
+            {
+                listParts.add( toArray( ) );
+            }
+            _nSize = 0;
+        }
+
+        /**
+         * @return the positions
+         */
+        private int [ ] toArray( )
+        {
+            int [ ] positions = new int [ _nSize];
+            System.arraycopy( _positions, 0, positions, 0, _nSize );
+
+            return positions;
+        }
+    }
+}
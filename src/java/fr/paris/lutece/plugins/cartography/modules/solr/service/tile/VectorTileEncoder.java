@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Encoder of Mapbox Vector Tiles (version 2 of the specification). The geometries are given in tile coordinates, already clipped and quantised
+ */
+public final class VectorTileEncoder
+{
+    public static final int GEOM_TYPE_POINT = 1;
+    public static final int GEOM_TYPE_LINESTRING = 2;
+    public static final int GEOM_TYPE_POLYGON = 3;
+
+    private static final int VERSION = 2;
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    // Tile
+    private static final int FIELD_TILE_LAYERS = 3;
+
+    // Layer
+    private static final int FIELD_LAYER_NAME = 1;
+    private static final int FIELD_LAYER_FEATURES = 2;
+    private static final int FIELD_LAYER_KEYS = 3;
+    private static final int FIELD_LAYER_VALUES = 4;
+    private static final int FIELD_LAYER_EXTENT = 5;
+    private static final int FIELD_LAYER_VERSION = 15;
+
+    // Feature
+    private static final int FIELD_FEATURE_ID = 1;
+    private static final int FIELD_FEATURE_TAGS = 2;
+    private static final int FIELD_FEATURE_TYPE = 3;
+    private static final int FIELD_FEATURE_GEOMETRY = 4;
+
+    // Value
+    private static final int FIELD_VALUE_STRING = 1;
+
+    // Geometry commands
+    private static final int COMMAND_MOVE_TO = 1;
+    private static final int COMMAND_LINE_TO = 2;
+    private static final int COMMAND_CLOSE_PATH = 7;
+
+    private final int _nExtent;
+    private final Map<String, Layer> _mapLayers = new LinkedHashMap<>( );
+
+    /**
+     * Constructor
+     * 
+     * @param nExtent
+     *            the extent of the tile
+     */
+    public VectorTileEncoder( int nExtent )
+    {
+        _nExtent = nExtent;
+    }
+
+    /**
+     * Add a feature to a layer of the tile
+     * 
+     * @param strLayerName
+     *            the layer
+     * @param lId
+     *            the id of the feature, 0 if it has none
+     * @param mapAttributes
+     *            the attributes of the feature
+     * @param nGeomType
+     *            the geometry type
+     * @param listParts
+     *            the points, lines or rings of the geometry, each one as x0, y0, x1, y1... in tile coordinates. The rings are not closed, the first one
+     *            is the exterior ring, the others are holes
+     */
+    public void addFeature( String strLayerName, long lId, Map<String, String> mapAttributes, int nGeomType, List<int [ ]> listParts )
+    {
+        int [ ] geometry = encodeGeometry( nGeomType, listParts );
+
+        if ( geometry.length == 0 )
+        {
+            return;
+        }
+
+        Layer layer = _mapLayers.computeIfAbsent( strLayerName, Layer::new );
+        List<Integer> listTags = new ArrayList<>( );
+
+        for ( Entry<String, String> attribute : mapAttributes.entrySet( ) )
+        {
+            if ( attribute.getValue( ) != null )
+            {
+                listTags.add( layer._mapKeys.computeIfAbsent( attribute.getKey( ), strKey -> layer._mapKeys.size( ) ) );
+                listTags.add( layer._mapValues.computeIfAbsent( attribute.getValue( ), strValue -> layer._mapValues.size( ) ) );
+            }
+        }
+
+        ProtobufWriter feature = new ProtobufWriter( );
+        if ( lId > 0 )
+        {
+            feature.writeVarintField( FIELD_FEATURE_ID, lId );
+        }
+        feature.writePackedField( FIELD_FEATURE_TAGS, listTags.stream( ).mapToInt( Integer::intValue ).toArray( ) );
+        feature.writeVarintField( FIELD_FEATURE_TYPE, nGeomType );
+        feature.writePackedField( FIELD_FEATURE_GEOMETRY, geometry );
+
+        layer._listFeatures.add( feature.toByteArray( ) );
+    }
+
+    /**
+     * Returns true if no feature has been added
+     * 
+     * @return true if the tile is empty
+     */
+    public boolean isEmpty( )
+    {
+        return _mapLayers.isEmpty( );
+    }
+
+    /**
+     * Encodes the tile
+     * 
+     * @return the tile
+     */
+    public byte [ ] encode( )
+    {
+        ProtobufWriter tile = new ProtobufWriter( );
+
+        for ( Layer layer : _mapLayers.values( ) )
+        {
+            ProtobufWriter writer = new ProtobufWriter( );
+            writer.writeVarintField( FIELD_LAYER_VERSION, VERSION );
+            writer.writeStringField( FIELD_LAYER_NAME, layer._strName );
+
+            for ( byte [ ] feature : layer._listFeatures )
+            {
+                writer.writeBytesField( FIELD_LAYER_FEATURES, feature );
+            }
+            for ( String strKey : layer._mapKeys.keySet( ) )
+            {
+                writer.writeStringField( FIELD_LAYER_KEYS, strKey );
+            }
+            for ( String strValue : layer._mapValues.keySet( ) )
+            {
+                ProtobufWriter value = new ProtobufWriter( );
+                value.writeStringField( FIELD_VALUE_STRING, strValue );
+                writer.writeBytesField( FIELD_LAYER_VALUES, value.toByteArray( ) );
+            }
+            writer.writeVarintField( FIELD_LAYER_EXTENT, _nExtent );
+
+            tile.writeBytesField( FIELD_TILE_LAYERS, writer.toByteArray( ) );
+        }
+
+        return tile.toByteArray( );
+    }
+
+    /**
+     * Encodes a geometry as a sequence of commands
+     * 
+     * @param nGeomType
+     *            the geometry type
+     * @param listParts
+     *            the parts of the geometry
+     * @return the commands, empty if the geometry has no valid part
+     */
+    private static int [ ] encodeGeometry( int nGeomType, List<int [ ]> listParts )
+    {
+        GeometryCommands commands = new GeometryCommands( );
+
+        for ( int [ ] part : listParts )
+        {
+            int nPoints = part.length / 2;
+
+            if ( nGeomType == GEOM_TYPE_POINT && nPoints >= 1 )
+            {
+                commands.add( command( COMMAND_MOVE_TO, nPoints ) );
+                for ( int i = 0; i < nPoints; i++ )
+                {
+                    commands.addPoint( part [2 * i], part [2 * i + 1] );
+                }
+            }
+            else
+                if ( ( nGeomType == GEOM_TYPE_LINESTRING && nPoints >= 2 ) || ( nGeomType == GEOM_TYPE_POLYGON && nPoints >= 3 ) )
+                {
+                    commands.add( command( COMMAND_MOVE_TO, 1 ) );
+                    commands.addPoint( part [0], part [1] );
+                    commands.add( command( COMMAND_LINE_TO, nPoints - 1 ) );
+                    for ( int i = 1; i < nPoints; i++ )
+                    {
+                        commands.addPoint( part [2 * i], part [2 * i + 1] );
+                    }
+                    if ( nGeomType == GEOM_TYPE_POLYGON )
+                    {
+                        commands.add( command( COMMAND_CLOSE_PATH, 1 ) );
+                    }
+                }
+        }
+
+        return commands.toArray( );
+    }
+
+    /**
+     * Returns a command integer
+     * 
+     * @param nId
+     *            the command
+     * @param nCount
+     *            the number of times the command is repeated
+     * @return the command integer
+     */
+    private static int command( int nId, int nCount )
+    {
+        return ( nId & 0x7 ) | ( nCount << 3 );
+    }
+
+    /**
+     * Layer being built
+     */
+    private static final class Layer
+    {
+        private final String _strName;
+        private final Map<String, Integer> _mapKeys = new LinkedHashMap<>( );
+        private final Map<String, Integer> _mapValues = new LinkedHashMap<>( );
+        private final List<byte [ ]> _listFeatures = new ArrayList<>( );
+
+        /**
+         * Constructor
+         * 
+         * @param strName
+         *            the name of the layer
+         */
+        private Layer( String strName )
+        {
+            _strName = strName;
+        }
+    }
+
+    /**
+     * Geometry commands, with the cursor used to delta-encode the positions
+     */
+    private static final class GeometryCommands
+    {
+        private int [ ] _commands = new int [ 64];
+        private int _nSize;
+        private int _nCursorX;
+        private int _nCursorY;
+
+        /**
+         * Add a command integer
+         * 
+         * @param nValue
+         *            the value
+         */
+        private void add( int nValue )
+        {
+            if ( _nSize == _commands.length )
+            {
+                int [ ] commands = new int [ _commands.length * 2];
+                System.arraycopy( _commands, 0, commands, 0, _nSize );
+                _commands = commands;
+            }
+            _commands [_nSize++] = nValue;
+        }
+
+        /**
+         * Add the parameters of a position
+         * 
+         * @param nX
+         *            the x of the position
+         * @param nY
+         *            the y of the position
+         */
+        private void addPoint( int nX, int nY )
+        {
+            add( zigZag( nX - _nCursorX ) );
+            add( zigZag( nY - _nCursorY ) );
+            _nCursorX = nX;
+            _nCursorY = nY;
+        }
+
+        /**
+         * @return the command integers
+         */
+        private int [ ] toArray( )
+        {
+            int [ ] commands = new int [ _nSize];
+            System.arraycopy( _commands, 0, commands, 0, _nSize );
+
+            return commands;
+        }
+
+        /**
+         * ZigZag encoding of a parameter
+         * 
+         * @param nValue
+         *            the value
+         * @return the encoded value
+         */
+        private static int zigZag( int nValue )
+        {
+            return ( nValue << 1 ) ^ ( nValue >> 31 );
+        }
+    }
+
+    /**
+     * Minimal protobuf writer
+     */
+    private static final class ProtobufWriter
+    {
+        private final ByteArrayOutputStream _out = new ByteArrayOutputStream( );
+
+        /**
+         * Write a varint field
+         * 
+         * @param nField
+         *            the field number
+         * @param lValue
+         *            the value
+         */
+        private void writeVarintField( int nField, long lValue )
+        {
+            writeVarint( ( nField << 3 ) | WIRE_TYPE_VARINT );
+            writeVarint( lValue );
+        }
+
+        /**
+         * Write a string field
+         * 
+         * @param nField
+         *            the field number
+         * @param strValue
+         *            the value
+         */
+        private void writeStringField( int nField, String strValue )
+        {
+            writeBytesField( nField, strValue.getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        /**
+         * Write a length delimited field
+         * 
+         * @param nField
+         *            the field number
+         * @param value
+         *            the value
+         */
+        private void writeBytesField( int nField, byte [ ] value )
+        {
+            writeVarint( ( nField << 3 ) | WIRE_TYPE_LENGTH_DELIMITED );
+            writeVarint( value.length );
+            _out.write( value, 0, value.length );
+        }
+
+        /**
+         * Write a packed field of unsigned integers
+         * 
+         * @param nField
+         *            the field number
+         * @param values
+         *            the values
+         */
+        private void writePackedField( int nField, int [ ] values )
+        {
+            ProtobufWriter packed = new ProtobufWriter( );
+            for ( int nValue : values )
+            {
+                packed.writeVarint( nValue & 0xFFFFFFFFL );
+            }
+            writeBytesField( nField, packed.toByteArray( ) );
+        }
+
+        /**
+         * Write a varint
+         * 
+         * @param lValue
+         *            the value
+         */
+        private void writeVarint( long lValue )
+        {
+            long lRemaining = lValue;
+
+            while ( ( lRemaining & ~0x7FL ) != 0 )
+            {
+                _out.write( (int) ( ( lRemaining & 0x7F ) | 0x80 ) );
+                lRemaining >>>= 7;
+            }
+            _out.write( (int) lRemaining );
+        }
+
+        /**
+         * @return the bytes written
+         */
+        private byte [ ] toByteArray( )
+        {
+            return _out.toByteArray( );
+        }
+    }
+}
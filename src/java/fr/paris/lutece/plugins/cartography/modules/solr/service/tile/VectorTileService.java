@@ -0,0 +1,598 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplate;
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.LevelOfDetailService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.MapModelCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.QueryJournalService;
+import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
+import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppException;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Builds the Mapbox vector tiles of the solr data layers of a map, one tile layer per data layer. The tiles are cached on disk per index version, so that
+ * a reindexation or a configuration change makes the previous tiles obsolete
+ */
+public final class VectorTileService
+{
+    private static final String PROPERTY_TILE_ENABLED = "map.tile.enabled";
+    private static final String PROPERTY_TILE_EXTENT = "map.tile.extent";
+    private static final String PROPERTY_TILE_BUFFER = "map.tile.buffer";
+    private static final String PROPERTY_TILE_LIMIT_RESULT_SOLR = "map.tile.limit.result.solr";
+    private static final String PROPERTY_TILE_MAX_ZOOM = "map.tile.max.zoom";
+    private static final String PROPERTY_TILE_CACHE_ENABLED = "map.tile.cache.enabled";
+    private static final String PROPERTY_TILE_CACHE_DIRECTORY = "map.tile.cache.directory";
+    private static final String PROPERTY_TILE_SCRIPT_URL = "map.tile.script.url";
+    private static final int DEFAULT_TILE_EXTENT = 4096;
+    private static final int DEFAULT_TILE_BUFFER = 64;
+    private static final int DEFAULT_TILE_LIMIT_RESULT_SOLR = 5000;
+    private static final int DEFAULT_TILE_MAX_ZOOM = 22;
+    private static final String DEFAULT_CACHE_DIRECTORY = "cartosolr-tiles";
+    private static final String DEFAULT_TILE_SCRIPT_URL = "https://unpkg.com/leaflet.vectorgrid@1.3.0/dist/Leaflet.VectorGrid.bundled.min.js";
+
+    private static final String ATTRIBUTE_ID = "id";
+    private static final String ATTRIBUTE_DATA_LAYER = "dataLayer";
+    private static final String ATTRIBUTE_TYPE = "type";
+    private static final String ATTRIBUTE_COLOR = "color";
+    private static final String ATTRIBUTE_WEIGHT = "weight";
+    private static final String ATTRIBUTE_ID_PICTO = "idPicto";
+    private static final String FIELD_GEOMETRY = "geometry";
+    private static final String FIELD_TYPE = "type";
+    private static final String FIELD_COORDINATES = "coordinates";
+    private static final String TYPE_POINT = "Point";
+    private static final String TYPE_LINESTRING = "LineString";
+    private static final String TYPE_POLYGON = "Polygon";
+    private static final String ROLE_HASH_ALGORITHM = "SHA-256";
+    private static final String ROLE_ANONYMOUS = "_anonymous";
+    private static final String TILE_EXTENSION = ".pbf";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final AtomicLong PURGED_VERSION = new AtomicLong( -1 );
+
+    /**
+     * Private constructor
+     */
+    private VectorTileService( )
+    {
+    }
+
+    /**
+     * Returns true if the vector tiles are served. The tiles are only used with the viewport loading
+     * 
+     * @return true if the vector tiles are enabled
+     */
+    public static boolean isTileEnabled( )
+    {
+        return CartographyService.isViewportEnabled( ) && AppPropertiesService.getPropertyBoolean( PROPERTY_TILE_ENABLED, false );
+    }
+
+    /**
+     * Returns the URL of the Leaflet.VectorGrid script loaded by the page to draw the tiles
+     * 
+     * @return the URL of the script
+     */
+    public static String getScriptUrl( )
+    {
+        return AppPropertiesService.getProperty( PROPERTY_TILE_SCRIPT_URL, DEFAULT_TILE_SCRIPT_URL );
+    }
+
+    /**
+     * Returns true if a tile exists at the given coordinates
+     * 
+     * @param nZoom
+     *            the zoom
+     * @param nX
+     *            the column
+     * @param nY
+     *            the row
+     * @return true if the tile coordinates are valid
+     */
+    public static boolean isValidTile( int nZoom, int nX, int nY )
+    {
+        return nZoom >= 0 && nZoom <= AppPropertiesService.getPropertyInt( PROPERTY_TILE_MAX_ZOOM, DEFAULT_TILE_MAX_ZOOM ) && nX >= 0 && nY >= 0
+                && nX < ( 1L << nZoom ) && nY < ( 1L << nZoom );
+    }
+
+    /**
+     * Returns a vector tile of the solr data layers of a map, from the disk cache if possible
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param lVersion
+     *            the version of the index the tile must match
+     * @param nZoom
+     *            the zoom
+     * @param nX
+     *            the column
+     * @param nY
+     *            the row
+     * @return the encoded tile, empty if no feature is located in the tile
+     */
+    public static byte [ ] getTile( MapTemplate map, LuteceUser user, long lVersion, int nZoom, int nX, int nY )
+    {
+        if ( !AppPropertiesService.getPropertyBoolean( PROPERTY_TILE_CACHE_ENABLED, true ) )
+        {
+            return buildTile( map, user, nZoom, nX, nY );
+        }
+
+        purgeObsoleteVersions( lVersion );
+
+        Path pathTile = getCacheDirectory( ).resolve( String.valueOf( lVersion ) ).resolve( String.valueOf( map.getId( ) ) ).resolve( getRoleKey( user ) )
+                .resolve( String.valueOf( nZoom ) ).resolve( String.valueOf( nX ) ).resolve( nY + TILE_EXTENSION );
+
+        try
+        {
+            if ( Files.isRegularFile( pathTile ) )
+            {
+                return Files.readAllBytes( pathTile );
+            }
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "VectorTileService: unable to read the cached tile " + pathTile, e );
+        }
+
+        byte [ ] tile = buildTile( map, user, nZoom, nX, nY );
+
+        // Do not cache a tile built while the index or the configuration was changing
+        if ( lVersion == MapModelCacheService.getInstance( ).getVersion( ) )
+        {
+            writeTile( pathTile, tile );
+        }
+
+        return tile;
+    }
+
+    /**
+     * Builds a vector tile of the solr data layers of a map
+     * 
+     * @param map
+     *            the map
+     * @param user
+     *            the user, may be null
+     * @param nZoom
+     *            the zoom
+     * @param nX
+     *            the column
+     * @param nY
+     *            the row
+     * @return the encoded tile
+     */
+    private static byte [ ] buildTile( MapTemplate map, LuteceUser user, int nZoom, int nX, int nY )
+    {
+        int nExtent = AppPropertiesService.getPropertyInt( PROPERTY_TILE_EXTENT, DEFAULT_TILE_EXTENT );
+        int nBuffer = AppPropertiesService.getPropertyInt( PROPERTY_TILE_BUFFER, DEFAULT_TILE_BUFFER );
+        int nLimit = AppPropertiesService.getPropertyInt( PROPERTY_TILE_LIMIT_RESULT_SOLR, DEFAULT_TILE_LIMIT_RESULT_SOLR );
+        double dBuffer = (double) nBuffer / nExtent;
+
+        // the documents of the buffer are loaded too, so that the features crossing the edge of the tile are drawn without seams
+        String strFilterQuery = CartographyService.getViewportFilterQuery( TileGeometryBuilder.tileToLongitude( nX - dBuffer, nZoom ),
+                TileGeometryBuilder.tileToLatitude( nY + 1 + dBuffer, nZoom ), TileGeometryBuilder.tileToLongitude( nX + 1 + dBuffer, nZoom ),
+                TileGeometryBuilder.tileToLatitude( nY - dBuffer, nZoom ) );
+        int nLodLevel = LevelOfDetailService.getLevel( nZoom );
+
+        TileGeometryBuilder builder = new TileGeometryBuilder( nZoom, nX, nY, nExtent, nBuffer );
+        VectorTileEncoder encoder = new VectorTileEncoder( nExtent );
+
+        try ( QueryJournalService.Scope scope = QueryJournalService.openMap( map.getId( ) ) )
+        {
+            for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), false ) )
+            {
+                addDataLayer( encoder, builder, map, datalayer,
+                        CartographyService.searchDataLayer( datalayer, user, true, strFilterQuery, nLimit, nLodLevel ) );
+            }
+            for ( DataLayer datalayer : CartoReferenceCacheService.getInstance( ).getDataLayerListByMapTemplateId( map.getId( ), true ) )
+            {
+                addDataLayer( encoder, builder, map, datalayer,
+                        CartographyService.searchDataLayer( datalayer, user, false, strFilterQuery, nLimit, nLodLevel ) );
+            }
+        }
+
+        return encoder.encode( );
+    }
+
+    /**
+     * Adds the documents of a data layer to a tile
+     * 
+     * @param encoder
+     *            the tile encoder
+     * @param builder
+     *            the geometry builder of the tile
+     * @param map
+     *            the map
+     * @param datalayer
+     *            the data layer
+     * @param listResults
+     *            the documents of the data layer located in the tile, with the geometries at the level of detail of the zoom
+     */
+    private static void addDataLayer( VectorTileEncoder encoder, TileGeometryBuilder builder, MapTemplate map, DataLayer datalayer,
+            List<SolrSearchResult> listResults )
+    {
+        String strLayerName = datalayer.getSolrTag( );
+        Map<String, String> mapStyle = getStyleAttributes(
+                CartoReferenceCacheService.getInstance( ).getDataLayerMapTemplate( map.getId( ), datalayer.getId( ) ) );
+
+        for ( SolrSearchResult result : listResults )
+        {
+            Map<String, Object> dynamicFields = result.getDynamicFields( );
+            String strUid = result.getId( );
+
+            for ( Entry<String, Object> entry : dynamicFields.entrySet( ) )
+            {
+                if ( !entry.getKey( ).endsWith( SolrItem.DYNAMIC_GEOJSON_FIELD_SUFFIX ) )
+                {
+                    continue;
+                }
+
+                String strJson = (String) entry.getValue( );
+
+                String strId = strUid.substring( strUid.indexOf( '_' ) + 1, strUid.lastIndexOf( '_' ) );
+                Map<String, String> mapAttributes = new HashMap<>( );
+                mapAttributes.put( ATTRIBUTE_ID, strId );
+                mapAttributes.put( ATTRIBUTE_DATA_LAYER, datalayer.getTitle( ) );
+                mapAttributes.put( ATTRIBUTE_TYPE, strUid.substring( strUid.lastIndexOf( '_' ) + 1 ) );
+                mapAttributes.putAll( mapStyle );
+
+                try
+                {
+                    addGeometry( encoder, builder, strLayerName, StringUtils.isNumeric( strId ) ? Long.parseLong( strId ) : 0, mapAttributes, strJson );
+                }
+                catch( IOException | RuntimeException e )
+                {
+                    AppLogService.error( "VectorTileService: invalid GeoJSON for the document " + strUid, e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the style of the features of a data layer in the map, drawn by the page as the points of the other loading modes
+     * 
+     * @param dataLayerMapTemplate
+     *            the properties of the data layer in the map
+     * @return the color, weight and pictogram attributes, empty if the data layer has no properties
+     */
+    private static Map<String, String> getStyleAttributes( Optional<DataLayerMapTemplate> dataLayerMapTemplate )
+    {
+        Map<String, String> mapStyle = new HashMap<>( );
+
+        if ( dataLayerMapTemplate.isPresent( ) )
+        {
+            putAttribute( mapStyle, ATTRIBUTE_COLOR, dataLayerMapTemplate.get( ).getColor( ) );
+            putAttribute( mapStyle, ATTRIBUTE_WEIGHT, dataLayerMapTemplate.get( ).getThickness( ) );
+            putAttribute( mapStyle, ATTRIBUTE_ID_PICTO, dataLayerMapTemplate.get( ).getIconImage( ) );
+        }
+
+        return mapStyle;
+    }
+
+    /**
+     * Adds an attribute to a feature if its value is not blank
+     * 
+     * @param mapAttributes
+     *            the attributes
+     * @param strName
+     *            the name of the attribute
+     * @param value
+     *            the value, may be null
+     */
+    private static void putAttribute( Map<String, String> mapAttributes, String strName, Object value )
+    {
+        if ( value != null && StringUtils.isNotBlank( value.toString( ) ) )
+        {
+            mapAttributes.put( strName, value.toString( ) );
+        }
+    }
+
+    /**
+     * Adds a GeoJSON geometry to a tile
+     * 
+     * @param encoder
+     *            the tile encoder
+     * @param builder
+     *            the geometry builder of the tile
+     * @param strLayerName
+     *            the name of the tile layer
+     * @param lId
+     *            the feature id
+     * @param mapAttributes
+     *            the feature attributes
+     * @param strJson
+     *            the GeoJSON feature, or its geometry
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static void addGeometry( VectorTileEncoder encoder, TileGeometryBuilder builder, String strLayerName, long lId,
+            Map<String, String> mapAttributes, String strJson ) throws IOException
+    {
+        JsonNode root = MAPPER.readTree( strJson );
+        JsonNode geometry = root.has( FIELD_GEOMETRY ) ? root.get( FIELD_GEOMETRY ) : root;
+        JsonNode coordinates = geometry.path( FIELD_COORDINATES );
+
+        if ( !coordinates.isArray( ) || coordinates.size( ) == 0 )
+        {
+            return;
+        }
+
+        String strType = geometry.path( FIELD_TYPE ).asText( );
+
+        // As for the indexation, the type is deduced from the depth of the coordinates when it is not a GeoJSON type
+        if ( !TYPE_POINT.equals( strType ) && !TYPE_LINESTRING.equals( strType ) && !TYPE_POLYGON.equals( strType ) )
+        {
+            JsonNode first = coordinates.get( 0 );
+            strType = first.isNumber( ) ? TYPE_POINT : ( first.path( 0 ).isNumber( ) ? TYPE_LINESTRING : TYPE_POLYGON );
+        }
+
+        List<int [ ]> listParts = new ArrayList<>( );
+        int nGeomType;
+
+        if ( TYPE_POINT.equals( strType ) )
+        {
+            int [ ] point = builder.getPoint( coordinates.get( 0 ).asDouble( ), coordinates.get( 1 ).asDouble( ) );
+            if ( point != null )
+            {
+                listParts.add( point );
+            }
+            nGeomType = VectorTileEncoder.GEOM_TYPE_POINT;
+        }
+        else
+            if ( TYPE_LINESTRING.equals( strType ) )
+            {
+                listParts.addAll( builder.getLineParts( toPositions( coordinates ) ) );
+                nGeomType = VectorTileEncoder.GEOM_TYPE_LINESTRING;
+            }
+            else
+            {
+                int [ ] exterior = builder.getRing( toPositions( coordinates.get( 0 ) ), true );
+
+                if ( exterior != null )
+                {
+                    listParts.add( exterior );
+                    for ( int i = 1; i < coordinates.size( ); i++ )
+                    {
+                        int [ ] hole = builder.getRing( toPositions( coordinates.get( i ) ), false );
+                        if ( hole != null )
+                        {
+                            listParts.add( hole );
+                        }
+                    }
+                }
+                nGeomType = VectorTileEncoder.GEOM_TYPE_POLYGON;
+            }
+
+        if ( !listParts.isEmpty( ) )
+        {
+            encoder.addFeature( strLayerName, lId, mapAttributes, nGeomType, listParts );
+        }
+    }
+
+    /**
+     * Converts a GeoJSON list of positions to a flat array
+     * 
+     * @param positions
+     *            the positions
+     * @return the positions as lon0, lat0, lon1, lat1...
+     */
+    private static double [ ] toPositions( JsonNode positions )
+    {
+        double [ ] result = new double [ positions.size( ) * 2];
+
+        for ( int i = 0; i < positions.size( ); i++ )
+        {
+            result [2 * i] = positions.get( i ).path( 0 ).asDouble( );
+            result [2 * i + 1] = positions.get( i ).path( 1 ).asDouble( );
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the part of the cache path identifying the role the documents of the data layers are filtered on : the first role of the user, as the
+     * solr queries of the tiles. The role is hashed so that the key is a valid directory name, with SHA-256 so that two roles never share a directory
+     * 
+     * @param user
+     *            the user, may be null
+     * @return the key
+     */
+    static String getRoleKey( LuteceUser user )
+    {
+        String strRole = CartographyService.getFilterRole( user );
+
+        if ( strRole == null )
+        {
+            return ROLE_ANONYMOUS;
+        }
+
+        try
+        {
+            StringBuilder sbKey = new StringBuilder( );
+
+            for ( byte b : MessageDigest.getInstance( ROLE_HASH_ALGORITHM ).digest( strRole.getBytes( StandardCharsets.UTF_8 ) ) )
+            {
+                sbKey.append( String.format( "%02x", b ) );
+            }
+
+            return sbKey.toString( );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new AppException( e.getMessage( ), e );
+        }
+    }
+
+    /**
+     * @return the root directory of the tile cache
+     */
+    private static Path getCacheDirectory( )
+    {
+        String strDirectory = AppPropertiesService.getProperty( PROPERTY_TILE_CACHE_DIRECTORY );
+
+        return StringUtils.isNotBlank( strDirectory ) ? Paths.get( strDirectory )
+                : Paths.get( System.getProperty( "java.io.tmpdir" ), DEFAULT_CACHE_DIRECTORY );
+    }
+
+    /**
+     * Writes a tile in the cache. The tile is written to a temporary file then moved, so that a concurrent request never reads a partial tile
+     * 
+     * @param pathTile
+     *            the path of the tile
+     * @param tile
+     *            the encoded tile
+     */
+    private static void writeTile( Path pathTile, byte [ ] tile )
+    {
+        Path pathTemporary = pathTile.resolveSibling( pathTile.getFileName( ) + "." + UUID.randomUUID( ) );
+
+        try
+        {
+            Files.createDirectories( pathTile.getParent( ) );
+            Files.write( pathTemporary, tile );
+            Files.move( pathTemporary, pathTile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "VectorTileService: unable to cache the tile " + pathTile, e );
+            try
+            {
+                Files.deleteIfExists( pathTemporary );
+            }
+            catch( IOException e2 )
+            {
+                AppLogService.error( "VectorTileService: unable to delete " + pathTemporary, e2 );
+            }
+        }
+    }
+
+    /**
+     * Deletes, in the background, the tiles of the versions older than the current one. Done once per version
+     * 
+     * @param lVersion
+     *            the current version
+     */
+    private static void purgeObsoleteVersions( long lVersion )
+    {
+        long lPurgedVersion = PURGED_VERSION.get( );
+
+        if ( lPurgedVersion >= lVersion || !PURGED_VERSION.compareAndSet( lPurgedVersion, lVersion ) )
+        {
+            return;
+        }
+
+        Thread thread = new Thread( ( ) -> {
+            Path pathRoot = getCacheDirectory( );
+
+            if ( !Files.isDirectory( pathRoot ) )
+            {
+                return;
+            }
+
+            try ( DirectoryStream<Path> versions = Files.newDirectoryStream( pathRoot ) )
+            {
+                for ( Path pathVersion : versions )
+                {
+                    if ( !String.valueOf( lVersion ).equals( pathVersion.getFileName( ).toString( ) ) )
+                    {
+                        deleteRecursively( pathVersion );
+                    }
+                }
+            }
+            catch( IOException e )
+            {
+                AppLogService.error( "VectorTileService: unable to purge the tile cache " + pathRoot, e );
+            }
+        }, "cartosolr-tile-purge" );
+        thread.setDaemon( true );
+        thread.start( );
+    }
+
+    /**
+     * Deletes a directory and its content
+     * 
+     * @param path
+     *            the directory
+     * @throws IOException
+     *             if the directory cannot be listed
+     */
+    private static void deleteRecursively( Path path ) throws IOException
+    {
+        try ( Stream<Path> paths = Files.walk( path ) )
+        {
+            paths.sorted( Comparator.reverseOrder( ) ).forEach( p -> {
+                try
+                {
+                    Files.deleteIfExists( p );
+                }
+                catch( IOException e )
+                {
+                    AppLogService.error( "VectorTileService: unable to delete " + p, e );
+                }
+            } );
+        }
+    }
+}
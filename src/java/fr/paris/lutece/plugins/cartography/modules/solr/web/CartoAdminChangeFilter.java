@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.util.Enumeration;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+
+/**
+ * Filter of the administration pages of the carto plugin : once a request has modified the maps, data layers, data layer types or basemaps, the carto
+ * reference data cached by the module and the map models are invalidated, so that the modification is visible at once instead of after the time to
+ * live of the cache.
+ */
+public class CartoAdminChangeFilter implements Filter
+{
+    private static final String METHOD_POST = "POST";
+    private static final String PARAMETER_ACTION_PREFIX = "action";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( FilterConfig filterConfig ) throws ServletException
+    {
+        // nothing to initialize
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void doFilter( ServletRequest request, ServletResponse response, FilterChain chain ) throws IOException, ServletException
+    {
+        try
+        {
+            chain.doFilter( request, response );
+        }
+        finally
+        {
+            if ( request instanceof HttpServletRequest && isModification( (HttpServletRequest) request ) )
+            {
+                CartoReferenceCacheService.getInstance( ).resetCache( );
+            }
+        }
+    }
+
+    /**
+     * Returns true if a request of an administration page may modify the carto data : the forms are posted, and the MVC actions, such as the removals,
+     * are called with an action parameter
+     * 
+     * @param request
+     *            the request
+     * @return true if the request may modify the carto data
+     */
+    private static boolean isModification( HttpServletRequest request )
+    {
+        if ( METHOD_POST.equalsIgnoreCase( request.getMethod( ) ) )
+        {
+            return true;
+        }
+
+        Enumeration<String> parameterNames = request.getParameterNames( );
+
+        while ( parameterNames.hasMoreElements( ) )
+        {
+            if ( parameterNames.nextElement( ).startsWith( PARAMETER_ACTION_PREFIX ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy( )
+    {
+        // nothing to release
+    }
+}
@@ -45,7 +45,10 @@ import fr.paris.lutece.plugins.carto.business.DataLayerTypeHome;
 import fr.paris.lutece.plugins.carto.business.IDataLayerDAO;
 import fr.paris.lutece.plugins.carto.business.MapTemplate;
 import fr.paris.lutece.plugins.carto.business.MapTemplateHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
 import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CoordinateParser;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CoordinateSequence;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItem;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItemPolygon;
 import fr.paris.lutece.plugins.leaflet.service.IconService;
@@ -53,7 +56,7 @@ import fr.paris.lutece.plugins.search.solr.business.SolrFacetedResult;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchAppConf;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchEngine;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
-import fr.paris.lutece.plugins.search.solr.indexer.SolrIndexerService;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.SolrCoordinateIndexQueue;
 import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
 import fr.paris.lutece.plugins.search.solr.service.SolrSearchAppConfService;
 import fr.paris.lutece.plugins.search.solr.web.SolrIndexerJspBean;
@@ -72,8 +75,10 @@ import fr.paris.lutece.portal.service.spring.SpringContextService;
 import fr.paris.lutece.portal.service.admin.AccessDeniedException;
 import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.i18n.I18nService;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -126,6 +131,7 @@ public class CoordinateXPage extends MVCApplication
 
     // Errors
     private static final String ERROR_RESOURCE_NOT_FOUND = "Resource not found";
+    private static final String ERROR_INVALID_COORDINATES = "module.cartography.solr.manage_map.error.invalidCoordinates";
 
     private static final String MARK_POINTS = "points";
     private static final String MARK_POINTS_GEOJSON = "geojson";
@@ -166,7 +172,7 @@ public class CoordinateXPage extends MVCApplication
         if ( _idMap != 0 )
         {
             // Charger map
-            MapTemplate map = MapTemplateHome.findByPrimaryKey( _idMap ).get( );
+            MapTemplate map = CartoReferenceCacheService.getInstance( ).getMapTemplate( _idMap ).get( );
             // List<Coordonnee> listCoordonnees = CoordonneeHome.getCoordonneesList( );
 
             CartographyService.loadMapAndPoints( map, model, null );
@@ -318,13 +324,32 @@ public class CoordinateXPage extends MVCApplication
         DataLayer datalayer = new DataLayer( );
         if ( request.getParameter( "iddatalayer" ) != null && !request.getParameter( "iddatalayer" ).isEmpty( ) )
         {
-            Optional<DataLayer> dlayer = DataLayerHome.findByPrimaryKey( Integer.valueOf( request.getParameter( "iddatalayer" ) ) );
+            Optional<DataLayer> dlayer = CartoReferenceCacheService.getInstance( ).getDataLayer( Integer.valueOf( request.getParameter( "iddatalayer" ) ) );
             if ( dlayer.isPresent( ) )
             {
                 datalayer = dlayer.get( );
             }
         }
 
+        // Polygon and polyline, parsed before anything is created
+        CoordinateSequence polygon;
+        CoordinateSequence polyline;
+
+        try
+        {
+            polygon = parseCoordinates( request.getParameter( "coordinate_polygon" ) );
+            polyline = parseCoordinates( request.getParameter( "coordinate_polyline" ) );
+        }
+        catch( ParseException e )
+        {
+            AppLogService.error( "CoordinateXPage: invalid coordinates at offset " + e.getErrorOffset( ) + " : " + e.getMessage( ) );
+            addError( I18nService.getLocalizedString( ERROR_INVALID_COORDINATES, new Object [ ] {
+                    e.getErrorOffset( )
+            }, getLocale( request ) ) );
+
+            return redirectView( request, VIEW_MANAGE_COORDONNEES );
+        }
+
         // Point
         if ( request.getParameter( "coordinate_x" ) != null && !request.getParameter( "coordinate_x" ).isEmpty( )
                 && request.getParameter( "coordinate_y" ) != null && !request.getParameter( "coordinate_y" ).isEmpty( ) )
@@ -352,57 +377,66 @@ public class CoordinateXPage extends MVCApplication
             coord.setGeoJson( geolocItem.toJSON( ) );
             coord.setDataLayer( datalayer );
             CoordonneeHome.create( coord );
+            SolrCoordinateIndexQueue.indexCoordinate( coord.getId( ) );
         }
 
-        // Polygon
-        String coordPolygon = request.getParameter( "coordinate_polygon" );
-        if ( coordPolygon != null && !coordPolygon.isEmpty( ) )
+        if ( polygon != null )
         {
-            createCoordinate( coordPolygon, GeolocItem.VALUE_GEOMETRY_TYPE_POLYGON, datalayer );
+            createCoordinate( polygon, GeolocItem.VALUE_GEOMETRY_TYPE_POLYGON, datalayer );
         }
-
-        // Polyline
-        String coordPolyline = request.getParameter( "coordinate_polyline" );
-        if ( coordPolyline != null && !coordPolyline.isEmpty( ) )
+        if ( polyline != null )
         {
-            createCoordinate( coordPolyline, GeolocItem.VALUE_GEOMETRY_TYPE_POLYLINE, datalayer );
+            createCoordinate( polyline, GeolocItem.VALUE_GEOMETRY_TYPE_POLYLINE, datalayer );
         }
 
-        SolrIndexerService.processIndexing( true );
-
         return redirectView( request, VIEW_MANAGE_COORDONNEES );
     }
 
-    private static void createCoordinate( String coordinate, String strTypeGeometry, DataLayer datalayer )
+    /**
+     * Parse the coordinates of a polygon or a polyline
+     * 
+     * @param strCoordinates
+     *            the coordinates formatted as x,y;x,y;..., may be null
+     * @return the coordinates, or null if there are none
+     * @throws ParseException
+     *             if the coordinates are malformed
+     */
+    private static CoordinateSequence parseCoordinates( String strCoordinates ) throws ParseException
     {
-        String [ ] lstCoordPolygon = coordinate.split( ";" );
+        if ( strCoordinates == null || strCoordinates.isEmpty( ) )
+        {
+            return null;
+        }
 
+        return CoordinateParser.parse( strCoordinates );
+    }
+
+    /**
+     * Create a polygon or polyline coordinate and queue its indexation
+     * 
+     * @param coordinates
+     *            the positions
+     * @param strTypeGeometry
+     *            Polygon or Polyline
+     * @param datalayer
+     *            the data layer
+     */
+    private static void createCoordinate( CoordinateSequence coordinates, String strTypeGeometry, DataLayer datalayer )
+    {
         GeolocItemPolygon geoPolygon = new GeolocItemPolygon( );
-        List<List<Double>> polygonLonLoat = new ArrayList<>( );
-        List<List<List<Double>>> polygonCoord = new ArrayList<>( );
         HashMap<String, Object> geometryPolygon = new HashMap<>( );
 
-        for ( String coordPolygonXY : lstCoordPolygon )
-        {
-            String [ ] coordPolygonXY2 = coordPolygonXY.split( "," );
-            double polygonx = Double.valueOf( coordPolygonXY2 [0] );
-            double polygony = Double.valueOf( coordPolygonXY2 [1] );
-            polygonLonLoat.add( Arrays.asList( polygonx, polygony ) );
-        }
         // End polygon with first coordinate for polygon
         if ( strTypeGeometry.equals( GeolocItemPolygon.VALUE_GEOMETRY_TYPE_POLYGON ) )
         {
-            String [ ] coordPolygonXY2 = lstCoordPolygon [0].split( "," );
-            double polygonx = Double.valueOf( coordPolygonXY2 [0] );
-            double polygony = Double.valueOf( coordPolygonXY2 [1] );
-            polygonLonLoat.add( Arrays.asList( polygonx, polygony ) );
-            polygonCoord.add( polygonLonLoat );
-            geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, polygonCoord );
+            geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, new double [ ] [ ] [ ] {
+                    coordinates.toRing( )
+            } );
         }
         else
             if ( strTypeGeometry.equals( GeolocItemPolygon.VALUE_GEOMETRY_TYPE_POLYLINE ) )
             {
-                geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, polygonLonLoat );
+                geometryPolygon.put( GeolocItem.PATH_GEOMETRY_COORDINATES, coordinates.toPositions( ) );
             }
 
         geoPolygon.setGeometry( geometryPolygon );
@@ -415,6 +449,7 @@ public class CoordinateXPage extends MVCApplication
         coord.setGeoJson( geoPolygon.toJSON( ) );
         coord.setDataLayer( datalayer );
         CoordonneeHome.create( coord );
+        SolrCoordinateIndexQueue.indexCoordinate( coord.getId( ) );
     }
 
     /**
@@ -466,6 +501,7 @@ public class CoordinateXPage extends MVCApplication
     {
         int nId = Integer.parseInt( request.getParameter( PARAMETER_ID_COORDONNEE ) );
         CoordonneeHome.remove( nId );
+        SolrCoordinateIndexQueue.deleteCoordinate( nId );
         addInfo( INFO_COORDONNEE_REMOVED, getLocale( request ) );
 
         return redirectView( request, VIEW_MANAGE_COORDONNEES );
@@ -521,6 +557,7 @@ public class CoordinateXPage extends MVCApplication
         }
 
         CoordonneeHome.update( _coordonnee );
+        SolrCoordinateIndexQueue.indexCoordinate( _coordonnee.getId( ) );
         addInfo( INFO_COORDONNEE_UPDATED, getLocale( request ) );
 
         return redirectView( request, VIEW_MANAGE_COORDONNEES );
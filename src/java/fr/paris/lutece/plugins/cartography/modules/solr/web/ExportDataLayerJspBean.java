@@ -37,15 +37,9 @@ package fr.paris.lutece.plugins.cartography.modules.solr.web;
 import fr.paris.lutece.portal.service.message.AdminMessage;
 import fr.paris.lutece.portal.service.message.AdminMessageService;
 import fr.paris.lutece.portal.service.security.SecurityTokenService;
-import fr.paris.lutece.portal.business.file.File;
-import fr.paris.lutece.portal.business.file.FileHome;
-import fr.paris.lutece.portal.business.physicalfile.PhysicalFile;
 import fr.paris.lutece.portal.service.admin.AccessDeniedException;
-import fr.paris.lutece.portal.service.file.FileService;
-import fr.paris.lutece.portal.service.file.IFileStoreServiceProvider;
 import fr.paris.lutece.portal.service.util.AppException;
 import fr.paris.lutece.portal.service.util.AppLogService;
-import fr.paris.lutece.portal.service.util.AppPropertiesService;
 import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
 import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
@@ -54,13 +48,12 @@ import fr.paris.lutece.util.html.AbstractPaginator;
 
 import java.util.Comparator;
 import java.util.HashMap;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
@@ -80,14 +73,11 @@ import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplate;
 import fr.paris.lutece.plugins.carto.business.DataLayerMapTemplateHome;
 import fr.paris.lutece.plugins.carto.business.DataLayerType;
 import fr.paris.lutece.plugins.carto.business.DataLayerTypeHome;
-import fr.paris.lutece.plugins.cartography.modules.solr.business.TemporaryFileExtract;
 import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.ExportJobService;
 import fr.paris.lutece.plugins.filegenerator.business.TemporaryFile;
-import fr.paris.lutece.plugins.filegenerator.service.TemporaryFileGeneratorService;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItem;
 import fr.paris.lutece.plugins.leaflet.business.GeolocItemPolygon;
-import fr.paris.lutece.plugins.leaflet.service.IconService;
-import fr.paris.lutece.plugins.search.solr.business.SolrSearchEngine;
 import fr.paris.lutece.plugins.search.solr.business.SolrSearchResult;
 import fr.paris.lutece.plugins.search.solr.indexer.SolrItem;
 
@@ -100,10 +90,6 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
     // Templates
     private static final String TEMPLATE_EXPORT_BASEMAPS = "/admin/plugins/cartosolr/export_datalayer.html";
     private static final String TEMPLATE_CREATE_BASEMAP = "/admin/plugins/cartosolr/create_basemap.html";
-    
-    private static final String PARAMETER_SOLR_GEOJSON = "DataLayer_text";
-    //private static final String DIRECTORY_FILENAME = "/tmp/";
-    private static final String DIRECTORY_FILENAME =  System.getProperty( "java.io.tmpdir" );
 
     // Properties for page titles
     private static final String PROPERTY_PAGE_TITLE_MANAGE_BASEMAPS = "carto.manage_basemaps.pageTitle";
@@ -112,7 +98,11 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
     // Markers
     private static final String MARK_BASEMAP_LIST = "basemap_list";
     private static final String MARK_BASEMAP = "basemap";
-    private static final String MARK_URL_DOWNLOAD = "urlFileDownload";
+    private static final String MARK_EXPORT_JOBS = "export_jobs";
+
+    // Infos and errors
+    private static final String INFO_EXPORT_QUEUED = "module.cartography.solr.export_datalayer.info.queued";
+    private static final String ERROR_EXPORT_REJECTED = "module.cartography.solr.export_datalayer.error.rejected";
 
     private static final String JSP_MANAGE_BASEMAPS = "jsp/admin/plugins/cartosolr/ManageExportDataLayer.jsp";
 
@@ -128,7 +118,6 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
     // Session variable to store working values
     private Basemap _basemap;
     private List<Integer> _listIdBasemaps;
-    private String _strUrlDownload;
 
     /**
      * Build the Manage View
@@ -141,7 +130,6 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
     public String getManageBasemaps( HttpServletRequest request )
     {
         _basemap = null;
-        _strUrlDownload = ( _strUrlDownload != null ) ? _strUrlDownload : new String( );
 
         if ( request.getParameter( AbstractPaginator.PARAMETER_PAGE_INDEX ) == null || _listIdBasemaps.isEmpty( ) )
         {
@@ -151,7 +139,7 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
         Map<String, Object> model = getPaginatedListModel( request, MARK_BASEMAP_LIST, _listIdBasemaps, JSP_MANAGE_BASEMAPS );
 
         model.put( MARK_REF_DATA_LAYER, DataLayerHome.getDataLayersReferenceList() );
-        model.put( MARK_URL_DOWNLOAD , _strUrlDownload );
+        model.put( MARK_EXPORT_JOBS, ExportJobService.getJobs( getUser( ) ) );
         
         return getPage( PROPERTY_PAGE_TITLE_MANAGE_BASEMAPS, TEMPLATE_EXPORT_BASEMAPS, model );
     }
@@ -216,79 +204,26 @@ public class ExportDataLayerJspBean extends AbstractManageCartoJspBean<Integer,
         return redirectView( request, VIEW_EXPORT_DATALAYER );
     }
 
-    public String getLayerSolr( DataLayer datalayer )
+    /**
+     * Queue the export of all the features of a data layer. The file is delivered by the file generator once the background job is done
+     * 
+     * @param datalayer
+     *            the data layer
+     */
+    public void getLayerSolr( DataLayer datalayer )
     {
-    	
-    	SolrSearchEngine engine = SolrSearchEngine.getInstance( );
-
-        List<String> lstGeoJSONCoordinates = new ArrayList<>( );
-        
-        //int nlimit = AppPropertiesService.getPropertyInt( PROPERTY_LIMIT_RESULT_SOLR, 100 );
-        int nlimit = 100;
-
-        List<SolrSearchResult> listResultsGeoloc = engine.getGeolocSearchResults( PARAMETER_SOLR_GEOJSON + ":" + datalayer.getSolrTag( ), null, nlimit );
-        lstGeoJSONCoordinates = getGeolocModel( listResultsGeoloc, datalayer ) ;
-
-        FileWriter fileWriter;
-		try {
-			fileWriter = new FileWriter(DIRECTORY_FILENAME + "/"+ "ExtractCartoLayer.json" );
-			fileWriter.write( "{\n"
-					+ "   \"type\":\"FeatureCollection\",\n"
-					+ "   \"name\":\" "+ datalayer.getTitle() +" \",\n"
-					+ "   \"crs\":{\n"
-					+ "      \"type\":\"name\",\n"
-					+ "      \"properties\":{\n"
-					+ "         \"name\":\"urn:ogc:def:crs:OGC:1.3:CRS84\"\n"
-					+ "      }\n"
-					+ "   },\n"
-					+ "   \"features\":[" );
-				for ( int i = 0; i < lstGeoJSONCoordinates.size(); i++ )
-				{
-					if ( i < lstGeoJSONCoordinates.size() - 1 )
-						fileWriter.write( lstGeoJSONCoordinates.get( i ) + "," + System.lineSeparator());
-					else
-						fileWriter.write( lstGeoJSONCoordinates.get( i ) + System.lineSeparator());
-		        }
-			 fileWriter.write( "] }" );
-		        fileWriter.close();
-		        
-		        /*
-		        java.io.File file = new java.io.File( DIRECTORY_FILENAME + datalayer.getTitle() + ".txt" );
-		        byte[] fileContent = Files.readAllBytes(file.toPath());
-		        
-		        
-		        File fileLutece = new File( );
-		        PhysicalFile physicalFile = new PhysicalFile( );
-		        physicalFile.setValue( fileContent );
-		        fileLutece.setPhysicalFile( physicalFile );
-		        fileLutece.setSize( (int) file.length( ) );
-		        fileLutece.setOrigin( datalayer.getTitle() );
-		        fileLutece.setMimeType("application/json");
-		        fileLutece.setTitle( datalayer.getTitle() );
-		        //fileLutece.setOrigin( getName( ) );
-		        
-		        //int nFileId = FileHome.create( fileLutece );
-		        
-		        IFileStoreServiceProvider fileStoreService = FileService.getInstance( ).getFileStoreServiceProvider( );
-		        fileLutece.setFileKey( fileStoreService.storeFile(fileLutece) );  ;
-		        _strUrlDownload = fileStoreService.getFileDownloadUrlBO( fileLutece.getFileKey() );
-		        //_strUrlDownload = fileStoreService.getFileDownloadUrlBO( String.valueOf( nFileId )  );
-		        */
-		        
-		        TemporaryFileExtract extractFile = new TemporaryFileExtract();
-		        TemporaryFileGeneratorService.getInstance().generateFile( extractFile, getUser( ) );
-		       
-		        
-		        
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-       
-        return _strUrlDownload;
+        try
+        {
+            ExportJobService.submit( datalayer, getUser( ) );
+            addInfo( INFO_EXPORT_QUEUED, getLocale( ) );
+        }
+        catch( IOException | RejectedExecutionException e )
+        {
+            AppLogService.error( "ExportDataLayerJspBean: unable to queue the export of the data layer " + datalayer.getId( ), e );
+            addError( ERROR_EXPORT_REJECTED, getLocale( ) );
+        }
     }
-    
-    
+
     /**
      * Returns a model with points data from a geoloc search
      * 
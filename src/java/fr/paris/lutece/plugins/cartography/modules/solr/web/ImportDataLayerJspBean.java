@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.io.FilenameUtils;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.carto.business.DataLayerHome;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.GeometryImportService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.ImportJobService;
+import fr.paris.lutece.portal.service.admin.AccessDeniedException;
+import fr.paris.lutece.portal.service.security.SecurityTokenService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.util.mvc.admin.MVCAdminJspBean;
+import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
+import fr.paris.lutece.portal.web.upload.MultipartHttpServletRequest;
+import fr.paris.lutece.util.string.StringUtil;
+
+/**
+ * This class provides the user interface to import the geometries of a GeoJSON or CSV file into a data layer
+ */
+@Controller( controllerJsp = "ManageImportDataLayer.jsp", controllerPath = "jsp/admin/plugins/cartosolr/", right = "CARTO_IMPORT_SOLR" )
+public class ImportDataLayerJspBean extends MVCAdminJspBean
+{
+    // Templates
+    private static final String TEMPLATE_IMPORT_DATALAYER = "/admin/plugins/cartosolr/import_datalayer.html";
+
+    // Properties for page titles
+    private static final String PROPERTY_PAGE_TITLE_IMPORT_DATALAYER = "module.cartography.solr.import_datalayer.pageTitle";
+
+    // Parameters
+    private static final String PARAMETER_DATA_LAYER = "layer_type";
+    private static final String PARAMETER_FILE = "import_file";
+
+    // Markers
+    private static final String MARK_REF_DATA_LAYER = "reflist_data_layer";
+    private static final String MARK_IMPORT_JOBS = "import_jobs";
+
+    // Infos and errors
+    private static final String INFO_IMPORT_QUEUED = "module.cartography.solr.import_datalayer.info.queued";
+    private static final String ERROR_NO_FILE = "module.cartography.solr.import_datalayer.error.noFile";
+    private static final String ERROR_UNSUPPORTED_FORMAT = "module.cartography.solr.import_datalayer.error.unsupportedFormat";
+    private static final String ERROR_UNKNOWN_DATA_LAYER = "module.cartography.solr.import_datalayer.error.unknownDataLayer";
+    private static final String ERROR_IMPORT_REJECTED = "module.cartography.solr.import_datalayer.error.rejected";
+
+    // Views
+    private static final String VIEW_IMPORT_DATALAYER = "importDataLayer";
+
+    // Actions
+    private static final String ACTION_IMPORT_DATALAYER = "importDataLayer";
+
+    /**
+     * Build the import view
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The page
+     */
+    @View( value = VIEW_IMPORT_DATALAYER, defaultView = true )
+    public String getImportDataLayer( HttpServletRequest request )
+    {
+        Map<String, Object> model = getModel( );
+        model.put( MARK_REF_DATA_LAYER, DataLayerHome.getDataLayersReferenceList( ) );
+        model.put( MARK_IMPORT_JOBS, ImportJobService.getJobs( getUser( ) ) );
+        model.put( SecurityTokenService.MARK_TOKEN, SecurityTokenService.getInstance( ).getToken( request, ACTION_IMPORT_DATALAYER ) );
+
+        return getPage( PROPERTY_PAGE_TITLE_IMPORT_DATALAYER, TEMPLATE_IMPORT_DATALAYER, model );
+    }
+
+    /**
+     * Queue the import of a file into a data layer. The file is imported by a background job, whose progress and report are displayed by the import view
+     *
+     * @param request
+     *            The Http Request
+     * @return The Jsp URL of the process result
+     * @throws AccessDeniedException
+     *             if the security token is invalid
+     */
+    @Action( ACTION_IMPORT_DATALAYER )
+    public String doImportDataLayer( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_IMPORT_DATALAYER ) )
+        {
+            throw new AccessDeniedException( "Invalid security token" );
+        }
+
+        FileItem fileItem = ( request instanceof MultipartHttpServletRequest ) ? ( (MultipartHttpServletRequest) request ).getFile( PARAMETER_FILE ) : null;
+
+        if ( fileItem == null || fileItem.getSize( ) == 0 )
+        {
+            addError( ERROR_NO_FILE, getLocale( ) );
+
+            return redirectView( request, VIEW_IMPORT_DATALAYER );
+        }
+
+        String strFileName = FilenameUtils.getName( fileItem.getName( ) );
+
+        if ( !GeometryImportService.isSupported( strFileName ) )
+        {
+            addError( ERROR_UNSUPPORTED_FORMAT, getLocale( ) );
+
+            return redirectView( request, VIEW_IMPORT_DATALAYER );
+        }
+
+        String strIdDataLayer = request.getParameter( PARAMETER_DATA_LAYER );
+        Optional<DataLayer> datalayer = StringUtil.isNumeric( strIdDataLayer ) ? DataLayerHome.findByPrimaryKey( Integer.parseInt( strIdDataLayer ) )
+                : Optional.empty( );
+
+        if ( !datalayer.isPresent( ) )
+        {
+            addError( ERROR_UNKNOWN_DATA_LAYER, getLocale( ) );
+
+            return redirectView( request, VIEW_IMPORT_DATALAYER );
+        }
+
+        try ( InputStream in = fileItem.getInputStream( ) )
+        {
+            ImportJobService.submit( in, strFileName, datalayer.get( ), getUser( ) );
+            addInfo( INFO_IMPORT_QUEUED, getLocale( ) );
+        }
+        catch( IOException | RejectedExecutionException e )
+        {
+            AppLogService.error( "ImportDataLayerJspBean: unable to queue the import of the file " + strFileName + " into the data layer " + strIdDataLayer, e );
+            addError( ERROR_IMPORT_REJECTED, getLocale( ) );
+        }
+
+        return redirectView( request, VIEW_IMPORT_DATALAYER );
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.ClusterService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+
+/**
+ * Servlet returning as JSON the clusters of the solr data layers of a map located in the viewport of the client. From the configured zoom, the client is
+ * told to load the individual features instead
+ */
+public class MapClustersServlet extends HttpServlet
+{
+    private static final long serialVersionUID = -4211502372683410795L;
+
+    // Parameters
+    private static final String PARAMETER_ID_MAP = "idMap";
+    private static final String PARAMETER_BBOX = "bbox";
+    private static final String PARAMETER_ZOOM = "zoom";
+
+    // Keys
+    private static final String KEY_EXPAND = "expand";
+    private static final String KEY_DATA_LAYERS = "dataLayers";
+
+    private static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String CACHE_CONTROL_NO_CACHE = "no-cache";
+    private static final String CACHE_CONTROL_PRIVATE = "private, no-cache";
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        int nIdMap = NumberUtils.toInt( request.getParameter( PARAMETER_ID_MAP ), 0 );
+        int nZoom = NumberUtils.toInt( request.getParameter( PARAMETER_ZOOM ), 0 );
+        double [ ] bbox = MapFeaturesServlet.getBbox( request.getParameter( PARAMETER_BBOX ) );
+        Optional<MapTemplate> map = ( nIdMap != 0 ) ? CartoReferenceCacheService.getInstance( ).getMapTemplate( nIdMap ) : Optional.empty( );
+
+        if ( !ClusterService.isClusterEnabled( ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+        if ( !map.isPresent( ) || bbox == null )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+            return;
+        }
+
+        LuteceUser user = MapFeaturesServlet.getUser( request );
+        response.setHeader( HEADER_CACHE_CONTROL, ( user != null ) ? CACHE_CONTROL_PRIVATE : CACHE_CONTROL_NO_CACHE );
+
+        if ( MapDataResponse.isNotModified( request, response, MapDataResponse.getETag( request, user ) ) )
+        {
+            return;
+        }
+
+        Map<String, Object> result = new HashMap<>( );
+        boolean bExpand = nZoom >= ClusterService.getClusterMaxZoom( );
+        result.put( KEY_EXPAND, bExpand );
+
+        if ( !bExpand )
+        {
+            result.put( KEY_DATA_LAYERS,
+                    ClusterService.getClusters( map.get( ), user, bbox [0], bbox [1], bbox [2], bbox [3] ) );
+        }
+
+        MapDataResponse.write( request, response, MAPPER.writeValueAsBytes( result ), CONTENT_TYPE_JSON );
+    }
+}
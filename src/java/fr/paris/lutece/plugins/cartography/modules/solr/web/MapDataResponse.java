@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.MapModelCacheService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Conditional GET and compression of the map data responses. The ETag is derived from the index version, the configuration version, the roles of the
+ * user and the request, so that a client can revalidate its copy without any Solr query. It is a weak ETag, shared by the gzip and identity encodings
+ * of the same content
+ */
+final class MapDataResponse
+{
+    private static final String PROPERTY_GZIP_ENABLED = "map.response.gzip.enabled";
+    private static final String PROPERTY_GZIP_MIN_SIZE = "map.response.gzip.minSize";
+    private static final int DEFAULT_GZIP_MIN_SIZE = 1024;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ETAG_ANY = "*";
+    private static final String ETAG_WEAK_PREFIX = "W/";
+    private static final String ETAG_SEPARATOR = ",";
+    private static final String ROLE_SEPARATOR = ",";
+
+    /**
+     * Private constructor
+     */
+    private MapDataResponse( )
+    {
+    }
+
+    /**
+     * Returns the ETag of a map data response
+     * 
+     * @param request
+     *            the request, whose path and query identify the response
+     * @param user
+     *            the user, may be null
+     * @return the weak ETag
+     */
+    static String getETag( HttpServletRequest request, LuteceUser user )
+    {
+        StringBuilder sbVariant = new StringBuilder( ).append( request.getServletPath( ) ).append( StringUtils.defaultString( request.getPathInfo( ) ) )
+                .append( '?' ).append( StringUtils.defaultString( request.getQueryString( ) ) ).append( '|' );
+
+        if ( user != null && user.getRoles( ) != null )
+        {
+            String [ ] roles = user.getRoles( ).clone( );
+            Arrays.sort( roles );
+            sbVariant.append( String.join( ROLE_SEPARATOR, roles ) );
+        }
+
+        return ETAG_WEAK_PREFIX + "\"" + Long.toHexString( MapModelCacheService.getInstance( ).getVersion( ) ) + "-"
+                + Long.toHexString( CartoReferenceCacheService.getInstance( ).getConfigurationVersion( ) ) + "-"
+                + Integer.toHexString( sbVariant.toString( ).hashCode( ) ) + "\"";
+    }
+
+    /**
+     * Sets the validators of a response, and answers 304 if the copy of the client is still valid. Only If-None-Match is checked : a date would not
+     * tell the responses of the users with different roles apart
+     * 
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @param strETag
+     *            the ETag of the response
+     * @return true if a 304 has been sent, in which case nothing must be written
+     */
+    static boolean isNotModified( HttpServletRequest request, HttpServletResponse response, String strETag )
+    {
+        response.setHeader( HEADER_ETAG, strETag );
+        // the 304 must carry the same Vary as the full response, so that the caches keep the gzip and identity variants apart
+        response.setHeader( HEADER_VARY, HEADER_ACCEPT_ENCODING );
+
+        String strIfNoneMatch = request.getHeader( HEADER_IF_NONE_MATCH );
+        boolean bNotModified = strIfNoneMatch != null && matches( strIfNoneMatch, strETag );
+
+        if ( bNotModified )
+        {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+        }
+
+        return bNotModified;
+    }
+
+    /**
+     * Writes the content of a response, compressed with gzip if the client accepts it and the content is large enough
+     * 
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @param content
+     *            the content
+     * @param strContentType
+     *            the content type
+     * @throws IOException
+     *             if the response cannot be written
+     */
+    static void write( HttpServletRequest request, HttpServletResponse response, byte [ ] content, String strContentType ) throws IOException
+    {
+        boolean bGzipEnabled = AppPropertiesService.getPropertyBoolean( PROPERTY_GZIP_ENABLED, true );
+        byte [ ] body = content;
+
+        response.setContentType( strContentType );
+
+        if ( bGzipEnabled )
+        {
+            response.setHeader( HEADER_VARY, HEADER_ACCEPT_ENCODING );
+
+            if ( content.length >= AppPropertiesService.getPropertyInt( PROPERTY_GZIP_MIN_SIZE, DEFAULT_GZIP_MIN_SIZE )
+                    && StringUtils.containsIgnoreCase( request.getHeader( HEADER_ACCEPT_ENCODING ), ENCODING_GZIP ) )
+            {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream( content.length / 4 );
+                try ( OutputStream gzip = new GZIPOutputStream( baos ) )
+                {
+                    gzip.write( content );
+                }
+                body = baos.toByteArray( );
+                response.setHeader( HEADER_CONTENT_ENCODING, ENCODING_GZIP );
+            }
+        }
+
+        response.setContentLength( body.length );
+        response.getOutputStream( ).write( body );
+    }
+
+    /**
+     * Writes an already gzipped content, decompressed for the clients which do not accept gzip
+     * 
+     * @param request
+     *            the request
+     * @param response
+     *            the response
+     * @param gzippedContent
+     *            the gzipped content
+     * @param strContentType
+     *            the content type
+     * @throws IOException
+     *             if the response cannot be written
+     */
+    static void writeGzipped( HttpServletRequest request, HttpServletResponse response, byte [ ] gzippedContent, String strContentType )
+            throws IOException
+    {
+        response.setContentType( strContentType );
+        response.setHeader( HEADER_VARY, HEADER_ACCEPT_ENCODING );
+
+        if ( StringUtils.containsIgnoreCase( request.getHeader( HEADER_ACCEPT_ENCODING ), ENCODING_GZIP ) )
+        {
+            response.setHeader( HEADER_CONTENT_ENCODING, ENCODING_GZIP );
+            response.setContentLength( gzippedContent.length );
+            response.getOutputStream( ).write( gzippedContent );
+
+            return;
+        }
+
+        try ( InputStream in = new GZIPInputStream( new ByteArrayInputStream( gzippedContent ) ) )
+        {
+            IOUtils.copy( in, response.getOutputStream( ) );
+        }
+    }
+
+    /**
+     * Returns true if an If-None-Match header matches a weak ETag, the weak comparison being used
+     * 
+     * @param strIfNoneMatch
+     *            the header
+     * @param strETag
+     *            the ETag
+     * @return true if the ETag matches
+     */
+    private static boolean matches( String strIfNoneMatch, String strETag )
+    {
+        for ( String strCandidate : StringUtils.split( strIfNoneMatch, ETAG_SEPARATOR ) )
+        {
+            String strTrimmed = StringUtils.removeStart( strCandidate.trim( ), ETAG_WEAK_PREFIX );
+
+            if ( ETAG_ANY.equals( strTrimmed ) || StringUtils.removeStart( strETag, ETAG_WEAK_PREFIX ).equals( strTrimmed ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
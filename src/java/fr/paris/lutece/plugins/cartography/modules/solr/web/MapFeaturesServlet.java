@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.LevelOfDetailService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.PolylineGeometryEncoder;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.security.SecurityService;
+import fr.paris.lutece.portal.service.template.AppTemplateService;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+import fr.paris.lutece.util.html.HtmlTemplate;
+
+/**
+ * Servlet returning as JSON the solr points of a map located in the viewport of the client, or the points of one coordinate
+ */
+public class MapFeaturesServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 3717395441539853221L;
+
+    // Templates
+    private static final String TEMPLATE_MAP_POINTS = "/skin/plugins/carto/include/map_points.html";
+
+    // Parameters
+    private static final String PARAMETER_ID_MAP = "idMap";
+    private static final String PARAMETER_BBOX = "bbox";
+    private static final String PARAMETER_ID = "id";
+    private static final String PARAMETER_ZOOM = "zoom";
+    private static final String PARAMETER_ENCODING = "encoding";
+
+    // Properties
+    private static final String PROPERTY_ENCODING_PRECISION = "map.encoding.precision";
+    private static final int DEFAULT_ENCODING_PRECISION = 6;
+
+    private static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String CACHE_CONTROL_NO_CACHE = "no-cache";
+    private static final String CACHE_CONTROL_PRIVATE = "private, no-cache";
+    private static final String SEPARATOR_BBOX = ",";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        int nIdMap = NumberUtils.toInt( request.getParameter( PARAMETER_ID_MAP ), 0 );
+        int nIdCoordinate = NumberUtils.toInt( request.getParameter( PARAMETER_ID ), 0 );
+        double [ ] bbox = getBbox( request.getParameter( PARAMETER_BBOX ) );
+        Optional<MapTemplate> map = ( nIdMap != 0 ) ? CartoReferenceCacheService.getInstance( ).getMapTemplate( nIdMap ) : Optional.empty( );
+
+        if ( !map.isPresent( ) || ( bbox == null && nIdCoordinate == 0 ) )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+            return;
+        }
+
+        LuteceUser user = getUser( request );
+        response.setHeader( HEADER_CACHE_CONTROL, ( user != null ) ? CACHE_CONTROL_PRIVATE : CACHE_CONTROL_NO_CACHE );
+
+        if ( MapDataResponse.isNotModified( request, response, MapDataResponse.getETag( request, user ) ) )
+        {
+            return;
+        }
+
+        String strZoom = request.getParameter( PARAMETER_ZOOM );
+        int nLodLevel = NumberUtils.isDigits( strZoom ) ? LevelOfDetailService.getLevel( Integer.parseInt( strZoom ) )
+                : LevelOfDetailService.LEVEL_FULL_RESOLUTION;
+
+        List<HashMap<String, Object>> points;
+
+        // the vector tiles only hold the id of the coordinates : their popups are loaded by id
+        if ( nIdCoordinate != 0 )
+        {
+            points = CartographyService.loadPointsById( map.get( ), user, nIdCoordinate );
+        }
+        else
+        {
+            points = CartographyService.loadPointsInViewport( map.get( ), user, bbox [0], bbox [1], bbox [2], bbox [3], nLodLevel );
+        }
+
+        // the clients asking for it receive the coordinates as encoded polylines, the others keep the plain GeoJSON
+        if ( PolylineGeometryEncoder.ENCODING_POLYLINE.equals( request.getParameter( PARAMETER_ENCODING ) ) )
+        {
+            encodePoints( points, AppPropertiesService.getPropertyInt( PROPERTY_ENCODING_PRECISION, DEFAULT_ENCODING_PRECISION ) );
+        }
+
+        Map<String, Object> model = new HashMap<>( );
+        model.put( CartographyService.MARK_POINTS, points );
+
+        HtmlTemplate template = AppTemplateService.getTemplate( TEMPLATE_MAP_POINTS, request.getLocale( ), model );
+
+        MapDataResponse.write( request, response, template.getHtml( ).getBytes( StandardCharsets.UTF_8 ), CONTENT_TYPE_JSON );
+    }
+
+    /**
+     * Replaces the coordinates of the GeoJSON of the points by encoded polylines
+     * 
+     * @param points
+     *            the points
+     * @param nPrecision
+     *            the number of decimals kept
+     */
+    private static void encodePoints( List<HashMap<String, Object>> points, int nPrecision )
+    {
+        for ( HashMap<String, Object> point : points )
+        {
+            Object geojson = point.get( CartographyService.MARK_POINTS_GEOJSON );
+
+            if ( geojson instanceof String )
+            {
+                try
+                {
+                    point.put( CartographyService.MARK_POINTS_GEOJSON, PolylineGeometryEncoder.encode( (String) geojson, nPrecision ) );
+                }
+                catch( IOException e )
+                {
+                    AppLogService.error( "MapFeaturesServlet: unable to encode the GeoJSON of the point " + point.get( CartographyService.MARK_POINTS_ID ), e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a bounding box formatted as west,south,east,north
+     * 
+     * @param strBbox
+     *            the bounding box parameter
+     * @return the bounding box or null if the parameter is invalid
+     */
+    static double [ ] getBbox( String strBbox )
+    {
+        String [ ] bboxValues = StringUtils.split( strBbox, SEPARATOR_BBOX );
+
+        if ( bboxValues == null || bboxValues.length != 4 )
+        {
+            return null;
+        }
+
+        double [ ] bbox = new double [ 4];
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            if ( !NumberUtils.isCreatable( bboxValues [i].trim( ) ) )
+            {
+                return null;
+            }
+            bbox [i] = Double.parseDouble( bboxValues [i].trim( ) );
+        }
+
+        return bbox;
+    }
+
+    /**
+     * Returns the front office user of the request
+     * 
+     * @param request
+     *            The HTTP request
+     * @return the user or null if not authenticated
+     */
+    static LuteceUser getUser( HttpServletRequest request )
+    {
+        if ( SecurityService.isAuthenticationEnable( ) )
+        {
+            return SecurityService.getInstance( ).getRegisteredUser( request );
+        }
+
+        return null;
+    }
+}
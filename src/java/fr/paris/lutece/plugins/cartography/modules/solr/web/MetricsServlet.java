@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.service.metrics.MetricsRegistry;
+import fr.paris.lutece.portal.service.util.AppLogService;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Servlet exposing the metrics of the map rendering in the Prometheus text format
+ */
+public class MetricsServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 4127935146632417270L;
+
+    private static final String PROPERTY_ENABLED = "map.metrics.servlet.enabled";
+    private static final String PROPERTY_TOKEN = "map.metrics.servlet.token";
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String PREFIX_BEARER = "Bearer ";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        if ( !AppPropertiesService.getPropertyBoolean( PROPERTY_ENABLED, false ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        String strToken = AppPropertiesService.getProperty( PROPERTY_TOKEN );
+
+        // the metrics are never served without a token
+        if ( StringUtils.isBlank( strToken ) )
+        {
+            AppLogService.error( "MetricsServlet: the servlet is enabled but " + PROPERTY_TOKEN + " is not set, the metrics are not served" );
+            response.sendError( HttpServletResponse.SC_FORBIDDEN );
+            return;
+        }
+
+        if ( !isAuthorized( request, strToken ) )
+        {
+            response.setHeader( "WWW-Authenticate", "Bearer" );
+            response.sendError( HttpServletResponse.SC_UNAUTHORIZED );
+            return;
+        }
+
+        response.setContentType( MetricsRegistry.CONTENT_TYPE_PROMETHEUS );
+        response.setHeader( HEADER_CACHE_CONTROL, "no-store" );
+
+        try ( Writer writer = response.getWriter( ) )
+        {
+            MetricsRegistry.writePrometheus( writer );
+        }
+    }
+
+    /**
+     * Checks the bearer token of the request
+     * 
+     * @param request
+     *            the request
+     * @param strToken
+     *            the configured token
+     * @return true if the request may read the metrics
+     */
+    private static boolean isAuthorized( HttpServletRequest request, String strToken )
+    {
+        String strAuthorization = request.getHeader( HEADER_AUTHORIZATION );
+
+        if ( strAuthorization == null || !strAuthorization.startsWith( PREFIX_BEARER ) )
+        {
+            return false;
+        }
+
+        return MessageDigest.isEqual( strToken.getBytes( StandardCharsets.UTF_8 ),
+                strAuthorization.substring( PREFIX_BEARER.length( ) ).trim( ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+}
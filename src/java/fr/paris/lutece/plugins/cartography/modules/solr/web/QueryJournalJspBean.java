@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.service.QueryJournalService;
+import fr.paris.lutece.portal.service.admin.AccessDeniedException;
+import fr.paris.lutece.portal.service.security.SecurityTokenService;
+import fr.paris.lutece.portal.util.mvc.admin.MVCAdminJspBean;
+import fr.paris.lutece.portal.util.mvc.admin.annotations.Controller;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.Action;
+import fr.paris.lutece.portal.util.mvc.commons.annotations.View;
+
+/**
+ * This class provides the user interface to browse the journal of the solr queries of the module
+ */
+@Controller( controllerJsp = "ManageQueryJournal.jsp", controllerPath = "jsp/admin/plugins/cartosolr/", right = "CARTO_JOURNAL_SOLR" )
+public class QueryJournalJspBean extends MVCAdminJspBean
+{
+    // Templates
+    private static final String TEMPLATE_QUERY_JOURNAL = "/admin/plugins/cartosolr/query_journal.html";
+
+    // Properties for page titles
+    private static final String PROPERTY_PAGE_TITLE_QUERY_JOURNAL = "module.cartography.solr.query_journal.pageTitle";
+
+    // Parameters
+    private static final String PARAMETER_SLOW_ONLY = "slow_only";
+
+    // Markers
+    private static final String MARK_ENTRIES = "journal_entries";
+    private static final String MARK_SLOW_ONLY = "slow_only";
+    private static final String MARK_SLOW_THRESHOLD = "slow_threshold";
+    private static final String MARK_JOURNAL_ENABLED = "journal_enabled";
+
+    // Infos
+    private static final String INFO_JOURNAL_CLEARED = "module.cartography.solr.query_journal.info.cleared";
+
+    // Views
+    private static final String VIEW_QUERY_JOURNAL = "queryJournal";
+
+    // Actions
+    private static final String ACTION_CLEAR_QUERY_JOURNAL = "clearQueryJournal";
+
+    /**
+     * Build the view of the journal
+     * 
+     * @param request
+     *            The HTTP request
+     * @return The page
+     */
+    @View( value = VIEW_QUERY_JOURNAL, defaultView = true )
+    public String getQueryJournal( HttpServletRequest request )
+    {
+        boolean bSlowOnly = Boolean.parseBoolean( request.getParameter( PARAMETER_SLOW_ONLY ) );
+
+        Map<String, Object> model = getModel( );
+        model.put( MARK_ENTRIES, QueryJournalService.getEntries( bSlowOnly ) );
+        model.put( MARK_SLOW_ONLY, bSlowOnly );
+        model.put( MARK_SLOW_THRESHOLD, QueryJournalService.getSlowThreshold( ) );
+        model.put( MARK_JOURNAL_ENABLED, QueryJournalService.isEnabled( ) );
+        model.put( SecurityTokenService.MARK_TOKEN, SecurityTokenService.getInstance( ).getToken( request, ACTION_CLEAR_QUERY_JOURNAL ) );
+
+        return getPage( PROPERTY_PAGE_TITLE_QUERY_JOURNAL, TEMPLATE_QUERY_JOURNAL, model );
+    }
+
+    /**
+     * Process the removal of the entries of the journal
+     *
+     * @param request
+     *            The Http Request
+     * @return The Jsp URL of the process result
+     * @throws AccessDeniedException
+     *             if the security token is invalid
+     */
+    @Action( ACTION_CLEAR_QUERY_JOURNAL )
+    public String doClearQueryJournal( HttpServletRequest request ) throws AccessDeniedException
+    {
+        if ( !SecurityTokenService.getInstance( ).validate( request, ACTION_CLEAR_QUERY_JOURNAL ) )
+        {
+            throw new AccessDeniedException( "Invalid security token" );
+        }
+
+        QueryJournalService.clear( );
+        addInfo( INFO_JOURNAL_CLEARED, getLocale( ) );
+
+        return redirectView( request, VIEW_QUERY_JOURNAL );
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.MapModelCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.tile.VectorTileService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppPropertiesService;
+
+/**
+ * Servlet returning the solr data layers of a map as Mapbox vector tiles. The path of the request is /{z}/{x}/{y}.pbf, with the id of the map and the
+ * index version of the page as parameters
+ */
+public class VectorTileServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 6085128297615829347L;
+
+    // Parameters
+    private static final String PARAMETER_ID_MAP = "idMap";
+    private static final String PARAMETER_VERSION = "v";
+
+    // Properties
+    private static final String PROPERTY_TILE_CACHE_MAX_AGE = "map.tile.cache.maxAge";
+    private static final int DEFAULT_TILE_CACHE_MAX_AGE = 3600;
+
+    private static final Pattern PATTERN_TILE_PATH = Pattern.compile( "^/(\\d{1,2})/(\\d{1,8})/(\\d{1,8})\\.pbf$" );
+    private static final String CONTENT_TYPE_MVT = "application/vnd.mapbox-vector-tile";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        if ( !VectorTileService.isTileEnabled( ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        int nIdMap = NumberUtils.toInt( request.getParameter( PARAMETER_ID_MAP ), 0 );
+        Optional<MapTemplate> map = ( nIdMap != 0 ) ? CartoReferenceCacheService.getInstance( ).getMapTemplate( nIdMap ) : Optional.empty( );
+        Matcher matcher = PATTERN_TILE_PATH.matcher( String.valueOf( request.getPathInfo( ) ) );
+
+        if ( !map.isPresent( ) || !matcher.matches( ) )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+            return;
+        }
+
+        int nZoom = Integer.parseInt( matcher.group( 1 ) );
+        int nX = Integer.parseInt( matcher.group( 2 ) );
+        int nY = Integer.parseInt( matcher.group( 3 ) );
+
+        if ( !VectorTileService.isValidTile( nZoom, nX, nY ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        LuteceUser user = MapFeaturesServlet.getUser( request );
+        long lVersion = MapModelCacheService.getInstance( ).getVersion( );
+        int nMaxAge = AppPropertiesService.getPropertyInt( PROPERTY_TILE_CACHE_MAX_AGE, DEFAULT_TILE_CACHE_MAX_AGE );
+
+        // the tiles of an authenticated user depend on its roles and must not be stored by shared caches. Only the URLs holding the current index
+        // version are cached for map.tile.cache.maxAge : the others are revalidated with the ETag, so that a reindex is visible at once
+        String strCacheControl = ( user != null ) ? "private" : "public";
+        if ( String.valueOf( lVersion ).equals( request.getParameter( PARAMETER_VERSION ) ) )
+        {
+            strCacheControl += ", max-age=" + nMaxAge;
+        }
+        else
+        {
+            strCacheControl += ", no-cache";
+        }
+        response.setHeader( HEADER_CACHE_CONTROL, strCacheControl );
+
+        if ( MapDataResponse.isNotModified( request, response, MapDataResponse.getETag( request, user ) ) )
+        {
+            return;
+        }
+
+        byte [ ] tile = VectorTileService.getTile( map.get( ), user, lVersion, nZoom, nX, nY );
+
+        MapDataResponse.write( request, response, tile, CONTENT_TYPE_MVT );
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.web;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.plugins.carto.business.MapTemplate;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartoReferenceCacheService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.CartographyService;
+import fr.paris.lutece.plugins.cartography.modules.solr.service.WfsProxyService;
+import fr.paris.lutece.portal.service.security.LuteceUser;
+import fr.paris.lutece.portal.service.util.AppLogService;
+
+/**
+ * Servlet returning as GeoJSON the features of a WFS data layer located in the viewport of the client, fetched by WfsProxyService. The data layer must
+ * be displayed by the map rendered for the user
+ */
+public class WfsProxyServlet extends HttpServlet
+{
+    private static final long serialVersionUID = -1873046216460471839L;
+
+    // Parameters
+    private static final String PARAMETER_ID_MAP = "idMap";
+    private static final String PARAMETER_ID_DATA_LAYER = "idDataLayer";
+    private static final String PARAMETER_BBOX = "bbox";
+
+    private static final String CONTENT_TYPE_JSON = "application/json;charset=UTF-8";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doGet( HttpServletRequest request, HttpServletResponse response ) throws IOException
+    {
+        if ( !WfsProxyService.isProxyEnabled( ) )
+        {
+            response.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        int nIdMap = NumberUtils.toInt( request.getParameter( PARAMETER_ID_MAP ), 0 );
+        int nIdDataLayer = NumberUtils.toInt( request.getParameter( PARAMETER_ID_DATA_LAYER ), 0 );
+        double [ ] bbox = MapFeaturesServlet.getBbox( request.getParameter( PARAMETER_BBOX ) );
+        Optional<MapTemplate> map = ( nIdMap != 0 ) ? CartoReferenceCacheService.getInstance( ).getMapTemplate( nIdMap ) : Optional.empty( );
+
+        if ( !map.isPresent( ) || nIdDataLayer == 0 || bbox == null )
+        {
+            response.sendError( HttpServletResponse.SC_BAD_REQUEST );
+            return;
+        }
+
+        // only the WFS services of the data layers displayed by the map for the user can be reached
+        LuteceUser user = MapFeaturesServlet.getUser( request );
+        Optional<DataLayer> datalayer = CartographyService.getRenderedWfsDataLayer( map.get( ), user, nIdDataLayer );
+
+        if ( !datalayer.isPresent( ) )
+        {
+            response.sendError( HttpServletResponse.SC_FORBIDDEN );
+            return;
+        }
+
+        byte [ ] features;
+
+        try
+        {
+            features = WfsProxyService.getInstance( ).getFeatures( datalayer.get( ), bbox [0], bbox [1], bbox [2], bbox [3] );
+        }
+        catch( IOException e )
+        {
+            AppLogService.error( "WfsProxyServlet: unable to fetch the features of the data layer " + nIdDataLayer, e );
+            response.sendError( HttpServletResponse.SC_BAD_GATEWAY );
+            return;
+        }
+
+        // the data layers proxied for an authenticated user depend on its roles and must not be stored by shared caches
+        response.setHeader( HEADER_CACHE_CONTROL, ( ( user != null ) ? "private" : "public" ) + ", max-age=" + WfsProxyService.getTimeToLive( ) );
+        MapDataResponse.writeGzipped( request, response, features, CONTENT_TYPE_JSON );
+    }
+}
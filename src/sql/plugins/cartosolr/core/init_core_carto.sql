@@ -10,4 +10,16 @@ INSERT INTO core_admin_right (id_right,name,level_right,admin_url,description,is
 -- Data for table core_user_right
 --
 DELETE FROM core_user_right WHERE id_right = 'CARTO_EXPORT_SOLR';
-INSERT INTO core_user_right (id_right,id_user) VALUES ('CARTO_EXPORT_SOLR',1);
\ No newline at end of file
+INSERT INTO core_user_right (id_right,id_user) VALUES ('CARTO_EXPORT_SOLR',1);
+DELETE FROM core_admin_right WHERE id_right = 'CARTO_IMPORT_SOLR';
+INSERT INTO core_admin_right (id_right,name,level_right,admin_url,description,is_updatable,plugin_name,id_feature_group,icon_url,documentation_url, id_order ) VALUES 
+('CARTO_IMPORT_SOLR','module.cartography.solr.import.name',1,'jsp/admin/plugins/cartosolr/ManageImportDataLayer.jsp','module.cartography.solr.import.description',0,'carto',NULL,NULL,NULL,5);
+
+DELETE FROM core_user_right WHERE id_right = 'CARTO_IMPORT_SOLR';
+INSERT INTO core_user_right (id_right,id_user) VALUES ('CARTO_IMPORT_SOLR',1);
+DELETE FROM core_admin_right WHERE id_right = 'CARTO_JOURNAL_SOLR';
+INSERT INTO core_admin_right (id_right,name,level_right,admin_url,description,is_updatable,plugin_name,id_feature_group,icon_url,documentation_url, id_order ) VALUES 
+('CARTO_JOURNAL_SOLR','module.cartography.solr.journal.name',1,'jsp/admin/plugins/cartosolr/ManageQueryJournal.jsp','module.cartography.solr.journal.description',0,'carto',NULL,NULL,NULL,6);
+
+DELETE FROM core_user_right WHERE id_right = 'CARTO_JOURNAL_SOLR';
+INSERT INTO core_user_right (id_right,id_user) VALUES ('CARTO_JOURNAL_SOLR',1);
@@ -0,0 +1,24 @@
+-- liquibase formatted sql
+-- changeset cartography-solr:create_db_cartosolr.sql
+-- preconditions onFail:MARK_RAN onError:WARN
+
+--
+-- Structure for table cartosolr_index_state
+--
+DROP TABLE IF EXISTS cartosolr_index_state;
+CREATE TABLE cartosolr_index_state (
+id_coordonnee int NOT NULL,
+content_hash varchar(64) NOT NULL,
+PRIMARY KEY (id_coordonnee)
+);
+
+--
+-- Structure for table cartosolr_index_watermark
+--
+DROP TABLE IF EXISTS cartosolr_index_watermark;
+CREATE TABLE cartosolr_index_watermark (
+id_watermark int NOT NULL,
+last_id_coordonnee int default 0 NOT NULL,
+PRIMARY KEY (id_watermark)
+);
+INSERT INTO cartosolr_index_watermark (id_watermark, last_id_coordonnee) VALUES (1, 0);
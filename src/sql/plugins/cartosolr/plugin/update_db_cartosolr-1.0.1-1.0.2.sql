@@ -0,0 +1,23 @@
+-- liquibase formatted sql
+-- changeset cartography-solr:update_db_cartosolr-1.0.1-1.0.2.sql
+-- preconditions onFail:MARK_RAN onError:WARN
+
+--
+-- Structure for table cartosolr_index_state
+--
+CREATE TABLE IF NOT EXISTS cartosolr_index_state (
+id_coordonnee int NOT NULL,
+content_hash varchar(64) NOT NULL,
+PRIMARY KEY (id_coordonnee)
+);
+
+--
+-- Structure for table cartosolr_index_watermark
+--
+CREATE TABLE IF NOT EXISTS cartosolr_index_watermark (
+id_watermark int NOT NULL,
+last_id_coordonnee int default 0 NOT NULL,
+PRIMARY KEY (id_watermark)
+);
+INSERT INTO cartosolr_index_watermark (id_watermark, last_id_coordonnee)
+SELECT 1, 0 FROM DUAL WHERE NOT EXISTS (SELECT id_watermark FROM cartosolr_index_watermark WHERE id_watermark = 1);
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.indexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * GeometrySimplifier Test Class
+ */
+public class GeometrySimplifierTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final String LINE = "[[0,0],[1,0.001],[2,0],[3,0]]";
+    private static final String OUTER_RING = "[[0,0],[1,0.001],[2,0],[2,2],[0,2],[0,0]]";
+    private static final String HOLE = "[[0.5,0.5],[0.5001,0.5],[0.5,0.5001],[0.5,0.5]]";
+
+    /**
+     * The positions closer to the line than the tolerance are removed, the ends are kept
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testSimplifyLine( ) throws IOException
+    {
+        JsonNode coordinates = getCoordinates( GeometrySimplifier.simplify( getFeature( "LineString", LINE ), 0.01 ) );
+
+        assertEquals( MAPPER.readTree( "[[0,0],[3,0]]" ), coordinates );
+    }
+
+    /**
+     * Nothing is returned when no position is farther than the tolerance
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testToleranceBelowDeviation( ) throws IOException
+    {
+        assertNull( GeometrySimplifier.simplify( getFeature( "LineString", LINE ), 0.0001 ) );
+    }
+
+    /**
+     * A polygon ring keeps its first and last positions, so that it stays closed
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testRingEndpointsKept( ) throws IOException
+    {
+        JsonNode coordinates = getCoordinates( GeometrySimplifier.simplify( getFeature( "Polygon", "[" + OUTER_RING + "]" ), 0.01 ) );
+
+        assertEquals( MAPPER.readTree( "[[[0,0],[2,0],[2,2],[0,2],[0,0]]]" ), coordinates );
+    }
+
+    /**
+     * A ring which would collapse at the tolerance is kept at full resolution
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testCollapsingRingKept( ) throws IOException
+    {
+        JsonNode coordinates = getCoordinates( GeometrySimplifier.simplify( getFeature( "Polygon", "[" + OUTER_RING + "," + HOLE + "]" ), 0.01 ) );
+
+        assertEquals( 2, coordinates.size( ) );
+        assertEquals( 5, coordinates.get( 0 ).size( ) );
+        assertEquals( MAPPER.readTree( HOLE ), coordinates.get( 1 ) );
+    }
+
+    /**
+     * A bare geometry is simplified as well as the geometry of a feature
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testSimplifyGeometry( ) throws IOException
+    {
+        String strGeometry = "{\"type\":\"LineString\",\"coordinates\":" + LINE + "}";
+        JsonNode geometry = MAPPER.readTree( GeometrySimplifier.simplify( strGeometry, 0.01 ) );
+
+        assertEquals( MAPPER.readTree( "[[0,0],[3,0]]" ), geometry.get( "coordinates" ) );
+    }
+
+    /**
+     * The points are not simplified
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testPoint( ) throws IOException
+    {
+        assertNull( GeometrySimplifier.simplify( getFeature( "Point", "[2.35,48.85]" ), 0.01 ) );
+    }
+
+    /**
+     * A position without coordinates is rejected
+     * 
+     * @throws IOException
+     *             expected
+     */
+    @Test( expected = IOException.class )
+    public void testMalformedPosition( ) throws IOException
+    {
+        GeometrySimplifier.simplify( getFeature( "LineString", "[[0,0],[1],[2,0]]" ), 0.01 );
+    }
+
+    /**
+     * Returns a GeoJSON feature
+     * 
+     * @param strType
+     *            the type of the geometry
+     * @param strCoordinates
+     *            the coordinates of the geometry
+     * @return the feature
+     */
+    private static String getFeature( String strType, String strCoordinates )
+    {
+        return "{\"type\":\"Feature\",\"properties\":{\"icon\":\"school\"},\"geometry\":{\"type\":\"" + strType + "\",\"coordinates\":" + strCoordinates
+                + "}}";
+    }
+
+    /**
+     * Returns the coordinates of the geometry of a feature
+     * 
+     * @param strFeature
+     *            the feature
+     * @return the coordinates
+     * @throws IOException
+     *             if the feature is malformed
+     */
+    private static JsonNode getCoordinates( String strFeature ) throws IOException
+    {
+        return MAPPER.readTree( strFeature ).get( "geometry" ).get( "coordinates" );
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * CartoReferenceCacheService Test Class
+ */
+public class CartoReferenceCacheServiceTest
+{
+    /**
+     * Two loads of the same row have the same fingerprint
+     */
+    @Test
+    public void testFingerprintOfSameContent( )
+    {
+        assertEquals( CartoReferenceCacheService.getFingerprint( new Row( 1, "Parcs" ) ),
+                CartoReferenceCacheService.getFingerprint( new Row( 1, "Parcs" ) ) );
+    }
+
+    /**
+     * A modified row has another fingerprint
+     */
+    @Test
+    public void testFingerprintOfModifiedContent( )
+    {
+        assertNotEquals( CartoReferenceCacheService.getFingerprint( new Row( 1, "Parcs" ) ),
+                CartoReferenceCacheService.getFingerprint( new Row( 1, "Jardins" ) ) );
+    }
+
+    /**
+     * A removed row has another fingerprint than the row
+     */
+    @Test
+    public void testFingerprintOfRemovedContent( )
+    {
+        assertNotEquals( CartoReferenceCacheService.getFingerprint( new Row( 1, "Parcs" ) ), CartoReferenceCacheService.getFingerprint( null ) );
+    }
+
+    /**
+     * Row of the carto configuration
+     */
+    public static class Row
+    {
+        private final int _nId;
+        private final String _strTitle;
+
+        /**
+         * Constructor
+         * 
+         * @param nId
+         *            the id
+         * @param strTitle
+         *            the title
+         */
+        Row( int nId, String strTitle )
+        {
+            _nId = nId;
+            _strTitle = strTitle;
+        }
+
+        /**
+         * @return the id
+         */
+        public int getId( )
+        {
+            return _nId;
+        }
+
+        /**
+         * @return the title
+         */
+        public String getTitle( )
+        {
+            return _strTitle;
+        }
+    }
+}
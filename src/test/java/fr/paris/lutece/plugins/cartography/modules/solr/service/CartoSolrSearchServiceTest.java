@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+import org.junit.Test;
+
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.CartoSolrItem;
+import fr.paris.lutece.plugins.cartography.modules.solr.indexer.GeometrySimplifier;
+
+/**
+ * CartoSolrSearchService Test Class
+ */
+public class CartoSolrSearchServiceTest
+{
+    private static final String LINE = "{\"type\":\"Feature\",\"properties\":{\"icon\":\"school\"},\"geometry\":{\"type\":\"LineString\","
+            + "\"coordinates\":[[0,0],[1,0.001],[2,0],[3,0.002],[4,0]]}}";
+    private static final String POINT = "{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"Point\",\"coordinates\":[2.35,48.85]}}";
+    private static final double TOLERANCE = 0.01;
+
+    /**
+     * The queries at a level of detail request the field of the simplified geometry
+     */
+    @Test
+    public void testFieldListHasLevelOfDetail( )
+    {
+        String strLodField = LevelOfDetailService.getFieldName( 0 );
+
+        assertTrue( Arrays.asList( CartoSolrSearchService.getFieldList( strLodField ).split( "," ) ).contains( strLodField ) );
+        assertFalse( CartoSolrSearchService.getFieldList( null ).contains( strLodField ) );
+    }
+
+    /**
+     * A zoomed out query returns the simplified geometry indexed for its level in place of the full one
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testZoomedOutReturnsSimplifiedGeometry( ) throws IOException
+    {
+        String strLodField = LevelOfDetailService.getFieldName( 0 );
+        String strSimplified = GeometrySimplifier.simplify( LINE, TOLERANCE );
+        assertNotNull( strSimplified );
+
+        SolrDocument document = new SolrDocument( );
+        document.setField( CartoSolrSearchService.FIELD_UID, "lutece_1_Coordonnees" );
+        document.setField( CartoSolrItem.FIELD_GEOJSON, LINE );
+        document.setField( strLodField, strSimplified );
+
+        CartoSolrSearchService.applyLevelOfDetail( document, strLodField );
+
+        assertEquals( strSimplified, document.getFieldValue( CartoSolrItem.FIELD_GEOJSON ) );
+        assertFalse( document.containsKey( strLodField ) );
+    }
+
+    /**
+     * A document without simplified geometry, such as a point, keeps its geometry
+     */
+    @Test
+    public void testPointKeepsGeometry( )
+    {
+        SolrDocument document = new SolrDocument( );
+        document.setField( CartoSolrItem.FIELD_GEOJSON, POINT );
+
+        CartoSolrSearchService.applyLevelOfDetail( document, LevelOfDetailService.getFieldName( 0 ) );
+
+        assertEquals( POINT, document.getFieldValue( CartoSolrItem.FIELD_GEOJSON ) );
+    }
+
+    /**
+     * The full resolution leaves the document unchanged
+     */
+    @Test
+    public void testFullResolution( )
+    {
+        String strLodField = LevelOfDetailService.getFieldName( 0 );
+        SolrDocument document = new SolrDocument( );
+        document.setField( CartoSolrItem.FIELD_GEOJSON, LINE );
+        document.setField( strLodField, POINT );
+
+        CartoSolrSearchService.applyLevelOfDetail( document, null );
+
+        assertEquals( LINE, document.getFieldValue( CartoSolrItem.FIELD_GEOJSON ) );
+    }
+
+    /**
+     * The data layers sharing a group query all get the documents of the group, in the order of the data layers
+     */
+    @Test
+    public void testResultsByPosition( )
+    {
+        Map<String, List<String>> mapResults = new HashMap<>( );
+        mapResults.put( "DataLayer_text:a", Arrays.asList( "a1", "a2" ) );
+        mapResults.put( "DataLayer_text:b", Collections.singletonList( "b1" ) );
+
+        List<List<String>> listResults = CartoSolrSearchService.getResultsByPosition(
+                Arrays.asList( "DataLayer_text:b", "DataLayer_text:a", "DataLayer_text:c", "DataLayer_text:a" ), mapResults );
+
+        assertEquals( 4, listResults.size( ) );
+        assertEquals( Collections.singletonList( "b1" ), listResults.get( 0 ) );
+        assertEquals( Arrays.asList( "a1", "a2" ), listResults.get( 1 ) );
+        assertTrue( listResults.get( 2 ).isEmpty( ) );
+        assertEquals( Arrays.asList( "a1", "a2" ), listResults.get( 3 ) );
+    }
+}
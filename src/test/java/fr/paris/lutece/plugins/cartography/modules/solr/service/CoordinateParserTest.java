@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.ParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * CoordinateParser Test Class
+ */
+public class CoordinateParserTest
+{
+    private static final long SEED = 20240517L;
+    private static final int RANDOM_NUMBERS = 100000;
+
+    /**
+     * The positions are read in order, with blanks and a trailing separator
+     * 
+     * @throws ParseException
+     *             if the positions are malformed
+     */
+    @Test
+    public void testParse( ) throws ParseException
+    {
+        CoordinateSequence sequence = CoordinateParser.parse( " 2.35 , 48.85 ;-1.5,+0.25;\t3,4 ; " );
+
+        assertEquals( 3, sequence.size( ) );
+        assertEquals( 2.35, sequence.getX( 0 ), 0 );
+        assertEquals( 48.85, sequence.getY( 0 ), 0 );
+        assertEquals( -1.5, sequence.getX( 1 ), 0 );
+        assertEquals( 0.25, sequence.getY( 1 ), 0 );
+        assertEquals( 3, sequence.getX( 2 ), 0 );
+        assertEquals( 4, sequence.getY( 2 ), 0 );
+    }
+
+    /**
+     * The numbers read in place are the ones of Double.parseDouble, to the last bit
+     * 
+     * @throws ParseException
+     *             if the positions are malformed
+     */
+    @Test
+    public void testSameAsParseDouble( ) throws ParseException
+    {
+        Random random = new Random( SEED );
+
+        for ( int i = 0; i < RANDOM_NUMBERS; i++ )
+        {
+            double dValue = ( random.nextDouble( ) - 0.5 ) * Math.pow( 10, random.nextInt( 8 ) );
+            String strValue = new BigDecimal( dValue ).setScale( random.nextInt( 18 ), RoundingMode.HALF_EVEN ).toPlainString( );
+
+            assertParsed( strValue );
+        }
+    }
+
+    /**
+     * The numbers out of the fast path are delegated to Double.parseDouble
+     * 
+     * @throws ParseException
+     *             if the positions are malformed
+     */
+    @Test
+    public void testSlowPath( ) throws ParseException
+    {
+        String [ ] values = {
+                "0.1234567890123456789", "12345678901234567890", "1e3", "-2.5E-3", "4.9e-324", "1.7976931348623157e308", "-0", "1.", ".5",
+                "0.00000000000000000000001"
+        };
+
+        for ( String strValue : values )
+        {
+            assertParsed( strValue );
+        }
+    }
+
+    /**
+     * The errors give the offset of the first invalid character
+     */
+    @Test
+    public void testErrorOffsets( )
+    {
+        assertError( "", 0 );
+        assertError( "   ", 0 );
+        assertError( "1,2;x,3", 4 );
+        assertError( "1;2", 1 );
+        assertError( "1,2 3,4", 4 );
+        assertError( "1,", 2 );
+        assertError( "1,2;3", 5 );
+        assertError( "1, -", 3 );
+        assertError( "1,2;4,1e", 6 );
+        assertError( "1,2,3", 3 );
+    }
+
+    /**
+     * Checks that a number is parsed as Double.parseDouble does
+     * 
+     * @param strValue
+     *            the number
+     * @throws ParseException
+     *             if the number is malformed
+     */
+    private static void assertParsed( String strValue ) throws ParseException
+    {
+        double dExpected = Double.parseDouble( strValue );
+        CoordinateSequence sequence = CoordinateParser.parse( strValue + "," + strValue );
+
+        assertEquals( strValue, Double.doubleToLongBits( dExpected ), Double.doubleToLongBits( sequence.getX( 0 ) ) );
+        assertEquals( strValue, Double.doubleToLongBits( dExpected ), Double.doubleToLongBits( sequence.getY( 0 ) ) );
+    }
+
+    /**
+     * Checks that malformed positions are rejected
+     * 
+     * @param strCoordinates
+     *            the positions
+     * @param nErrorOffset
+     *            the expected error offset
+     */
+    private static void assertError( String strCoordinates, int nErrorOffset )
+    {
+        try
+        {
+            CoordinateParser.parse( strCoordinates );
+            fail( "Malformed coordinates accepted : " + strCoordinates );
+        }
+        catch( ParseException e )
+        {
+            assertEquals( strCoordinates, nErrorOffset, e.getErrorOffset( ) );
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * GeoJsonIconRewriter Test Class
+ */
+public class GeoJsonIconRewriterTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+    private static final String GEOMETRY = "{\"type\":\"Point\",\"coordinates\":[2.35,48.85]}";
+
+    /**
+     * The icon is replaced and the other members are copied unchanged
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testRewriteIcon( ) throws IOException
+    {
+        String strJson = "{\"type\":\"Feature\",\"geometry\":" + GEOMETRY + ",\"properties\":{\"name\":\"a\",\"icon\":\"school\",\"rank\":[1,2]}}";
+        List<String> listIcons = new ArrayList<>( );
+
+        JsonNode node = MAPPER.readTree( GeoJsonIconRewriter.rewriteIcon( strJson, getMapper( listIcons ) ) );
+
+        assertEquals( "fa fa-school", node.get( "properties" ).get( "icon" ).asText( ) );
+        assertEquals( "a", node.get( "properties" ).get( "name" ).asText( ) );
+        assertEquals( MAPPER.readTree( "[1,2]" ), node.get( "properties" ).get( "rank" ) );
+        assertEquals( MAPPER.readTree( GEOMETRY ), node.get( "geometry" ) );
+        assertEquals( "Feature", node.get( "type" ).asText( ) );
+        assertEquals( 1, listIcons.size( ) );
+        assertEquals( "school", listIcons.get( 0 ) );
+    }
+
+    /**
+     * A null icon is given to the mapper as null
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testRewriteNullIcon( ) throws IOException
+    {
+        String strJson = "{\"type\":\"Feature\",\"geometry\":" + GEOMETRY + ",\"properties\":{\"icon\":null}}";
+        List<String> listIcons = new ArrayList<>( );
+
+        JsonNode node = MAPPER.readTree( GeoJsonIconRewriter.rewriteIcon( strJson, getMapper( listIcons ) ) );
+
+        assertEquals( "fa fa-null", node.get( "properties" ).get( "icon" ).asText( ) );
+        assertNull( listIcons.get( 0 ) );
+    }
+
+    /**
+     * The icon is added to the properties without icon
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testAddIconToProperties( ) throws IOException
+    {
+        String strJson = "{\"type\":\"Feature\",\"geometry\":" + GEOMETRY + ",\"properties\":{\"name\":\"a\"}}";
+        List<String> listIcons = new ArrayList<>( );
+
+        JsonNode node = MAPPER.readTree( GeoJsonIconRewriter.rewriteIcon( strJson, getMapper( listIcons ) ) );
+
+        assertEquals( "fa fa-null", node.get( "properties" ).get( "icon" ).asText( ) );
+        assertEquals( "a", node.get( "properties" ).get( "name" ).asText( ) );
+        assertEquals( 1, listIcons.size( ) );
+        assertNull( listIcons.get( 0 ) );
+    }
+
+    /**
+     * The properties are added to a feature without properties
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testAddProperties( ) throws IOException
+    {
+        String strJson = "{\"type\":\"Feature\",\"geometry\":" + GEOMETRY + "}";
+
+        JsonNode node = MAPPER.readTree( GeoJsonIconRewriter.rewriteIcon( strJson, getMapper( new ArrayList<>( ) ) ) );
+
+        assertEquals( "fa fa-null", node.get( "properties" ).get( "icon" ).asText( ) );
+        assertEquals( MAPPER.readTree( GEOMETRY ), node.get( "geometry" ) );
+    }
+
+    /**
+     * A GeoJSON which is not an object is rejected
+     * 
+     * @throws IOException
+     *             expected
+     */
+    @Test( expected = IOException.class )
+    public void testNotAnObject( ) throws IOException
+    {
+        GeoJsonIconRewriter.rewriteIcon( "[1,2]", getMapper( new ArrayList<>( ) ) );
+    }
+
+    /**
+     * An icon which is not a string is rejected
+     * 
+     * @throws IOException
+     *             expected
+     */
+    @Test( expected = IOException.class )
+    public void testIconNotAString( ) throws IOException
+    {
+        GeoJsonIconRewriter.rewriteIcon( "{\"properties\":{\"icon\":{\"name\":\"school\"}}}", getMapper( new ArrayList<>( ) ) );
+    }
+
+    /**
+     * Properties which are not an object are rejected
+     * 
+     * @throws IOException
+     *             expected
+     */
+    @Test( expected = IOException.class )
+    public void testPropertiesNotAnObject( ) throws IOException
+    {
+        GeoJsonIconRewriter.rewriteIcon( "{\"properties\":\"school\"}", getMapper( new ArrayList<>( ) ) );
+    }
+
+    /**
+     * Returns an icon mapper prefixing the icons and recording the icons it has been given
+     * 
+     * @param listIcons
+     *            the list receiving the icons given to the mapper
+     * @return the icon mapper
+     */
+    private static UnaryOperator<String> getMapper( List<String> listIcons )
+    {
+        return strIcon -> {
+            listIcons.add( strIcon );
+            return "fa fa-" + strIcon;
+        };
+    }
+}
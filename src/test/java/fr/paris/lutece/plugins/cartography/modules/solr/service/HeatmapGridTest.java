@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+/**
+ * HeatmapGrid Test Class
+ */
+public class HeatmapGridTest
+{
+    private static final double DELTA = 1e-9;
+
+    /**
+     * The cells are numbered from the north-west corner of the grid
+     */
+    @Test
+    public void testCellBbox( )
+    {
+        HeatmapGrid grid = new HeatmapGrid( 4, 2, -10, 10, 40, 50, new int [ 2] [ 4] );
+
+        assertArrayEquals( new double [ ] {
+                -10, 45, -5, 50
+        }, grid.getCellBbox( 0, 0 ), DELTA );
+        assertArrayEquals( new double [ ] {
+                5, 40, 10, 45
+        }, grid.getCellBbox( 1, 3 ), DELTA );
+        assertArrayEquals( new double [ ] {
+                0, 45, 5, 50
+        }, grid.getCellBbox( 0, 2 ), DELTA );
+    }
+
+    /**
+     * The grid is read from the heatmap facet, the missing rows and counts having no document
+     */
+    @Test
+    public void testFromNamedList( )
+    {
+        NamedList<Object> heatmap = getHeatmap( 3, 3 );
+        heatmap.add( "counts_ints2D", Arrays.asList( Arrays.asList( 1, 0, 2 ), null, Arrays.asList( 0, 5 ) ) );
+
+        HeatmapGrid grid = HeatmapGrid.fromNamedList( heatmap );
+
+        assertEquals( 3, grid.getColumns( ) );
+        assertEquals( 3, grid.getRows( ) );
+        assertEquals( 1, grid.getCount( 0, 0 ) );
+        assertEquals( 2, grid.getCount( 0, 2 ) );
+        assertEquals( 0, grid.getCount( 1, 0 ) );
+        assertEquals( 0, grid.getCount( 1, 2 ) );
+        assertEquals( 5, grid.getCount( 2, 1 ) );
+        assertEquals( 0, grid.getCount( 2, 2 ) );
+        assertArrayEquals( new double [ ] {
+                -180, 30, -60, 90
+        }, grid.getCellBbox( 0, 0 ), DELTA );
+    }
+
+    /**
+     * A heatmap without document has no counts
+     */
+    @Test
+    public void testFromNamedListWithoutCounts( )
+    {
+        HeatmapGrid grid = HeatmapGrid.fromNamedList( getHeatmap( 2, 2 ) );
+
+        for ( int nRow = 0; nRow < grid.getRows( ); nRow++ )
+        {
+            for ( int nColumn = 0; nColumn < grid.getColumns( ); nColumn++ )
+            {
+                assertEquals( 0, grid.getCount( nRow, nColumn ) );
+            }
+        }
+    }
+
+    /**
+     * Returns a heatmap facet covering the world, without counts
+     * 
+     * @param nColumns
+     *            the number of columns
+     * @param nRows
+     *            the number of rows
+     * @return the heatmap
+     */
+    private static NamedList<Object> getHeatmap( int nColumns, int nRows )
+    {
+        NamedList<Object> heatmap = new NamedList<>( );
+        heatmap.add( "gridLevel", 2 );
+        heatmap.add( "columns", nColumns );
+        heatmap.add( "rows", nRows );
+        heatmap.add( "minX", -180.0 );
+        heatmap.add( "maxX", 180.0 );
+        heatmap.add( "minY", -90.0 );
+        heatmap.add( "maxY", 90.0 );
+
+        return heatmap;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+import fr.paris.lutece.portal.service.security.LuteceUser;
+
+/**
+ * MapModelCacheService Test Class
+ */
+public class MapModelCacheServiceTest
+{
+    /**
+     * Users with the same roles in a different order are not filtered on the same role, so they must not share a model
+     */
+    @Test
+    public void testKeyDependsOnFirstRole( )
+    {
+        LuteceUser userAgentFirst = getUser( "agent", "admin" );
+        LuteceUser userAdminFirst = getUser( "admin", "agent" );
+
+        assertNotEquals( MapModelCacheService.getKey( 1L, 1, userAgentFirst ), MapModelCacheService.getKey( 1L, 1, userAdminFirst ) );
+    }
+
+    /**
+     * Users filtered on the same role share a model, whatever their other roles
+     */
+    @Test
+    public void testKeyIgnoresOtherRoles( )
+    {
+        LuteceUser user = getUser( "agent", "admin" );
+        LuteceUser userOtherRoles = getUser( "agent", "editor" );
+
+        assertEquals( MapModelCacheService.getKey( 1L, 1, user ), MapModelCacheService.getKey( 1L, 1, userOtherRoles ) );
+    }
+
+    /**
+     * An anonymous user, a user without role and a user with a role do not share a model
+     */
+    @Test
+    public void testKeyOfUserWithoutRole( )
+    {
+        String strAnonymousKey = MapModelCacheService.getKey( 1L, 1, null );
+
+        assertEquals( strAnonymousKey, MapModelCacheService.getKey( 1L, 1, getUser( ) ) );
+        assertNotEquals( strAnonymousKey, MapModelCacheService.getKey( 1L, 1, getUser( "" ) ) );
+        assertNotEquals( strAnonymousKey, MapModelCacheService.getKey( 1L, 1, getUser( "agent" ) ) );
+    }
+
+    /**
+     * The key changes with the version and the map
+     */
+    @Test
+    public void testKeyDependsOnVersionAndMap( )
+    {
+        LuteceUser user = getUser( "agent" );
+
+        assertNotEquals( MapModelCacheService.getKey( 1L, 1, user ), MapModelCacheService.getKey( 2L, 1, user ) );
+        assertNotEquals( MapModelCacheService.getKey( 1L, 1, user ), MapModelCacheService.getKey( 1L, 2, user ) );
+    }
+
+    /**
+     * Returns a user having the given roles
+     * 
+     * @param roles
+     *            the roles, in order
+     * @return the user
+     */
+    static LuteceUser getUser( String... roles )
+    {
+        return new LuteceUser( "test", null )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String [ ] getRoles( )
+            {
+                return roles;
+            }
+
+            @Override
+            public String getEmail( )
+            {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * PolylineGeometryEncoder Test Class
+ */
+public class PolylineGeometryEncoderTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+
+    /**
+     * The reference example of the encoded polyline format, with the GeoJSON order longitude, latitude
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testReferenceEncoding( ) throws IOException
+    {
+        JsonNode geometry = encode( "LineString", "[[-120.2,38.5],[-120.95,40.7],[-126.453,43.252]]", 5 );
+
+        assertEquals( "~ps|U_p~iFnnqC_ulLvxq`@_mqN", geometry.get( "coordinates" ).asText( ) );
+        assertEquals( PolylineGeometryEncoder.ENCODING_POLYLINE, geometry.get( "encoding" ).asText( ) );
+        assertEquals( 5, geometry.get( "precision" ).asInt( ) );
+    }
+
+    /**
+     * The decoded positions are the original ones rounded to the precision
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testRoundTrip( ) throws IOException
+    {
+        double [ ] positions = {
+                2.3522219, 48.856614, 2.2944813, 48.8583701, -0.0000004, -0.0000006, 179.9999999, -89.9999999
+        };
+        StringBuilder sbCoordinates = new StringBuilder( "[" );
+        for ( int i = 0; i < positions.length; i += 2 )
+        {
+            sbCoordinates.append( ( i > 0 ) ? "," : "" ).append( '[' ).append( positions [i] ).append( ',' ).append( positions [i + 1] ).append( ']' );
+        }
+        sbCoordinates.append( ']' );
+
+        for ( int nPrecision = 0; nPrecision <= 7; nPrecision++ )
+        {
+            JsonNode geometry = encode( "LineString", sbCoordinates.toString( ), nPrecision );
+            double dFactor = Math.pow( 10, nPrecision );
+            double [ ] expected = new double [ positions.length];
+            for ( int i = 0; i < positions.length; i++ )
+            {
+                expected [i] = Math.round( positions [i] * dFactor ) / dFactor;
+            }
+
+            assertArrayEquals( expected, decode( geometry.get( "coordinates" ).asText( ), nPrecision ), 1e-12 );
+        }
+    }
+
+    /**
+     * The precision is bounded to 7 decimals
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testPrecisionBounded( ) throws IOException
+    {
+        assertEquals( 7, encode( "LineString", "[[0,0],[1,1]]", 9 ).get( "precision" ).asInt( ) );
+        assertEquals( 0, encode( "LineString", "[[0,0],[1,1]]", -1 ).get( "precision" ).asInt( ) );
+    }
+
+    /**
+     * Each list of positions of a multi polygon is encoded, the nesting is kept and only two dimensions are encoded
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testMultiPolygon( ) throws IOException
+    {
+        String strRing = "[[1,1,35],[2,1,35],[2,2,35],[1,1,35]]";
+        JsonNode coordinates = encode( "MultiPolygon", "[[" + strRing + "," + strRing + "],[" + strRing + "]]", 5 ).get( "coordinates" );
+
+        assertEquals( 2, coordinates.size( ) );
+        assertEquals( 2, coordinates.get( 0 ).size( ) );
+        assertEquals( 1, coordinates.get( 1 ).size( ) );
+        assertArrayEquals( new double [ ] {
+                1, 1, 2, 1, 2, 2, 1, 1
+        }, decode( coordinates.get( 1 ).get( 0 ).asText( ), 5 ), 1e-12 );
+        assertEquals( coordinates.get( 0 ).get( 0 ), coordinates.get( 1 ).get( 0 ) );
+    }
+
+    /**
+     * A point is left unchanged
+     * 
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    @Test
+    public void testPointUnchanged( ) throws IOException
+    {
+        String strPoint = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[2.35,48.85]}}";
+
+        assertEquals( strPoint, PolylineGeometryEncoder.encode( strPoint, 5 ) );
+    }
+
+    /**
+     * Encodes the geometry of a feature
+     * 
+     * @param strType
+     *            the type of the geometry
+     * @param strCoordinates
+     *            the coordinates
+     * @param nPrecision
+     *            the precision
+     * @return the encoded geometry
+     * @throws IOException
+     *             if the GeoJSON is malformed
+     */
+    private static JsonNode encode( String strType, String strCoordinates, int nPrecision ) throws IOException
+    {
+        String strFeature = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"" + strType + "\",\"coordinates\":" + strCoordinates + "}}";
+
+        return MAPPER.readTree( PolylineGeometryEncoder.encode( strFeature, nPrecision ) ).get( "geometry" );
+    }
+
+    /**
+     * Decodes an encoded polyline
+     * 
+     * @param strEncoded
+     *            the encoded polyline
+     * @param nPrecision
+     *            the precision
+     * @return the positions as x0, y0, x1, y1...
+     */
+    private static double [ ] decode( String strEncoded, int nPrecision )
+    {
+        double dFactor = Math.pow( 10, nPrecision );
+        List<Long> listValues = new ArrayList<>( );
+        long lResult = 0;
+        int nShift = 0;
+
+        for ( int i = 0; i < strEncoded.length( ); i++ )
+        {
+            long lChunk = strEncoded.charAt( i ) - 63L;
+            lResult |= ( lChunk & 0x1f ) << nShift;
+            nShift += 5;
+            if ( lChunk < 0x20 )
+            {
+                listValues.add( ( ( lResult & 1 ) != 0 ) ? ~( lResult >>> 1 ) : ( lResult >>> 1 ) );
+                lResult = 0;
+                nShift = 0;
+            }
+        }
+
+        double [ ] positions = new double [ listValues.size( )];
+        long lX = 0;
+        long lY = 0;
+        for ( int i = 0; i < positions.length; i += 2 )
+        {
+            lX += listValues.get( i );
+            lY += listValues.get( i + 1 );
+            positions [i] = lX / dFactor;
+            positions [i + 1] = lY / dFactor;
+        }
+
+        return positions;
+    }
+}
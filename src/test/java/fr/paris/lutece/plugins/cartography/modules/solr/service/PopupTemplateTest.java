@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * PopupTemplate Test Class
+ */
+public class PopupTemplateTest
+{
+    /**
+     * The markers are replaced by their values and the literal text is kept
+     */
+    @Test
+    public void testRenderMarkers( )
+    {
+        PopupTemplate template = new PopupTemplate( "<b>[nom_text]</b> : [adresse_text] ([nom_text])" );
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( "nom_text", "Mairie" );
+        mapValues.put( "adresse_text", "Place de l'Hotel de Ville" );
+
+        assertEquals( "<b>Mairie</b> : Place de l'Hotel de Ville (Mairie)", template.render( mapValues, new StringBuilder( ) ) );
+        assertEquals( new LinkedHashSet<>( Arrays.asList( "nom_text", "adresse_text" ) ), template.getMarkers( ) );
+    }
+
+    /**
+     * The markers without value are replaced by a space
+     */
+    @Test
+    public void testRenderMissingValue( )
+    {
+        PopupTemplate template = new PopupTemplate( "a[x]b[y]c" );
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( "x", "1" );
+
+        assertEquals( "a1b c", template.render( mapValues, new StringBuilder( ) ) );
+        assertEquals( "a b c", template.render( null, new StringBuilder( ) ) );
+    }
+
+    /**
+     * The line breaks are removed from the template and from the values
+     */
+    @Test
+    public void testLineBreaksRemoved( )
+    {
+        PopupTemplate template = new PopupTemplate( "line 1\r\nline 2\n[x]" );
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( "x", "value\r\non two lines" );
+
+        assertEquals( "line 1line 2valueon two lines", template.render( mapValues, new StringBuilder( ) ) );
+    }
+
+    /**
+     * Empty brackets and brackets spanning a line break are not markers
+     */
+    @Test
+    public void testNotMarkers( )
+    {
+        PopupTemplate template = new PopupTemplate( "[] [a\nb] [c" );
+
+        assertEquals( 0, template.getMarkers( ).size( ) );
+        assertEquals( "[] [ab] [c", template.render( new HashMap<>( ), new StringBuilder( ) ) );
+    }
+
+    /**
+     * The buffer is reset between renderings and the source is kept
+     */
+    @Test
+    public void testBufferReused( )
+    {
+        String strSource = "[x]";
+        PopupTemplate template = new PopupTemplate( strSource );
+        StringBuilder sbBuffer = new StringBuilder( "previous content" );
+        Map<String, String> mapValues = new HashMap<>( );
+        mapValues.put( "x", "1" );
+
+        assertEquals( "1", template.render( mapValues, sbBuffer ) );
+        mapValues.put( "x", "2" );
+        assertEquals( "2", template.render( mapValues, sbBuffer ) );
+        assertEquals( strSource, template.getSource( ) );
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fr.paris.lutece.plugins.carto.business.DataLayer;
+import fr.paris.lutece.test.LuteceTestCase;
+
+/**
+ * WfsProxyService Test Class
+ */
+public class WfsProxyServiceTest
+{
+    private static final String FEATURES = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+    private static final String TYPE_NAME = "paris:arbres";
+
+    private HttpServer _server;
+    private final AtomicInteger _nRequests = new AtomicInteger( );
+    private volatile int _nStatus = 200;
+    private volatile String _strQuery;
+
+    /**
+     * Initializes the Lutece context, which provides the properties and the cache of the service
+     * 
+     * @throws Exception
+     *             if the context cannot be initialized
+     */
+    @BeforeClass
+    public static void initContext( ) throws Exception
+    {
+        new LuteceContext( ).setUp( );
+    }
+
+    /**
+     * Starts a stub WFS service answering the GetFeature requests
+     * 
+     * @throws Exception
+     *             if the server cannot be started
+     */
+    @Before
+    public void setUp( ) throws Exception
+    {
+        _server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        _server.createContext( "/wfs", exchange -> {
+            _nRequests.incrementAndGet( );
+            _strQuery = exchange.getRequestURI( ).getQuery( );
+
+            byte [ ] body = FEATURES.getBytes( StandardCharsets.UTF_8 );
+            exchange.sendResponseHeaders( _nStatus, body.length );
+
+            try ( OutputStream out = exchange.getResponseBody( ) )
+            {
+                out.write( body );
+            }
+        } );
+        _server.start( );
+    }
+
+    /**
+     * Stops the stub WFS service
+     */
+    @After
+    public void tearDown( )
+    {
+        _server.stop( 0 );
+    }
+
+    /**
+     * The GetFeature request of a WFS 2 data layer carries the snapped bounding box with an explicit longitude, latitude CRS
+     * 
+     * @throws IOException
+     *             if the request fails
+     */
+    @Test
+    public void testGetFeatureParametersVersion2( ) throws IOException
+    {
+        byte [ ] features = WfsProxyService.getInstance( ).getFeatures( getDataLayer( 9001, "2.0.0" ), 2.30, 48.80, 2.40, 48.90, 300 );
+        Map<String, String> parameters = getParameters( );
+
+        assertEquals( FEATURES, gunzip( features ) );
+        assertEquals( "WFS", parameters.get( "service" ) );
+        assertEquals( "GetFeature", parameters.get( "request" ) );
+        assertEquals( "2.0.0", parameters.get( "version" ) );
+        assertEquals( TYPE_NAME, parameters.get( "typeNames" ) );
+        assertTrue( parameters.containsKey( "count" ) );
+        assertEquals( getBbox( 2.30, 48.80, 2.40, 48.90 ) + ",urn:ogc:def:crs:OGC:1.3:CRS84", parameters.get( "bbox" ) );
+    }
+
+    /**
+     * The GetFeature request of a WFS 1.0 data layer carries the snapped bounding box without CRS
+     * 
+     * @throws IOException
+     *             if the request fails
+     */
+    @Test
+    public void testGetFeatureParametersVersion1( ) throws IOException
+    {
+        WfsProxyService.getInstance( ).getFeatures( getDataLayer( 9002, "1.0.0" ), 2.30, 48.80, 2.40, 48.90, 300 );
+        Map<String, String> parameters = getParameters( );
+
+        assertEquals( "1.0.0", parameters.get( "version" ) );
+        assertEquals( TYPE_NAME, parameters.get( "typeName" ) );
+        assertTrue( parameters.containsKey( "maxFeatures" ) );
+        assertEquals( getBbox( 2.30, 48.80, 2.40, 48.90 ), parameters.get( "bbox" ) );
+    }
+
+    /**
+     * A second request of the same grid cell is served from the cache
+     * 
+     * @throws IOException
+     *             if the request fails
+     */
+    @Test
+    public void testSecondRequestServedFromCache( ) throws IOException
+    {
+        DataLayer datalayer = getDataLayer( 9003, "2.0.0" );
+
+        byte [ ] first = WfsProxyService.getInstance( ).getFeatures( datalayer, 2.30, 48.80, 2.40, 48.90, 300 );
+        byte [ ] second = WfsProxyService.getInstance( ).getFeatures( datalayer, 2.31, 48.81, 2.39, 48.89, 300 );
+
+        assertEquals( 1, _nRequests.get( ) );
+        assertEquals( gunzip( first ), gunzip( second ) );
+    }
+
+    /**
+     * An expired response is served when the remote service fails
+     * 
+     * @throws Exception
+     *             if the request fails
+     */
+    @Test
+    public void testExpiredResponseServedOnError( ) throws Exception
+    {
+        DataLayer datalayer = getDataLayer( 9004, "2.0.0" );
+
+        WfsProxyService.getInstance( ).getFeatures( datalayer, 2.30, 48.80, 2.40, 48.90, 300 );
+        _nStatus = 500;
+        Thread.sleep( 10 );
+
+        byte [ ] features = WfsProxyService.getInstance( ).getFeatures( datalayer, 2.30, 48.80, 2.40, 48.90, 0 );
+
+        assertEquals( 2, _nRequests.get( ) );
+        assertEquals( FEATURES, gunzip( features ) );
+    }
+
+    /**
+     * Without a previous response, a failure of the remote service is reported
+     */
+    @Test
+    public void testErrorWithoutPreviousResponse( )
+    {
+        _nStatus = 500;
+
+        try
+        {
+            WfsProxyService.getInstance( ).getFeatures( getDataLayer( 9005, "2.0.0" ), 2.30, 48.80, 2.40, 48.90, 300 );
+            fail( "An IOException should have been thrown" );
+        }
+        catch( IOException e )
+        {
+            assertEquals( 1, _nRequests.get( ) );
+        }
+    }
+
+    /**
+     * Returns a WFS data layer of the stub service
+     * 
+     * @param nId
+     *            the id, distinct for each test so that the cached responses are not shared
+     * @param strVersion
+     *            the WFS version
+     * @return the data layer
+     */
+    private DataLayer getDataLayer( int nId, String strVersion )
+    {
+        DataLayer datalayer = new DataLayer( );
+        datalayer.setId( nId );
+        datalayer.setSource( "WFS" );
+        datalayer.setUrlFlux( "http://127.0.0.1:" + _server.getAddress( ).getPort( ) + "/wfs" );
+        datalayer.setVersionFlux( strVersion );
+        datalayer.setTypeNameFlux( TYPE_NAME );
+
+        return datalayer;
+    }
+
+    /**
+     * @return the parameters of the last request received by the stub service
+     */
+    private Map<String, String> getParameters( )
+    {
+        Map<String, String> parameters = new HashMap<>( );
+
+        for ( String strParameter : _strQuery.split( "&" ) )
+        {
+            int nIndex = strParameter.indexOf( '=' );
+            parameters.put( strParameter.substring( 0, nIndex ), strParameter.substring( nIndex + 1 ) );
+        }
+
+        return parameters;
+    }
+
+    /**
+     * Returns the bounding box sent for a viewport
+     * 
+     * @param dWest
+     *            the minimum longitude
+     * @param dSouth
+     *            the minimum latitude
+     * @param dEast
+     *            the maximum longitude
+     * @param dNorth
+     *            the maximum latitude
+     * @return the snapped bounding box, as sent to the service
+     */
+    private static String getBbox( double dWest, double dSouth, double dEast, double dNorth )
+    {
+        double [ ] bbox = WfsProxyService.snapToGrid( dWest, dSouth, dEast, dNorth );
+
+        return bbox [0] + "," + bbox [1] + "," + bbox [2] + "," + bbox [3];
+    }
+
+    /**
+     * Decompresses a response
+     * 
+     * @param content
+     *            the gzipped content
+     * @return the content
+     * @throws IOException
+     *             if the content is not gzipped
+     */
+    private static String gunzip( byte [ ] content ) throws IOException
+    {
+        try ( InputStream in = new GZIPInputStream( new ByteArrayInputStream( content ) ) )
+        {
+            return IOUtils.toString( in, StandardCharsets.UTF_8 );
+        }
+    }
+
+    /**
+     * Gives the JUnit 4 tests access to the initialization of the Lutece context done by LuteceTestCase
+     */
+    private static final class LuteceContext extends LuteceTestCase
+    {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setUp( ) throws Exception
+        {
+            super.setUp( );
+        }
+    }
+}
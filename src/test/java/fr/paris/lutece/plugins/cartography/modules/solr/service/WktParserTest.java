@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * WktParser Test Class
+ */
+public class WktParserTest
+{
+    private static final ObjectMapper MAPPER = new ObjectMapper( );
+
+    /**
+     * A point, with the Z and M values dropped
+     * 
+     * @throws Exception
+     *             if the WKT is malformed
+     */
+    @Test
+    public void testPoint( ) throws Exception
+    {
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[2.35,48.85]}", "POINT (2.35 48.85)" );
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[2.35,-48.85]}", "point(2.35 -48.85)" );
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}", "POINT Z (1 2 3)" );
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}", "POINT ZM (1 2 3 4)" );
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[1.0,2.0]}", "POINT (1 2 3 4)" );
+        assertParsed( "{\"type\":\"Point\",\"coordinates\":[1000.0,-0.025]}", "POINT (1e3 -2.5E-2)" );
+        assertParsed( "{\"type\":\"Point\"}", "POINT EMPTY" );
+    }
+
+    /**
+     * A line string
+     * 
+     * @throws Exception
+     *             if the WKT is malformed
+     */
+    @Test
+    public void testLineString( ) throws Exception
+    {
+        assertParsed( "{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0],[5.5,6.5]]}", "LINESTRING(1 2,3 4 , 5.5 6.5)" );
+        assertParsed( "{\"type\":\"LineString\",\"coordinates\":[]}", "LINESTRING EMPTY" );
+    }
+
+    /**
+     * A polygon with a hole, and an EWKT SRID prefix
+     * 
+     * @throws Exception
+     *             if the WKT is malformed
+     */
+    @Test
+    public void testPolygon( ) throws Exception
+    {
+        String strExpected = "{\"type\":\"Polygon\",\"coordinates\":[[[0.0,0.0],[4.0,0.0],[4.0,4.0],[0.0,0.0]],"
+                + "[[1.0,1.0],[2.0,1.0],[2.0,2.0],[1.0,1.0]]]}";
+
+        assertParsed( strExpected, "POLYGON ((0 0, 4 0, 4 4, 0 0), (1 1, 2 1, 2 2, 1 1))" );
+        assertParsed( strExpected, "SRID=4326;POLYGON((0 0,4 0,4 4,0 0),(1 1,2 1,2 2,1 1))" );
+    }
+
+    /**
+     * The multi geometries and the collections
+     * 
+     * @throws Exception
+     *             if the WKT is malformed
+     */
+    @Test
+    public void testMultiGeometries( ) throws Exception
+    {
+        String strMultiPoint = "{\"type\":\"MultiPoint\",\"coordinates\":[[1.0,2.0],[3.0,4.0]]}";
+
+        assertParsed( strMultiPoint, "MULTIPOINT (1 2, 3 4)" );
+        assertParsed( strMultiPoint, "MULTIPOINT ((1 2), (3 4))" );
+        assertParsed( "{\"type\":\"MultiLineString\",\"coordinates\":[[[1.0,2.0],[3.0,4.0]],[[5.0,6.0],[7.0,8.0]]]}",
+                "MULTILINESTRING ((1 2, 3 4), (5 6, 7 8))" );
+        assertParsed( "{\"type\":\"MultiPolygon\",\"coordinates\":[[[[0.0,0.0],[1.0,0.0],[1.0,1.0],[0.0,0.0]]],"
+                + "[[[5.0,5.0],[6.0,5.0],[6.0,6.0],[5.0,5.0]]]]}",
+                "MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))" );
+        assertParsed( "{\"type\":\"MultiPolygon\",\"coordinates\":[]}", "MULTIPOLYGON EMPTY" );
+        assertParsed( "{\"type\":\"GeometryCollection\",\"geometries\":[{\"type\":\"Point\",\"coordinates\":[1.0,2.0]},"
+                + "{\"type\":\"LineString\",\"coordinates\":[[1.0,2.0],[3.0,4.0]]}]}", "GEOMETRYCOLLECTION (POINT (1 2), LINESTRING (1 2, 3 4))" );
+    }
+
+    /**
+     * The malformed WKT are rejected with the offset of the error
+     */
+    @Test
+    public void testMalformed( )
+    {
+        assertError( "CIRCLE (1 2)", 0 );
+        assertError( "POINT (1)", 8 );
+        assertError( "POINT 1 2", 6 );
+        assertError( "POINT (1 2) x", 12 );
+        assertError( "POINT (a b)", 7 );
+        assertError( "LINESTRING (1 2, 3 4", 20 );
+        assertError( "POLYGON (0 0, 1 1, 0 0)", 9 );
+        assertError( "MULTIPOINT (1 2, (3 4)", 22 );
+        assertError( "SRID=4326 POINT (1 2)", 0 );
+        assertError( "", 0 );
+    }
+
+    /**
+     * Checks the GeoJSON of a WKT
+     * 
+     * @param strExpected
+     *            the expected GeoJSON
+     * @param strWkt
+     *            the WKT
+     * @throws ParseException
+     *             if the WKT is malformed
+     * @throws IOException
+     *             if the expected GeoJSON is malformed
+     */
+    private static void assertParsed( String strExpected, String strWkt ) throws ParseException, IOException
+    {
+        JsonNode expected = MAPPER.readTree( strExpected );
+
+        assertEquals( strWkt, expected, WktParser.parse( strWkt ) );
+    }
+
+    /**
+     * Checks that a malformed WKT is rejected
+     * 
+     * @param strWkt
+     *            the WKT
+     * @param nErrorOffset
+     *            the expected error offset
+     */
+    private static void assertError( String strWkt, int nErrorOffset )
+    {
+        try
+        {
+            WktParser.parse( strWkt );
+            fail( "Malformed WKT accepted : " + strWkt );
+        }
+        catch( ParseException e )
+        {
+            assertEquals( strWkt, nErrorOffset, e.getErrorOffset( ) );
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * TileGeometryBuilder Test Class
+ */
+public class TileGeometryBuilderTest
+{
+    private static final int EXTENT = 4096;
+    private static final double DELTA = 1e-9;
+
+    // The north-east tile of zoom 1 : longitudes 0 to 180, latitudes 0 to 85.05
+    private static final int ZOOM = 1;
+    private static final int TILE_X = 1;
+    private static final int TILE_Y = 0;
+
+    // Latitudes of the rows at a quarter, a half and three quarters of the tile
+    private static final double LAT_QUARTER = TileGeometryBuilder.tileToLatitude( 0.25, ZOOM );
+    private static final double LAT_HALF = TileGeometryBuilder.tileToLatitude( 0.5, ZOOM );
+    private static final double LAT_THREE_QUARTERS = TileGeometryBuilder.tileToLatitude( 0.75, ZOOM );
+
+    /**
+     * The edges of the tiles
+     */
+    @Test
+    public void testTileEdges( )
+    {
+        assertEquals( -180.0, TileGeometryBuilder.tileToLongitude( 0, 0 ), DELTA );
+        assertEquals( 0.0, TileGeometryBuilder.tileToLongitude( 1, 1 ), DELTA );
+        assertEquals( 180.0, TileGeometryBuilder.tileToLongitude( 2, 1 ), DELTA );
+        assertEquals( 85.0511287798, TileGeometryBuilder.tileToLatitude( 0, 0 ), 1e-6 );
+        assertEquals( 0.0, TileGeometryBuilder.tileToLatitude( 1, 1 ), DELTA );
+    }
+
+    /**
+     * The points are projected in tile coordinates, y down, and the points outside the tile and its buffer are dropped
+     */
+    @Test
+    public void testPoint( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 64 );
+
+        assertArrayEquals( new int [ ] {
+                2048, 2048
+        }, builder.getPoint( 90, LAT_HALF ) );
+        assertArrayEquals( new int [ ] {
+                0, 4096
+        }, builder.getPoint( 0, 0 ) );
+        assertArrayEquals( new int [ ] {
+                -20, 2048
+        }, builder.getPoint( -20 * 180.0 / EXTENT, LAT_HALF ) );
+        assertNull( builder.getPoint( -90, LAT_HALF ) );
+        assertNull( builder.getPoint( 90, -45 ) );
+    }
+
+    /**
+     * A line crossing the edge of the tile is cut on the edge
+     */
+    @Test
+    public void testLineClipped( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+
+        List<int [ ]> listParts = builder.getLineParts( new double [ ] {
+                -90, LAT_HALF, 90, LAT_HALF
+        } );
+
+        assertEquals( 1, listParts.size( ) );
+        assertArrayEquals( new int [ ] {
+                0, 2048, 2048, 2048
+        }, listParts.get( 0 ) );
+    }
+
+    /**
+     * A line leaving the tile and coming back is split in two parts
+     */
+    @Test
+    public void testLineLeavingTile( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+
+        List<int [ ]> listParts = builder.getLineParts( new double [ ] {
+                90, LAT_HALF, -90, LAT_HALF, 45, LAT_HALF, 90, LAT_HALF
+        } );
+
+        assertEquals( 2, listParts.size( ) );
+        assertArrayEquals( new int [ ] {
+                2048, 2048, 0, 2048
+        }, listParts.get( 0 ) );
+        assertArrayEquals( new int [ ] {
+                0, 2048, 1024, 2048, 2048, 2048
+        }, listParts.get( 1 ) );
+    }
+
+    /**
+     * A line outside the tile has no part
+     */
+    @Test
+    public void testLineOutside( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+
+        assertTrue( builder.getLineParts( new double [ ] {
+                -90, LAT_HALF, -45, LAT_QUARTER
+        } ).isEmpty( ) );
+    }
+
+    /**
+     * A ring crossing the edge of the tile is cut along the edge, returned without its closing position
+     */
+    @Test
+    public void testRingClipped( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+
+        int [ ] ring = builder.getRing( new double [ ] {
+                -90, LAT_QUARTER, 90, LAT_QUARTER, 90, LAT_THREE_QUARTERS, -90, LAT_THREE_QUARTERS, -90, LAT_QUARTER
+        }, true );
+
+        assertEquals( 8, ring.length );
+        for ( int i = 0; i < ring.length; i += 2 )
+        {
+            assertTrue( ring [i] == 0 || ring [i] == 2048 );
+            assertTrue( ring [i + 1] == 1024 || ring [i + 1] == 3072 );
+        }
+        assertEquals( 2 * 2048L * 2048L, getDoubleArea( ring ) );
+    }
+
+    /**
+     * The exterior rings have a positive area in tile coordinates and the holes a negative one, whatever the orientation of the source ring
+     */
+    @Test
+    public void testRingOrientation( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+        double [ ] ring = {
+                45, LAT_QUARTER, 135, LAT_QUARTER, 135, LAT_THREE_QUARTERS, 45, LAT_THREE_QUARTERS
+        };
+        double [ ] reversedRing = {
+                45, LAT_THREE_QUARTERS, 135, LAT_THREE_QUARTERS, 135, LAT_QUARTER, 45, LAT_QUARTER
+        };
+
+        assertTrue( getDoubleArea( builder.getRing( ring, true ) ) > 0 );
+        assertTrue( getDoubleArea( builder.getRing( reversedRing, true ) ) > 0 );
+        assertTrue( getDoubleArea( builder.getRing( ring, false ) ) < 0 );
+        assertTrue( getDoubleArea( builder.getRing( reversedRing, false ) ) < 0 );
+    }
+
+    /**
+     * A ring outside the tile or collapsing once quantised is dropped
+     */
+    @Test
+    public void testRingDropped( )
+    {
+        TileGeometryBuilder builder = new TileGeometryBuilder( ZOOM, TILE_X, TILE_Y, EXTENT, 0 );
+
+        assertNull( builder.getRing( new double [ ] {
+                -90, LAT_QUARTER, -45, LAT_QUARTER, -45, LAT_HALF, -90, LAT_QUARTER
+        }, true ) );
+        assertNull( builder.getRing( new double [ ] {
+                90, LAT_HALF, 90.001, LAT_HALF, 90.001, LAT_HALF + 0.001, 90, LAT_HALF
+        }, true ) );
+    }
+
+    /**
+     * Returns twice the signed area of a ring
+     * 
+     * @param ring
+     *            the ring as x0, y0, x1, y1..., not closed
+     * @return twice the area
+     */
+    private static long getDoubleArea( int [ ] ring )
+    {
+        int nPoints = ring.length / 2;
+        long lArea = 0;
+
+        for ( int i = 0; i < nPoints; i++ )
+        {
+            int j = ( i + 1 ) % nPoints;
+            lArea += (long) ring [2 * i] * ring [2 * j + 1] - (long) ring [2 * j] * ring [2 * i + 1];
+        }
+
+        return lArea;
+    }
+}
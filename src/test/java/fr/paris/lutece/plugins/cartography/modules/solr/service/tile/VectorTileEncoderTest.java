@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * VectorTileEncoder Test Class
+ */
+public class VectorTileEncoderTest
+{
+    private static final int EXTENT = 4096;
+    private static final String LAYER = "layer";
+
+    // Command integers : id | count << 3
+    private static final int MOVE_TO_1 = 9;
+    private static final int LINE_TO_2 = 18;
+    private static final int CLOSE_PATH = 15;
+
+    /**
+     * The tile of a single point, checked byte per byte
+     */
+    @Test
+    public void testEncodePoint( )
+    {
+        VectorTileEncoder encoder = new VectorTileEncoder( EXTENT );
+        encoder.addFeature( "a", 0, Collections.emptyMap( ), VectorTileEncoder.GEOM_TYPE_POINT, Collections.singletonList( new int [ ] {
+                25, 17
+        } ) );
+
+        byte [ ] expected = {
+                // tile.layers, length 19
+                0x1A, 0x13,
+                // layer.version = 2
+                0x78, 0x02,
+                // layer.name = "a"
+                0x0A, 0x01, 0x61,
+                // layer.features, length 9
+                0x12, 0x09,
+                // feature.tags = [ ], feature.type = POINT
+                0x12, 0x00, 0x18, 0x01,
+                // feature.geometry = [ MoveTo(1), zigzag(25), zigzag(17) ]
+                0x22, 0x03, 0x09, 0x32, 0x22,
+                // layer.extent = 4096
+                0x28, (byte) 0x80, 0x20
+        };
+
+        assertArrayEquals( expected, encoder.encode( ) );
+    }
+
+    /**
+     * The positions are delta-encoded from the cursor and zig-zag encoded, the negative deltas being odd
+     */
+    @Test
+    public void testEncodeLine( )
+    {
+        int [ ] geometry = encodeGeometry( VectorTileEncoder.GEOM_TYPE_LINESTRING, new int [ ] {
+                2, 2, 2, 10, -3, 10
+        } );
+
+        assertArrayEquals( new int [ ] {
+                MOVE_TO_1, 4, 4, LINE_TO_2, 0, 16, 9, 0
+        }, geometry );
+    }
+
+    /**
+     * The rings are closed by a ClosePath command and are given without their closing position
+     */
+    @Test
+    public void testEncodePolygon( )
+    {
+        int [ ] geometry = encodeGeometry( VectorTileEncoder.GEOM_TYPE_POLYGON, new int [ ] {
+                0, 0, 10, 0, 10, 10
+        } );
+
+        assertArrayEquals( new int [ ] {
+                MOVE_TO_1, 0, 0, LINE_TO_2, 20, 0, 0, 20, CLOSE_PATH
+        }, geometry );
+    }
+
+    /**
+     * The cursor is kept from one part to the next
+     */
+    @Test
+    public void testCursorKeptBetweenParts( )
+    {
+        int [ ] geometry = encodeGeometry( VectorTileEncoder.GEOM_TYPE_POINT, new int [ ] {
+                5, 5
+        }, new int [ ] {
+                3, 3
+        } );
+
+        assertArrayEquals( new int [ ] {
+                MOVE_TO_1, 10, 10, MOVE_TO_1, 3, 3
+        }, geometry );
+    }
+
+    /**
+     * The geometries without enough positions are not added
+     */
+    @Test
+    public void testDegenerateGeometry( )
+    {
+        VectorTileEncoder encoder = new VectorTileEncoder( EXTENT );
+        encoder.addFeature( LAYER, 1, Collections.emptyMap( ), VectorTileEncoder.GEOM_TYPE_LINESTRING, Collections.singletonList( new int [ ] {
+                1, 1
+        } ) );
+        encoder.addFeature( LAYER, 2, Collections.emptyMap( ), VectorTileEncoder.GEOM_TYPE_POLYGON, Collections.singletonList( new int [ ] {
+                0, 0, 1, 1
+        } ) );
+
+        assertTrue( encoder.isEmpty( ) );
+        assertEquals( 0, encoder.encode( ).length );
+    }
+
+    /**
+     * The keys and values are shared by the features of a layer and the null values are skipped
+     */
+    @Test
+    public void testTags( )
+    {
+        VectorTileEncoder encoder = new VectorTileEncoder( EXTENT );
+        Map<String, String> mapAttributes = new LinkedHashMap<>( );
+        mapAttributes.put( "icon", "school" );
+        mapAttributes.put( "name", "a" );
+        encoder.addFeature( LAYER, 1, mapAttributes, VectorTileEncoder.GEOM_TYPE_POINT, Collections.singletonList( new int [ ] {
+                0, 0
+        } ) );
+        mapAttributes.put( "name", null );
+        mapAttributes.put( "type", "a" );
+        encoder.addFeature( LAYER, 2, mapAttributes, VectorTileEncoder.GEOM_TYPE_POINT, Collections.singletonList( new int [ ] {
+                0, 0
+        } ) );
+
+        byte [ ] layer = readFields( encoder.encode( ) ).get( 3 ).get( 0 );
+        Map<Integer, List<byte [ ]>> mapLayer = readFields( layer );
+        List<byte [ ]> listFeatures = mapLayer.get( 2 );
+
+        assertEquals( Arrays.asList( "icon", "name", "type" ), toStrings( mapLayer.get( 3 ) ) );
+        assertEquals( 2, mapLayer.get( 4 ).size( ) );
+        assertArrayEquals( new int [ ] {
+                0, 0, 1, 1
+        }, readPacked( readFields( listFeatures.get( 0 ) ).get( 2 ).get( 0 ) ) );
+        assertArrayEquals( new int [ ] {
+                0, 0, 2, 1
+        }, readPacked( readFields( listFeatures.get( 1 ) ).get( 2 ).get( 0 ) ) );
+    }
+
+    /**
+     * Encodes a feature and returns its geometry commands
+     * 
+     * @param nGeomType
+     *            the geometry type
+     * @param parts
+     *            the parts of the geometry
+     * @return the geometry commands
+     */
+    private static int [ ] encodeGeometry( int nGeomType, int [ ]... parts )
+    {
+        VectorTileEncoder encoder = new VectorTileEncoder( EXTENT );
+        encoder.addFeature( LAYER, 1, Collections.emptyMap( ), nGeomType, Arrays.asList( parts ) );
+
+        byte [ ] layer = readFields( encoder.encode( ) ).get( 3 ).get( 0 );
+        byte [ ] feature = readFields( layer ).get( 2 ).get( 0 );
+
+        return readPacked( readFields( feature ).get( 4 ).get( 0 ) );
+    }
+
+    /**
+     * Reads the fields of a protobuf message. The varints are returned as their encoded bytes
+     * 
+     * @param message
+     *            the message
+     * @return the values by field number
+     */
+    private static Map<Integer, List<byte [ ]>> readFields( byte [ ] message )
+    {
+        Map<Integer, List<byte [ ]>> mapFields = new LinkedHashMap<>( );
+        int [ ] position = {
+                0
+        };
+
+        while ( position [0] < message.length )
+        {
+            long lKey = readVarint( message, position );
+            int nStart = position [0];
+            byte [ ] value;
+
+            if ( ( lKey & 0x7 ) == 2 )
+            {
+                int nLength = (int) readVarint( message, position );
+                value = Arrays.copyOfRange( message, position [0], position [0] + nLength );
+                position [0] += nLength;
+            }
+            else
+            {
+                readVarint( message, position );
+                value = Arrays.copyOfRange( message, nStart, position [0] );
+            }
+            mapFields.computeIfAbsent( (int) ( lKey >>> 3 ), nField -> new ArrayList<>( ) ).add( value );
+        }
+
+        return mapFields;
+    }
+
+    /**
+     * Reads a packed field of unsigned integers
+     * 
+     * @param packed
+     *            the field
+     * @return the integers
+     */
+    private static int [ ] readPacked( byte [ ] packed )
+    {
+        List<Integer> listValues = new ArrayList<>( );
+        int [ ] position = {
+                0
+        };
+
+        while ( position [0] < packed.length )
+        {
+            listValues.add( (int) readVarint( packed, position ) );
+        }
+
+        return listValues.stream( ).mapToInt( Integer::intValue ).toArray( );
+    }
+
+    /**
+     * Reads a varint
+     * 
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position, updated
+     * @return the value
+     */
+    private static long readVarint( byte [ ] buffer, int [ ] position )
+    {
+        long lValue = 0;
+        int nShift = 0;
+        byte b;
+
+        do
+        {
+            b = buffer [position [0]++];
+            lValue |= (long) ( b & 0x7F ) << nShift;
+            nShift += 7;
+        }
+        while ( ( b & 0x80 ) != 0 );
+
+        return lValue;
+    }
+
+    /**
+     * Decodes UTF-8 strings
+     * 
+     * @param listBytes
+     *            the encoded strings
+     * @return the strings
+     */
+    private static List<String> toStrings( List<byte [ ]> listBytes )
+    {
+        List<String> listStrings = new ArrayList<>( );
+        for ( byte [ ] bytes : listBytes )
+        {
+            listStrings.add( new String( bytes, StandardCharsets.UTF_8 ) );
+        }
+
+        return listStrings;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2002-2023, City of Paris
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice
+ *     and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice
+ *     and the following disclaimer in the documentation and/or other materials
+ *     provided with the distribution.
+ *
+ *  3. Neither the name of 'Mairie de Paris' nor 'Lutece' nor the names of its
+ *     contributors may be used to endorse or promote products derived from
+ *     this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ * License 1.0
+ */
+package fr.paris.lutece.plugins.cartography.modules.solr.service.tile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.paris.lutece.portal.service.security.LuteceUser;
+
+/**
+ * VectorTileService Test Class
+ */
+public class VectorTileServiceTest
+{
+    /**
+     * The tiles are cached per role the queries are filtered on : the first role of the user
+     */
+    @Test
+    public void testRoleKeyDependsOnFirstRole( )
+    {
+        assertNotEquals( VectorTileService.getRoleKey( getUser( "agent", "admin" ) ), VectorTileService.getRoleKey( getUser( "admin", "agent" ) ) );
+        assertEquals( VectorTileService.getRoleKey( getUser( "agent", "admin" ) ), VectorTileService.getRoleKey( getUser( "agent", "editor" ) ) );
+    }
+
+    /**
+     * The key is a valid directory name, whatever the role
+     */
+    @Test
+    public void testRoleKeyIsDirectoryName( )
+    {
+        String strKey = VectorTileService.getRoleKey( getUser( "../..\\ r\u00f4le:*" ) );
+
+        assertTrue( strKey.matches( "[0-9a-f]{64}" ) );
+        assertNotEquals( VectorTileService.getRoleKey( null ), VectorTileService.getRoleKey( getUser( "" ) ) );
+        assertEquals( VectorTileService.getRoleKey( null ), VectorTileService.getRoleKey( getUser( ) ) );
+    }
+
+    /**
+     * Returns a user having the given roles
+     * 
+     * @param roles
+     *            the roles, in order
+     * @return the user
+     */
+    private static LuteceUser getUser( String... roles )
+    {
+        return new LuteceUser( "test", null )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String [ ] getRoles( )
+            {
+                return roles;
+            }
+
+            @Override
+            public String getEmail( )
+            {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Decoding of the compact coordinates sent by the solr cartography module (encoding=polyline parameter) :
+ * each list of positions is an encoded polyline string, in the GeoJSON order longitude, latitude.
+ * Loaded by map_cartography.html. It is kept out of carto-map.js, which is not loaded by the templates and creates
+ * its own map on the forms-admin-map element when included.
+ */
+
+// Decode an encoded polyline into a list of [longitude, latitude] positions
+function decodePolyline( encoded, precision ) {
+	var factor = Math.pow( 10, precision );
+	var positions = [];
+	var index = 0;
+	var x = 0;
+	var y = 0;
+
+	function nextValue() {
+		var result = 0;
+		var shift = 0;
+		var chunk;
+		do {
+			chunk = encoded.charCodeAt( index++ ) - 63;
+			// multiplications instead of bitwise shifts, which are limited to 32 bits
+			result += ( chunk & 0x1f ) * Math.pow( 2, shift );
+			shift += 5;
+		} while ( chunk >= 0x20 );
+		return ( result % 2 ) ? -( result + 1 ) / 2 : result / 2;
+	}
+
+	while ( index < encoded.length ) {
+		x += nextValue();
+		y += nextValue();
+		positions.push( [ x / factor, y / factor ] );
+	}
+	return positions;
+}
+
+// Decode the coordinates of a GeoJSON feature or geometry in place, if they are encoded
+function decodeCompactGeometry( geojson ) {
+	var geometry = ( geojson && geojson.geometry ) ? geojson.geometry : geojson;
+	if ( !geometry || geometry.encoding != 'polyline' ) {
+		return geojson;
+	}
+
+	function decodeNode( node ) {
+		if ( typeof( node ) == 'string' ) {
+			return decodePolyline( node, geometry.precision );
+		}
+		return node.map( decodeNode );
+	}
+
+	geometry.coordinates = decodeNode( geometry.coordinates );
+	delete geometry.encoding;
+	delete geometry.precision;
+	return geojson;
+}
@@ -0,0 +1,9 @@
+<jsp:useBean id="manageimportcartographieSolr" scope="session" class="fr.paris.lutece.plugins.cartography.modules.solr.web.ImportDataLayerJspBean" />
+<% String strContent = manageimportcartographieSolr.processController ( request , response ); %>
+
+<%@ page errorPage="../../ErrorPage.jsp" %>
+<jsp:include page="../../AdminHeader.jsp" />
+
+<%= strContent %>
+
+<%@ include file="../../AdminFooter.jsp" %>
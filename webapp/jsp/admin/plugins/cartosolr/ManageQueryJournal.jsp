@@ -0,0 +1,9 @@
+<jsp:useBean id="managequeryjournalcartographieSolr" scope="session" class="fr.paris.lutece.plugins.cartography.modules.solr.web.QueryJournalJspBean" />
+<% String strContent = managequeryjournalcartographieSolr.processController ( request , response ); %>
+
+<%@ page errorPage="../../ErrorPage.jsp" %>
+<jsp:include page="../../AdminHeader.jsp" />
+
+<%= strContent %>
+
+<%@ include file="../../AdminFooter.jsp" %>